@@ -0,0 +1,33 @@
+precision highp float;
+
+uniform sampler2D palette;
+uniform float centerX;
+uniform float centerY;
+uniform float scale;
+uniform float iterations;
+uniform vec2 resolution;
+uniform float distance;
+#define maxiter 65535
+#define escape 1e10
+void main() {
+    vec2 center = vec2(centerX, centerY);
+    vec2 coord = vec2(gl_FragCoord.x, gl_FragCoord.y) / resolution;
+    vec2 c = (coord - center) / scale;
+    vec2 z = c;
+    vec2 dz = vec2(1.0, 0.0);
+    float m = dot(z, z);
+    for(int i = 0; i<maxiter; i++) {
+        if ((float(i) >= iterations) || (m > escape)) break;
+        // dz -> 2 z dz + 1 alongside z -> z^2 + c
+        dz = 2.0 * vec2(z.x * dz.x - z.y * dz.y, z.x * dz.y + z.y * dz.x) + vec2(1.0, 0.0);
+        z = vec2(z.x * z.x - z.y * z.y, 2.0 * z.x * z.y) + c;
+        m = dot(z, z);
+    }
+    float shade = 0.0;
+    if (m > escape) {
+        // Estimated distance in pixels over the glow width
+        float d = 0.25 * sqrt(m / dot(dz, dz)) * log(m);
+        shade = min(1.0, d * scale * resolution.x / distance);
+    }
+    gl_FragColor = texture2D(palette, vec2(sqrt(shade), 0.5));
+}
@@ -1,99 +1,201 @@
 #include <jni.h>
+#include <math.h>
+#include <stdlib.h>
+#include <string.h>
 #ifdef __cplusplus
 extern "C" {
 #endif
 
+/* Rectangles with a side shorter than this are iterated pixel by pixel */
+#define SUBDIVISION_MIN_SIZE 4
+#define NOT_COMPUTED -1
+
+/* Orbit points closer than this are considered equal by the periodicity check */
+#define PERIODICITY_EPSILON 1e-13
+
+/* Number of iterations of z -> z^2 + c before |z| > 2, maxiter if the orbit stays bounded.
+ * The main cardioid and the period-2 bulb are recognized in closed form, other orbits are
+ * checked for cycles with Brent's algorithm (z saved at every power of two iterations).
+ * z where the orbit stopped is stored in *end_r and *end_i. */
+static int mandelbrot_iterations(double cr, double ci, int maxiter, double *end_r,
+		double *end_i) {
+	double zr = 0, zi = 0, zr2 = 0, zi2 = 0;
+	double saved_r = 0, saved_i = 0;
+	double ci2 = ci*ci;
+	double xq = cr - 0.25;
+	double q = xq*xq + ci2;
+	int next_save = 1;
+	int iter = 0;
+	*end_r = 0;
+	*end_i = 0;
+	if (q*(q + xq) <= 0.25*ci2 || (cr + 1)*(cr + 1) + ci2 <= 0.0625) {
+		return maxiter;
+	}
+	while (iter < maxiter && zr2 + zi2 <= 4.0) {
+		zi = 2*zr*zi + ci;
+		zr = zr2 - zi2 + cr;
+		zr2 = zr*zr;
+		zi2 = zi*zi;
+		iter++;
+		if (fabs(zr - saved_r) < PERIODICITY_EPSILON && fabs(zi - saved_i) < PERIODICITY_EPSILON) {
+			return maxiter;
+		}
+		if (iter == next_save) {
+			saved_r = zr;
+			saved_i = zi;
+			next_save <<= 1;
+		}
+	}
+	*end_r = zr;
+	*end_i = zi;
+	return iter;
+}
+
+/* Escaped orbits are continued for this many iterations before normalizing the count */
+#define SMOOTHING_ITERATIONS 2
+
+/* Normalized count n + 1 - log2(log|z_n| / log 2) within [0, maxiter), with the orbit
+ * continued past the escape like Formula.smooth and EscapeTimeKernel.normalize in Java */
+static float mandelbrot_smooth(double cr, double ci, int maxiter) {
+	double zr, zi, t, value;
+	int iter = mandelbrot_iterations(cr, ci, maxiter, &zr, &zi);
+	int k;
+	float normalized;
+	if (iter >= maxiter) {
+		return (float) iter;
+	}
+	for (k = 0; k < SMOOTHING_ITERATIONS; k++) {
+		t = zr*zr - zi*zi + cr;
+		zi = 2*zr*zi + ci;
+		zr = t;
+	}
+	value = iter + SMOOTHING_ITERATIONS + 1
+			- log(log(zr*zr + zi*zi) / log(4.0)) / log(2.0);
+	normalized = (float) (value > 0 ? value : 0);
+	/* Rounding must not carry the value to the limit, which marks bounded orbits */
+	return normalized < maxiter ? normalized : nextafterf((float) maxiter, 0);
+}
+
+struct subdivision {
+	int *counts;
+	int width;
+	double left, top, x_len, y_len;
+	int maxiter;
+};
+
+static int subdivision_count(struct subdivision *s, int x, int y) {
+	int *count = &s->counts[x + y*s->width];
+	double end_r, end_i;
+	if (*count == NOT_COMPUTED) {
+		/* same pixel mapping as redrawMandelbrot */
+		*count = mandelbrot_iterations(s->left + (double)x/s->width*s->x_len,
+				s->top + (double)y/s->width*s->y_len, s->maxiter, &end_r, &end_i);
+	}
+	return *count;
+}
+
+/* Mariani-Silver: iterate the border of the rectangle with inclusive corners [x1, y1], [x2, y2],
+ * fill the inside if the border is uniform, split in two otherwise */
+static void subdivide(struct subdivision *s, int x1, int y1, int x2, int y2) {
+	int x, y, border, uniform, middle;
+	if (x2 - x1 < SUBDIVISION_MIN_SIZE || y2 - y1 < SUBDIVISION_MIN_SIZE) {
+		for (y = y1; y <= y2; y++)
+			for (x = x1; x <= x2; x++)
+				subdivision_count(s, x, y);
+		return;
+	}
+	border = subdivision_count(s, x1, y1);
+	uniform = 1;
+	for (x = x1; x <= x2; x++) {
+		uniform &= (subdivision_count(s, x, y1) == border) & (subdivision_count(s, x, y2) == border);
+	}
+	for (y = y1 + 1; y < y2; y++) {
+		uniform &= (subdivision_count(s, x1, y) == border) & (subdivision_count(s, x2, y) == border);
+	}
+	if (uniform) {
+		for (y = y1 + 1; y < y2; y++)
+			for (x = x1 + 1; x < x2; x++)
+				s->counts[x + y*s->width] = border;
+		return;
+	}
+	if (x2 - x1 >= y2 - y1) {
+		middle = (x1 + x2) / 2;
+		subdivide(s, x1, y1, middle, y2);
+		subdivide(s, middle, y1, x2, y2);
+	} else {
+		middle = (y1 + y2) / 2;
+		subdivide(s, x1, y1, x2, middle);
+		subdivide(s, x1, middle, x2, y2);
+	}
+}
+
+/* The Mandelbrot functions store iteration counts, the colors are applied in Java. The
+ * subdivided one stores whole counts, the others normalized ones. */
 JNIEXPORT void JNICALL Java_com_draabek_fractal_canvas_NativeLib_redrawMandelbrot
-  (JNIEnv * env, jclass clazz, jintArray bitmapArray, jint width, jint height, jdouble left, jdouble top, jdouble right, jdouble bottom, jint maxiter) {
+  (JNIEnv * env, jclass clazz, jfloatArray countArray, jint width, jint height, jdouble left, jdouble top, jdouble right, jdouble bottom, jint maxiter) {
 		double cr,ci;
-		double zr,zi;
-		double crt;
 		int i;
 		int j;
 		double orig_x_len;
 		double orig_y_len;
-		int iter;
-		double factor;
-		int color;
-		jint *bitmap;
-		bitmap = (*env)->GetIntArrayElements(env, bitmapArray, 0);
+		jfloat *counts;
+		counts = (*env)->GetFloatArrayElements(env, countArray, 0);
 		orig_x_len = right - left;
 		orig_y_len = bottom - top;
 		for (i = 0;i < width;i++)
 			for (j = 0;j < height;j++) {
-				 cr = left + (double)i/width*orig_x_len;
-				 ci = top + (double)j/width*orig_y_len;
-				 zr = cr;
-				 zi = ci;
-			     for (iter = 0;iter < maxiter;iter++) {
-			    	 crt = cr;
-			    	 cr = cr*cr - ci*ci + zr;
-			    	 ci = 2*crt*ci + zi;
-			    	 if (cr*cr - ci*ci > 2*2) {
-			    	 	break;
-			    	 }
-			     }
-			     factor = (1 - (double)iter / maxiter);
-				color = (int) (factor * 0xff);
-				color = color | color << 8 | color << 16 | 0xff000000; 
-			bitmap[i + j*width] = color;
+				cr = left + (double)i/width*orig_x_len;
+				ci = top + (double)j/width*orig_y_len;
+				counts[i + j*width] = mandelbrot_smooth(cr, ci, maxiter);
 			}
-		(*env)->ReleaseIntArrayElements(env, bitmapArray, bitmap, 0);
+		(*env)->ReleaseFloatArrayElements(env, countArray, counts, 0);
 }
 
 JNIEXPORT void JNICALL Java_com_draabek_fractal_canvas_NativeLib_redrawMandelbrotPart
-		(JNIEnv * env, jclass clazz, jintArray bitmapArray, jint width, jint height, jdouble left,
+		(JNIEnv * env, jclass clazz, jfloatArray countArray, jint width, jint height, jdouble left,
 		 jdouble top, jdouble right, jdouble bottom, jint maxiter, jint fromX,
 		jint fromY, jint toX, jint toY) {
 	double cr,ci;
-	double zr,zi;
-	double crt;
 	int i;
 	int j;
 	double orig_x_len;
 	double orig_y_len;
-	int iter;
-	double factor;
-	int color;
-	jint *bitmap;
-	bitmap = (*env)->GetIntArrayElements(env, bitmapArray, 0);
+	jfloat *counts;
+	counts = (*env)->GetFloatArrayElements(env, countArray, 0);
 	orig_x_len = right - left;
 	orig_y_len = bottom - top;
 	for (i = fromX;i < toX;i++)
 		for (j = fromY;j < toY;j++) {
 			cr = left + (double)i/width*orig_x_len;
 			ci = top + (double)j/width*orig_y_len;
-			zr = cr;
-			zi = ci;
-			for (iter = 0;iter < maxiter;iter++) {
-				crt = cr;
-				cr = cr*cr - ci*ci + zr;
-				ci = 2*crt*ci + zi;
-				if (cr*cr - ci*ci > 2*2) {
-					break;
-				}
-			}
-			factor = (1 - (double)iter / maxiter);
-			color = (int) (factor * 0xff);
-			color = color | color << 8 | color << 16 | 0xff000000;
-			bitmap[i + j*width] = color;
+			counts[i + j*width] = mandelbrot_smooth(cr, ci, maxiter);
 		}
-	(*env)->ReleaseIntArrayElements(env, bitmapArray, bitmap, 0);
+	(*env)->ReleaseFloatArrayElements(env, countArray, counts, 0);
 }
 
-JNIEXPORT void JNICALL Java_com_draabek_fractal_canvas_NativeLib_redrawLorenz
-		(JNIEnv * env, jclass clazz, jintArray bitmapArray, jint width, jint height,
+JNIEXPORT void JNICALL Java_com_draabek_fractal_canvas_NativeLib_redrawMandelbrotSubdivided
+		(JNIEnv * env, jclass clazz, jfloatArray countArray, jint width, jint height,
 		 jdouble left, jdouble top, jdouble right, jdouble bottom, jint maxiter) {
-	jint *bitmap = (*env)->GetIntArrayElements(env, bitmapArray, 0);
-	(*env)->ReleaseIntArrayElements(env, bitmapArray, bitmap, 0);
-}
-
-JNIEXPORT void JNICALL Java_com_draabek_fractal_canvas_NativeLib_redrawLorenzPart
-		(JNIEnv * env, jclass clazz, jintArray bitmapArray, jint width, jint height, jdouble left,
-		 jdouble top, jdouble right, jdouble bottom, jint maxiter, jint fromX,
-		 jint fromY, jint toX, jint toY) {
-	jint *bitmap = (*env)->GetIntArrayElements(env, bitmapArray, 0);
-	(*env)->ReleaseIntArrayElements(env, bitmapArray, bitmap, 0);
+	struct subdivision s;
+	int i;
+	jfloat *counts;
+	if (width <= 0 || height <= 0) return;
+	s.counts = (int *) malloc(sizeof(int) * width * height);
+	if (s.counts == NULL) return;
+	memset(s.counts, 0xff, sizeof(int) * width * height); /* NOT_COMPUTED */
+	s.width = width;
+	s.left = left;
+	s.top = top;
+	s.x_len = right - left;
+	s.y_len = bottom - top;
+	s.maxiter = maxiter;
+	subdivide(&s, 0, 0, width - 1, height - 1);
+	counts = (*env)->GetFloatArrayElements(env, countArray, 0);
+	for (i = 0; i < width * height; i++) {
+		counts[i] = (jfloat) s.counts[i];
+	}
+	(*env)->ReleaseFloatArrayElements(env, countArray, counts, 0);
+	free(s.counts);
 }
 
 #ifdef __cplusplus
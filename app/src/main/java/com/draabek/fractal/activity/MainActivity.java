@@ -18,6 +18,7 @@ import com.draabek.fractal.fractal.FractalViewWrapper;
 import com.draabek.fractal.R;
 import com.draabek.fractal.fractal.RenderListener;
 import com.draabek.fractal.util.Utils;
+import com.draabek.fractal.canvas.DensityFractal;
 import com.draabek.fractal.canvas.FractalCpuView;
 import com.draabek.fractal.fractal.Fractal;
 import com.draabek.fractal.fractal.FractalRegistry;
@@ -125,6 +126,24 @@ public class MainActivity extends AppCompatActivity {
         return super.onCreateOptionsMenu(menu);
     }
 
+    /**
+     * Offer pausing or resuming the sampling of density fractals
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem pauseItem = menu.findItem(R.id.pauseSampling);
+        Fractal fractal = FractalRegistry.getInstance().getCurrent();
+        pauseItem.setVisible(fractal instanceof DensityFractal);
+        if (fractal instanceof DensityFractal) {
+            boolean paused = ((DensityFractal) fractal).isPaused();
+            pauseItem.setTitle(paused ? R.string.resumeSamplingMenuItem
+                    : R.string.pauseSamplingMenuItem);
+            pauseItem.setIcon(paused ? android.R.drawable.ic_media_play
+                    : android.R.drawable.ic_media_pause);
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
@@ -153,6 +172,21 @@ public class MainActivity extends AppCompatActivity {
                 Intent intent2 = new Intent(this, FractalParametersActivity.class);
                 startActivity(intent2);
                 return true;
+            case R.id.pauseSampling:
+                if (Utils.DEBUG) {
+                    Log.d(LOG_KEY, "Pause sampling menu item pressed");
+                }
+                Fractal fractal = FractalRegistry.getInstance().getCurrent();
+                if (fractal instanceof DensityFractal) {
+                    DensityFractal densityFractal = (DensityFractal) fractal;
+                    densityFractal.setPaused(!densityFractal.isPaused());
+                    if (!densityFractal.isPaused() && (currentView instanceof View)) {
+                        // Accumulation goes on from the samples taken so far
+                        ((View) currentView).invalidate();
+                    }
+                    invalidateOptionsMenu();
+                }
+                return true;
             case R.id.options:
                 if (Utils.DEBUG) {
                     Log.d(LOG_KEY, "Options menu item pressed");
@@ -188,6 +222,7 @@ public class MainActivity extends AppCompatActivity {
         }
         currentView = available;
         FractalRegistry.getInstance().setCurrent(f);
+        invalidateOptionsMenu();
         if (Utils.DEBUG) {
             Log.d(LOG_KEY, f.getName() + " is current");
         }
@@ -198,7 +233,11 @@ public class MainActivity extends AppCompatActivity {
             public void onRenderRequested() {
                 Log.i(this.getClass().getName(), String.format("Rendering requested on %s",
                         FractalRegistry.getInstance().getCurrent().getName()));
-                progressBar.post(() -> progressBar.setVisibility(View.VISIBLE));
+                progressBar.post(() -> {
+                    progressBar.setVisibility(View.VISIBLE);
+                    // A new view resumes paused sampling
+                    invalidateOptionsMenu();
+                });
 
             }
 
@@ -0,0 +1,96 @@
+package com.draabek.fractal.canvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.FixedPointRenderer;
+import com.draabek.fractal.canvas.engine.IterationBuffer;
+import com.draabek.fractal.canvas.engine.PassListener;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.canvas.engine.Reprojection;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Escape-time fractal iterated directly in fixed-point arithmetic with as many bits as the
+ * zoom level needs. Slow, but without the approximations of perturbation, so any formula
+ * can be zoomed arbitrarily deep. Subclasses provide the kernel.
+ */
+public abstract class ArbitraryPrecisionFractal extends BitmapDrawFractal {
+    public static final int DEFAULT_ITERATIONS = 256;
+
+    private final IterationFrame frame = new IterationFrame();
+    private volatile RenderStats lastStats;
+
+    protected abstract FixedPointKernel getKernel();
+
+    public int getMaxIterations() {
+        Float iterations = parameters.get("iterations");
+        return (iterations == null) ? DEFAULT_ITERATIONS : Math.max(1, iterations.intValue());
+    }
+
+    /**
+     * @return Statistics of the last rendered frame, null before the first one
+     */
+    public RenderStats getLastStats() {
+        return lastStats;
+    }
+
+    @Override
+    public synchronized Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        IterationBuffer iterations = frame.prepare(bitmap);
+        lastStats = new FixedPointRenderer(getKernel()).render(iterations, viewport,
+                getMaxIterations());
+        frame.complete(viewport, parameters);
+        recolor(bitmap);
+        return bitmap;
+    }
+
+    @Override
+    public synchronized boolean recolorBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        if (!frame.matches(bitmap, viewport, parameters)) {
+            return false;
+        }
+        recolor(bitmap);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean reprojectBitmap(Bitmap bitmap, PreciseViewport viewport,
+                                                PassListener listener) {
+        Reprojection reprojection = frame.reproject(bitmap, viewport, parameters);
+        if (reprojection == null) {
+            return false;
+        }
+        notifyPreview(bitmap, reprojection, listener);
+        FixedPointRenderer renderer = new FixedPointRenderer(getKernel());
+        RenderStats stats = new RenderStats();
+        for (int[] region : reprojection.getMissingRegions()) {
+            stats.add(renderer.render(frame.getBuffer(), viewport, getMaxIterations(),
+                    region[0], region[1], region[2], region[3], reprojection.getKnownStep()));
+        }
+        lastStats = stats;
+        frame.completeReprojection(bitmap, reprojection, viewport, parameters,
+                (colorPalette == null) ? null : colorPalette.getColorsInt());
+        return true;
+    }
+
+    private void recolor(Bitmap bitmap) {
+        frame.colorize(bitmap, (colorPalette == null) ? null : colorPalette.getColorsInt(),
+                parameters);
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, RectF rect) {
+        return redrawBitmap(bitmap, PreciseViewport.fromViewport(
+                new Viewport(rect.left, rect.top, rect.right, rect.bottom),
+                bitmap.getWidth(), bitmap.getHeight()));
+    }
+
+    @Override
+    public Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part) {
+        return redrawBitmap(bitmap, rect);
+    }
+}
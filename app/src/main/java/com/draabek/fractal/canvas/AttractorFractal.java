@@ -0,0 +1,23 @@
+package com.draabek.fractal.canvas;
+
+import com.draabek.fractal.canvas.engine.Attractor;
+import com.draabek.fractal.canvas.engine.AttractorRenderer;
+import com.draabek.fractal.canvas.engine.DensityRenderer;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Strange attractor plotted as the density of the points its orbits visit, accumulated by
+ * {@link AttractorRenderer}. The "points" parameter counts orbit points. The attractor is
+ * placed in the view by {@link #toPlane}.
+ */
+public abstract class AttractorFractal extends DensityFractal {
+    /**
+     * @return Attractor for the current parameters
+     */
+    protected abstract Attractor getAttractor();
+
+    @Override
+    protected DensityRenderer createRenderer(int width, int height, Viewport viewport) {
+        return new AttractorRenderer(getAttractor(), width, height, toPlane(viewport));
+    }
+}
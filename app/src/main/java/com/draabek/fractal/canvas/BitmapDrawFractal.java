@@ -4,6 +4,11 @@ import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.graphics.RectF;
 
+import com.draabek.fractal.canvas.engine.PassListener;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.Reprojection;
+import com.draabek.fractal.canvas.engine.Viewport;
+
 /**
  * Created by Vojta on 24.08.2017.
  */
@@ -15,6 +20,82 @@ public abstract class BitmapDrawFractal extends CpuFractal {
     }
 
     public abstract Bitmap redrawBitmap(Bitmap bitmap, RectF rect);
+
+    /**
+     * @return Part of the plane a view of the fractal starts with, null to frame the whole
+     * Mandelbrot set
+     */
+    public PreciseViewport getInitialViewport(int width, int height) {
+        return null;
+    }
+
+    /**
+     * Redraw for a viewport given in high precision. Fractals that do not need the precision
+     * render the rounded RectF.
+     */
+    public Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        Viewport rounded = viewport.toViewport(bitmap.getWidth(), bitmap.getHeight());
+        return redrawBitmap(bitmap, new RectF((float) rounded.getLeft(), (float) rounded.getTop(),
+                (float) rounded.getRight(), (float) rounded.getBottom()));
+    }
+
+    /**
+     * Repaint the last frame with the current palette, without rendering it again
+     * @return false if anything but the palette changed since the frame was rendered,
+     * or the fractal keeps no frame to repaint, the bitmap is untouched then
+     */
+    public boolean recolorBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        return false;
+    }
+
+    /**
+     * Draw the frame of the viewport, reusing the samples of the last frame that stay visible
+     * @param listener Notified when the bitmap shows a preview worth posting before the
+     * missing pixels are rendered, may be null
+     * @return false if the last frame cannot be reused, the bitmap is untouched then
+     */
+    public boolean reprojectBitmap(Bitmap bitmap, PreciseViewport viewport,
+                                   PassListener listener) {
+        return false;
+    }
+
+    /**
+     * Start rendering the frame of the viewport in slices of bounded cost, each done by
+     * {@link #continueAnytimeRender}. A render in progress is cancelled.
+     * @return false if the fractal cannot render this frame in slices, nothing is started then
+     */
+    public boolean startAnytimeRender(Bitmap bitmap, PreciseViewport viewport) {
+        return false;
+    }
+
+    /**
+     * Render the next slice of the frame started by {@link #startAnytimeRender} and draw the
+     * partial frame to the bitmap
+     * @param iterationBudget Approximate number of iterations the slice may take
+     * @return true once the frame is finished, or if no render was started
+     */
+    public boolean continueAnytimeRender(Bitmap bitmap, long iterationBudget) {
+        return true;
+    }
+
+    /**
+     * Stop the render started by {@link #startAnytimeRender}, if any
+     */
+    public void cancelAnytimeRender() {
+    }
+
+    /**
+     * Pass the preview of a reprojected frame to the listener if a large part of the frame
+     * is still missing, small borders of a pan are not worth a separate post
+     */
+    protected static void notifyPreview(Bitmap bitmap, Reprojection reprojection,
+                                        PassListener listener) {
+        if ((listener != null) && (reprojection.getMissingPixelCount()
+                > (long) bitmap.getWidth() * bitmap.getHeight() / 4)) {
+            listener.onPassComplete(Math.max(1, reprojection.getKnownStep()));
+        }
+    }
+
     @Deprecated
     public abstract Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part);
 }
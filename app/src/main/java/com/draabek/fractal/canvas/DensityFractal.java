@@ -0,0 +1,191 @@
+package com.draabek.fractal.canvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.draabek.fractal.canvas.engine.DensityRenderer;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fractal plotted as the density of samples a {@link DensityRenderer} accumulates on all
+ * CPU cores.
+ * <p>
+ * The "points" parameter is the number of samples of a finished frame in millions. Rendered
+ * in slices, the frame is shown after every slice and sharpens as the samples accumulate.
+ * Raising "points" goes on accumulating into the same density, changing the palette or its
+ * "paletteOffset" parameter only tonemaps it again. Renderers with a finite number of samples
+ * may finish the frame before the target. Accumulation can be paused and resumed,
+ * a new view or new parameters resume it.
+ */
+public abstract class DensityFractal extends BitmapDrawFractal {
+    public static final int DEFAULT_POINTS = 20;
+    /** Samples of the first slice of a frame, before the cost of a sample is known */
+    private static final long FIRST_SLICE_POINTS = 1000;
+
+    private int[] buffer;
+    private volatile DensityRenderer renderer;
+    /** Viewport and parameters of the density in the renderer */
+    private PreciseViewport rendererViewport;
+    private Map<String, Float> rendererParameters;
+    private long targetPoints;
+    private volatile boolean paused;
+
+    /**
+     * @param viewport Part of the plane of the view the frame shows
+     * @return Renderer of an empty density for the current parameters
+     */
+    protected abstract DensityRenderer createRenderer(int width, int height, Viewport viewport);
+
+    protected float getParameter(String name, float defaultValue) {
+        Float value = parameters.get(name);
+        return (value == null) ? defaultValue : value;
+    }
+
+    /**
+     * @return Number of samples of a finished frame
+     */
+    public long getTargetPoints() {
+        return (long) (Math.max(0, getParameter("points", DEFAULT_POINTS)) * 1000000);
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Stop or resume accumulating samples, the density so far is kept. A render in slices
+     * finishes its current slice, the view has to be redrawn to resume it.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, RectF rect) {
+        DensityRenderer current = createRenderer(bitmap.getWidth(), bitmap.getHeight(),
+                new Viewport(rect.left, rect.top, rect.right, rect.bottom));
+        synchronized (this) {
+            renderer = null;
+        }
+        current.accumulate(getTargetPoints());
+        tonemap(bitmap, current);
+        return bitmap;
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        startAnytimeRender(bitmap, viewport);
+        DensityRenderer current = renderer;
+        if (!paused) {
+            current.accumulate(targetPoints - current.getPoints());
+        }
+        tonemap(bitmap, current);
+        return bitmap;
+    }
+
+    @Override
+    public boolean recolorBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        DensityRenderer current = renderer;
+        if ((current == null) || !matches(bitmap, viewport)
+                || (!paused && (current.getPoints() < getTargetPoints()))) {
+            return false;
+        }
+        tonemap(bitmap, current);
+        return true;
+    }
+
+    /**
+     * Samples keep accumulating into the last density if only the number of samples changed
+     */
+    @Override
+    public synchronized boolean startAnytimeRender(Bitmap bitmap, PreciseViewport viewport) {
+        if ((renderer == null) || !matches(bitmap, viewport)) {
+            renderer = createRenderer(bitmap.getWidth(), bitmap.getHeight(),
+                    viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()));
+            rendererViewport = viewport;
+            rendererParameters = withoutColoring(parameters);
+            paused = false;
+        }
+        targetPoints = getTargetPoints();
+        return true;
+    }
+
+    /**
+     * @param iterationBudget Iterations of this slice, turned into a number of samples by
+     * the average cost of the samples so far
+     */
+    @Override
+    public boolean continueAnytimeRender(Bitmap bitmap, long iterationBudget) {
+        DensityRenderer current = renderer;
+        if ((current == null) || paused) {
+            return true;
+        }
+        long points = current.getPoints();
+        long slice = (points == 0) ? FIRST_SLICE_POINTS
+                : Math.max(1, (long) ((double) iterationBudget * points
+                        / Math.max(1, current.getIterations())));
+        long missing = targetPoints - points;
+        current.accumulate(Math.min(missing, slice));
+        tonemap(bitmap, current);
+        // A renderer that ran out of samples is done before the target
+        return (missing <= slice) || (current.getPoints() - points < slice);
+    }
+
+    @Override
+    public Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part) {
+        return redrawBitmap(bitmap, rect);
+    }
+
+    private synchronized boolean matches(Bitmap bitmap, PreciseViewport viewport) {
+        return (renderer != null) && (renderer.getWidth() == bitmap.getWidth())
+                && (renderer.getHeight() == bitmap.getHeight())
+                && viewport.equals(rendererViewport)
+                && rendererParameters.equals(withoutColoring(parameters));
+    }
+
+    private void tonemap(Bitmap bitmap, DensityRenderer current) {
+        int[] pixels = getBuffer(bitmap);
+        Float offset = parameters.get("paletteOffset");
+        current.tonemap(pixels, (colorPalette == null) ? null : colorPalette.getColorsInt(),
+                (offset == null) ? 0 : offset.intValue());
+        bitmap.setPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(),
+                bitmap.getHeight());
+    }
+
+    /**
+     * Place the plane of the fractal in the view by the "scale", "offsetX" and "offsetY"
+     * parameters, a point p of the plane is shown at p * scale + offset
+     * @return Part of the fractal's own plane the viewport shows
+     */
+    protected Viewport toPlane(Viewport viewport) {
+        double scale = getParameter("scale", 1);
+        double offsetX = getParameter("offsetX", 0);
+        double offsetY = getParameter("offsetY", 0);
+        return new Viewport((viewport.getLeft() - offsetX) / scale,
+                (viewport.getTop() - offsetY) / scale, (viewport.getRight() - offsetX) / scale,
+                (viewport.getBottom() - offsetY) / scale);
+    }
+
+    private int[] getBuffer(Bitmap bitmap) {
+        if ((buffer == null) || (buffer.length != bitmap.getWidth() * bitmap.getHeight())) {
+            buffer = new int[bitmap.getWidth() * bitmap.getHeight()];
+        }
+        return buffer;
+    }
+
+    /**
+     * @return Copy of the parameters without those that only change the colors or the number
+     * of samples
+     */
+    private static Map<String, Float> withoutColoring(Map<String, Float> parameters) {
+        Map<String, Float> copy = new HashMap<>(parameters);
+        copy.remove("paletteOffset");
+        copy.remove("points");
+        return copy;
+    }
+}
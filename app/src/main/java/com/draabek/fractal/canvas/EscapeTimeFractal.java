@@ -0,0 +1,435 @@
+package com.draabek.fractal.canvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.draabek.fractal.canvas.engine.AdaptiveAntialiaser;
+import com.draabek.fractal.canvas.engine.AnytimeRenderer;
+import com.draabek.fractal.canvas.engine.DistanceEstimator;
+import com.draabek.fractal.canvas.engine.DistanceRenderer;
+import com.draabek.fractal.canvas.engine.DoubleDoubleKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeRenderer;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.IterationBuffer;
+import com.draabek.fractal.canvas.engine.IterationTuner;
+import com.draabek.fractal.canvas.engine.MarianiSilverRenderer;
+import com.draabek.fractal.canvas.engine.OrbitStore;
+import com.draabek.fractal.canvas.engine.PassListener;
+import com.draabek.fractal.canvas.engine.Precision;
+import com.draabek.fractal.canvas.engine.PrecisionLadderRenderer;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.ProgressiveRenderer;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.canvas.engine.Reprojection;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escape-time fractal rendered by the multi-threaded pure Java engine.
+ * Works without the native library.
+ * <p>
+ * Setting the "subdivision" parameter to 1 renders with Mariani-Silver rectangle
+ * subdivision instead of iterating every pixel, for the kernels whose level sets are
+ * connected. Zooms too deep for double coordinates
+ * climb the precision ladder tile by tile, to the double-double and fixed-point kernels
+ * the fractal has.
+ * <p>
+ * Frames are rendered to iteration counts and colorized in a separate pass, so changing the
+ * palette or its "paletteOffset" parameter only repaints the last frame, and panning or
+ * zooming by powers of two only renders the pixels the last frame has no samples for.
+ * Raising the "iterations" parameter continues the orbits of the pixels that reached the old
+ * limit instead of starting over. Frames in double precision can also be rendered in slices
+ * of bounded cost with {@link AnytimeRenderer}.
+ * <p>
+ * A positive "distance" parameter renders the distance estimate of kernels that have one
+ * with {@link DistanceRenderer} instead of iteration counts, the parameter being the width
+ * of the glow around the boundary in pixels. Such frames are rendered in one pass and are
+ * not reprojected, frames beyond double precision still count iterations.
+ */
+public abstract class EscapeTimeFractal extends BitmapDrawFractal {
+    public static final int DEFAULT_ITERATIONS = 256;
+    /** Range of automatic limits, the top is the loop bound of the GLSL shaders */
+    public static final int MIN_AUTO_ITERATIONS = 64;
+    public static final int MAX_AUTO_ITERATIONS = 65535;
+    /** Parameter switching to distance estimation when positive, the glow width in pixels */
+    public static final String DISTANCE = "distance";
+
+    private final IterationFrame frame = new IterationFrame();
+    private final OrbitStore orbits = new OrbitStore();
+    private int[] buffer;
+    private MarianiSilverRenderer subdivisionRenderer;
+    private volatile ProgressiveRenderer progressiveRenderer;
+    private volatile AnytimeRenderer anytimeRenderer;
+    /** Viewport and parameters of the anytime render in progress */
+    private PreciseViewport anytimeViewport;
+    private Map<String, Float> anytimeParameters;
+    private volatile RenderStats lastStats;
+    /** Pixel size the iteration limit was last tuned for, 0 if never */
+    private double tunedPixelSize;
+    /** Limit tuned for {@link #tunedPixelSize} */
+    private int tunedIterations;
+
+    /**
+     * @return Kernel for the current parameters
+     */
+    protected abstract EscapeTimeKernel getKernel();
+
+    /**
+     * @return Double-double kernel for deep zooms, null if the fractal has none
+     */
+    protected DoubleDoubleKernel getDoubleDoubleKernel() {
+        return null;
+    }
+
+    /**
+     * @return Fixed-point kernel for zooms beyond double-double, null if the fractal has none
+     */
+    protected FixedPointKernel getFixedPointKernel() {
+        return null;
+    }
+
+    /**
+     * @return true if double coordinates do not resolve the pixels of the viewport
+     * and it is rendered tile by tile in the precision each tile needs
+     */
+    public boolean isBeyondDouble(PreciseViewport viewport, int width, int height) {
+        return Precision.forViewport(viewport, width, height).compareTo(Precision.DOUBLE) > 0;
+    }
+
+    public int getMaxIterations() {
+        Float iterations = parameters.get("iterations");
+        return (iterations == null) ? DEFAULT_ITERATIONS : Math.max(1, iterations.intValue());
+    }
+
+    /**
+     * Pick the limit {@link IterationTuner} finds for the viewport. The limit is only tuned
+     * again when the zoom changes, panning keeps it. The parameters are left alone, callers
+     * set "iterations" on the thread the parameters belong to.
+     * @return The limit for the viewport
+     */
+    public int tuneIterations(PreciseViewport viewport, int width, int height) {
+        if (viewport.getPixelSize() != tunedPixelSize) {
+            tunedIterations = new IterationTuner(getKernel(), getDoubleDoubleKernel(),
+                    getFixedPointKernel()).tune(viewport, width, height, MIN_AUTO_ITERATIONS,
+                    MAX_AUTO_ITERATIONS);
+            tunedPixelSize = viewport.getPixelSize();
+        }
+        return tunedIterations;
+    }
+
+    /**
+     * @return true if the parameters ask for distance estimation and the kernel has it,
+     * the viewport still has to be within double precision
+     */
+    public boolean isDistanceEstimation() {
+        Float distance = parameters.get(DISTANCE);
+        return (distance != null) && (distance > 0) && (getKernel() instanceof DistanceEstimator);
+    }
+
+    /**
+     * @return true if the parameters ask for subdivision and the kernel allows it
+     */
+    public boolean isSubdivision() {
+        Float subdivision = parameters.get("subdivision");
+        return (subdivision != null) && (subdivision > 0) && getKernel().hasConnectedLevelSets();
+    }
+
+    /**
+     * @return Statistics of the last rendered frame, null before the first one
+     */
+    public RenderStats getLastStats() {
+        return lastStats;
+    }
+
+    protected int[] getPaletteColors() {
+        return (colorPalette == null) ? null : colorPalette.getColorsInt();
+    }
+
+    protected int[] getBuffer(Bitmap bitmap) {
+        if ((buffer == null) || (buffer.length != bitmap.getWidth() * bitmap.getHeight())) {
+            buffer = new int[bitmap.getWidth() * bitmap.getHeight()];
+        }
+        return buffer;
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, RectF rect) {
+        IterationBuffer iterations = frame.prepare(bitmap);
+        orbits.clear();
+        if (isDistanceEstimation()) {
+            renderDistances(iterations, toViewport(rect), 1);
+        } else {
+            render(iterations, toViewport(rect), null);
+        }
+        frame.colorize(bitmap, getPaletteColors(), parameters);
+        return bitmap;
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        if (continueIterations(bitmap, viewport)) {
+            return bitmap;
+        }
+        IterationBuffer iterations = frame.prepare(bitmap);
+        orbits.clear();
+        if (isBeyondDouble(viewport, bitmap.getWidth(), bitmap.getHeight())) {
+            lastStats = new PrecisionLadderRenderer(getKernel(), getDoubleDoubleKernel(),
+                    getFixedPointKernel()).render(iterations, viewport, getMaxIterations());
+        } else if (isDistanceEstimation()) {
+            renderDistances(iterations,
+                    viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()), 1);
+        } else {
+            render(iterations, viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()),
+                    orbits);
+        }
+        frame.complete(viewport, parameters);
+        frame.colorize(bitmap, getPaletteColors(), parameters);
+        return bitmap;
+    }
+
+    /**
+     * Raise the iteration limit of the last frame: only its pixels that reached the old limit
+     * are iterated further, from the orbit state they stopped at
+     * @return false if the last frame is not this frame with a lower limit, or was rendered
+     * without keeping its orbits
+     */
+    private boolean continueIterations(Bitmap bitmap, PreciseViewport viewport) {
+        int maxIterations = getMaxIterations();
+        int previousIterations = orbits.getMaxIterations();
+        if ((previousIterations == 0) || (maxIterations <= previousIterations)
+                || !frame.matchesExcept(bitmap, viewport, parameters, "iterations")
+                || (frame.getBuffer().getMaxIterations() != previousIterations)) {
+            return false;
+        }
+        lastStats = new EscapeTimeRenderer(getKernel()).continueRender(frame.getBuffer(),
+                viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()), maxIterations,
+                orbits);
+        frame.complete(viewport, parameters);
+        frame.colorize(bitmap, getPaletteColors(), parameters);
+        return true;
+    }
+
+    @Override
+    public boolean recolorBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        if (!frame.matches(bitmap, viewport, parameters)) {
+            return false;
+        }
+        frame.colorize(bitmap, getPaletteColors(), parameters);
+        return true;
+    }
+
+    /**
+     * Missing pixels are rendered pixel by pixel even with subdivision, they do not form
+     * rectangles large enough to subdivide
+     */
+    @Override
+    public boolean reprojectBitmap(Bitmap bitmap, PreciseViewport viewport,
+                                   PassListener listener) {
+        Reprojection reprojection = frame.reproject(bitmap, viewport, parameters);
+        if (reprojection == null) {
+            return false;
+        }
+        // Stored orbits belong to the pixels before the move
+        orbits.clear();
+        notifyPreview(bitmap, reprojection, listener);
+        IterationBuffer iterations = frame.getBuffer();
+        int maxIterations = getMaxIterations();
+        int knownStep = reprojection.getKnownStep();
+        RenderStats stats = new RenderStats();
+        if (isBeyondDouble(viewport, bitmap.getWidth(), bitmap.getHeight())) {
+            PrecisionLadderRenderer renderer = new PrecisionLadderRenderer(getKernel(),
+                    getDoubleDoubleKernel(), getFixedPointKernel());
+            for (int[] region : reprojection.getMissingRegions()) {
+                stats.add(renderer.render(iterations, viewport, maxIterations,
+                        region[0], region[1], region[2], region[3], knownStep));
+            }
+        } else {
+            EscapeTimeRenderer renderer = new EscapeTimeRenderer(getKernel());
+            Viewport rounded = viewport.toViewport(bitmap.getWidth(), bitmap.getHeight());
+            for (int[] region : reprojection.getMissingRegions()) {
+                stats.add(renderer.render(iterations, rounded, maxIterations,
+                        region[0], region[1], region[2], region[3], knownStep));
+            }
+        }
+        lastStats = stats;
+        frame.completeReprojection(bitmap, reprojection, viewport, parameters,
+                getPaletteColors());
+        return true;
+    }
+
+    /**
+     * @param orbits Keeps the orbits of unresolved pixels, null or ignored with subdivision
+     */
+    private void render(IterationBuffer iterations, Viewport viewport, OrbitStore orbits) {
+        if (isSubdivision()) {
+            EscapeTimeKernel kernel = getKernel();
+            if ((subdivisionRenderer == null) || (subdivisionRenderer.getKernel() != kernel)) {
+                subdivisionRenderer = new MarianiSilverRenderer(kernel);
+            }
+            lastStats = subdivisionRenderer.render(iterations, viewport, getMaxIterations());
+        } else {
+            lastStats = new EscapeTimeRenderer(getKernel()).render(iterations, viewport,
+                    getMaxIterations(), orbits);
+        }
+    }
+
+    private void renderDistances(IterationBuffer iterations, Viewport viewport, int maxSamples) {
+        lastStats = new DistanceRenderer((DistanceEstimator) getKernel()).render(iterations,
+                viewport, getMaxIterations(), parameters.get(DISTANCE), maxSamples);
+    }
+
+    @Override
+    public Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part) {
+        frame.invalidate();
+        orbits.clear();
+        int[] pixels = getBuffer(bitmap);
+        lastStats = new EscapeTimeRenderer(getKernel()).render(pixels, bitmap.getWidth(),
+                bitmap.getHeight(), toViewport(rect), getMaxIterations(), getPaletteColors(),
+                part.left, part.top, part.right, part.bottom);
+        bitmap.setPixels(pixels, part.top * bitmap.getWidth() + part.left, bitmap.getWidth(),
+                part.left, part.top, part.right - part.left, part.bottom - part.top);
+        return bitmap;
+    }
+
+    /**
+     * Render coarse-to-fine, updating the bitmap after every pass. Blocks until the
+     * frame is finished or {@link #cancelRendering()} is called from another thread.
+     * Frames beyond double precision and distance frames are rendered in a single pass.
+     * @return true if the frame was finished
+     */
+    public boolean redrawBitmapProgressively(final Bitmap bitmap, PreciseViewport viewport,
+                                             final PassListener listener) {
+        if (isBeyondDouble(viewport, bitmap.getWidth(), bitmap.getHeight())
+                || isDistanceEstimation()) {
+            redrawBitmap(bitmap, viewport);
+            if (listener != null) {
+                listener.onPassComplete(1);
+            }
+            return true;
+        }
+        if (continueIterations(bitmap, viewport)) {
+            if (listener != null) {
+                listener.onPassComplete(1);
+            }
+            return true;
+        }
+        IterationBuffer iterations = frame.prepare(bitmap);
+        final int[] palette = getPaletteColors();
+        final Map<String, Float> coloring = new HashMap<>(parameters);
+        ProgressiveRenderer renderer = new ProgressiveRenderer(getKernel());
+        progressiveRenderer = renderer;
+        lastStats = renderer.getStats();
+        boolean finished = renderer.render(iterations,
+                viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()), getMaxIterations(),
+                orbits, step -> {
+                    frame.colorize(bitmap, palette, coloring);
+                    if (listener != null) {
+                        listener.onPassComplete(step);
+                    }
+                });
+        if (finished) {
+            frame.complete(viewport, parameters);
+        }
+        return finished;
+    }
+
+    /**
+     * Draw the last frame with adaptive anti-aliasing, for export. Edge pixels are sampled
+     * again, the frame kept for recoloring is not changed. Distance frames are rendered
+     * again with the boundary pixels sampled by {@link DistanceRenderer}.
+     * @param maxSamples Samples per edge pixel, see {@link AdaptiveAntialiaser}
+     * @return false if the last frame is not the frame of the viewport or needs more than
+     * double precision, the bitmap is untouched then
+     */
+    public boolean antialiasBitmap(Bitmap bitmap, PreciseViewport viewport, int maxSamples,
+                                   double threshold) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (isDistanceEstimation() && !isBeyondDouble(viewport, width, height)) {
+            IterationBuffer distances = new IterationBuffer(width, height);
+            renderDistances(distances, viewport.toViewport(width, height), maxSamples);
+            int[] pixels = new int[width * height];
+            IterationFrame.colorize(distances, pixels, getPaletteColors(), parameters);
+            bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+            return true;
+        }
+        if (isBeyondDouble(viewport, width, height)
+                || !frame.matches(bitmap, viewport, parameters)) {
+            return false;
+        }
+        IterationBuffer iterations = frame.getBuffer();
+        int[] palette = getPaletteColors();
+        int[] pixels = new int[width * height];
+        IterationFrame.colorize(iterations, pixels, palette, parameters);
+        new AdaptiveAntialiaser(getKernel(), maxSamples, threshold).antialias(iterations, pixels,
+                viewport.toViewport(width, height), palette,
+                IterationFrame.getPaletteOffset(parameters), IterationFrame.isEqualized(parameters));
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return true;
+    }
+
+    /**
+     * Frames beyond double precision, with subdivision and distance frames are not rendered
+     * in slices
+     */
+    @Override
+    public boolean startAnytimeRender(Bitmap bitmap, PreciseViewport viewport) {
+        cancelAnytimeRender();
+        if (isSubdivision() || isDistanceEstimation()
+                || isBeyondDouble(viewport, bitmap.getWidth(), bitmap.getHeight())) {
+            return false;
+        }
+        // The previous frame stays in the buffer as a preview until samples cover it
+        IterationBuffer iterations = frame.prepare(bitmap);
+        AnytimeRenderer renderer = new AnytimeRenderer(getKernel(), iterations,
+                viewport.toViewport(bitmap.getWidth(), bitmap.getHeight()), getMaxIterations(),
+                orbits);
+        anytimeViewport = viewport;
+        anytimeParameters = new HashMap<>(parameters);
+        lastStats = renderer.getStats();
+        anytimeRenderer = renderer;
+        return true;
+    }
+
+    @Override
+    public boolean continueAnytimeRender(Bitmap bitmap, long iterationBudget) {
+        AnytimeRenderer renderer = anytimeRenderer;
+        if (renderer == null) {
+            return true;
+        }
+        boolean finished = renderer.render(iterationBudget);
+        if (finished) {
+            frame.complete(anytimeViewport, anytimeParameters);
+            anytimeRenderer = null;
+        }
+        frame.colorize(bitmap, getPaletteColors(), parameters);
+        return finished;
+    }
+
+    @Override
+    public void cancelAnytimeRender() {
+        AnytimeRenderer renderer = anytimeRenderer;
+        if (renderer != null) {
+            renderer.cancel();
+        }
+    }
+
+    /**
+     * Stop the progressive or anytime render in progress, if any
+     */
+    public void cancelRendering() {
+        ProgressiveRenderer renderer = progressiveRenderer;
+        if (renderer != null) {
+            renderer.cancel();
+        }
+        cancelAnytimeRender();
+    }
+
+    protected static Viewport toViewport(RectF rect) {
+        return new Viewport(rect.left, rect.top, rect.right, rect.bottom);
+    }
+}
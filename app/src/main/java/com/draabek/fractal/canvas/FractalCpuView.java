@@ -8,7 +8,9 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PointF;
-import android.graphics.RectF;
+import android.os.Handler;
+import android.view.Choreographer;
+import android.os.HandlerThread;
 import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -18,16 +20,23 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.widget.Toast;
 
+import com.draabek.fractal.fractal.Fractal;
 import com.draabek.fractal.fractal.FractalViewWrapper;
 import com.draabek.fractal.R;
 import com.draabek.fractal.fractal.RenderListener;
 import com.draabek.fractal.activity.SaveBitmapActivity;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.canvas.engine.ZoomReprojection;
+import com.draabek.fractal.canvas.instance.DeepMandelbrotFractal;
 import com.draabek.fractal.util.Utils;
 import com.draabek.fractal.fractal.FractalRegistry;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @SuppressWarnings("SynchronizeOnNonFinalField")
@@ -36,16 +45,26 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 {
 
 	private static final String LOG_KEY = FractalCpuView.class.getName();
+	/**
+	 * Iterations of an anytime render per display frame, about what fits in one vsync.
+	 * Density fractals take samples of about as many iterations.
+	 */
+	private static final long ANYTIME_FRAME_BUDGET = 2000000;
 	private Bitmap fractalBitmap;
 	private CpuFractal fractal;
-	private RectF position;
-	private RectF oldPosition;
+	private PreciseViewport viewport;
+	private float gestureDx;
+	private float gestureDy;
+	private float gestureScale = 1;
 	private Paint paint;
 	private Canvas bufferCanvas = null;
 	private SurfaceHolder holder;
 	private SharedPreferences prefs;
 	private boolean rendering;
 	private RenderListener renderListener;
+	private HandlerThread renderThread;
+	private Handler renderHandler;
+	private final AtomicInteger renderGeneration = new AtomicInteger();
 
 	public FractalCpuView(Context context, AttributeSet attrs) {
 		super(context, attrs);
@@ -65,14 +84,79 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 		prefs = PreferenceManager.getDefaultSharedPreferences(context);
 	}
 
+	private boolean isProgressive() {
+		return (fractal instanceof EscapeTimeFractal) && (renderHandler != null) &&
+				prefs.getBoolean(getContext().getString(R.string.prefs_progressive_key), false);
+	}
+
+	/**
+	 * Density fractals are always rendered in slices, they sharpen as their samples accumulate
+	 */
+	private boolean isAnytime() {
+		return (fractal instanceof BitmapDrawFractal) && (renderHandler != null) &&
+				((fractal instanceof DensityFractal) || prefs.getBoolean(
+						getContext().getString(R.string.prefs_anytime_key), false));
+	}
+
+	/**
+	 * Let the fractal pick its iteration limit for the viewport if the preference asks for it
+	 * @return The new limit, 0 if the limit in effect stays
+	 */
+	private int tuneIterations(EscapeTimeFractal escapeTimeFractal, PreciseViewport viewport) {
+		if (!prefs.getBoolean(getContext().getString(R.string.prefs_auto_iterations_key),
+				false)) {
+			return 0;
+		}
+		int limit = escapeTimeFractal.tuneIterations(viewport, getWidth(), getHeight());
+		if (limit == escapeTimeFractal.getMaxIterations()) {
+			return 0;
+		}
+		Log.v(LOG_KEY, "Iteration limit tuned to " + limit);
+		return limit;
+	}
+
+	/**
+	 * Tune the iteration limit on the render thread. The parameters belong to the UI thread,
+	 * so a new limit is set there and the view rendered again with it.
+	 * @return true if the render of the given generation has to stop for the new limit
+	 */
+	private boolean tuneIterationsInBackground(final EscapeTimeFractal escapeTimeFractal,
+			PreciseViewport viewport, final int generation) {
+		final int limit = tuneIterations(escapeTimeFractal, viewport);
+		if (limit == 0) {
+			return false;
+		}
+		post(() -> {
+			escapeTimeFractal.getParameters().put("iterations", (float) limit);
+			if (generation == renderGeneration.get()) {
+				invalidate();
+			}
+		});
+		return true;
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
+		if (isAnytime()) {
+			startAnytimeRender();
+			return;
+		}
+		if (isProgressive()) {
+			startProgressiveRender();
+			return;
+		}
 		rendering = true;
 		if (renderListener != null) {
 			this.renderListener.onRenderRequested();
 		}
 		long start = System.currentTimeMillis();
 		Log.d(LOG_KEY,"onDraw");
+		if (fractal instanceof EscapeTimeFractal) {
+			int limit = tuneIterations((EscapeTimeFractal) fractal, viewport);
+			if (limit > 0) {
+				fractal.getParameters().put("iterations", (float) limit);
+			}
+		}
 		this.holder = getHolder();
 		synchronized (this.holder) {
 			if ((fractalBitmap == null) || (fractalBitmap.getHeight() != canvas.getHeight()) ||
@@ -83,8 +167,17 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 				bufferCanvas = new Canvas(fractalBitmap);
 			}
 			if (fractal instanceof BitmapDrawFractal) {
-				Log.v(LOG_KEY, "Start drawing to buffer");
-				fractalBitmap = ((BitmapDrawFractal)fractal).redrawBitmap(fractalBitmap, position);
+				BitmapDrawFractal bitmapDrawFractal = (BitmapDrawFractal) fractal;
+				if (bitmapDrawFractal.recolorBitmap(fractalBitmap, viewport)) {
+					Log.v(LOG_KEY, "Only the palette changed, recolored the last frame");
+				} else if (bitmapDrawFractal.reprojectBitmap(fractalBitmap, viewport, null)) {
+					Log.v(LOG_KEY, "Reused the last frame, rendered the missing pixels");
+					logStats();
+				} else {
+					Log.v(LOG_KEY, "Start drawing to buffer");
+					fractalBitmap = bitmapDrawFractal.redrawBitmap(fractalBitmap, viewport);
+					logStats();
+				}
 			} else if (fractal instanceof CanvasFractal) {
 				Log.v(LOG_KEY, "Draw to canvas");
 				((CanvasFractal)fractal).draw(bufferCanvas);
@@ -100,6 +193,183 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 		}
 	}
 
+	/**
+	 * Render on the background thread, posting every coarse-to-fine pass to the surface
+	 * as soon as it is finished. A newer request cancels the one in progress.
+	 */
+	private void startProgressiveRender() {
+		final EscapeTimeFractal escapeTimeFractal = (EscapeTimeFractal) fractal;
+		final int generation = renderGeneration.incrementAndGet();
+		escapeTimeFractal.cancelRendering();
+		final PreciseViewport renderViewport = viewport;
+		final Bitmap bitmap = obtainBitmap();
+		rendering = true;
+		if (renderListener != null) {
+			renderListener.onRenderRequested();
+		}
+		final long start = System.currentTimeMillis();
+		// Cancelling is cooperative, the frame and bitmap are only touched on the render thread
+		// so that the job being cancelled is done with them
+		renderHandler.post(() -> {
+			if (generation != renderGeneration.get()) {
+				return;
+			}
+			if (escapeTimeFractal.recolorBitmap(bitmap, renderViewport)) {
+				Log.v(LOG_KEY, "Only the palette changed, recolored the last frame");
+				postBitmap(bitmap);
+				finishProgressiveRender(generation, start);
+				return;
+			}
+			// After the recolor check, a frame that only needs recoloring keeps its zoom and limit
+			if (tuneIterationsInBackground(escapeTimeFractal, renderViewport, generation)) {
+				return;
+			}
+			if (escapeTimeFractal.reprojectBitmap(bitmap, renderViewport, step -> {
+				Log.v(LOG_KEY, "Preview of the reprojected frame with step " + step);
+				postBitmap(bitmap);
+			})) {
+				Log.v(LOG_KEY, "Reused the last frame, rendered the missing pixels");
+				postBitmap(bitmap);
+				finishProgressiveRender(generation, start);
+				return;
+			}
+			boolean finished = escapeTimeFractal.redrawBitmapProgressively(bitmap, renderViewport,
+					step -> {
+						Log.v(LOG_KEY, "Progressive pass with step " + step + " finished");
+						postBitmap(bitmap);
+					});
+			if (finished) {
+				finishProgressiveRender(generation, start);
+			}
+		});
+	}
+
+	/**
+	 * Render on the background thread a slice of bounded cost per display frame, posting the
+	 * partial frame after each of them, so that long renders never hold up a frame.
+	 * A newer request cancels the one in progress.
+	 */
+	private void startAnytimeRender() {
+		final BitmapDrawFractal bitmapDrawFractal = (BitmapDrawFractal) fractal;
+		final int generation = renderGeneration.incrementAndGet();
+		bitmapDrawFractal.cancelAnytimeRender();
+		if (fractal instanceof EscapeTimeFractal) {
+			((EscapeTimeFractal) fractal).cancelRendering();
+		}
+		final PreciseViewport renderViewport = viewport;
+		final Bitmap bitmap = obtainBitmap();
+		rendering = true;
+		if (renderListener != null) {
+			renderListener.onRenderRequested();
+		}
+		final long start = System.currentTimeMillis();
+		renderHandler.post(() -> {
+			if (generation != renderGeneration.get()) {
+				return;
+			}
+			if (bitmapDrawFractal.recolorBitmap(bitmap, renderViewport)) {
+				Log.v(LOG_KEY, "Only the palette changed, recolored the last frame");
+				postBitmap(bitmap);
+				finishProgressiveRender(generation, start);
+				return;
+			}
+			// After the recolor check, a frame that only needs recoloring keeps its zoom and limit
+			if ((bitmapDrawFractal instanceof EscapeTimeFractal) && tuneIterationsInBackground(
+					(EscapeTimeFractal) bitmapDrawFractal, renderViewport, generation)) {
+				return;
+			}
+			if (bitmapDrawFractal.reprojectBitmap(bitmap, renderViewport, step -> {
+				Log.v(LOG_KEY, "Preview of the reprojected frame with step " + step);
+				postBitmap(bitmap);
+			})) {
+				Log.v(LOG_KEY, "Reused the last frame, rendered the missing pixels");
+				postBitmap(bitmap);
+				finishProgressiveRender(generation, start);
+				return;
+			}
+			if (!bitmapDrawFractal.startAnytimeRender(bitmap, renderViewport)) {
+				// Still off the UI thread, just in one piece
+				bitmapDrawFractal.redrawBitmap(bitmap, renderViewport);
+				postBitmap(bitmap);
+				finishProgressiveRender(generation, start);
+				return;
+			}
+			// The render thread has a looper, so its choreographer calls back on it
+			Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+				@Override
+				public void doFrame(long frameTimeNanos) {
+					if (generation != renderGeneration.get()) {
+						return;
+					}
+					boolean finished = bitmapDrawFractal.continueAnytimeRender(bitmap,
+							ANYTIME_FRAME_BUDGET);
+					postBitmap(bitmap);
+					if (finished) {
+						finishProgressiveRender(generation, start);
+					} else {
+						Choreographer.getInstance().postFrameCallback(this);
+					}
+				}
+			});
+		});
+	}
+
+	/**
+	 * @return Bitmap of the view's size to render into, reallocated if the size changed
+	 */
+	private Bitmap obtainBitmap() {
+		synchronized (holder) {
+			if ((fractalBitmap == null) || (fractalBitmap.getWidth() != getWidth()) ||
+					(fractalBitmap.getHeight() != getHeight())) {
+				Log.v(LOG_KEY, "Reallocate buffer");
+				fractalBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
+						Bitmap.Config.ARGB_8888);
+				bufferCanvas = new Canvas(fractalBitmap);
+			}
+			return fractalBitmap;
+		}
+	}
+
+	private void finishProgressiveRender(int generation, long start) {
+		if (generation == renderGeneration.get()) {
+			logStats();
+			rendering = false;
+			if (renderListener != null) {
+				renderListener.onRenderComplete(System.currentTimeMillis() - start);
+			}
+		}
+	}
+
+	private void logStats() {
+		RenderStats stats = null;
+		if (fractal instanceof EscapeTimeFractal) {
+			stats = ((EscapeTimeFractal) fractal).getLastStats();
+		} else if (fractal instanceof DeepMandelbrotFractal) {
+			stats = ((DeepMandelbrotFractal) fractal).getLastStats();
+		} else if (fractal instanceof ArbitraryPrecisionFractal) {
+			stats = ((ArbitraryPrecisionFractal) fractal).getLastStats();
+		}
+		if (stats != null) {
+			Log.i(LOG_KEY, "Render statistics at " + viewport + ": " + stats);
+		}
+	}
+
+	private void postBitmap(Bitmap bitmap) {
+		Canvas c = null;
+		try {
+			synchronized (holder) {
+				c = holder.lockCanvas();
+				if (c != null) {
+					c.drawBitmap(bitmap, 0, 0, paint);
+				}
+			}
+		} finally {
+			if (c != null) {
+				holder.unlockCanvasAndPost(c);
+			}
+		}
+	}
+
 	@Override
 	public void surfaceChanged(SurfaceHolder holder, int format, int width,
 			int height) {
@@ -115,12 +385,43 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 		Log.d(LOG_KEY,"surface created");
 		fractalBitmap = Bitmap.createBitmap(getWidth(), getHeight(),
 				Bitmap.Config.ARGB_8888);
-		position = new RectF(1, -2, -1, 1);
+		viewport = defaultViewport(FractalRegistry.getInstance().getCurrent(), getWidth(),
+				getHeight());
+		renderThread = new HandlerThread(LOG_KEY);
+		renderThread.start();
+		renderHandler = new Handler(renderThread.getLooper());
+	}
+
+	/**
+	 * Frame the part of the plane the fractal starts with, or the whole Mandelbrot set,
+	 * keeping the aspect ratio of the view
+	 */
+	private static PreciseViewport defaultViewport(Fractal fractal, int width, int height) {
+		if (fractal instanceof BitmapDrawFractal) {
+			PreciseViewport initial = ((BitmapDrawFractal) fractal).getInitialViewport(width,
+					height);
+			if (initial != null) {
+				return initial;
+			}
+		}
+		return new PreciseViewport(BigDecimal.valueOf(-0.5), BigDecimal.ZERO,
+				3.0 / Math.max(1, Math.min(width, height)));
 	}
 
 	@Override
 	public void surfaceDestroyed(SurfaceHolder holder) {
 		Log.d(LOG_KEY, "surface destroyed");
+		renderGeneration.incrementAndGet();
+		if (fractal instanceof EscapeTimeFractal) {
+			((EscapeTimeFractal) fractal).cancelRendering();
+		} else if (fractal instanceof BitmapDrawFractal) {
+			((BitmapDrawFractal) fractal).cancelAnytimeRender();
+		}
+		if (renderThread != null) {
+			renderThread.quit();
+			renderThread = null;
+			renderHandler = null;
+		}
 		bufferCanvas = null;
 		fractalBitmap = null;
 		//consider apply instead of commit
@@ -128,8 +429,7 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 	}
 	
 	public void startTranslate() {
-		oldPosition = new RectF();
-		oldPosition.set(position);
+		startGesture();
 	}
 
 	public void translate(float xshift, float yshift) {
@@ -138,13 +438,42 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 	}
 
 	public void startScale() {
-		oldPosition = new RectF();
-		oldPosition.set(position);
+		startGesture();
 	}
-	
+
+	/**
+	 * Stop the render in progress, the gesture moves the last frame until it ends
+	 */
+	private void startGesture() {
+		resetGesture();
+		renderGeneration.incrementAndGet();
+		if (fractal instanceof EscapeTimeFractal) {
+			((EscapeTimeFractal) fractal).cancelRendering();
+		}
+		if (fractal instanceof BitmapDrawFractal) {
+			((BitmapDrawFractal) fractal).cancelAnytimeRender();
+		}
+	}
+
+	private void resetGesture() {
+		gestureDx = 0;
+		gestureDy = 0;
+		gestureScale = 1;
+	}
+
 	public void endGesture() {
 		Log.d(LOG_KEY, "Gesture ended, redrawing fractal");
-		oldPosition = null;
+		// Move the viewport to what the transformed canvas showed at the end of the gesture
+		if (gestureScale != 1) {
+			// Powers of two let the zoomed frame reuse samples of the last one
+			viewport = viewport.zoom(ZoomReprojection.snapFactor(gestureScale), 0, 0,
+					getWidth(), getHeight());
+		}
+		if ((gestureDx != 0) || (gestureDy != 0)) {
+			// Whole pixels let a pure pan reuse the last frame
+			viewport = viewport.translate(Math.round(gestureDx), Math.round(gestureDy));
+		}
+		resetGesture();
 		invalidate();
 	}
 	
@@ -153,19 +482,32 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 		Log.d(LOG_KEY, "Scale: " + scale);
 	}
 
+	/**
+	 * Show the last frame moved by the gesture so far. Nothing is rendered until the gesture
+	 * ends, {@link #endGesture} starts one render for where it stopped.
+	 */
 	public void gestureRedraw(float dx, float dy, float scale) {
 		Log.d(LOG_KEY, "Redrawing gesture");
+		gestureDx = dx;
+		gestureDy = dy;
+		gestureScale = scale;
+		if ((holder == null) || (fractalBitmap == null)) {
+			return;
+		}
 		Canvas c = null;
 		try {
 			synchronized(holder) {
 				c = holder.lockCanvas();
-				if (scale != 1) c.scale(scale, scale);
-				if ((dx != 0) || (dy != 0)) c.translate(dx, dy);
+				if (c != null) {
+					c.drawColor(Color.BLACK);
+					if (scale != 1) c.scale(scale, scale);
+					if ((dx != 0) || (dy != 0)) c.translate(dx, dy);
+					c.drawBitmap(fractalBitmap, 0, 0, paint);
+				}
 			}
 		} finally {
 			if (c != null) {
 				holder.unlockCanvasAndPost(c);
-				invalidate();
 			}
 		}
 	}
@@ -176,10 +518,39 @@ public class FractalCpuView extends SurfaceView implements SurfaceHolder.Callbac
 
 	@Override
 	public void saveBitmap() {
+		final int samples = Utils.getExportSamples(getContext());
+		if ((samples <= 1) || !(fractal instanceof EscapeTimeFractal) || (renderHandler == null)) {
+			saveBitmap(fractalBitmap);
+			return;
+		}
+		// Sampling again takes about as long as a render, so it runs on the render thread,
+		// which also owns the last frame, with the progress of a render
+		final EscapeTimeFractal escapeTimeFractal = (EscapeTimeFractal) fractal;
+		final PreciseViewport exportViewport = viewport;
+		final Bitmap bitmap = fractalBitmap;
+		final double threshold = Utils.getExportThreshold(getContext());
+		if (renderListener != null) {
+			renderListener.onRenderRequested();
+		}
+		final long start = System.currentTimeMillis();
+		renderHandler.post(() -> {
+			Bitmap antialiased = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(),
+					Bitmap.Config.ARGB_8888);
+			final Bitmap export = escapeTimeFractal.antialiasBitmap(antialiased, exportViewport,
+					samples, threshold) ? antialiased : bitmap;
+			post(() -> {
+				if (renderListener != null) {
+					renderListener.onRenderComplete(System.currentTimeMillis() - start);
+				}
+				saveBitmap(export);
+			});
+		});
+	}
+
+	private void saveBitmap(Bitmap bitmap) {
 		try {
 			File tmpFile = File.createTempFile("bitmap", "jpg", this.getContext().getCacheDir());
-			fractalBitmap.compress(Bitmap.CompressFormat.JPEG, 100,
-					new FileOutputStream(tmpFile));
+			bitmap.compress(Bitmap.CompressFormat.JPEG, 100, new FileOutputStream(tmpFile));
 			Intent intent = new Intent(this.getContext(), SaveBitmapActivity.class);
 			intent.setAction(Intent.ACTION_SEND);
 			intent.putExtra(this.getContext().getString(R.string.intent_extra_bitmap_file), tmpFile.getAbsolutePath());
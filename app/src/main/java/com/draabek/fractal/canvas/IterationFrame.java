@@ -0,0 +1,209 @@
+package com.draabek.fractal.canvas;
+
+import android.graphics.Bitmap;
+
+import com.draabek.fractal.canvas.engine.Colorizer;
+import com.draabek.fractal.canvas.engine.DistanceColorizer;
+import com.draabek.fractal.canvas.engine.HistogramColorizer;
+import com.draabek.fractal.canvas.engine.IterationBuffer;
+import com.draabek.fractal.canvas.engine.PanReprojection;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.Reprojection;
+import com.draabek.fractal.canvas.engine.ZoomReprojection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Iteration counts of the last frame a fractal rendered, together with what they were
+ * rendered for. As long as only the palette or the palette offset changes, the bitmap
+ * is repainted from the counts instead of being rendered again, the same holds for switching
+ * between linear and histogram-equalized coloring. When the viewport was panned
+ * by whole pixels or zoomed by a power of two, the counts and pixels are reprojected and
+ * only the missing pixels are rendered.
+ */
+public final class IterationFrame {
+    /** Parameter rotating the palette, it does not change the iteration counts */
+    public static final String PALETTE_OFFSET = "paletteOffset";
+    /** Parameter switching to histogram-equalized coloring when positive */
+    public static final String EQUALIZE = "equalize";
+
+    private IterationBuffer buffer;
+    private int[] pixels;
+    private PreciseViewport viewport;
+    private Map<String, Float> parameters;
+    /** Palette, offset and coloring the pixels were colorized with */
+    private int[] pixelPalette;
+    private int pixelOffset;
+    private boolean pixelEqualized;
+
+    /**
+     * @return Buffer for a frame of the bitmap's size, the previous frame is forgotten
+     */
+    public synchronized IterationBuffer prepare(Bitmap bitmap) {
+        invalidate();
+        if ((buffer == null) || !buffer.fits(bitmap.getWidth(), bitmap.getHeight())) {
+            buffer = new IterationBuffer(bitmap.getWidth(), bitmap.getHeight());
+            pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        }
+        buffer.setDistances(false);
+        return buffer;
+    }
+
+    /**
+     * @return Buffer of the last frame, null before the first one
+     */
+    public synchronized IterationBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Forget the frame, the bitmap was drawn some other way
+     */
+    public synchronized void invalidate() {
+        viewport = null;
+        parameters = null;
+    }
+
+    /**
+     * Remember the buffer holds the complete frame of the given viewport and parameters
+     */
+    public synchronized void complete(PreciseViewport viewport, Map<String, Float> parameters) {
+        this.viewport = viewport;
+        this.parameters = withoutColoring(parameters);
+    }
+
+    /**
+     * @return true if the buffer holds the complete frame of the given viewport and parameters
+     */
+    public synchronized boolean matches(Bitmap bitmap, PreciseViewport viewport,
+                                        Map<String, Float> parameters) {
+        return (this.viewport != null) && buffer.fits(bitmap.getWidth(), bitmap.getHeight())
+                && this.viewport.equals(viewport)
+                && this.parameters.equals(withoutColoring(parameters));
+    }
+
+    /**
+     * @return true if the buffer holds the complete frame of the given viewport and of
+     * parameters that differ at most in the given one
+     */
+    public synchronized boolean matchesExcept(Bitmap bitmap, PreciseViewport viewport,
+                                              Map<String, Float> parameters, String key) {
+        if ((this.viewport == null) || !buffer.fits(bitmap.getWidth(), bitmap.getHeight())
+                || !this.viewport.equals(viewport)) {
+            return false;
+        }
+        Map<String, Float> rendered = new HashMap<>(this.parameters);
+        rendered.remove(key);
+        Map<String, Float> requested = withoutColoring(parameters);
+        requested.remove(key);
+        return rendered.equals(requested);
+    }
+
+    /**
+     * Colorize the whole buffer into the bitmap
+     * @param parameters Parameters of the fractal, the coloring ones are used
+     */
+    public synchronized void colorize(Bitmap bitmap, int[] palette,
+                                      Map<String, Float> parameters) {
+        int offset = getPaletteOffset(parameters);
+        boolean equalized = isEqualized(parameters);
+        colorize(buffer, pixels, palette, parameters);
+        pixelPalette = palette;
+        pixelOffset = offset;
+        pixelEqualized = equalized;
+        bitmap.setPixels(pixels, 0, buffer.getWidth(), 0, 0, buffer.getWidth(), buffer.getHeight());
+    }
+
+    /**
+     * Move the samples of the complete frame to where they belong in the frame of the given
+     * viewport, if that is the last viewport panned by whole pixels or zoomed by a power of two
+     * and the parameters did not change. The bitmap shows the moved frame as a preview, the
+     * frame counts as incomplete until {@link #completeReprojection} is called after
+     * rendering the missing pixels. Distance frames are not reused, their shades depend on
+     * the pixel size and their missing pixels would need the distance renderer.
+     * @return The reprojection, null if the frame cannot be reused
+     */
+    public synchronized Reprojection reproject(Bitmap bitmap, PreciseViewport viewport,
+                                               Map<String, Float> parameters) {
+        if ((this.viewport == null) || !buffer.fits(bitmap.getWidth(), bitmap.getHeight())
+                || buffer.isDistances() || !this.parameters.equals(withoutColoring(parameters))) {
+            return null;
+        }
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        Reprojection reprojection = PanReprojection.between(this.viewport, viewport, width, height);
+        if (reprojection == null) {
+            reprojection = ZoomReprojection.between(this.viewport, viewport, width, height);
+        }
+        if (reprojection == null) {
+            return null;
+        }
+        reprojection.apply(buffer.getValues());
+        reprojection.apply(pixels);
+        invalidate();
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return reprojection;
+    }
+
+    /**
+     * Colorize the missing pixels, or the whole frame if the palette changed or the coloring
+     * is equalized over the whole frame, and remember the frame is complete again
+     */
+    public synchronized void completeReprojection(Bitmap bitmap, Reprojection reprojection,
+                                                  PreciseViewport viewport,
+                                                  Map<String, Float> parameters,
+                                                  int[] palette) {
+        complete(viewport, parameters);
+        int offset = getPaletteOffset(parameters);
+        if (isEqualized(parameters) || pixelEqualized || (offset != pixelOffset)
+                || !Arrays.equals(palette, pixelPalette)) {
+            colorize(bitmap, palette, parameters);
+            return;
+        }
+        for (int[] region : reprojection.getMissingRegions()) {
+            Colorizer.colorize(buffer, pixels, palette, offset,
+                    region[0], region[1], region[2], region[3]);
+        }
+        bitmap.setPixels(pixels, 0, buffer.getWidth(), 0, 0, buffer.getWidth(), buffer.getHeight());
+    }
+
+    /**
+     * @return Offset from the parameters, 0 if there is none
+     */
+    public static int getPaletteOffset(Map<String, Float> parameters) {
+        Float offset = parameters.get(PALETTE_OFFSET);
+        return (offset == null) ? 0 : offset.intValue();
+    }
+
+    /**
+     * @return true if the parameters ask for histogram-equalized coloring
+     */
+    public static boolean isEqualized(Map<String, Float> parameters) {
+        Float equalize = parameters.get(EQUALIZE);
+        return (equalize != null) && (equalize > 0);
+    }
+
+    /**
+     * Colorize a whole buffer with the coloring the parameters ask for, distance shades
+     * always with {@link DistanceColorizer}
+     */
+    public static void colorize(IterationBuffer buffer, int[] pixels, int[] palette,
+                                Map<String, Float> parameters) {
+        if (buffer.isDistances()) {
+            DistanceColorizer.colorize(buffer, pixels, palette, getPaletteOffset(parameters));
+        } else if (isEqualized(parameters)) {
+            HistogramColorizer.colorize(buffer, pixels, palette, getPaletteOffset(parameters));
+        } else {
+            Colorizer.colorize(buffer, pixels, palette, getPaletteOffset(parameters));
+        }
+    }
+
+    private static Map<String, Float> withoutColoring(Map<String, Float> parameters) {
+        Map<String, Float> copy = new HashMap<>(parameters);
+        copy.remove(PALETTE_OFFSET);
+        copy.remove(EQUALIZE);
+        return copy;
+    }
+}
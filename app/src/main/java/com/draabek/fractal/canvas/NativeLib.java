@@ -6,26 +6,44 @@ package com.draabek.fractal.canvas;
 
 public class NativeLib {
 
+	private static final boolean AVAILABLE;
+
 	static {
-		System.loadLibrary("fractalzoo-jni");
+		boolean loaded;
+		try {
+			System.loadLibrary("fractalzoo-jni");
+			loaded = true;
+		} catch (UnsatisfiedLinkError e) {
+			loaded = false;
+		}
+		AVAILABLE = loaded;
+	}
+
+	/**
+	 * @return false if the native library is not packaged for this device,
+	 * callers should fall back to the pure Java engine
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
 	}
 
-	public static native void redrawMandelbrot(int[] array,
+	/**
+	 * Store the iteration count of every pixel, maxiter for points that did not escape
+	 */
+	public static native void redrawMandelbrot(float[] counts,
 											   int width, int height,
 											   double left, double top, double right, double bottom,
 											   int maxiter);
-	public static native void redrawMandelbrotPart(int[] array,
+	public static native void redrawMandelbrotPart(float[] counts,
 												   int width, int height,
 												   double left, double top, double right, double bottom,
 												   int maxiter,
 												   int x, int y, int x2, int y2);
-	public static native void redrawLorenz(int[] array,
+	/**
+	 * Same output as redrawMandelbrot, computed with Mariani-Silver rectangle subdivision
+	 */
+	public static native void redrawMandelbrotSubdivided(float[] counts,
 											   int width, int height,
 											   double left, double top, double right, double bottom,
 											   int maxiter);
-	public static native void redrawLorenzPart(int[] array,
-											   int width, int height,
-											   double left, double top, double right, double bottom,
-											   int maxiter,
-											   int x, int y, int x2, int y2);
 }
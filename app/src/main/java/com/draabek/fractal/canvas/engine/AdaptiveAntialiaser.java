@@ -0,0 +1,355 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Anti-aliasing stage run after a frame was rendered and colorized. Only pixels whose
+ * iteration count differs strongly from one of their four neighbors, and whose color visibly
+ * differs from that neighbor's, are sampled again at jittered points inside the pixel.
+ * Each of these edge pixels gets the average of the samples around it, its own and those of
+ * its eight neighbors, base samples included, weighted by a tent filter
+ * {@link #FILTER_RADIUS} pixels wide on either side. Edges the budget leaves without samples
+ * of their own are still smoothed by those of their neighbors.
+ * Smooth areas keep their single sample, and the additional samples of a frame may take at
+ * most {@link #SAMPLE_BUDGET} of the iterations of its escaped pixels. They are handed out a
+ * round at a time, one sample for each edge pixel in the order of its contrast, so that with
+ * many edges every edge gets a few samples before the strongest get all of theirs.
+ * Samples stop at twice the highest count around the pixel, a sample still bounded then is
+ * taken for an interior point, so interior pixels next to slowly escaping ones do not run to
+ * the iteration limit. Edge pixels whose first few samples all have the color of the base
+ * sample are not sampled any further.
+ * <p>
+ * Sample points follow the R2 low-discrepancy sequence, rotated by a hash of the pixel so
+ * that neighboring pixels do not share a pattern. The result only depends on the frame,
+ * exports of the same view are identical.
+ */
+public final class AdaptiveAntialiaser {
+    public static final int DEFAULT_MAX_SAMPLES = 8;
+    public static final double DEFAULT_THRESHOLD = 0.1;
+    /** Inverse powers of the plastic number, the steps of the R2 sequence */
+    static final double R2_X = 0.7548776662466927;
+    static final double R2_Y = 0.5698402909980532;
+    /** Samples taken before a pixel whose samples all agree is given up */
+    static final int FIRST_ROUND = 3;
+    /** Difference in a color channel below which neighbors look the same */
+    static final int MIN_CONTRAST = 8;
+    /** Iterations of the additional samples relative to those of the escaped pixels */
+    static final double SAMPLE_BUDGET = 0.4;
+    /** Distance from the pixel center, in pixels, at which the weight of a sample drops to 0 */
+    static final double FILTER_RADIUS = 2;
+
+    private final EscapeTimeKernel kernel;
+    private final int maxSamples;
+    private final double threshold;
+
+    /**
+     * @param maxSamples Samples of a resampled pixel including the one of the base pass,
+     * 1 turns anti-aliasing off
+     * @param threshold Difference to a neighbor, relative to the lower of the two counts,
+     * above which a pixel is resampled. Pixels next to points that did not escape are
+     * resampled whenever they escaped themselves.
+     */
+    public AdaptiveAntialiaser(EscapeTimeKernel kernel, int maxSamples, double threshold) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("At least one sample per pixel: " + maxSamples);
+        }
+        this.kernel = kernel;
+        this.maxSamples = maxSamples;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Resample the edge pixels of a colorized frame
+     * @param pixels Colors of the frame, edge pixels are replaced by their average color
+     * @param viewport Viewport the frame was rendered for
+     * @param palette Palette the frame was colorized with, null for grayscale
+     * @param offset Palette offset the frame was colorized with
+     * @param equalized true if the frame was colorized by {@link HistogramColorizer}, the
+     * samples are ranked in the histogram of the base pass
+     * @return Statistics of the additional samples
+     */
+    public RenderStats antialias(IterationBuffer buffer, final int[] pixels, Viewport viewport,
+                                 final int[] palette, final int offset, boolean equalized) {
+        final RenderStats stats = new RenderStats();
+        if (maxSamples == 1) {
+            return stats;
+        }
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final int maxIterations = buffer.getMaxIterations();
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(height);
+        // Edges are found on the colors of the base pass, not on the averages written meanwhile
+        final int[] colors = pixels.clone();
+        final int[] cumulative = equalized
+                ? HistogramColorizer.cumulate(HistogramColorizer.histogram(buffer)) : null;
+        final int[] samples = allot(values, colors, width, height, maxIterations);
+        // Colors of the samples of each pixel, from first[index] on
+        final int[] first = new int[width * height + 1];
+        for (int i = 0; i < samples.length; i++) {
+            first[i + 1] = first[i] + samples[i];
+        }
+        final int[] sampleColors = new int[first[samples.length]];
+        final int[] taken = new int[width * height];
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            RenderStats tileStats = new RenderStats();
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    int index = y * width + x;
+                    if (samples[index] == 0) {
+                        continue;
+                    }
+                    int limit = sampleLimit(values, width, height, x, y, maxIterations);
+                    int color = colors[index];
+                    double rotationX = hash(index);
+                    double rotationY = hash(~index);
+                    boolean uniform = true;
+                    for (int k = 1; k <= samples[index]; k++) {
+                        if ((k > FIRST_ROUND) && uniform) {
+                            break;
+                        }
+                        float value = kernel.iterateSmooth(x0 + (x + jitterX(rotationX, k)) * dx,
+                                y0 + (y + jitterY(rotationY, k)) * dy, limit, tileStats);
+                        if (value >= limit) {
+                            value = maxIterations;
+                        }
+                        int sample = (cumulative == null)
+                                ? Colorizer.color(value, maxIterations, palette, offset)
+                                : HistogramColorizer.color(value, maxIterations, cumulative,
+                                        palette, offset);
+                        sampleColors[first[index] + k - 1] = sample;
+                        taken[index] = k;
+                        uniform &= sample == color;
+                    }
+                }
+            }
+            stats.add(tileStats);
+        });
+        // Filtered once all samples are in, the neighbors of a tile may belong to another one
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    if (isEdge(values, colors, width, height, x, y, maxIterations)) {
+                        pixels[y * width + x] = filter(colors, sampleColors, first, taken, width,
+                                height, x, y);
+                    }
+                }
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * @return Average color of the base samples and the additional samples of the pixel and
+     * its neighbors, weighted by the tent filter
+     */
+    private static int filter(int[] colors, int[] sampleColors, int[] first, int[] taken,
+                              int width, int height, int x, int y) {
+        double a = 0;
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        double weights = 0;
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                int neighbor = ny * width + nx;
+                double rotationX = hash(neighbor);
+                double rotationY = hash(~neighbor);
+                // The base sample at k = 0, then the additional ones
+                for (int k = 0; k <= taken[neighbor]; k++) {
+                    int color = (k == 0) ? colors[neighbor]
+                            : sampleColors[first[neighbor] + k - 1];
+                    double weight = (k == 0) ? tent(nx - x) * tent(ny - y)
+                            : tent(nx + jitterX(rotationX, k) - x)
+                            * tent(ny + jitterY(rotationY, k) - y);
+                    a += weight * (color >>> 24);
+                    r += weight * ((color >> 16) & 0xff);
+                    g += weight * ((color >> 8) & 0xff);
+                    b += weight * (color & 0xff);
+                    weights += weight;
+                }
+            }
+        }
+        return (int) (a / weights + 0.5) << 24 | (int) (r / weights + 0.5) << 16
+                | (int) (g / weights + 0.5) << 8 | (int) (b / weights + 0.5);
+    }
+
+    /**
+     * @return Weight of a sample at the given distance from the pixel center along one axis
+     */
+    static double tent(double distance) {
+        return Math.max(0, 1 - Math.abs(distance) / FILTER_RADIUS);
+    }
+
+    /**
+     * @return Horizontal offset of the k-th additional sample within [-0.5, 0.5) of the pixel
+     */
+    static double jitterX(double rotation, int k) {
+        return fraction(rotation + k * R2_X) - 0.5;
+    }
+
+    /**
+     * @return Vertical offset of the k-th additional sample within [-0.5, 0.5) of the pixel
+     */
+    static double jitterY(double rotation, int k) {
+        return fraction(rotation + k * R2_Y) - 0.5;
+    }
+
+    /**
+     * Hand out the additional samples within the budget
+     * @param colors Colors of the base pass
+     * @return Number of additional samples of each pixel, 0 for pixels that are not edges
+     */
+    int[] allot(float[] values, int[] colors, int width, int height, int maxIterations) {
+        long budget = 0;
+        int edgeCount = 0;
+        long[] order = new long[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                if (values[index] < maxIterations) {
+                    budget += (long) values[index];
+                }
+                int contrast = edgeContrast(values, colors, width, height, x, y, maxIterations);
+                if (contrast > 0) {
+                    // Cheapest contrast first, positive floats sort like their bits
+                    float price = sampleCost(values, width, height, x, y, maxIterations)
+                            / (float) contrast;
+                    order[edgeCount++] = ((long) Float.floatToIntBits(price) << 32) | index;
+                }
+            }
+        }
+        budget = (long) (budget * SAMPLE_BUDGET);
+        Arrays.sort(order, 0, edgeCount);
+        int[] samples = new int[width * height];
+        for (int round = 1; round < maxSamples; round++) {
+            for (int e = 0; e < edgeCount; e++) {
+                int index = (int) order[e];
+                long cost = sampleCost(values, width, height, index % width, index / width,
+                        maxIterations);
+                if (cost > budget) {
+                    return samples;
+                }
+                budget -= cost;
+                samples[index] = round;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * @return Iterations a sample of the pixel is expected to take, about its count or up to
+     * its limit
+     */
+    private static int sampleCost(float[] values, int width, int height, int x, int y,
+                                  int maxIterations) {
+        return 1 + (int) Math.min(values[y * width + x],
+                sampleLimit(values, width, height, x, y, maxIterations));
+    }
+
+    /**
+     * @return Highest count a sample of the pixel is iterated to, twice the highest count of
+     * the escaped pixels around it
+     */
+    static int sampleLimit(float[] values, int width, int height, int x, int y,
+                           int maxIterations) {
+        float highest = 0;
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                float value = values[ny * width + nx];
+                if (value < maxIterations) {
+                    highest = Math.max(highest, value);
+                }
+            }
+        }
+        return (int) Math.min(maxIterations, 2 * highest + 1);
+    }
+
+    /**
+     * @param colors Colors of the base pass
+     * @return true if the pixel differs from one of its four neighbors by more than the
+     * threshold and has another color
+     */
+    boolean isEdge(float[] values, int[] colors, int width, int height, int x, int y,
+                   int maxIterations) {
+        return edgeContrast(values, colors, width, height, x, y, maxIterations) > 0;
+    }
+
+    /**
+     * @return Highest contrast to the neighbors the pixel differs from, 0 if it is no edge
+     */
+    private int edgeContrast(float[] values, int[] colors, int width, int height, int x, int y,
+                             int maxIterations) {
+        int index = y * width + x;
+        int contrast = 0;
+        if (x > 0) {
+            contrast = Math.max(contrast, differs(values, colors, index, index - 1,
+                    maxIterations));
+        }
+        if (x < width - 1) {
+            contrast = Math.max(contrast, differs(values, colors, index, index + 1,
+                    maxIterations));
+        }
+        if (y > 0) {
+            contrast = Math.max(contrast, differs(values, colors, index, index - width,
+                    maxIterations));
+        }
+        if (y < height - 1) {
+            contrast = Math.max(contrast, differs(values, colors, index, index + width,
+                    maxIterations));
+        }
+        return contrast;
+    }
+
+    /**
+     * @return Contrast of the two pixels if they differ by more than the threshold, else 0
+     */
+    private int differs(float[] values, int[] colors, int index, int other,
+                        int maxIterations) {
+        int contrast = contrast(colors[index], colors[other]);
+        if (contrast < MIN_CONTRAST) {
+            return 0;
+        }
+        float value = values[index];
+        float neighbor = values[other];
+        boolean inside = value >= maxIterations;
+        if (inside != (neighbor >= maxIterations)) {
+            return contrast;
+        }
+        if (inside) {
+            return 0;
+        }
+        return (Math.abs(value - neighbor) > threshold * Math.max(1, Math.min(value, neighbor)))
+                ? contrast : 0;
+    }
+
+    /**
+     * @return Largest difference of the two colors in one channel
+     */
+    private static int contrast(int color, int other) {
+        int contrast = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            contrast = Math.max(contrast,
+                    Math.abs(((color >>> shift) & 0xff) - ((other >>> shift) & 0xff)));
+        }
+        return contrast;
+    }
+
+    static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+
+    /**
+     * @return Pseudo-random number in [0, 1) for the pixel
+     */
+    static double hash(int index) {
+        int h = index * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return (h >>> 8) / (double) (1 << 24);
+    }
+}
@@ -0,0 +1,267 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Escape-time renderer that works through a frame in slices of bounded cost, so that a frame
+ * taking seconds can be spread over many display frames without blocking any of them.
+ * <p>
+ * All pixels wait in a queue in coarse-to-fine order, every 8th pixel first like
+ * {@link ProgressiveRenderer}. Each visit iterates a pixel by at most {@link #SLICE_ITERATIONS}
+ * and puts it back at the end of the queue if its orbit neither escaped nor reached the limit,
+ * so fast pixels finish first and slow ones do not hold up the rest. A finished sample fills
+ * the block of its grid step as a preview, as long as no finer sample covers the pixel yet;
+ * a sample still iterating covers it as not escaping. Pixels no sample covers keep the values
+ * of the previous frame. Orbit states are kept only
+ * for the pixels waiting for another visit.
+ * <p>
+ * One instance renders one frame, {@link #cancel()} stops it between batches.
+ */
+public final class AnytimeRenderer {
+    /** Iterations a pixel does per visit */
+    public static final int SLICE_ITERATIONS = 1024;
+    /** Pixels iterated in parallel before the results are written and the budget checked */
+    static final int BATCH_SIZE = 2048;
+    /** Fill level of a pixel no sample covers yet */
+    private static final byte UNCOVERED = Byte.MAX_VALUE;
+
+    private final EscapeTimeKernel kernel;
+    private final RenderStats stats = new RenderStats();
+    private final IterationBuffer buffer;
+    private final int maxIterations;
+    private final OrbitStore orbits;
+    private final OrbitStore.TileOrbits unresolved;
+    private final double x0;
+    private final double y0;
+    private final double dx;
+    private final double dy;
+    /** Grid step of the sample each pixel currently shows, 0 once the pixel is exact */
+    private final byte[] levels;
+    /** Pixels not visited yet in coarse-to-fine order, from {@link #nextPending} on */
+    private final int[] pending;
+    private int nextPending;
+    /** Ring of visited pixels waiting for another slice, growing with their number */
+    private int[] waitingPixels = new int[BATCH_SIZE];
+    private int[] waitingIterations = new int[BATCH_SIZE];
+    private double[] waitingOrbits = new double[2 * BATCH_SIZE];
+    private int waitingHead;
+    private int waitingCount;
+    private final int[] batchPixels = new int[BATCH_SIZE];
+    private final int[] batchIterations = new int[BATCH_SIZE];
+    private final double[] batchOrbits = new double[2 * BATCH_SIZE];
+    private final int[] batchValues = new int[BATCH_SIZE];
+    private boolean stored;
+    private volatile boolean cancelled;
+
+    /**
+     * Queue all pixels of the frame, nothing is rendered before {@link #render(long)}
+     * @param orbits Filled with the pixels that reach the limit once the frame is finished,
+     * for {@link EscapeTimeRenderer#continueRender}; null to keep nothing
+     */
+    public AnytimeRenderer(EscapeTimeKernel kernel, IterationBuffer buffer, Viewport viewport,
+                           int maxIterations, OrbitStore orbits) {
+        this.kernel = kernel;
+        this.buffer = buffer;
+        this.maxIterations = maxIterations;
+        this.orbits = orbits;
+        unresolved = (orbits == null) ? null : new OrbitStore.TileOrbits();
+        if (orbits != null) {
+            orbits.clear();
+        }
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        x0 = viewport.getLeft();
+        y0 = viewport.getTop();
+        dx = viewport.getPixelWidth(width);
+        dy = viewport.getPixelHeight(height);
+        levels = new byte[width * height];
+        Arrays.fill(levels, UNCOVERED);
+        pending = new int[width * height];
+        int queued = 0;
+        for (int step = ProgressiveRenderer.COARSEST_STEP; step >= 1; step /= 2) {
+            int coarserStep = 2 * step;
+            for (int py = 0; py < height; py += step) {
+                boolean coarserRow = (py % coarserStep) == 0;
+                for (int px = 0; px < width; px += step) {
+                    if ((step != ProgressiveRenderer.COARSEST_STEP) && coarserRow
+                            && ((px % coarserStep) == 0)) {
+                        continue;
+                    }
+                    pending[queued++] = py * width + px;
+                }
+            }
+        }
+        buffer.setMaxIterations(maxIterations);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true when every pixel of the frame is exact
+     */
+    public synchronized boolean isFinished() {
+        return (nextPending == pending.length) && (waitingCount == 0);
+    }
+
+    /**
+     * @return Statistics of the slices rendered so far, a pixel is counted once per visit
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Iterate the waiting pixels until about the given number of iterations is spent.
+     * The budget is checked after every batch, so it may be exceeded by at most one batch
+     * of slices.
+     * @return true if the frame is finished, false if pixels are still waiting or the
+     * frame was cancelled
+     */
+    public synchronized boolean render(long iterationBudget) {
+        long spent = 0;
+        while (!isFinished() && (spent < iterationBudget) && !cancelled) {
+            spent += renderBatch();
+        }
+        if (isFinished() && (orbits != null) && !stored) {
+            unresolved.addTo(orbits);
+            orbits.setMaxIterations(maxIterations);
+            stored = true;
+        }
+        return isFinished() && !cancelled;
+    }
+
+    /**
+     * Take the next pixels, those not visited yet first, iterate them in parallel, then write
+     * the results and queue the unfinished ones again on the calling thread
+     * @return Iterations spent
+     */
+    private long renderBatch() {
+        int batch = 0;
+        while ((batch < BATCH_SIZE) && (nextPending < pending.length)) {
+            batchPixels[batch] = pending[nextPending++];
+            batchIterations[batch] = 0;
+            batch++;
+        }
+        while ((batch < BATCH_SIZE) && (waitingCount > 0)) {
+            batchPixels[batch] = waitingPixels[waitingHead];
+            batchIterations[batch] = waitingIterations[waitingHead];
+            batchOrbits[2 * batch] = waitingOrbits[2 * waitingHead];
+            batchOrbits[2 * batch + 1] = waitingOrbits[2 * waitingHead + 1];
+            waitingHead = (waitingHead + 1) % waitingPixels.length;
+            waitingCount--;
+            batch++;
+        }
+        final int width = buffer.getWidth();
+        final RenderStats batchStats = new RenderStats();
+        TileScheduler.render(0, 0, batch, 1, TileScheduler.DEFAULT_TILE_SIZE,
+                (from, top, to, bottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    for (int i = from; i < to; i++) {
+                        int pixel = batchPixels[i];
+                        int iteration = batchIterations[i];
+                        batchValues[i] = kernel.continueOrbit(x0 + (pixel % width) * dx,
+                                y0 + (pixel / width) * dy, batchOrbits, 2 * i, iteration,
+                                Math.min(maxIterations, iteration + SLICE_ITERATIONS),
+                                tileStats);
+                    }
+                    batchStats.add(tileStats);
+                });
+        stats.add(batchStats);
+        for (int i = 0; i < batch; i++) {
+            int value = batchValues[i];
+            int limit = Math.min(maxIterations, batchIterations[i] + SLICE_ITERATIONS);
+            boolean bounded = Double.isNaN(batchOrbits[2 * i]);
+            if ((value < limit) || (limit == maxIterations) || bounded) {
+                if ((bounded || (value >= maxIterations)) && (unresolved != null)) {
+                    unresolved.orbit[0] = batchOrbits[2 * i];
+                    unresolved.orbit[1] = batchOrbits[2 * i + 1];
+                    unresolved.keep(batchPixels[i]);
+                }
+                int pixel = batchPixels[i];
+                fill(pixel, bounded ? maxIterations : kernel.smooth(x0 + (pixel % width) * dx,
+                        y0 + (pixel / width) * dy, value, batchOrbits[2 * i],
+                        batchOrbits[2 * i + 1], maxIterations), true);
+            } else {
+                if (batchIterations[i] == 0) {
+                    // Shown as not escaping until it does
+                    fill(batchPixels[i], maxIterations, false);
+                }
+                requeue(batchPixels[i], limit, batchOrbits[2 * i], batchOrbits[2 * i + 1]);
+            }
+        }
+        return batchStats.getIterations();
+    }
+
+    /**
+     * Put a pixel at the end of the ring of waiting pixels
+     */
+    private void requeue(int pixel, int iteration, double zr, double zi) {
+        if (waitingCount == waitingPixels.length) {
+            int capacity = 2 * waitingPixels.length;
+            int[] pixels = new int[capacity];
+            int[] iterations = new int[capacity];
+            double[] states = new double[2 * capacity];
+            for (int i = 0; i < waitingCount; i++) {
+                int slot = (waitingHead + i) % waitingPixels.length;
+                pixels[i] = waitingPixels[slot];
+                iterations[i] = waitingIterations[slot];
+                states[2 * i] = waitingOrbits[2 * slot];
+                states[2 * i + 1] = waitingOrbits[2 * slot + 1];
+            }
+            waitingPixels = pixels;
+            waitingIterations = iterations;
+            waitingOrbits = states;
+            waitingHead = 0;
+        }
+        int tail = (waitingHead + waitingCount) % waitingPixels.length;
+        waitingPixels[tail] = pixel;
+        waitingIterations[tail] = iteration;
+        waitingOrbits[2 * tail] = zr;
+        waitingOrbits[2 * tail + 1] = zi;
+        waitingCount++;
+    }
+
+    /**
+     * Write the value of a sample and let it cover the rest of its grid block where no finer
+     * sample is known
+     * @param exact false for the provisional value of a sample that is not finished yet
+     */
+    private void fill(int pixel, float value, boolean exact) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        int px = pixel % width;
+        int py = pixel / width;
+        int step = gridStep(px, py);
+        float[] values = buffer.getValues();
+        for (int by = py; by < Math.min(py + step, height); by++) {
+            for (int bx = px; bx < Math.min(px + step, width); bx++) {
+                int i = by * width + bx;
+                // Blocks of one step never overlap, so an equal level is this sample's own
+                if (levels[i] >= step) {
+                    values[i] = value;
+                    levels[i] = (byte) step;
+                }
+            }
+        }
+        if (exact) {
+            levels[pixel] = 0;
+        }
+    }
+
+    /**
+     * @return Step of the coarsest grid the pixel is a sample of
+     */
+    private static int gridStep(int px, int py) {
+        int step = ProgressiveRenderer.COARSEST_STEP;
+        while ((px % step != 0) || (py % step != 0)) {
+            step /= 2;
+        }
+        return step;
+    }
+}
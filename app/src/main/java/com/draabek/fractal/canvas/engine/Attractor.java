@@ -0,0 +1,47 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Dynamical system whose orbits settle on a strange attractor, plotted as the density of the
+ * points an orbit visits. Implementations must be stateless apart from their constants,
+ * a single instance is shared by all render threads, each with its own state array.
+ */
+public abstract class Attractor {
+    /**
+     * @return Number of coordinates of a state
+     */
+    public abstract int getDimensions();
+
+    /**
+     * Put the first state of an orbit into the array. Orbits of different streams start from
+     * different points, each stream always from the same one.
+     */
+    public abstract void start(double[] state, int stream);
+
+    /**
+     * Advance the state by one step, in place
+     */
+    public abstract void step(double[] state);
+
+    /**
+     * @return Horizontal coordinate of the state in the plane the attractor is plotted in
+     */
+    public abstract double projectX(double[] state);
+
+    /**
+     * @return Vertical coordinate of the state in the plane the attractor is plotted in,
+     * growing downwards like the viewport
+     */
+    public abstract double projectY(double[] state);
+
+    /**
+     * @return Pseudo-random number in [-1, 1) for the stream and coordinate, to spread the
+     * starting points of orbits
+     */
+    protected static double jitter(int stream, int coordinate) {
+        int h = (stream * 31 + coordinate + 1) * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return (h >>> 8) / (double) (1 << 23) - 1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Plots the density of the points orbits of an {@link Attractor} visit. Samples accumulate
+ * over any number of calls to {@link #accumulate}, so a frame can be shown after a few
+ * million points and refined up to billions.
+ * <p>
+ * Every worker of the shared pool follows its own orbit and counts hits into its own
+ * histogram without locking. After each round the histograms are summed into the density
+ * in a parallel reduction over tiles of the frame. Densities are shown on a logarithmic
+ * scale, the densest pixel getting the last palette color.
+ */
+public final class AttractorRenderer implements DensityRenderer {
+    /** Steps each orbit takes before its points are plotted, to settle on the attractor */
+    static final int TRANSIENT_STEPS = 1000;
+    /** Points a stream plots before the histograms are reduced, keeps its counts in range */
+    static final int ROUND_POINTS = 1 << 24;
+
+    private final Attractor attractor;
+    private final int width;
+    private final int height;
+    private final double x0;
+    private final double y0;
+    private final double pixelsPerUnitX;
+    private final double pixelsPerUnitY;
+    private final int streams;
+    private final double[][] states;
+    private final int[][] hits;
+    private final long[] density;
+    private long points;
+
+    /**
+     * @param viewport Part of the plane the attractor is projected to that the frame shows
+     */
+    public AttractorRenderer(Attractor attractor, int width, int height, Viewport viewport) {
+        this.attractor = attractor;
+        this.width = width;
+        this.height = height;
+        x0 = viewport.getLeft();
+        y0 = viewport.getTop();
+        pixelsPerUnitX = 1 / viewport.getPixelWidth(width);
+        pixelsPerUnitY = 1 / viewport.getPixelHeight(height);
+        streams = TileScheduler.getPool().getParallelism();
+        states = new double[streams][];
+        hits = new int[streams][];
+        for (int stream = 0; stream < streams; stream++) {
+            states[stream] = new double[attractor.getDimensions()];
+            start(stream);
+        }
+        density = new long[width * height];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Number of orbits followed in parallel
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * @return Number of points plotted so far, including those outside of the frame
+     */
+    @Override
+    public synchronized long getPoints() {
+        return points;
+    }
+
+    /**
+     * @return Steps the orbits took so far, one per point
+     */
+    @Override
+    public synchronized long getIterations() {
+        return points;
+    }
+
+    /**
+     * @return Hits per pixel, owned by the renderer
+     */
+    long[] getDensity() {
+        return density;
+    }
+
+    /**
+     * Plot more points, shared evenly by the streams, and block until they are counted
+     */
+    @Override
+    public synchronized void accumulate(long count) {
+        long remaining = count;
+        while (remaining > 0) {
+            long round = Math.min(remaining, (long) streams * ROUND_POINTS);
+            final long share = round / streams;
+            final int extra = (int) (round % streams);
+            TileScheduler.render(0, 0, streams, 1, 1, (from, top, to, bottom) -> {
+                for (int stream = from; stream < to; stream++) {
+                    plot(stream, share + ((stream < extra) ? 1 : 0));
+                }
+            });
+            reduce();
+            remaining -= round;
+            points += round;
+        }
+    }
+
+    /**
+     * Color the density on a logarithmic scale, see {@link DensityColors}
+     */
+    @Override
+    public synchronized void tonemap(final int[] pixels, final int[] palette, final int offset) {
+        long max = 0;
+        for (long value : density) {
+            max = Math.max(max, value);
+        }
+        final double scale = DensityColors.logScale(max);
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int x = left; x < right; x++) {
+                    long value = density[row + x];
+                    pixels[row + x] = DensityColors.color(
+                            DensityColors.logBrightness(value, scale), value == 0, palette,
+                            offset);
+                }
+            }
+        });
+    }
+
+    private void start(int stream) {
+        double[] state = states[stream];
+        attractor.start(state, stream);
+        for (int i = 0; i < TRANSIENT_STEPS; i++) {
+            attractor.step(state);
+        }
+    }
+
+    /**
+     * Follow the orbit of a stream, counting its hits into the stream's histogram.
+     * An orbit that leaves the finite numbers is started again.
+     */
+    private void plot(int stream, long count) {
+        double[] state = states[stream];
+        if (hits[stream] == null) {
+            hits[stream] = new int[width * height];
+        }
+        int[] histogram = hits[stream];
+        for (long i = 0; i < count; i++) {
+            attractor.step(state);
+            double px = (attractor.projectX(state) - x0) * pixelsPerUnitX;
+            double py = (attractor.projectY(state) - y0) * pixelsPerUnitY;
+            if ((px >= 0) && (px < width) && (py >= 0) && (py < height)) {
+                histogram[(int) py * width + (int) px]++;
+            } else if (Double.isNaN(px) || Double.isNaN(py) || Double.isInfinite(px)
+                    || Double.isInfinite(py)) {
+                start(stream);
+            }
+        }
+    }
+
+    /**
+     * Sum the histograms of the streams into the density and clear them, tile by tile
+     */
+    private void reduce() {
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int stream = 0; stream < streams; stream++) {
+                    int[] histogram = hits[stream];
+                    if (histogram == null) {
+                        continue;
+                    }
+                    for (int i = row + left; i < row + right; i++) {
+                        density[i] += histogram[i];
+                        histogram[i] = 0;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Bilinear approximation (BLA) of the perturbed Mandelbrot iteration.
+ * <p>
+ * While the perturbation dz is tiny compared to the reference orbit Z, the quadratic term
+ * of dz(n+1) = 2 Z(n) dz(n) + dz(n)^2 + dc can be dropped and l iterations collapse into
+ * dz(n+l) = A dz(n) + B dc. Level k of the table holds the coefficients for steps of
+ * 2^k iterations starting at multiples of 2^k, merged pairwise from level k - 1, together
+ * with the radius |dz| has to stay below for the step to be valid.
+ */
+public final class BilinearApproximation {
+    /** Error of dz tolerated at the farthest pixel, in pixels */
+    static final double PIXEL_TOLERANCE = 0x1p-20;
+
+    private final double[][] ar;
+    private final double[][] ai;
+    private final double[][] br;
+    private final double[][] bi;
+    private final double[][] radius;
+
+    /**
+     * @param maxDelta Largest |dc| of the pixels rendered against the orbit
+     * @param pixelSize Distance between pixels, the dropped term may move dz by a small
+     *                  fraction of it
+     */
+    public BilinearApproximation(ReferenceOrbit orbit, double maxDelta, double pixelSize) {
+        // dz scales with dc, so an error of dz relative to its size that stays below this is
+        // below the tolerance even for the farthest pixel. Never tighter than double rounding.
+        double epsilon = Math.max(0x1p-53, PIXEL_TOLERANCE * pixelSize / maxDelta);
+        // Single steps n -> n + 1 exist for n < length - 1
+        int steps = orbit.getLength() - 1;
+        int levels = 1;
+        while ((steps >> levels) > 0) {
+            levels++;
+        }
+        ar = new double[levels][];
+        ai = new double[levels][];
+        br = new double[levels][];
+        bi = new double[levels][];
+        radius = new double[levels][];
+        allocate(0, steps);
+        double[] zr = orbit.getRe();
+        double[] zi = orbit.getIm();
+        for (int n = 0; n < steps; n++) {
+            ar[0][n] = 2 * zr[n];
+            ai[0][n] = 2 * zi[n];
+            br[0][n] = 1;
+            bi[0][n] = 0;
+            radius[0][n] = epsilon * Math.hypot(ar[0][n], ai[0][n]);
+        }
+        for (int level = 1; level < levels; level++) {
+            int count = steps >> level;
+            allocate(level, count);
+            double[] xar = ar[level - 1];
+            double[] xai = ai[level - 1];
+            double[] xbr = br[level - 1];
+            double[] xbi = bi[level - 1];
+            double[] xr = radius[level - 1];
+            for (int j = 0; j < count; j++) {
+                // First step x, then step y: A = Ay Ax, B = Ay Bx + By
+                int x = 2 * j;
+                int y = x + 1;
+                ar[level][j] = xar[y] * xar[x] - xai[y] * xai[x];
+                ai[level][j] = xar[y] * xai[x] + xai[y] * xar[x];
+                br[level][j] = xar[y] * xbr[x] - xai[y] * xbi[x] + xbr[y];
+                bi[level][j] = xar[y] * xbi[x] + xai[y] * xbr[x] + xbi[y];
+                double ax = Math.hypot(xar[x], xai[x]);
+                double bx = Math.hypot(xbr[x], xbi[x]);
+                double ry = (ax == 0) ? 0 : Math.max(0, (xr[y] - bx * maxDelta) / ax);
+                radius[level][j] = Math.min(xr[x], ry);
+            }
+        }
+    }
+
+    private void allocate(int level, int count) {
+        ar[level] = new double[count];
+        ai[level] = new double[count];
+        br[level] = new double[count];
+        bi[level] = new double[count];
+        radius[level] = new double[count];
+    }
+
+    /**
+     * Find the longest valid step from iteration n
+     * @param deltaNorm |dz(n)|
+     * @param maxSteps Upper bound of the step length
+     * @return Level of the step, it covers 2^level iterations; -1 if there is none
+     */
+    public int findLevel(int n, double deltaNorm, int maxSteps) {
+        int level = Math.min(Integer.numberOfTrailingZeros(n), ar.length - 1);
+        for (; level >= 0; level--) {
+            int j = n >> level;
+            if ((j < radius[level].length) && ((1 << level) <= maxSteps)
+                    && (deltaNorm < radius[level][j])) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    double getAr(int level, int n) {
+        return ar[level][n >> level];
+    }
+
+    double getAi(int level, int n) {
+        return ai[level][n >> level];
+    }
+
+    double getBr(int level, int n) {
+        return br[level][n >> level];
+    }
+
+    double getBi(int level, int n) {
+        return bi[level][n >> level];
+    }
+}
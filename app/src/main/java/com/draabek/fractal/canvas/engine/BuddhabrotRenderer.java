@@ -0,0 +1,340 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Buddhabrot: the density of the orbit points z of the points c whose orbit under
+ * z -> z^2 + c escapes. With several iteration limits each limit gets its own channel, three
+ * of them make the red, green and blue channels of a Nebulabrot, a channel counting the
+ * orbits that escape within its limit.
+ * <p>
+ * Samples c are drawn from the disc |c| <= 2 either uniformly or, with importance sampling,
+ * by a Metropolis-Hastings chain per worker. The chain proposes a new c either uniformly or
+ * as a small mutation of the current one, sized relative to the view, and accepts it with the
+ * ratio of the numbers of orbit points the two c put into the view. Views zoomed into a small
+ * part of the plane thus spend their iterations on the few orbits that reach them. Each orbit
+ * of the chain is plotted with a weight inversely proportional to that number, so the density
+ * converges to the same image as uniform sampling.
+ * <p>
+ * All workers add to shared densities with lock-free atomic counters, per-worker histograms
+ * of three channels would not fit into memory on a phone. Weights are kept in fixed point.
+ */
+public final class BuddhabrotRenderer implements DensityRenderer {
+    /** Probability of a proposal drawn uniformly instead of mutating the current sample */
+    static final double LARGE_MUTATION = 0.2;
+    /** Fixed-point unit of the densities, the weight of a point of a uniform sample */
+    static final long WEIGHT_ONE = 1 << 24;
+    /** Uniform proposals tried per sample while a chain has not found a visible orbit yet */
+    static final int SEARCH_ATTEMPTS = 64;
+    /** Samples a stream takes per task, bounds the imbalance between workers */
+    private static final long ROUND_SAMPLES = 4096;
+
+    private final int width;
+    private final int height;
+    private final int[] limits;
+    private final int maxLimit;
+    private final boolean importance;
+    private final double x0;
+    private final double y0;
+    private final double pixelsPerUnitX;
+    private final double pixelsPerUnitY;
+    /** Smallest and largest mutation, relative to the larger edge of the view */
+    private final double minMutation;
+    private final double maxMutation;
+    private final AtomicLongArray[] density;
+    private final Chain[] chains;
+    private long points;
+
+    /**
+     * @param limits Iteration limit of each channel, one for a Buddhabrot, three for the
+     * red, green and blue channel of a Nebulabrot
+     * @param importance true to sample with Metropolis-Hastings, false uniformly
+     */
+    public BuddhabrotRenderer(int width, int height, Viewport viewport, int[] limits,
+                              boolean importance) {
+        if (limits.length == 0) {
+            throw new IllegalArgumentException("No iteration limits");
+        }
+        this.width = width;
+        this.height = height;
+        this.limits = limits.clone();
+        int max = 1;
+        for (int limit : limits) {
+            max = Math.max(max, limit);
+        }
+        maxLimit = max;
+        this.importance = importance;
+        x0 = viewport.getLeft();
+        y0 = viewport.getTop();
+        pixelsPerUnitX = 1 / viewport.getPixelWidth(width);
+        pixelsPerUnitY = 1 / viewport.getPixelHeight(height);
+        double size = Math.max(Math.abs(viewport.getRight() - viewport.getLeft()),
+                Math.abs(viewport.getBottom() - viewport.getTop()));
+        minMutation = 0.0001 * size;
+        maxMutation = 0.1 * size;
+        density = new AtomicLongArray[limits.length];
+        for (int channel = 0; channel < limits.length; channel++) {
+            density[channel] = new AtomicLongArray(width * height);
+        }
+        chains = new Chain[TileScheduler.getPool().getParallelism()];
+        for (int stream = 0; stream < chains.length; stream++) {
+            chains[stream] = new Chain(stream);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChannels() {
+        return limits.length;
+    }
+
+    @Override
+    public synchronized long getPoints() {
+        return points;
+    }
+
+    @Override
+    public synchronized long getIterations() {
+        long iterations = 0;
+        for (Chain chain : chains) {
+            iterations += chain.iterations;
+        }
+        return iterations;
+    }
+
+    /**
+     * @return Weighted hits per pixel of the channel in units of {@link #WEIGHT_ONE}
+     */
+    long getDensity(int channel, int pixel) {
+        return density[channel].get(pixel);
+    }
+
+    /**
+     * Take more samples, shared evenly by the chains
+     */
+    @Override
+    public synchronized void accumulate(long count) {
+        final long share = count / chains.length;
+        final int extra = (int) (count % chains.length);
+        long rounds = (share + (extra > 0 ? 1 : 0) + ROUND_SAMPLES - 1) / ROUND_SAMPLES;
+        for (long round = 0; round < rounds; round++) {
+            final long from = round * ROUND_SAMPLES;
+            TileScheduler.render(0, 0, chains.length, 1, 1, (first, top, last, bottom) -> {
+                for (int stream = first; stream < last; stream++) {
+                    long samples = share + ((stream < extra) ? 1 : 0);
+                    long todo = Math.min(ROUND_SAMPLES, samples - from);
+                    for (long i = 0; i < todo; i++) {
+                        chains[stream].sample();
+                    }
+                }
+            });
+        }
+        points += count;
+    }
+
+    /**
+     * Color the density on a square root scale, the dense background of short orbits would
+     * drown the structure on a logarithmic one. With one channel the palette colors it like
+     * {@link AttractorRenderer}, with more the first three are the red, green and blue
+     * channel, each scaled to its own maximum.
+     */
+    @Override
+    public synchronized void tonemap(final int[] pixels, final int[] palette, final int offset) {
+        final int channels = Math.min(3, limits.length);
+        final double[] maxima = new double[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            long max = 0;
+            AtomicLongArray values = density[channel];
+            for (int i = 0; i < values.length(); i++) {
+                max = Math.max(max, values.get(i));
+            }
+            maxima[channel] = Math.max(1, max);
+        }
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int x = left; x < right; x++) {
+                    int i = row + x;
+                    if (channels == 1) {
+                        long value = density[0].get(i);
+                        pixels[i] = DensityColors.color(Math.sqrt(value / maxima[0]),
+                                value == 0, palette, offset);
+                        continue;
+                    }
+                    int color = 0xff000000;
+                    for (int channel = 0; channel < channels; channel++) {
+                        int level = (int) (Math.sqrt(density[channel].get(i) / maxima[channel])
+                                * 0xff);
+                        color |= level << (16 - 8 * channel);
+                    }
+                    pixels[i] = color;
+                }
+            }
+        });
+    }
+
+    /**
+     * Sampling state of one worker: its random numbers, the current sample and its orbit
+     */
+    private final class Chain {
+        private final Random random;
+        private double[] orbit = new double[2 * maxLimit];
+        private double[] proposal = new double[2 * maxLimit];
+        private double cr;
+        private double ci;
+        /** Number of orbit points of the current sample */
+        private int length;
+        /** Orbit points of the current sample inside the view, 0 before one was found */
+        private int visible;
+        private double proposalR;
+        private double proposalI;
+        private int proposalLength;
+        private long iterations;
+
+        Chain(int stream) {
+            random = new Random(0x5deece66dL * (stream + 1));
+        }
+
+        void sample() {
+            if (!importance) {
+                proposeUniformly();
+                trace();
+                plot(proposal, proposalLength, WEIGHT_ONE);
+                return;
+            }
+            if (visible == 0) {
+                search();
+                if (visible == 0) {
+                    return;
+                }
+            } else {
+                if (random.nextDouble() < LARGE_MUTATION) {
+                    proposeUniformly();
+                } else {
+                    mutate();
+                }
+                int proposed = trace();
+                // Mutations are symmetric, the acceptance only depends on the contributions
+                if ((proposed > 0) && (random.nextDouble() * visible < proposed)) {
+                    accept(proposed);
+                }
+            }
+            plot(orbit, length, WEIGHT_ONE / visible);
+        }
+
+        /**
+         * Look for a first sample with orbit points in the view
+         */
+        private void search() {
+            for (int attempt = 0; attempt < SEARCH_ATTEMPTS; attempt++) {
+                proposeUniformly();
+                int proposed = trace();
+                if (proposed > 0) {
+                    accept(proposed);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Propose c drawn uniformly from the disc |c| <= 2
+         */
+        private void proposeUniformly() {
+            do {
+                proposalR = 4 * random.nextDouble() - 2;
+                proposalI = 4 * random.nextDouble() - 2;
+            } while (proposalR * proposalR + proposalI * proposalI > 4);
+        }
+
+        /**
+         * Propose c at a random angle and a distance between the smallest and largest
+         * mutation, spread evenly on a logarithmic scale
+         */
+        private void mutate() {
+            double radius = maxMutation * Math.exp(-Math.log(maxMutation / minMutation)
+                    * random.nextDouble());
+            double angle = 2 * Math.PI * random.nextDouble();
+            proposalR = cr + radius * Math.cos(angle);
+            proposalI = ci + radius * Math.sin(angle);
+        }
+
+        private void accept(int proposedVisible) {
+            double[] swap = orbit;
+            orbit = proposal;
+            proposal = swap;
+            cr = proposalR;
+            ci = proposalI;
+            length = proposalLength;
+            visible = proposedVisible;
+        }
+
+        /**
+         * Iterate the orbit of the proposal into its array
+         * @return Number of orbit points inside the view, 0 if the orbit does not escape
+         * within the highest limit, proposalLength is 0 then too
+         */
+        private int trace() {
+            proposalLength = 0;
+            double r = proposalR;
+            double i = proposalI;
+            if (MandelbrotKernel.isInMainBulbs(r, i)) {
+                return 0;
+            }
+            double[] points = proposal;
+            double zr = 0;
+            double zi = 0;
+            int n = 0;
+            int inside = 0;
+            while (n < maxLimit) {
+                double t = zr * zr - zi * zi + r;
+                zi = 2 * zr * zi + i;
+                zr = t;
+                if (zr * zr + zi * zi > 4) {
+                    break;
+                }
+                points[2 * n] = zr;
+                points[2 * n + 1] = zi;
+                n++;
+                double px = (zr - x0) * pixelsPerUnitX;
+                double py = (zi - y0) * pixelsPerUnitY;
+                if ((px >= 0) && (px < width) && (py >= 0) && (py < height)) {
+                    inside++;
+                }
+            }
+            iterations += n + 1;
+            if (n == maxLimit) {
+                return 0;
+            }
+            proposalLength = n;
+            return inside;
+        }
+
+        /**
+         * Add the first length points of an orbit to every channel whose limit it escaped
+         * within
+         */
+        private void plot(double[] points, int length, long weight) {
+            for (int k = 0; k < length; k++) {
+                double px = (points[2 * k] - x0) * pixelsPerUnitX;
+                double py = (points[2 * k + 1] - y0) * pixelsPerUnitY;
+                if ((px >= 0) && (px < width) && (py >= 0) && (py < height)) {
+                    int pixel = (int) py * width + (int) px;
+                    for (int channel = 0; channel < limits.length; channel++) {
+                        if (length < limits[channel]) {
+                            density[channel].addAndGet(pixel, weight);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Clifford attractor, the map x -> sin(a y) + c cos(a x), y -> sin(b x) + d cos(b y)
+ */
+public class CliffordMap extends Attractor {
+    private final double a;
+    private final double b;
+    private final double c;
+    private final double d;
+
+    public CliffordMap(double a, double b, double c, double d) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+    }
+
+    @Override
+    public int getDimensions() {
+        return 2;
+    }
+
+    @Override
+    public void start(double[] state, int stream) {
+        state[0] = jitter(stream, 0);
+        state[1] = jitter(stream, 1);
+    }
+
+    @Override
+    public void step(double[] state) {
+        double x = state[0];
+        double y = state[1];
+        state[0] = Math.sin(a * y) + c * Math.cos(a * x);
+        state[1] = Math.sin(b * x) + d * Math.cos(b * y);
+    }
+
+    @Override
+    public double projectX(double[] state) {
+        return state[0];
+    }
+
+    @Override
+    public double projectY(double[] state) {
+        return state[1];
+    }
+}
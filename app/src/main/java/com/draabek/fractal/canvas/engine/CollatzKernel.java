@@ -0,0 +1,64 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * Collatz map extended to the complex plane, z -> (1 + 4z - (1 + 2z) cos(pi z)) / 4,
+ * starting from z = c like the collatz shader. It takes odd integers n to (3n + 1) / 2 and
+ * even ones to n / 2. Orbits escape beyond a radius of {@link #ESCAPE_RADIUS}, the cosine
+ * grows too fast along the imaginary axis to settle on 2 like the quadratic formulas.
+ */
+public class CollatzKernel extends EscapeTimeKernel {
+    static final double ESCAPE_RADIUS = 16;
+    private static final double ESCAPE_RADIUS_SQUARED = ESCAPE_RADIUS * ESCAPE_RADIUS;
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        int i = run(x, y, 0, maxIterations, null, 0);
+        stats.countPixel(i);
+        return i;
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        double zr = (iteration > 0) ? orbit[offset] : x;
+        double zi = (iteration > 0) ? orbit[offset + 1] : y;
+        int i = run(zr, zi, iteration, maxIterations, orbit, offset);
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    /**
+     * @param orbit Receives the last z at offset, null if not needed
+     * @return Iteration the orbit escaped at, maxIterations if it did not
+     */
+    private static int run(double zr, double zi, int iteration, int maxIterations,
+                           double[] orbit, int offset) {
+        int i = iteration;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= ESCAPE_RADIUS_SQUARED)) {
+            // cos(pi z) = cos(pi x) cosh(pi y) - i sin(pi x) sinh(pi y)
+            double e = Math.exp(Math.PI * zi);
+            double cosh = (e + 1 / e) / 2;
+            double sinh = (e - 1 / e) / 2;
+            double cr = Math.cos(Math.PI * zr) * cosh;
+            double ci = -Math.sin(Math.PI * zr) * sinh;
+            double wr = 1 + 2 * zr;
+            double wi = 2 * zi;
+            double t = (1 + 4 * zr - (wr * cr - wi * ci)) / 4;
+            zi = (4 * zi - (wr * ci + wi * cr)) / 4;
+            zr = t;
+            i++;
+        }
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,59 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Colorization pass turning an {@link IterationBuffer} into ARGB pixels, the same mapping
+ * the escape-time shaders use: points that did not escape get the first palette color,
+ * the others the color at their share of the iteration limit. The share is taken of the
+ * normalized count, so the fraction picks the palette entries between those of two whole
+ * counts and bands between the counts disappear once the palette has more entries than the
+ * limit has counts. Entries are not blended, palettes of few colors keep their hard edges.
+ * <p>
+ * A palette offset rotates the colors of escaped points, stepping it recolors the frame
+ * for palette cycling.
+ */
+public final class Colorizer {
+    private Colorizer() {
+    }
+
+    /**
+     * @param value Normalized iteration count, see {@link EscapeTimeKernel#iterateSmooth}
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @param offset Number of palette entries to rotate the escaped colors by
+     */
+    public static int color(float value, int maxIterations, int[] palette, int offset) {
+        if (palette == null) {
+            int gray = (int) ((1 - Math.min(1, (double) value / maxIterations)) * 0xff);
+            return gray | gray << 8 | gray << 16 | 0xff000000;
+        }
+        if (value >= maxIterations) {
+            return palette[0];
+        }
+        int index = (int) ((double) value * palette.length / maxIterations) + offset;
+        index %= palette.length;
+        return palette[(index < 0) ? index + palette.length : index];
+    }
+
+    /**
+     * Colorize the whole buffer
+     * @param pixels ARGB output of the same size as the buffer
+     */
+    public static void colorize(IterationBuffer buffer, int[] pixels, int[] palette, int offset) {
+        colorize(buffer, pixels, palette, offset, 0, 0, buffer.getWidth(), buffer.getHeight());
+    }
+
+    /**
+     * Colorize the pixels [left, right) x [top, bottom), the rest of the output is left untouched
+     */
+    public static void colorize(IterationBuffer buffer, int[] pixels, int[] palette, int offset,
+                                int left, int top, int right, int bottom) {
+        float[] values = buffer.getValues();
+        int maxIterations = buffer.getMaxIterations();
+        int width = buffer.getWidth();
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            for (int x = left; x < right; x++) {
+                pixels[row + x] = color(values[row + x], maxIterations, palette, offset);
+            }
+        }
+    }
+}
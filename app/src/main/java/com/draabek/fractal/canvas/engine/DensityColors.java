@@ -0,0 +1,41 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Mapping of densities to colors shared by the density renderers. Empty pixels get the first
+ * palette color or black, the densest pixel the last palette color or white.
+ */
+final class DensityColors {
+    private DensityColors() {
+    }
+
+    /**
+     * @return Factor turning the logarithm of a density in hits into a brightness in [0, 1]
+     */
+    static double logScale(double max) {
+        return (max == 0) ? 0 : 1 / Math.log1p(max);
+    }
+
+    /**
+     * @param value Density in hits, a single hit is the faintest visible density
+     */
+    static double logBrightness(double value, double scale) {
+        return (value == 0) ? 0 : Math.log1p(value) * scale;
+    }
+
+    /**
+     * @param brightness Density mapped to [0, 1]
+     * @param empty true if nothing hit the pixel
+     */
+    static int color(double brightness, boolean empty, int[] palette, int offset) {
+        if (palette == null) {
+            int gray = (int) (brightness * 0xff);
+            return gray | gray << 8 | gray << 16 | 0xff000000;
+        }
+        if (empty) {
+            return palette[0];
+        }
+        int index = (int) (brightness * (palette.length - 1)) + offset;
+        index %= palette.length;
+        return palette[(index < 0) ? index + palette.length : index];
+    }
+}
@@ -0,0 +1,35 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Renderer that plots a frame as the density of samples it accumulates. Every call to
+ * {@link #accumulate} adds samples to those before, so the frame converges over time.
+ */
+public interface DensityRenderer {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return Number of samples taken so far
+     */
+    long getPoints();
+
+    /**
+     * @return Iterations the samples so far took, to estimate the cost of the next ones
+     */
+    long getIterations();
+
+    /**
+     * Take more samples and block until they are counted. A renderer with a finite number of
+     * samples takes fewer once it runs out.
+     */
+    void accumulate(long count);
+
+    /**
+     * Color the density
+     * @param pixels ARGB output of the frame's size
+     * @param palette Colors from sparse to dense, null for grayscale
+     * @param offset Number of palette entries to rotate the colors of hit pixels by
+     */
+    void tonemap(int[] pixels, int[] palette, int offset);
+}
@@ -0,0 +1,49 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Colorization pass for the shades {@link DistanceRenderer} writes into an
+ * {@link IterationBuffer}. Points that did not escape get the first palette color like with
+ * {@link Colorizer}, the others the color at the square root of their shade, so the glow
+ * around thin filaments fades out smoothly.
+ */
+public final class DistanceColorizer {
+    private DistanceColorizer() {
+    }
+
+    /**
+     * @param shade Distance shade in [0, 1], 0 inside the set
+     * @param palette Colors from the set outwards, null for grayscale
+     * @param offset Number of palette entries to rotate the colors of escaped points by
+     */
+    public static int color(float shade, int[] palette, int offset) {
+        double brightness = Math.sqrt(shade);
+        if (palette == null) {
+            int gray = (int) (brightness * 0xff);
+            return gray | gray << 8 | gray << 16 | 0xff000000;
+        }
+        if (shade <= 0) {
+            return palette[0];
+        }
+        int index = (int) (brightness * (palette.length - 1)) + offset;
+        index %= palette.length;
+        return palette[(index < 0) ? index + palette.length : index];
+    }
+
+    /**
+     * Colorize the whole buffer
+     * @param pixels ARGB output of the same size as the buffer
+     */
+    public static void colorize(IterationBuffer buffer, final int[] pixels, final int[] palette,
+                                final int offset) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        TileScheduler.render(width, buffer.getHeight(), (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int x = left; x < right; x++) {
+                    pixels[row + x] = color(values[row + x], palette, offset);
+                }
+            }
+        });
+    }
+}
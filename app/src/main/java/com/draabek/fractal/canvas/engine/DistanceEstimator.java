@@ -0,0 +1,24 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Kernel that can estimate the distance of a point to the boundary of its set, implemented
+ * by the escape-time kernels of holomorphic formulas. The derivative of the orbit with
+ * respect to the point is iterated along with it, the distance is about
+ * |z| ln|z| / (2 |dz|) once the orbit escaped. By the Koebe quarter theorem the true
+ * distance lies between half and four times the estimate, so comparing it to the pixel size
+ * shows thin filaments at any iteration limit.
+ */
+public interface DistanceEstimator {
+    /**
+     * Squared radius orbits have to escape beyond, much larger than for counting
+     * iterations so that the estimate is accurate
+     */
+    double ESCAPE_RADIUS_SQUARED = 1e10;
+
+    /**
+     * @param stats Counters of the tile being rendered, only touched by the calling thread
+     * @return Estimated distance of the point to the set in units of the plane,
+     * 0 if the orbit did not escape within the limit
+     */
+    double estimateDistance(double x, double y, int maxIterations, RenderStats stats);
+}
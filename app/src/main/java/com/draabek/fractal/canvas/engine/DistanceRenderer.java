@@ -0,0 +1,147 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Renders the exterior distance estimate of a {@link DistanceEstimator} instead of iteration
+ * counts. The values written to the {@link IterationBuffer} are shades in [0, 1]: the
+ * estimated distance in pixels divided by the glow width, capped at 1, and 0 for points that
+ * did not escape. Filaments thinner than a pixel still come out as a glow of the glow width,
+ * without the iteration limits and supersampling counting iterations would need.
+ * <p>
+ * The estimate also tells where the boundary is not. A pixel estimated d away has no point
+ * of the set within d / 2, so every pixel within d / 2 - 4 glow widths of it is shaded 1 by
+ * any estimate and is filled without iterating. Far from the set only a few pixels are
+ * iterated, the work goes into the band around the boundary. With more than one sample per
+ * pixel the pixels the boundary may pass through, escaped pixels estimated closer than one
+ * pixel and interior pixels next to escaped ones, are sampled again at jittered points like
+ * in {@link AdaptiveAntialiaser} and get the average shade.
+ */
+public final class DistanceRenderer {
+    /** Glow width in pixels of the fractals that do not set one */
+    public static final double DEFAULT_GLOW = 4;
+
+    private final DistanceEstimator estimator;
+
+    public DistanceRenderer(DistanceEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * Render the whole frame, the buffer is marked as holding distances
+     * @param glow Distance in pixels at which the shade reaches 1
+     * @param maxSamples Samples of a pixel the boundary may pass through, 1 for none extra
+     * @return Statistics of the frame, filled pixels are not counted
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, final int maxIterations,
+                              double glow, final int maxSamples) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(height);
+        // Glow in units of the plane, measured along the longer pixel edge
+        final double glowDistance = glow * Math.max(Math.abs(dx), Math.abs(dy));
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            RenderStats tileStats = new RenderStats();
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    values[y * width + x] = Float.NaN;
+                }
+            }
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    int index = y * width + x;
+                    if (!Float.isNaN(values[index])) {
+                        continue;
+                    }
+                    double distance = estimator.estimateDistance(x0 + x * dx, y0 + y * dy,
+                            maxIterations, tileStats);
+                    values[index] = shade(distance, glowDistance);
+                    double radius = distance / 2 - 4 * glowDistance;
+                    if (radius > 0) {
+                        fill(values, width, x, y, radius / Math.abs(dx), radius / Math.abs(dy),
+                                left, top, right, bottom);
+                    }
+                }
+            }
+            stats.add(tileStats);
+        });
+        if (maxSamples > 1) {
+            // Boundary pixels are found on the shades of the first pass
+            final float[] base = values.clone();
+            final float closest = (float) (1 / glow);
+            TileScheduler.render(width, height, (left, top, right, bottom) -> {
+                RenderStats tileStats = new RenderStats();
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        if (!isBoundary(base, width, height, x, y, closest)) {
+                            continue;
+                        }
+                        int index = y * width + x;
+                        double rotationX = AdaptiveAntialiaser.hash(index);
+                        double rotationY = AdaptiveAntialiaser.hash(~index);
+                        double sum = base[index];
+                        for (int k = 1; k < maxSamples; k++) {
+                            double jx = AdaptiveAntialiaser.fraction(
+                                    rotationX + k * AdaptiveAntialiaser.R2_X) - 0.5;
+                            double jy = AdaptiveAntialiaser.fraction(
+                                    rotationY + k * AdaptiveAntialiaser.R2_Y) - 0.5;
+                            sum += shade(estimator.estimateDistance(x0 + (x + jx) * dx,
+                                    y0 + (y + jy) * dy, maxIterations, tileStats), glowDistance);
+                        }
+                        values[index] = (float) (sum / maxSamples);
+                    }
+                }
+                stats.add(tileStats);
+            });
+        }
+        buffer.setMaxIterations(maxIterations);
+        buffer.setDistances(true);
+        return stats;
+    }
+
+    private static float shade(double distance, double glowDistance) {
+        return (float) Math.min(1, distance / glowDistance);
+    }
+
+    /**
+     * Give the shade 1 to the pixels of the tile not rendered yet within the ellipse of the
+     * given radii in pixels around a pixel
+     */
+    private static void fill(float[] values, int width, int x, int y, double radiusX,
+                             double radiusY, int left, int top, int right, int bottom) {
+        int fromY = Math.max(top, (int) Math.ceil(y - radiusY));
+        int toY = Math.min(bottom - 1, (int) (y + radiusY));
+        for (int py = fromY; py <= toY; py++) {
+            double rest = 1 - (py - y) * (py - y) / (radiusY * radiusY);
+            double halfWidth = radiusX * Math.sqrt(Math.max(0, rest));
+            int fromX = Math.max(left, (int) Math.ceil(x - halfWidth));
+            int toX = Math.min(right - 1, (int) (x + halfWidth));
+            for (int px = fromX; px <= toX; px++) {
+                int index = py * width + px;
+                if (Float.isNaN(values[index])) {
+                    values[index] = 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param closest Shade of a distance of one pixel
+     * @return true if the boundary may pass through the pixel
+     */
+    static boolean isBoundary(float[] shades, int width, int height, int x, int y,
+                              float closest) {
+        int index = y * width + x;
+        float shade = shades[index];
+        if (shade > 0) {
+            return shade < closest;
+        }
+        return ((x > 0) && (shades[index - 1] > 0))
+                || ((x < width - 1) && (shades[index + 1] > 0))
+                || ((y > 0) && (shades[index - width] > 0))
+                || ((y < height - 1) && (shades[index + width] > 0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Error-free transformations for double-double arithmetic, where a number is the unevaluated
+ * sum hi + lo of two doubles with |lo| &lt;= ulp(hi) / 2, about 106 significant bits.
+ * <p>
+ * The methods work on primitives and return the rounding error of an operation, so kernels
+ * can keep their double-double values in local variables without allocating.
+ * Products use Dekker's splitting instead of Math.fma, which Android lacks before API 33.
+ */
+public final class DoubleDouble {
+    /** 2^27 + 1, splits a double into two halves of 26 significant bits */
+    private static final double SPLITTER = 134217729.0;
+
+    private DoubleDouble() {
+    }
+
+    /**
+     * @param sum a + b rounded to double
+     * @return Exact rounding error of sum, a + b = sum + error (Knuth's TwoSum)
+     */
+    public static double twoSumError(double a, double b, double sum) {
+        double bb = sum - a;
+        return (a - (sum - bb)) + (b - bb);
+    }
+
+    /**
+     * Same as {@link #twoSumError(double, double, double)} for |a| &gt;= |b|
+     */
+    public static double quickTwoSumError(double a, double b, double sum) {
+        return b - (sum - a);
+    }
+
+    /**
+     * @param product a * b rounded to double
+     * @return Exact rounding error of product, a * b = product + error (Dekker's TwoProd)
+     */
+    public static double twoProdError(double a, double b, double product) {
+        double t = SPLITTER * a;
+        double ah = t - (t - a);
+        double al = a - ah;
+        t = SPLITTER * b;
+        double bh = t - (t - b);
+        double bl = b - bh;
+        return ((ah * bh - product) + ah * bl + al * bh) + al * bl;
+    }
+
+    /**
+     * @return Error of squaring a, cheaper than twoProdError(a, a, square)
+     */
+    public static double twoSquareError(double a, double square) {
+        double t = SPLITTER * a;
+        double ah = t - (t - a);
+        double al = a - ah;
+        return ((ah * ah - square) + 2 * ah * al) + al * al;
+    }
+
+    /**
+     * @return High part of the double-double closest to value
+     */
+    public static double hi(BigDecimal value) {
+        return value.doubleValue();
+    }
+
+    /**
+     * @return Low part of the double-double closest to value, hi being its high part
+     */
+    public static double lo(BigDecimal value, double hi) {
+        return value.subtract(new BigDecimal(hi)).doubleValue();
+    }
+}
@@ -0,0 +1,129 @@
+package com.draabek.fractal.canvas.engine;
+
+import static com.draabek.fractal.canvas.engine.DoubleDouble.quickTwoSumError;
+import static com.draabek.fractal.canvas.engine.DoubleDouble.twoProdError;
+import static com.draabek.fractal.canvas.engine.DoubleDouble.twoSquareError;
+import static com.draabek.fractal.canvas.engine.DoubleDouble.twoSumError;
+
+/**
+ * Escape-time iteration in double-double precision for zooms past the resolution of double,
+ * down to pixel sizes of about 1e-28. Coordinates are passed as hi + lo pairs and all
+ * intermediate values live in local variables, so the loop does not allocate.
+ */
+public class DoubleDoubleKernel {
+    private final Formula formula;
+    private final double kr;
+    private final double ki;
+
+    public DoubleDoubleKernel(Formula formula) {
+        this(formula, 0, 0);
+    }
+
+    /**
+     * @param kr Real part of the Julia constant, ignored by other formulas
+     * @param ki Imaginary part of the Julia constant
+     */
+    public DoubleDoubleKernel(Formula formula, double kr, double ki) {
+        this.formula = formula;
+        this.kr = kr;
+        this.ki = ki;
+    }
+
+    public Formula getFormula() {
+        return formula;
+    }
+
+    /**
+     * @return Number of iterations before the orbit of xHi + xLo, yHi + yLo escaped,
+     * maxIterations if it did not
+     */
+    public int iterate(double xHi, double xLo, double yHi, double yLo, int maxIterations,
+                       RenderStats stats) {
+        return (int) escape(xHi, xLo, yHi, yLo, maxIterations, false, stats);
+    }
+
+    /**
+     * @return Normalized iteration count like {@link EscapeTimeKernel#iterateSmooth},
+     * maxIterations if the orbit did not escape
+     */
+    public float iterateSmooth(double xHi, double xLo, double yHi, double yLo,
+                               int maxIterations, RenderStats stats) {
+        return escape(xHi, xLo, yHi, yLo, maxIterations, true, stats);
+    }
+
+    /**
+     * @param smooth true for the normalized count, false for the count itself
+     */
+    private float escape(double xHi, double xLo, double yHi, double yLo, int maxIterations,
+                         boolean smooth, RenderStats stats) {
+        double zrHi = 0;
+        double zrLo = 0;
+        double ziHi = 0;
+        double ziLo = 0;
+        double crHi = xHi;
+        double crLo = xLo;
+        double ciHi = yHi;
+        double ciLo = yLo;
+        if (formula == Formula.JULIA) {
+            zrHi = xHi;
+            zrLo = xLo;
+            ziHi = yHi;
+            ziLo = yLo;
+            crHi = kr;
+            crLo = 0;
+            ciHi = ki;
+            ciLo = 0;
+        }
+        boolean absolute = formula == Formula.BURNING_SHIP;
+        boolean conjugate = formula == Formula.TRICORN;
+        double s;
+        double e;
+        // zr^2 and zi^2
+        s = zrHi * zrHi;
+        e = twoSquareError(zrHi, s) + 2 * zrHi * zrLo;
+        double r2Hi = s + e;
+        double r2Lo = quickTwoSumError(s, e, r2Hi);
+        s = ziHi * ziHi;
+        e = twoSquareError(ziHi, s) + 2 * ziHi * ziLo;
+        double i2Hi = s + e;
+        double i2Lo = quickTwoSumError(s, e, i2Hi);
+        int i = 0;
+        while ((i < maxIterations) && (r2Hi + i2Hi <= 4.0)) {
+            // m = 2 zr zi
+            s = zrHi * ziHi;
+            e = twoProdError(zrHi, ziHi, s) + zrHi * ziLo + zrLo * ziHi;
+            double mHi = 2 * (s + e);
+            double mLo = 2 * quickTwoSumError(s, e, s + e);
+            if ((absolute && (mHi < 0)) || conjugate) {
+                mHi = -mHi;
+                mLo = -mLo;
+            }
+            // zi = m + ci
+            s = mHi + ciHi;
+            e = twoSumError(mHi, ciHi, s) + mLo + ciLo;
+            ziHi = s + e;
+            ziLo = quickTwoSumError(s, e, ziHi);
+            // zr = zr^2 - zi^2 + cr
+            s = r2Hi - i2Hi;
+            e = twoSumError(r2Hi, -i2Hi, s) + r2Lo - i2Lo;
+            double dHi = s + e;
+            double dLo = quickTwoSumError(s, e, dHi);
+            s = dHi + crHi;
+            e = twoSumError(dHi, crHi, s) + dLo + crLo;
+            zrHi = s + e;
+            zrLo = quickTwoSumError(s, e, zrHi);
+            s = zrHi * zrHi;
+            e = twoSquareError(zrHi, s) + 2 * zrHi * zrLo;
+            r2Hi = s + e;
+            r2Lo = quickTwoSumError(s, e, r2Hi);
+            s = ziHi * ziHi;
+            e = twoSquareError(ziHi, s) + 2 * ziHi * ziLo;
+            i2Hi = s + e;
+            i2Lo = quickTwoSumError(s, e, i2Hi);
+            i++;
+        }
+        stats.countPixel(i);
+        // The low parts do not matter for the fraction
+        return smooth ? formula.smooth(i, zrHi, ziHi, crHi, ciHi, maxIterations) : i;
+    }
+}
@@ -0,0 +1,95 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Tiled renderer for {@link DoubleDoubleKernel}, the counterpart of {@link EscapeTimeRenderer}
+ * for viewports whose pixels are too close together for double coordinates.
+ */
+public class DoubleDoubleRenderer {
+    private final DoubleDoubleKernel kernel;
+
+    public DoubleDoubleRenderer(DoubleDoubleKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public DoubleDoubleKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * @return true if pixel coordinates of the viewport cannot be told apart well enough
+     * in double precision
+     */
+    public static boolean isNeeded(PreciseViewport viewport, int width, int height) {
+        return Precision.forViewport(viewport, width, height).compareTo(Precision.DOUBLE) > 0;
+    }
+
+    /**
+     * Render the whole frame
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @return Statistics of the frame
+     */
+    public RenderStats render(int[] pixels, int width, int height, PreciseViewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame
+     */
+    public RenderStats render(IterationBuffer buffer, final PreciseViewport viewport,
+                              final int maxIterations) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        buffer.setMaxIterations(maxIterations);
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            RenderStats tileStats = new RenderStats();
+            render(values, width, height, viewport, maxIterations, left, top, right, bottom, 0,
+                    tileStats);
+            stats.add(tileStats);
+        });
+        stats.countPrecision(Precision.DOUBLE_DOUBLE, (long) width * height);
+        return stats;
+    }
+
+    /**
+     * Render the pixels [left, right) x [top, bottom) on the calling thread
+     * @param knownStep Pixels whose column and row are both multiples of it already hold
+     * their values and are skipped, 0 to compute all
+     */
+    void render(float[] values, int width, int height, PreciseViewport viewport,
+                int maxIterations, int left, int top, int right, int bottom, int knownStep,
+                RenderStats stats) {
+        double cxHi = DoubleDouble.hi(viewport.getCenterX());
+        double cxLo = DoubleDouble.lo(viewport.getCenterX(), cxHi);
+        double cyHi = DoubleDouble.hi(viewport.getCenterY());
+        double cyLo = DoubleDouble.lo(viewport.getCenterY(), cyHi);
+        double pixelSize = viewport.getPixelSize();
+        for (int py = top; py < bottom; py++) {
+            double dy = (py - height / 2.0) * pixelSize;
+            double s = cyHi + dy;
+            double e = DoubleDouble.twoSumError(cyHi, dy, s) + cyLo;
+            double yHi = s + e;
+            double yLo = DoubleDouble.quickTwoSumError(s, e, yHi);
+            int offset = py * width;
+            boolean knownRow = (knownStep > 0) && (py % knownStep == 0);
+            for (int px = left; px < right; px++) {
+                if (knownRow && (px % knownStep == 0)) {
+                    continue;
+                }
+                double dx = (px - width / 2.0) * pixelSize;
+                s = cxHi + dx;
+                e = DoubleDouble.twoSumError(cxHi, dx, s) + cxLo;
+                double xHi = s + e;
+                double xLo = DoubleDouble.quickTwoSumError(s, e, xHi);
+                values[offset + px] = kernel.iterateSmooth(xHi, xLo, yHi, yLo, maxIterations,
+                        stats);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * Iteration formula of an escape-time fractal, evaluated for one point of the plane.
+ * Implementations must be stateless, a single instance is shared by all render threads.
+ */
+public abstract class EscapeTimeKernel {
+    /** Logarithm of the squared escape radius 2 of the built-in kernels */
+    protected static final double LOG_ESCAPE_MAGNITUDE = Math.log(4);
+    protected static final double LOG_2 = Math.log(2);
+    /**
+     * Iterations an escaped orbit is continued for before its count is normalized, after two
+     * the count steps by less than a thousandth where it stepped by one
+     */
+    protected static final int SMOOTHING_ITERATIONS = 2;
+
+    /**
+     * @param x Real part of the point
+     * @param y Imaginary part of the point
+     * @param maxIterations Iteration limit
+     * @param stats Counters of the tile being rendered, only touched by the calling thread
+     * @return Number of iterations before the orbit escaped, maxIterations if it did not
+     */
+    public abstract int iterate(double x, double y, int maxIterations, RenderStats stats);
+
+    /**
+     * Iteration count made continuous across the steps between neighboring counts, what the
+     * renderers store. It mostly lies between the count of {@link #iterate} and the next one,
+     * kernels that cannot normalize their counts return the count itself.
+     * @return Normalized count, maxIterations if the orbit did not escape
+     */
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        return iterate(x, y, maxIterations, stats);
+    }
+
+    /**
+     * Normalize the count of an orbit {@link #continueOrbit} stopped, see
+     * {@link #iterateSmooth}
+     * @param zr Real part of z where the orbit stopped
+     * @param zi Imaginary part of z
+     */
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        return count;
+    }
+
+    /**
+     * The normalized count n + 1 - log_d(log|z_n| / log r), continuous across the steps of
+     * the count once |z_n| is large against the constant the map adds. Escaped orbits are
+     * continued for {@link #SMOOTHING_ITERATIONS} before, the radius r only rarely is.
+     * @param iterations Iterations n the orbit took, including those past the escape
+     * @param magnitude |z_n|^2
+     * @param logBailoutMagnitude Logarithm of r^2 for the escape radius r
+     * @param logDegree Logarithm of the degree d the map grows with once z is large
+     * @return Value kept within [0, maxIterations), so that it still marks an escaped orbit
+     */
+    protected static float normalize(int iterations, double magnitude,
+                                     double logBailoutMagnitude, double logDegree,
+                                     int maxIterations) {
+        double value = iterations + 1
+                - Math.log(Math.log(magnitude) / logBailoutMagnitude) / logDegree;
+        float normalized = (float) Math.max(0, value);
+        return (normalized < maxIterations) ? normalized
+                : Math.nextAfter((float) maxIterations, 0);
+    }
+
+    /**
+     * Iterate the orbit of a point further from the state it reached before, so that raising
+     * the iteration limit only costs the additional iterations
+     * @param orbit Real and imaginary part of z at [offset] and [offset + 1], updated in place
+     * to the state the iteration stopped at. Ignored when iteration is 0, the orbit then starts
+     * from the initial value of the formula. The kernel sets the real part to NaN for an
+     * orbit known to stay bounded, callers must not continue it.
+     * @param iteration Number of iterations the orbit state has done
+     * @return Number of iterations before the orbit escaped, maxIterations if it did not
+     */
+    public abstract int continueOrbit(double x, double y, double[] orbit, int offset,
+                                      int iteration, int maxIterations, RenderStats stats);
+
+    /**
+     * @return Symmetry of the iteration counts around the origin, used to skip mirrored pixels
+     */
+    public Symmetry getSymmetry() {
+        return Symmetry.NONE;
+    }
+
+    /**
+     * @return true if the level sets of the iteration count are connected, so that
+     * {@link MarianiSilverRenderer} may fill a rectangle from its border
+     */
+    public boolean hasConnectedLevelSets() {
+        return false;
+    }
+
+    /**
+     * Iterate a single point without collecting statistics
+     */
+    public int iterate(double x, double y, int maxIterations) {
+        return iterate(x, y, maxIterations, new RenderStats());
+    }
+}
@@ -0,0 +1,215 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Pure Java escape-time renderer. The frame is split into tiles by {@link TileScheduler}
+ * and every tile writes its iteration counts straight into the shared {@link IterationBuffer},
+ * the ARGB overloads colorize it afterwards.
+ * <p>
+ * Full frames of symmetric kernels only compute the part of the frame that is not
+ * a mirror image of another visible part, see {@link MirrorMap}.
+ */
+public class EscapeTimeRenderer {
+    private final EscapeTimeKernel kernel;
+
+    public EscapeTimeRenderer(EscapeTimeKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Render the whole frame
+     * @param pixels ARGB output buffer of width * height pixels
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @return Statistics of the frame
+     */
+    public RenderStats render(int[] pixels, int width, int height, Viewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Render only the pixels of the given region, the rest of the buffer is left untouched
+     */
+    public RenderStats render(int[] pixels, int width, int height, Viewport viewport,
+                              int maxIterations, int[] palette,
+                              int left, int top, int right, int bottom) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations, left, top, right, bottom);
+        Colorizer.colorize(buffer, pixels, palette, 0, left, top, right, bottom);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, int maxIterations) {
+        return render(buffer, viewport, maxIterations, null);
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame, keeping the orbits of the pixels that
+     * reach the limit so that {@link #continueRender} can raise it later
+     * @param orbits Filled with the unresolved pixels, null to keep nothing
+     * @return Statistics of the frame
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                              OrbitStore orbits) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        MirrorMap mirror = MirrorMap.create(kernel.getSymmetry(), viewport, width, height);
+        if (orbits != null) {
+            orbits.clear();
+        }
+        RenderStats stats = render(buffer, viewport, maxIterations, 0, 0, width, height, 0,
+                mirror, orbits);
+        if (orbits != null) {
+            orbits.setMaxIterations(maxIterations);
+        }
+        if (mirror != null) {
+            mirror.copy(buffer.getValues());
+            stats.countMirroredPixels(mirror.getPixelCount());
+        }
+        return stats;
+    }
+
+    /**
+     * Raise the iteration limit of a frame rendered with an {@link OrbitStore}: only the pixels
+     * that reached the old limit are iterated further, from the orbit state they stopped at
+     * @param viewport Viewport the frame was rendered for
+     * @param maxIterations New limit, greater than the one of the stored orbits
+     * @return Statistics of the continued pixels
+     */
+    public RenderStats continueRender(IterationBuffer buffer, Viewport viewport,
+                                      final int maxIterations, OrbitStore orbits) {
+        final int previousIterations = orbits.getMaxIterations();
+        if ((previousIterations == 0) || (maxIterations <= previousIterations)) {
+            throw new IllegalArgumentException("Cannot continue orbits at "
+                    + previousIterations + " iterations to " + maxIterations);
+        }
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(buffer.getHeight());
+        final OrbitStore store = orbits;
+        final double[] states = orbits.getOrbits();
+        final RenderStats stats = new RenderStats();
+        // The stored pixels form a single row of work, split into runs of tile size
+        TileScheduler.render(0, 0, orbits.size(), 1, TileScheduler.DEFAULT_TILE_SIZE,
+                (from, tileTop, to, tileBottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    for (int i = from; i < to; i++) {
+                        int pixel = store.getPixel(i);
+                        if (Double.isNaN(states[2 * i])) {
+                            // Known to stay bounded
+                            values[pixel] = maxIterations;
+                            continue;
+                        }
+                        double x = x0 + (pixel % width) * dx;
+                        double y = y0 + (pixel / width) * dy;
+                        int iterations = kernel.continueOrbit(x, y, states, 2 * i,
+                                previousIterations, maxIterations, tileStats);
+                        values[pixel] = kernel.smooth(x, y, iterations, states[2 * i],
+                                states[2 * i + 1], maxIterations);
+                    }
+                    stats.add(tileStats);
+                });
+        orbits.retainUnresolved(values, maxIterations);
+        orbits.setMaxIterations(maxIterations);
+        buffer.setMaxIterations(maxIterations);
+        MirrorMap mirror = MirrorMap.create(kernel.getSymmetry(), viewport, width,
+                buffer.getHeight());
+        if (mirror != null) {
+            mirror.copy(values);
+        }
+        return stats;
+    }
+
+    /**
+     * Compute only the pixels of the given region, the rest of the buffer is left untouched
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                              int left, int top, int right, int bottom) {
+        return render(buffer, viewport, maxIterations, left, top, right, bottom, 0, null, null);
+    }
+
+    /**
+     * Compute only the pixels of the given region that are not known yet
+     * @param knownStep Pixels whose column and row are both multiples of it already hold
+     * their values and are skipped, 0 to compute all
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                              int left, int top, int right, int bottom, int knownStep) {
+        return render(buffer, viewport, maxIterations, left, top, right, bottom, knownStep,
+                null, null);
+    }
+
+    private RenderStats render(IterationBuffer buffer, Viewport viewport, final int maxIterations,
+                               int left, int top, int right, int bottom, final int knownStep,
+                               final MirrorMap skipped, final OrbitStore orbits) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(height);
+        buffer.setMaxIterations(maxIterations);
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(left, top, right, bottom, TileScheduler.DEFAULT_TILE_SIZE,
+                (tileLeft, tileTop, tileRight, tileBottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    OrbitStore.TileOrbits unresolved = (orbits == null) ? null
+                            : new OrbitStore.TileOrbits();
+                    for (int py = tileTop; py < tileBottom; py++) {
+                        double y = y0 + py * dy;
+                        int offset = py * width;
+                        boolean knownRow = (knownStep > 0) && (py % knownStep == 0);
+                        for (int px = tileLeft; px < tileRight; px++) {
+                            if ((skipped != null) && skipped.contains(px, py)) {
+                                px = Math.max(px, skipped.getRight() - 1);
+                                continue;
+                            }
+                            if (knownRow && (px % knownStep == 0)) {
+                                continue;
+                            }
+                            if (unresolved == null) {
+                                values[offset + px] = kernel.iterateSmooth(x0 + px * dx, y,
+                                        maxIterations, tileStats);
+                                continue;
+                            }
+                            double x = x0 + px * dx;
+                            int iterations = kernel.continueOrbit(x, y, unresolved.orbit, 0, 0,
+                                    maxIterations, tileStats);
+                            values[offset + px] = kernel.smooth(x, y, iterations,
+                                    unresolved.orbit[0], unresolved.orbit[1], maxIterations);
+                            if (iterations >= maxIterations) {
+                                unresolved.keep(offset + px);
+                            }
+                        }
+                    }
+                    if (unresolved != null) {
+                        unresolved.addTo(orbits);
+                    }
+                    stats.add(tileStats);
+                });
+        stats.countPrecision(Precision.DOUBLE, (long) (right - left) * (bottom - top));
+        return stats;
+    }
+
+    /**
+     * Map a normalized iteration count to ARGB the same way the escape-time shaders do:
+     * points that did not escape get the first palette color
+     */
+    public static int color(float value, int maxIterations, int[] palette) {
+        return Colorizer.color(value, maxIterations, palette, 0);
+    }
+}
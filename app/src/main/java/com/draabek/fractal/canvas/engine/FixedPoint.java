@@ -0,0 +1,312 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Mutable signed fixed-point number of arbitrary precision. The magnitude is stored in
+ * 32 bit limbs held in a long[], limb 0 is the integer part and limb i has the weight
+ * 2^(-32 i). Keeping the limbs at 32 bits lets every partial product fit into a long,
+ * which Java can multiply without Math.multiplyHigh (missing on Android before API 31).
+ * <p>
+ * Operations write their result into this instance and never allocate, operands may
+ * be this instance itself. All operands must have the same number of limbs. Results are
+ * truncated to the precision of the last limb.
+ */
+public final class FixedPoint {
+    public static final int LIMB_BITS = 32;
+    private static final long MASK = 0xffffffffL;
+    private static final double LIMB_SCALE = 4294967296.0;
+
+    private final long[] limbs;
+    /** Column sums of products, one more than limbs to catch the carries from below */
+    private final long[] columns;
+    private boolean negative;
+
+    public FixedPoint(int limbCount) {
+        if (limbCount < 2) {
+            throw new IllegalArgumentException("At least 2 limbs needed, got " + limbCount);
+        }
+        limbs = new long[limbCount];
+        columns = new long[limbCount + 1];
+    }
+
+    /**
+     * @return Number of limbs needed to hold the given number of fractional bits
+     * plus a guard limb against truncation errors
+     */
+    public static int limbsForBits(int fractionBits) {
+        return 1 + (fractionBits + LIMB_BITS - 1) / LIMB_BITS + 1;
+    }
+
+    public int getLimbCount() {
+        return limbs.length;
+    }
+
+    public boolean isNegative() {
+        return negative;
+    }
+
+    public boolean isZero() {
+        for (long limb : limbs) {
+            if (limb != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public FixedPoint set(FixedPoint a) {
+        System.arraycopy(a.limbs, 0, limbs, 0, limbs.length);
+        negative = a.negative;
+        return this;
+    }
+
+    /**
+     * Exact conversion, as long as the bits of value fall within the precision
+     */
+    public FixedPoint set(double value) {
+        negative = value < 0;
+        double d = Math.abs(value);
+        for (int i = 0; i < limbs.length; i++) {
+            long limb = (long) d;
+            limbs[i] = limb;
+            d = (d - limb) * LIMB_SCALE;
+        }
+        return this;
+    }
+
+    /**
+     * Truncating conversion, allocates
+     */
+    public FixedPoint set(BigDecimal value) {
+        negative = value.signum() < 0;
+        BigInteger scaled = value.abs().multiply(
+                new BigDecimal(BigInteger.ONE.shiftLeft(LIMB_BITS * (limbs.length - 1))))
+                .toBigInteger();
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            limbs[i] = scaled.longValue() & MASK;
+            scaled = scaled.shiftRight(LIMB_BITS);
+        }
+        return this;
+    }
+
+    public double doubleValue() {
+        double fraction = (limbs.length > 2) ? limbs[2] / LIMB_SCALE : 0;
+        double value = limbs[0] + (limbs[1] + fraction) / LIMB_SCALE;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Exact conversion, allocates
+     */
+    public BigDecimal toBigDecimal() {
+        BigInteger magnitude = BigInteger.ZERO;
+        for (long limb : limbs) {
+            magnitude = magnitude.shiftLeft(LIMB_BITS).or(BigInteger.valueOf(limb));
+        }
+        int fractionBits = LIMB_BITS * (limbs.length - 1);
+        // 2^-k = 5^k / 10^k
+        BigDecimal value = new BigDecimal(magnitude.multiply(BigInteger.valueOf(5).pow(fractionBits)),
+                fractionBits);
+        return negative ? value.negate() : value;
+    }
+
+    public FixedPoint negate() {
+        negative = !negative;
+        return this;
+    }
+
+    public FixedPoint abs() {
+        negative = false;
+        return this;
+    }
+
+    /**
+     * Multiply by 2 in place
+     */
+    public FixedPoint twice() {
+        long carry = 0;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            long shifted = (limbs[i] << 1) | carry;
+            carry = shifted >>> LIMB_BITS;
+            limbs[i] = shifted & MASK;
+        }
+        return this;
+    }
+
+    /**
+     * this = a + b
+     */
+    public FixedPoint add(FixedPoint a, FixedPoint b) {
+        return addSigned(a, a.negative, b, b.negative);
+    }
+
+    /**
+     * this = a - b
+     */
+    public FixedPoint subtract(FixedPoint a, FixedPoint b) {
+        return addSigned(a, a.negative, b, !b.negative);
+    }
+
+    private FixedPoint addSigned(FixedPoint a, boolean aNegative, FixedPoint b, boolean bNegative) {
+        long[] x = a.limbs;
+        long[] y = b.limbs;
+        if (aNegative == bNegative) {
+            long carry = 0;
+            for (int i = limbs.length - 1; i >= 0; i--) {
+                long sum = x[i] + y[i] + carry;
+                carry = sum >>> LIMB_BITS;
+                limbs[i] = sum & MASK;
+            }
+            negative = aNegative;
+        } else if (compareMagnitudes(x, y) >= 0) {
+            subtractMagnitudes(x, y);
+            negative = aNegative;
+        } else {
+            subtractMagnitudes(y, x);
+            negative = bNegative;
+        }
+        return this;
+    }
+
+    private static int compareMagnitudes(long[] x, long[] y) {
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] != y[i]) {
+                return (x[i] < y[i]) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * limbs = x - y for x &gt;= y
+     */
+    private void subtractMagnitudes(long[] x, long[] y) {
+        long borrow = 0;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            long difference = x[i] - y[i] - borrow;
+            borrow = (difference < 0) ? 1 : 0;
+            limbs[i] = difference & MASK;
+        }
+    }
+
+    /**
+     * this = a * b
+     */
+    public FixedPoint multiply(FixedPoint a, FixedPoint b) {
+        multiplyColumns(a, b);
+        normalizeColumns();
+        negative = a.negative != b.negative;
+        return this;
+    }
+
+    /**
+     * Column sums of the limb products of a * b
+     */
+    private void multiplyColumns(FixedPoint a, FixedPoint b) {
+        long[] x = a.limbs;
+        long[] y = b.limbs;
+        int n = limbs.length;
+        Arrays.fill(columns, 0);
+        for (int i = 0; i < n; i++) {
+            long xi = x[i];
+            if (xi == 0) {
+                continue;
+            }
+            // Products of weight 2^(-32 k) for k = i + j <= n, the rest is truncated
+            for (int j = 0, k = i; k <= n && j < n; j++, k++) {
+                long p = xi * y[j];
+                columns[k] += p & MASK;
+                if (k > 0) {
+                    columns[k - 1] += p >>> LIMB_BITS;
+                }
+            }
+        }
+    }
+
+    /**
+     * this = a^2, about half the limb products of multiply(a, a)
+     */
+    public FixedPoint square(FixedPoint a) {
+        squareColumns(a);
+        normalizeColumns();
+        negative = false;
+        return this;
+    }
+
+    /**
+     * Column sums of the limb products of a^2
+     */
+    private void squareColumns(FixedPoint a) {
+        long[] x = a.limbs;
+        int n = limbs.length;
+        Arrays.fill(columns, 0);
+        for (int i = 0; 2 * i <= n && i < n; i++) {
+            long xi = x[i];
+            if (xi == 0) {
+                continue;
+            }
+            int k = 2 * i;
+            long p = xi * xi;
+            columns[k] += p & MASK;
+            if (k > 0) {
+                columns[k - 1] += p >>> LIMB_BITS;
+            }
+            // Off-diagonal products appear twice
+            for (int j = i + 1, kk = k + 1; kk <= n && j < n; j++, kk++) {
+                p = xi * x[j];
+                columns[kk] += (p & MASK) << 1;
+                columns[kk - 1] += (p >>> LIMB_BITS) << 1;
+            }
+        }
+    }
+
+    /**
+     * this = a * b + c, c must not be this instance. When the signs agree c is summed into
+     * the columns of the product, so that a single carry pass yields the result.
+     */
+    public FixedPoint multiplyAdd(FixedPoint a, FixedPoint b, FixedPoint c) {
+        multiplyColumns(a, b);
+        return addToColumns(a.negative != b.negative, c);
+    }
+
+    /**
+     * this = a^2 + c, c must not be this instance, fused like multiplyAdd
+     */
+    public FixedPoint squareAdd(FixedPoint a, FixedPoint c) {
+        squareColumns(a);
+        return addToColumns(false, c);
+    }
+
+    private FixedPoint addToColumns(boolean productNegative, FixedPoint c) {
+        if (c.negative == productNegative) {
+            long[] z = c.limbs;
+            for (int k = 0; k < limbs.length; k++) {
+                columns[k] += z[k];
+            }
+            normalizeColumns();
+            negative = productNegative;
+            return this;
+        }
+        // Opposite signs need the magnitudes compared first
+        normalizeColumns();
+        negative = productNegative;
+        return add(this, c);
+    }
+
+    private void normalizeColumns() {
+        for (int k = limbs.length; k > 0; k--) {
+            columns[k - 1] += columns[k] >>> LIMB_BITS;
+            columns[k] &= MASK;
+        }
+        System.arraycopy(columns, 0, limbs, 0, limbs.length);
+        limbs[0] &= MASK;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+}
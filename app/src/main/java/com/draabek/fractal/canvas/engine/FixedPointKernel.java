@@ -0,0 +1,116 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Escape-time iteration in {@link FixedPoint} arithmetic, exact up to the chosen number
+ * of bits at any zoom depth. Much slower than the double based kernels, every pixel
+ * iterates with full precision.
+ */
+public class FixedPointKernel {
+    private final Formula formula;
+    private final double kr;
+    private final double ki;
+
+    public FixedPointKernel(Formula formula) {
+        this(formula, 0, 0);
+    }
+
+    /**
+     * @param kr Real part of the Julia constant, ignored by other formulas
+     * @param ki Imaginary part of the Julia constant
+     */
+    public FixedPointKernel(Formula formula, double kr, double ki) {
+        this.formula = formula;
+        this.kr = kr;
+        this.ki = ki;
+    }
+
+    public Formula getFormula() {
+        return formula;
+    }
+
+    /**
+     * Temporaries of one thread, reused for every pixel it iterates
+     */
+    public static final class Workspace {
+        final FixedPoint zr;
+        final FixedPoint zi;
+        final FixedPoint cr;
+        final FixedPoint ci;
+        final FixedPoint zr2;
+        final FixedPoint zi2;
+        final FixedPoint product;
+
+        public Workspace(int limbCount) {
+            zr = new FixedPoint(limbCount);
+            zi = new FixedPoint(limbCount);
+            cr = new FixedPoint(limbCount);
+            ci = new FixedPoint(limbCount);
+            zr2 = new FixedPoint(limbCount);
+            zi2 = new FixedPoint(limbCount);
+            product = new FixedPoint(limbCount);
+        }
+    }
+
+    /**
+     * @param x Real part of the point, same number of limbs as the workspace
+     * @param y Imaginary part of the point
+     * @return Number of iterations before the orbit escaped, maxIterations if it did not
+     */
+    public int iterate(FixedPoint x, FixedPoint y, int maxIterations, Workspace workspace,
+                       RenderStats stats) {
+        return (int) escape(x, y, maxIterations, false, workspace, stats);
+    }
+
+    /**
+     * @return Normalized iteration count like {@link EscapeTimeKernel#iterateSmooth},
+     * maxIterations if the orbit did not escape
+     */
+    public float iterateSmooth(FixedPoint x, FixedPoint y, int maxIterations,
+                               Workspace workspace, RenderStats stats) {
+        return escape(x, y, maxIterations, true, workspace, stats);
+    }
+
+    /**
+     * @param smooth true for the normalized count, false for the count itself
+     */
+    private float escape(FixedPoint x, FixedPoint y, int maxIterations, boolean smooth,
+                         Workspace workspace, RenderStats stats) {
+        FixedPoint zr = workspace.zr;
+        FixedPoint zi = workspace.zi;
+        FixedPoint cr = workspace.cr;
+        FixedPoint ci = workspace.ci;
+        FixedPoint zr2 = workspace.zr2;
+        FixedPoint zi2 = workspace.zi2;
+        FixedPoint product = workspace.product;
+        if (formula == Formula.JULIA) {
+            zr.set(x);
+            zi.set(y);
+            cr.set(kr);
+            ci.set(ki);
+        } else {
+            zr.set(0);
+            zi.set(0);
+            cr.set(x);
+            ci.set(y);
+        }
+        zr2.square(zr);
+        zi2.square(zi);
+        int i = 0;
+        while ((i < maxIterations) && (zr2.doubleValue() + zi2.doubleValue() <= 4.0)) {
+            product.multiply(zr, zi).twice();
+            if (formula == Formula.BURNING_SHIP) {
+                product.abs();
+            } else if (formula == Formula.TRICORN) {
+                product.negate();
+            }
+            zi.add(product, ci);
+            zr.subtract(zr2, zi2).add(zr, cr);
+            zr2.square(zr);
+            zi2.square(zi);
+            i++;
+        }
+        stats.countPixel(i);
+        return smooth ? formula.smooth(i, zr.doubleValue(), zi.doubleValue(), cr.doubleValue(),
+                ci.doubleValue(), maxIterations) : i;
+    }
+}
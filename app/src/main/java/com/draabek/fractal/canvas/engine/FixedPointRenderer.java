@@ -0,0 +1,95 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Tiled renderer for {@link FixedPointKernel}, every tile thread has its own workspace
+ */
+public class FixedPointRenderer {
+    private final FixedPointKernel kernel;
+
+    public FixedPointRenderer(FixedPointKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public FixedPointKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Render the whole frame with the precision the viewport needs
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @return Statistics of the frame
+     */
+    public RenderStats render(int[] pixels, int width, int height, PreciseViewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame
+     */
+    public RenderStats render(IterationBuffer buffer, PreciseViewport viewport,
+                              int maxIterations) {
+        return render(buffer, viewport, maxIterations, 0, 0, buffer.getWidth(),
+                buffer.getHeight(), 0);
+    }
+
+    /**
+     * Compute only the pixels of the given region, the rest of the buffer is left untouched
+     * @param knownStep Pixels whose column and row are both multiples of it already hold
+     * their values and are skipped, 0 to compute all
+     * @return Statistics of the region
+     */
+    public RenderStats render(IterationBuffer buffer, final PreciseViewport viewport,
+                              final int maxIterations, int regionLeft, int regionTop,
+                              int regionRight, int regionBottom, final int knownStep) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        buffer.setMaxIterations(maxIterations);
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(regionLeft, regionTop, regionRight, regionBottom,
+                TileScheduler.DEFAULT_TILE_SIZE, (left, top, right, bottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    render(values, width, height, viewport, maxIterations,
+                            left, top, right, bottom, knownStep, tileStats);
+                    stats.add(tileStats);
+                });
+        stats.countPrecision(Precision.ARBITRARY,
+                (long) (regionRight - regionLeft) * (regionBottom - regionTop));
+        return stats;
+    }
+
+    /**
+     * Render the pixels [left, right) x [top, bottom) on the calling thread
+     * @param knownStep Pixels whose column and row are both multiples of it already hold
+     * their values and are skipped, 0 to compute all
+     */
+    void render(float[] values, int width, int height, PreciseViewport viewport,
+                int maxIterations, int left, int top, int right, int bottom, int knownStep,
+                RenderStats stats) {
+        int limbCount = FixedPoint.limbsForBits(viewport.getFractionBits());
+        FixedPoint centerX = new FixedPoint(limbCount).set(viewport.getCenterX());
+        FixedPoint centerY = new FixedPoint(limbCount).set(viewport.getCenterY());
+        FixedPointKernel.Workspace workspace = new FixedPointKernel.Workspace(limbCount);
+        FixedPoint offset = new FixedPoint(limbCount);
+        FixedPoint x = new FixedPoint(limbCount);
+        FixedPoint y = new FixedPoint(limbCount);
+        double pixelSize = viewport.getPixelSize();
+        for (int py = top; py < bottom; py++) {
+            y.add(centerY, offset.set((py - height / 2.0) * pixelSize));
+            int row = py * width;
+            boolean knownRow = (knownStep > 0) && (py % knownStep == 0);
+            for (int px = left; px < right; px++) {
+                if (knownRow && (px % knownStep == 0)) {
+                    continue;
+                }
+                x.add(centerX, offset.set((px - width / 2.0) * pixelSize));
+                values[row + px] = kernel.iterateSmooth(x, y, maxIterations, workspace, stats);
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fractal flame: the attractor of a system of {@link FlameTransform}s plotted by the chaos
+ * game, a point jumping through transforms picked at random by their weights. Each pixel
+ * counts the points that hit it and sums their color coordinates.
+ * <p>
+ * Every worker of the shared pool plays its own game and adds its hits to shared counts and
+ * color sums with lock-free atomic counters, like {@link BuddhabrotRenderer}. Per-worker
+ * histograms of a supersampled frame would not fit into memory on a phone. The accumulators
+ * have supersample x supersample cells per pixel. Each cell is tonemapped on its own, brightness
+ * growing with the logarithm of its count with a gamma applied, and the colors of the cells
+ * of a pixel are averaged. Edges between sparse and dense parts of the flame are
+ * anti-aliased that way, the cost is memory growing with the square of the supersampling.
+ */
+public final class FlameRenderer implements DensityRenderer {
+    public static final double DEFAULT_GAMMA = 2.2;
+    public static final int MAX_SUPERSAMPLE = 4;
+    /** Steps a game takes after it starts before its points are plotted */
+    static final int FUSE_STEPS = 20;
+    /** Points a stream plots per task, bounds the imbalance between workers */
+    static final int ROUND_POINTS = 1 << 16;
+    /** Fixed-point unit of the color sums */
+    static final int COLOR_ONE = 0xff;
+    /** Entries of the table transforms are picked from, each transform by its weight */
+    private static final int SELECTION_SIZE = 1024;
+    /** Games whose points get further from the origin than this are started again */
+    private static final double ESCAPE = 1e10;
+
+    private final FlameTransform[] transforms;
+    private final int[] selection = new int[SELECTION_SIZE];
+    private final int width;
+    private final int height;
+    private final int supersample;
+    private final int cellsX;
+    private final int cellsY;
+    private final double gamma;
+    private final double x0;
+    private final double y0;
+    private final double cellsPerUnitX;
+    private final double cellsPerUnitY;
+    private final int streams;
+    private final double[][] states;
+    private final Random[] randoms;
+    private final AtomicLongArray density;
+    private final AtomicLongArray hue;
+    private long points;
+
+    /**
+     * @param viewport Part of the plane of the transforms that the frame shows
+     * @param supersample Cells per pixel along each axis, 1 to {@link #MAX_SUPERSAMPLE}
+     * @param gamma Gamma of the brightness, higher values bring out sparse parts
+     */
+    public FlameRenderer(FlameTransform[] transforms, int width, int height, Viewport viewport,
+                         int supersample, double gamma) {
+        if (transforms.length == 0) {
+            throw new IllegalArgumentException("No transforms");
+        }
+        if ((supersample < 1) || (supersample > MAX_SUPERSAMPLE)) {
+            throw new IllegalArgumentException("Supersampling out of range: " + supersample);
+        }
+        this.transforms = transforms.clone();
+        this.width = width;
+        this.height = height;
+        this.supersample = supersample;
+        this.gamma = gamma;
+        cellsX = width * supersample;
+        cellsY = height * supersample;
+        x0 = viewport.getLeft();
+        y0 = viewport.getTop();
+        cellsPerUnitX = 1 / viewport.getPixelWidth(cellsX);
+        cellsPerUnitY = 1 / viewport.getPixelHeight(cellsY);
+        fillSelection();
+        streams = TileScheduler.getPool().getParallelism();
+        states = new double[streams][3];
+        randoms = new Random[streams];
+        for (int stream = 0; stream < streams; stream++) {
+            randoms[stream] = new Random(0x9e3779b97f4a7c15L * (stream + 1));
+            start(stream);
+        }
+        density = new AtomicLongArray(cellsX * cellsY);
+        hue = new AtomicLongArray(cellsX * cellsY);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Number of games played in parallel
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * @return Number of points plotted so far, including those outside of the frame
+     */
+    @Override
+    public synchronized long getPoints() {
+        return points;
+    }
+
+    /**
+     * @return Transforms applied so far, one per point
+     */
+    @Override
+    public synchronized long getIterations() {
+        return points;
+    }
+
+    /**
+     * @return Hits of the cell, supersample x supersample cells per pixel
+     */
+    long getDensity(int cell) {
+        return density.get(cell);
+    }
+
+    /**
+     * @return Sum of the color coordinates of the hits of the cell in {@link #COLOR_ONE} units
+     */
+    long getHue(int cell) {
+        return hue.get(cell);
+    }
+
+    /**
+     * Plot more points, shared evenly by the streams, and block until they are counted
+     */
+    @Override
+    public synchronized void accumulate(long count) {
+        long remaining = count;
+        while (remaining > 0) {
+            long round = Math.min(remaining, (long) streams * ROUND_POINTS);
+            final long share = round / streams;
+            final int extra = (int) (round % streams);
+            TileScheduler.render(0, 0, streams, 1, 1, (from, top, to, bottom) -> {
+                for (int stream = from; stream < to; stream++) {
+                    plot(stream, share + ((stream < extra) ? 1 : 0));
+                }
+            });
+            remaining -= round;
+            points += round;
+        }
+    }
+
+    /**
+     * Tonemap every cell and average the cells of each pixel. A cell gets the palette color
+     * at the average color coordinate of its hits, rotated by the offset, darkened to its
+     * brightness. Pixels nothing hit are black.
+     */
+    @Override
+    public synchronized void tonemap(final int[] pixels, final int[] palette, final int offset) {
+        long max = 0;
+        for (int cell = 0; cell < density.length(); cell++) {
+            max = Math.max(max, density.get(cell));
+        }
+        final double scale = DensityColors.logScale(max);
+        final double exponent = 1 / gamma;
+        final int cellsPerPixel = supersample * supersample;
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    double red = 0;
+                    double green = 0;
+                    double blue = 0;
+                    for (int sy = 0; sy < supersample; sy++) {
+                        int row = (y * supersample + sy) * cellsX + x * supersample;
+                        for (int cell = row; cell < row + supersample; cell++) {
+                            long count = density.get(cell);
+                            if (count == 0) {
+                                continue;
+                            }
+                            double brightness = Math.pow(
+                                    DensityColors.logBrightness(count, scale), exponent);
+                            int color = DensityColors.color(
+                                    hue.get(cell) / ((double) COLOR_ONE * count), false, palette,
+                                    offset);
+                            red += brightness * ((color >> 16) & 0xff);
+                            green += brightness * ((color >> 8) & 0xff);
+                            blue += brightness * (color & 0xff);
+                        }
+                    }
+                    pixels[y * width + x] = 0xff000000
+                            | (int) (red / cellsPerPixel) << 16
+                            | (int) (green / cellsPerPixel) << 8
+                            | (int) (blue / cellsPerPixel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Spread the transforms over the selection table by their weights
+     */
+    private void fillSelection() {
+        double total = 0;
+        for (FlameTransform transform : transforms) {
+            total += Math.max(0, transform.getWeight());
+        }
+        int entry = 0;
+        double cumulative = 0;
+        for (int i = 0; i < transforms.length; i++) {
+            cumulative += Math.max(0, transforms[i].getWeight());
+            int end = (total == 0) ? SELECTION_SIZE * (i + 1) / transforms.length
+                    : (int) Math.round(cumulative / total * SELECTION_SIZE);
+            while (entry < end) {
+                selection[entry++] = i;
+            }
+        }
+        while (entry < SELECTION_SIZE) {
+            selection[entry++] = transforms.length - 1;
+        }
+    }
+
+    /**
+     * Start the game of a stream at a random point and color and let it settle
+     */
+    private void start(int stream) {
+        double[] state = states[stream];
+        Random random = randoms[stream];
+        state[0] = 2 * random.nextDouble() - 1;
+        state[1] = 2 * random.nextDouble() - 1;
+        state[2] = random.nextDouble();
+        for (int i = 0; i < FUSE_STEPS; i++) {
+            transforms[selection[random.nextInt(SELECTION_SIZE)]].apply(state, random);
+        }
+    }
+
+    /**
+     * Play the game of a stream, counting its hits into the accumulators. A game whose
+     * point escapes or leaves the finite numbers is started again.
+     */
+    private void plot(int stream, long count) {
+        double[] state = states[stream];
+        Random random = randoms[stream];
+        for (long i = 0; i < count; i++) {
+            transforms[selection[random.nextInt(SELECTION_SIZE)]].apply(state, random);
+            double px = (state[0] - x0) * cellsPerUnitX;
+            double py = (state[1] - y0) * cellsPerUnitY;
+            if ((px >= 0) && (px < cellsX) && (py >= 0) && (py < cellsY)) {
+                int cell = (int) py * cellsX + (int) px;
+                density.incrementAndGet(cell);
+                hue.addAndGet(cell, (long) (state[2] * COLOR_ONE));
+            } else if (!(Math.abs(state[0]) < ESCAPE) || !(Math.abs(state[1]) < ESCAPE)) {
+                start(stream);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * One function of the iterated function system of a fractal flame: the affine map
+ * x' = a x + b y + c, y' = d x + e y + f followed by a weighted sum of
+ * {@link FlameVariation}s. Each application also moves the color coordinate of the point
+ * halfway towards the color of the transform, so the colors of the flame show which
+ * transforms its points came through.
+ * <p>
+ * Instances are immutable and shared by all render threads, applying one allocates nothing.
+ */
+public final class FlameTransform {
+    /** Prefix of the parameters of the transform with index i, "xform" + i + "." */
+    public static final String PREFIX = "xform";
+    /** Keeps points at the origin from dividing by zero */
+    private static final double EPSILON = 1e-10;
+
+    private final double a;
+    private final double b;
+    private final double c;
+    private final double d;
+    private final double e;
+    private final double f;
+    private final double weight;
+    private final double color;
+    private final FlameVariation[] variations;
+    private final double[] amounts;
+    /** true if a variation needs theta, atan2 is too slow to compute for nothing */
+    private final boolean angular;
+
+    /**
+     * @param affine Coefficients a, b, c, d, e and f of the affine map
+     * @param weight Relative probability of the transform being picked
+     * @param color Color coordinate in [0, 1] the transform pulls its points towards
+     * @param variations Variations summed after the affine map
+     * @param amounts Weight of each variation in the sum
+     */
+    public FlameTransform(double[] affine, double weight, double color,
+                          FlameVariation[] variations, double[] amounts) {
+        if ((affine.length != 6) || (variations.length != amounts.length)) {
+            throw new IllegalArgumentException("Malformed transform");
+        }
+        a = affine[0];
+        b = affine[1];
+        c = affine[2];
+        d = affine[3];
+        e = affine[4];
+        f = affine[5];
+        this.weight = weight;
+        this.color = color;
+        this.variations = variations.clone();
+        this.amounts = amounts.clone();
+        boolean needsAngle = false;
+        for (FlameVariation variation : variations) {
+            switch (variation) {
+                case POLAR:
+                case HANDKERCHIEF:
+                case HEART:
+                case DISC:
+                case SPIRAL:
+                case HYPERBOLIC:
+                case DIAMOND:
+                case EX:
+                case JULIA:
+                    needsAngle = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        angular = needsAngle;
+    }
+
+    /**
+     * Read the transforms from fractal parameters. The transform with index i is given by
+     * "xform<i>.weight", which must be present, the affine coefficients "xform<i>.a" to
+     * "xform<i>.f", identity by default, "xform<i>.color" and one parameter per variation
+     * named by {@link FlameVariation#getKey()}, e.g. "xform<i>.swirl". A transform without
+     * variations is linear. Indices count up from 0, the first missing weight ends the list.
+     * @return Transforms in the order of their indices, empty if there are none
+     */
+    public static FlameTransform[] fromParameters(Map<String, Float> parameters) {
+        int count = 0;
+        while (parameters.containsKey(PREFIX + count + ".weight")) {
+            count++;
+        }
+        FlameTransform[] transforms = new FlameTransform[count];
+        for (int i = 0; i < count; i++) {
+            String prefix = PREFIX + i + ".";
+            double[] affine = {
+                    get(parameters, prefix + "a", 1), get(parameters, prefix + "b", 0),
+                    get(parameters, prefix + "c", 0), get(parameters, prefix + "d", 0),
+                    get(parameters, prefix + "e", 1), get(parameters, prefix + "f", 0)};
+            List<FlameVariation> variations = new ArrayList<>();
+            List<Double> amounts = new ArrayList<>();
+            for (FlameVariation variation : FlameVariation.values()) {
+                Float amount = parameters.get(prefix + variation.getKey());
+                if ((amount != null) && (amount != 0)) {
+                    variations.add(variation);
+                    amounts.add((double) amount);
+                }
+            }
+            if (variations.isEmpty()) {
+                variations.add(FlameVariation.LINEAR);
+                amounts.add(1.0);
+            }
+            double[] amountArray = new double[amounts.size()];
+            for (int k = 0; k < amountArray.length; k++) {
+                amountArray[k] = amounts.get(k);
+            }
+            transforms[i] = new FlameTransform(affine, get(parameters, prefix + "weight", 1),
+                    get(parameters, prefix + "color", (count == 1) ? 0 : i / (count - 1.0)),
+                    variations.toArray(new FlameVariation[0]), amountArray);
+        }
+        return transforms;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public double getColor() {
+        return color;
+    }
+
+    /**
+     * Map a point in place
+     * @param point x, y and the color coordinate
+     * @param random Random numbers of the calling thread, for the variations that need them
+     */
+    public void apply(double[] point, Random random) {
+        double x = a * point[0] + b * point[1] + c;
+        double y = d * point[0] + e * point[1] + f;
+        double r2 = x * x + y * y + EPSILON;
+        double r = Math.sqrt(r2);
+        double theta = angular ? Math.atan2(x, y) : 0;
+        double outX = 0;
+        double outY = 0;
+        for (int k = 0; k < variations.length; k++) {
+            double w = amounts[k];
+            switch (variations[k]) {
+                case LINEAR:
+                    outX += w * x;
+                    outY += w * y;
+                    break;
+                case SINUSOIDAL:
+                    outX += w * Math.sin(x);
+                    outY += w * Math.sin(y);
+                    break;
+                case SPHERICAL:
+                    outX += w * x / r2;
+                    outY += w * y / r2;
+                    break;
+                case SWIRL: {
+                    double sin = Math.sin(r2);
+                    double cos = Math.cos(r2);
+                    outX += w * (x * sin - y * cos);
+                    outY += w * (x * cos + y * sin);
+                    break;
+                }
+                case HORSESHOE:
+                    outX += w * (x - y) * (x + y) / r;
+                    outY += w * 2 * x * y / r;
+                    break;
+                case POLAR:
+                    outX += w * theta / Math.PI;
+                    outY += w * (r - 1);
+                    break;
+                case HANDKERCHIEF:
+                    outX += w * r * Math.sin(theta + r);
+                    outY += w * r * Math.cos(theta - r);
+                    break;
+                case HEART:
+                    outX += w * r * Math.sin(theta * r);
+                    outY -= w * r * Math.cos(theta * r);
+                    break;
+                case DISC: {
+                    double scale = w * theta / Math.PI;
+                    outX += scale * Math.sin(Math.PI * r);
+                    outY += scale * Math.cos(Math.PI * r);
+                    break;
+                }
+                case SPIRAL:
+                    outX += w * (Math.cos(theta) + Math.sin(r)) / r;
+                    outY += w * (Math.sin(theta) - Math.cos(r)) / r;
+                    break;
+                case HYPERBOLIC:
+                    outX += w * Math.sin(theta) / r;
+                    outY += w * r * Math.cos(theta);
+                    break;
+                case DIAMOND:
+                    outX += w * Math.sin(theta) * Math.cos(r);
+                    outY += w * Math.cos(theta) * Math.sin(r);
+                    break;
+                case EX: {
+                    double p = Math.sin(theta + r);
+                    double q = Math.cos(theta - r);
+                    double p3 = p * p * p;
+                    double q3 = q * q * q;
+                    outX += w * r * (p3 + q3);
+                    outY += w * r * (p3 - q3);
+                    break;
+                }
+                case JULIA: {
+                    double angle = theta / 2 + (random.nextBoolean() ? Math.PI : 0);
+                    double scale = w * Math.sqrt(r);
+                    outX += scale * Math.cos(angle);
+                    outY += scale * Math.sin(angle);
+                    break;
+                }
+                case BENT:
+                    outX += w * ((x < 0) ? 2 * x : x);
+                    outY += w * ((y < 0) ? y / 2 : y);
+                    break;
+                case FISHEYE:
+                    outX += w * 2 / (r + 1) * y;
+                    outY += w * 2 / (r + 1) * x;
+                    break;
+                case EXPONENTIAL: {
+                    double scale = w * Math.exp(x - 1);
+                    outX += scale * Math.cos(Math.PI * y);
+                    outY += scale * Math.sin(Math.PI * y);
+                    break;
+                }
+                case COSINE:
+                    outX += w * Math.cos(Math.PI * x) * Math.cosh(y);
+                    outY -= w * Math.sin(Math.PI * x) * Math.sinh(y);
+                    break;
+                case BUBBLE:
+                    outX += w * 4 / (r2 + 4) * x;
+                    outY += w * 4 / (r2 + 4) * y;
+                    break;
+                case CYLINDER:
+                    outX += w * Math.sin(x);
+                    outY += w * y;
+                    break;
+                default:
+                    break;
+            }
+        }
+        point[0] = outX;
+        point[1] = outY;
+        point[2] = (point[2] + color) / 2;
+    }
+
+    private static double get(Map<String, Float> parameters, String name, double defaultValue) {
+        Float value = parameters.get(name);
+        return (value == null) ? defaultValue : value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Locale;
+
+/**
+ * Nonlinear functions a {@link FlameTransform} blends after its affine part, numbered and
+ * defined like in the original fractal flame algorithm by Draves and Reckase. The point
+ * (x, y) is the output of the affine part, r its distance from the origin and theta the
+ * angle atan2(x, y).
+ */
+public enum FlameVariation {
+    /** (x, y) */
+    LINEAR,
+    /** (sin x, sin y) */
+    SINUSOIDAL,
+    /** (x, y) / r^2 */
+    SPHERICAL,
+    /** (x sin r^2 - y cos r^2, x cos r^2 + y sin r^2) */
+    SWIRL,
+    /** ((x - y)(x + y), 2xy) / r */
+    HORSESHOE,
+    /** (theta / pi, r - 1) */
+    POLAR,
+    /** r (sin(theta + r), cos(theta - r)) */
+    HANDKERCHIEF,
+    /** r (sin(theta r), -cos(theta r)) */
+    HEART,
+    /** theta / pi (sin(pi r), cos(pi r)) */
+    DISC,
+    /** (cos theta + sin r, sin theta - cos r) / r */
+    SPIRAL,
+    /** (sin theta / r, r cos theta) */
+    HYPERBOLIC,
+    /** (sin theta cos r, cos theta sin r) */
+    DIAMOND,
+    /** r (p^3 + q^3, p^3 - q^3) with p = sin(theta + r), q = cos(theta - r) */
+    EX,
+    /** sqrt(r) (cos(theta / 2 + w), sin(theta / 2 + w)), w randomly 0 or pi */
+    JULIA,
+    /** x doubled where negative, y halved where negative */
+    BENT,
+    /** 2 / (r + 1) (y, x) */
+    FISHEYE,
+    /** e^(x - 1) (cos(pi y), sin(pi y)) */
+    EXPONENTIAL,
+    /** (cos(pi x) cosh y, -sin(pi x) sinh y) */
+    COSINE,
+    /** 4 / (r^2 + 4) (x, y) */
+    BUBBLE,
+    /** (sin x, y) */
+    CYLINDER;
+
+    /**
+     * @return Name of the variation in the fractal parameters
+     */
+    public String getKey() {
+        return name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,42 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Quadratic escape-time formulas implemented by the extended precision kernels
+ */
+public enum Formula {
+    /** z -> z^2 + c, starting from z = 0 */
+    MANDELBROT,
+    /** z -> z^2 + k for a fixed k, starting from z = c */
+    JULIA,
+    /** z -> (|Re z| + i |Im z|)^2 + c, starting from z = 0 */
+    BURNING_SHIP,
+    /** z -> conj(z)^2 + c, starting from z = 0 */
+    TRICORN;
+
+    /**
+     * Normalized count of an orbit that stopped at z, see
+     * {@link EscapeTimeKernel#iterateSmooth}. An escaped orbit is continued in double
+     * precision, which is plenty once it escaped.
+     * @param cr Real part of the constant the formula adds, c or the Julia constant
+     * @param ci Imaginary part of the constant
+     */
+    public float smooth(int count, double zr, double zi, double cr, double ci,
+                        int maxIterations) {
+        if (count >= maxIterations) {
+            return count;
+        }
+        for (int k = 0; k < EscapeTimeKernel.SMOOTHING_ITERATIONS; k++) {
+            double m = 2 * zr * zi;
+            if (this == BURNING_SHIP) {
+                m = Math.abs(m);
+            } else if (this == TRICORN) {
+                m = -m;
+            }
+            zr = zr * zr - zi * zi + cr;
+            zi = m + ci;
+        }
+        return EscapeTimeKernel.normalize(count + EscapeTimeKernel.SMOOTHING_ITERATIONS,
+                zr * zr + zi * zi, EscapeTimeKernel.LOG_ESCAPE_MAGNITUDE, EscapeTimeKernel.LOG_2,
+                maxIterations);
+    }
+}
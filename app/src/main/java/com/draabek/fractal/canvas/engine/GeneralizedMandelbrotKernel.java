@@ -0,0 +1,149 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * z -> z^p + c for a real exponent p, starting from z = c like the generalized_mandelbrot
+ * shader. Integer exponents from 2 to {@link #MAX_MULTIPLIED_EXPONENT} are raised by
+ * repeated multiplication, any other through the polar form of z with the principal branch
+ * of the logarithm. Each has a loop of its own, picked once per pixel. Like the shader, the
+ * first step is taken before checking z, so even a c beyond the escape radius counts one.
+ */
+public class GeneralizedMandelbrotKernel extends EscapeTimeKernel {
+    /** Largest exponent raised by multiplication, beyond it the polar form is cheaper */
+    static final int MAX_MULTIPLIED_EXPONENT = 16;
+
+    private final double exponent;
+    /** Integer exponent raised by multiplication, 0 if the polar form is used */
+    private final int power;
+    /** Logarithm of the exponent the counts are normalized with, 0 if they are not */
+    private final double logExponent;
+
+    public GeneralizedMandelbrotKernel(double exponent) {
+        this.exponent = exponent;
+        power = ((exponent == Math.rint(exponent)) && (exponent >= 2)
+                && (exponent <= MAX_MULTIPLIED_EXPONENT)) ? (int) exponent : 0;
+        // Orbits grow like |z|^p once they escape only for exponents above 1
+        logExponent = (exponent > 1) ? Math.log(exponent) : 0;
+    }
+
+    public double getExponent() {
+        return exponent;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        int i = (int) ((power > 0) ? multiply(x, y, x, y, 0, maxIterations, false, null, 0)
+                : polar(x, y, x, y, 0, maxIterations, false, null, 0));
+        stats.countPixel(i);
+        return i;
+    }
+
+    @Override
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        float value = (power > 0) ? multiply(x, y, x, y, 0, maxIterations, true, null, 0)
+                : polar(x, y, x, y, 0, maxIterations, true, null, 0);
+        stats.countPixel((int) value);
+        return value;
+    }
+
+    @Override
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        if ((count >= maxIterations) || (logExponent == 0)) {
+            return count;
+        }
+        for (int k = 0; k < SMOOTHING_ITERATIONS; k++) {
+            double pr;
+            double pi;
+            if (power > 0) {
+                pr = zr;
+                pi = zi;
+                for (int j = 1; j < power; j++) {
+                    double t = pr * zr - pi * zi;
+                    pi = pr * zi + pi * zr;
+                    pr = t;
+                }
+            } else {
+                double modulus = Math.exp(0.5 * exponent * Math.log(zr * zr + zi * zi));
+                double angle = exponent * Math.atan2(zi, zr);
+                pr = modulus * Math.cos(angle);
+                pi = modulus * Math.sin(angle);
+            }
+            zr = pr + x;
+            zi = pi + y;
+        }
+        return normalize(count + SMOOTHING_ITERATIONS, zr * zr + zi * zi, LOG_ESCAPE_MAGNITUDE,
+                logExponent, maxIterations);
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        double zr = (iteration > 0) ? orbit[offset] : x;
+        double zi = (iteration > 0) ? orbit[offset + 1] : y;
+        int i = (int) ((power > 0)
+                ? multiply(x, y, zr, zi, iteration, maxIterations, false, orbit, offset)
+                : polar(x, y, zr, zi, iteration, maxIterations, false, orbit, offset));
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    /**
+     * Iterate from z with the integer exponent
+     * @param smooth true for the normalized count, false for the count itself
+     * @param orbit Receives the last z at offset, null if not needed
+     * @return Iteration the orbit escaped at, maxIterations if it did not
+     */
+    private float multiply(double x, double y, double zr, double zi, int iteration,
+                           int maxIterations, boolean smooth, double[] orbit, int offset) {
+        int i = iteration;
+        while ((i < maxIterations) && ((i == 0) || (zr * zr + zi * zi <= 4.0))) {
+            double pr = zr;
+            double pi = zi;
+            for (int k = 1; k < power; k++) {
+                double t = pr * zr - pi * zi;
+                pi = pr * zi + pi * zr;
+                pr = t;
+            }
+            zr = pr + x;
+            zi = pi + y;
+            i++;
+        }
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+        return smooth ? smooth(x, y, i, zr, zi, maxIterations) : i;
+    }
+
+    /**
+     * Iterate from z with the real exponent, z^p = exp(p log z)
+     * @param smooth true for the normalized count, false for the count itself
+     * @param orbit Receives the last z at offset, null if not needed
+     * @return Iteration the orbit escaped at, maxIterations if it did not
+     */
+    private float polar(double x, double y, double zr, double zi, int iteration,
+                        int maxIterations, boolean smooth, double[] orbit, int offset) {
+        int i = iteration;
+        double magnitude = zr * zr + zi * zi;
+        while ((i < maxIterations) && ((i == 0) || (magnitude <= 4.0))) {
+            double modulus = Math.exp(0.5 * exponent * Math.log(magnitude));
+            double angle = exponent * Math.atan2(zi, zr);
+            zr = modulus * Math.cos(angle) + x;
+            zi = modulus * Math.sin(angle) + y;
+            magnitude = zr * zr + zi * zi;
+            i++;
+        }
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+        return smooth ? smooth(x, y, i, zr, zi, maxIterations) : i;
+    }
+}
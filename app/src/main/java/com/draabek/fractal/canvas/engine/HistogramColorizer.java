@@ -0,0 +1,114 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Colorization pass that spreads the palette evenly over the pixels instead of over the
+ * iteration range. Escaped points get the color at their rank among all escaped points of
+ * the frame, the cumulative distribution of the iteration histogram, so deep views whose
+ * counts crowd into a narrow range still use the whole palette. Points that did not escape
+ * get the first palette color like with {@link Colorizer}.
+ * <p>
+ * The histogram is built in parallel, each band of rows counts into its own bins that are
+ * summed afterwards. Only the buffer is read, the fractal is not iterated again.
+ */
+public final class HistogramColorizer {
+    private HistogramColorizer() {
+    }
+
+    /**
+     * Colorize the whole buffer, the result depends on every value of the frame
+     * @param pixels ARGB output of the same size as the buffer
+     * @param palette Colors indexed by rank, null for grayscale
+     * @param offset Number of palette entries to rotate the escaped colors by
+     */
+    public static void colorize(IterationBuffer buffer, final int[] pixels, final int[] palette,
+                                final int offset) {
+        final float[] values = buffer.getValues();
+        final int maxIterations = buffer.getMaxIterations();
+        final int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        final int[] cumulative = cumulate(histogram(buffer));
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int x = left; x < right; x++) {
+                    pixels[row + x] = color(values[row + x], maxIterations, cumulative, palette,
+                            offset);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param cumulative Cumulative histogram of the frame the value belongs to, see
+     * {@link #cumulate}
+     */
+    static int color(float value, int maxIterations, int[] cumulative, int[] palette,
+                     int offset) {
+        double total = cumulative[maxIterations];
+        if ((value >= maxIterations) || (total == 0)) {
+            return Colorizer.color(value, maxIterations, palette, offset);
+        }
+        return color(rank(value, cumulative) / total, palette, offset);
+    }
+
+    /**
+     * @return Number of escaped pixels per whole iteration count, the last bin is unused
+     */
+    static int[] histogram(IterationBuffer buffer) {
+        final float[] values = buffer.getValues();
+        final int maxIterations = buffer.getMaxIterations();
+        final int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        final int[] bins = new int[maxIterations + 1];
+        // One band of rows per worker, a tile per band
+        int workers = TileScheduler.getPool().getParallelism();
+        int bandHeight = Math.max(1, (height + workers - 1) / workers);
+        TileScheduler.render(0, 0, 1, height, bandHeight, (left, top, right, bottom) -> {
+            int[] band = new int[maxIterations + 1];
+            for (int i = top * width; i < bottom * width; i++) {
+                float value = values[i];
+                if (value < maxIterations) {
+                    band[Math.max(0, (int) value)]++;
+                }
+            }
+            synchronized (bins) {
+                for (int i = 0; i < maxIterations; i++) {
+                    bins[i] += band[i];
+                }
+            }
+        });
+        return bins;
+    }
+
+    /**
+     * @return Element i holds the number of escaped pixels with counts below i, the last one
+     * the number of all escaped pixels
+     */
+    static int[] cumulate(int[] histogram) {
+        int[] cumulative = new int[histogram.length];
+        for (int i = 1; i < histogram.length; i++) {
+            cumulative[i] = cumulative[i - 1] + histogram[i - 1];
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return Number of escaped pixels with lower counts, fractional counts are placed
+     * linearly within their bin so smooth values stay smooth
+     */
+    private static double rank(float value, int[] cumulative) {
+        int bin = Math.max(0, (int) value);
+        double fraction = Math.max(0, value - bin);
+        return cumulative[bin] + fraction * (cumulative[bin + 1] - cumulative[bin]);
+    }
+
+    private static int color(double rank, int[] palette, int offset) {
+        if (palette == null) {
+            int gray = (int) ((1 - rank) * 0xff);
+            return gray | gray << 8 | gray << 16 | 0xff000000;
+        }
+        int index = (int) (rank * palette.length) + offset;
+        index %= palette.length;
+        return palette[(index < 0) ? index + palette.length : index];
+    }
+}
@@ -0,0 +1,304 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Draws the boundary of the Julia set of z -> z^2 + k by the modified inverse iteration
+ * method. The preimages +-sqrt(z - k) of a point of the Julia set are in the set too, so
+ * walking the tree of preimages of the repelling fixed point visits nothing but the
+ * boundary. Plain inverse iteration revisits the parts where the inverse contracts weakly
+ * and never reaches the thin ones. Here every pixel passes on only its first
+ * {@link #getMaxHits} visits, later ones prune their whole subtree. The walk ends by itself
+ * after at most the maximal hits of every pixel the boundary crosses, with one square root
+ * per point instead of a whole escape-time orbit per pixel.
+ * <p>
+ * The tree is walked depth first by a stream of the shared pool each, every stream taking
+ * subtrees off its own stack. Between rounds the streams that ran dry get the shallow half of
+ * the largest stack. The hit counts are shared and claimed atomically, which keeps the cap
+ * exact whichever stream gets to a pixel first. Points outside of the frame are capped on a
+ * coarse grid over the whole set, so views zoomed into a small part of the set get fewer
+ * points: this is a renderer for previews, deep views are left to the escape-time ones.
+ */
+public final class InverseJuliaRenderer implements DensityRenderer {
+    /** Visits of a pixel the walk passes on if the fractal does not set a limit */
+    public static final int DEFAULT_MAX_HITS = 16;
+    /** Points a stream walks before the stacks are balanced again */
+    static final int ROUND_POINTS = 1 << 16;
+    /** Cells along each axis of the grid capping the points outside of the frame */
+    static final int OUTSIDE_GRID = 512;
+
+    private final double kr;
+    private final double ki;
+    private final int width;
+    private final int height;
+    private final int maxHits;
+    private final double x0;
+    private final double y0;
+    private final double pixelsPerUnitX;
+    private final double pixelsPerUnitY;
+    /** Radius of the disc around the origin the Julia set lies in */
+    private final double radius;
+    private final double cellsPerUnit;
+    private final int streams;
+    private final double[][] stacks;
+    /** Number of points on the stack of each stream */
+    private final int[] sizes;
+    private final AtomicIntegerArray hits;
+    private final AtomicIntegerArray outsideHits;
+    private long points;
+
+    /**
+     * @param viewport Part of the plane the frame shows
+     * @param maxHits Visits of a pixel the walk passes on
+     */
+    public InverseJuliaRenderer(double kr, double ki, int width, int height, Viewport viewport,
+                                int maxHits) {
+        if (maxHits < 1) {
+            throw new IllegalArgumentException("At least one hit per pixel needed");
+        }
+        this.kr = kr;
+        this.ki = ki;
+        this.width = width;
+        this.height = height;
+        this.maxHits = maxHits;
+        x0 = viewport.getLeft();
+        y0 = viewport.getTop();
+        pixelsPerUnitX = 1 / viewport.getPixelWidth(width);
+        pixelsPerUnitY = 1 / viewport.getPixelHeight(height);
+        radius = (1 + Math.sqrt(1 + 4 * Math.hypot(kr, ki))) / 2;
+        cellsPerUnit = OUTSIDE_GRID / (2 * radius);
+        streams = TileScheduler.getPool().getParallelism();
+        stacks = new double[streams][];
+        sizes = new int[streams];
+        for (int stream = 0; stream < streams; stream++) {
+            stacks[stream] = new double[64];
+        }
+        double[] fixedPoint = getRepellingFixedPoint(kr, ki);
+        stacks[0][0] = fixedPoint[0];
+        stacks[0][1] = fixedPoint[1];
+        sizes[0] = 1;
+        hits = new AtomicIntegerArray(width * height);
+        outsideHits = new AtomicIntegerArray(OUTSIDE_GRID * OUTSIDE_GRID);
+    }
+
+    /**
+     * @return The fixed point 1/2 + sqrt(1/4 - k) of z -> z^2 + k, where the derivative 2z
+     * has a modulus of at least 1 since the principal root has no negative real part
+     */
+    static double[] getRepellingFixedPoint(double kr, double ki) {
+        double[] root = new double[2];
+        sqrt(0.25 - kr, -ki, root);
+        root[0] += 0.5;
+        return root;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxHits() {
+        return maxHits;
+    }
+
+    /**
+     * @return Number of points taken off the stacks so far, pruned ones included
+     */
+    @Override
+    public synchronized long getPoints() {
+        return points;
+    }
+
+    /**
+     * @return Points walked so far, one square root each
+     */
+    @Override
+    public synchronized long getIterations() {
+        return points;
+    }
+
+    /**
+     * @return true once every subtree of the walk was pruned, more points add nothing
+     */
+    public synchronized boolean isFinished() {
+        for (int size : sizes) {
+            if (size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Visits of each pixel passed on so far
+     */
+    int[] getDensity() {
+        int[] density = new int[width * height];
+        for (int i = 0; i < density.length; i++) {
+            density[i] = hits.get(i);
+        }
+        return density;
+    }
+
+    /**
+     * Walk more points, fewer once the walk finishes, and block until they are plotted
+     */
+    @Override
+    public synchronized void accumulate(long count) {
+        long remaining = count;
+        while ((remaining > 0) && !isFinished()) {
+            balance();
+            int active = 0;
+            final int[] working = new int[streams];
+            for (int stream = 0; stream < streams; stream++) {
+                if (sizes[stream] > 0) {
+                    working[active++] = stream;
+                }
+            }
+            long round = Math.min(remaining, (long) active * ROUND_POINTS);
+            final long share = round / active;
+            final int extra = (int) (round % active);
+            final long[] walked = new long[streams];
+            TileScheduler.render(0, 0, active, 1, 1, (from, top, to, bottom) -> {
+                for (int i = from; i < to; i++) {
+                    walked[working[i]] = walk(working[i], share + ((i < extra) ? 1 : 0));
+                }
+            });
+            for (long taken : walked) {
+                remaining -= taken;
+                points += taken;
+            }
+        }
+    }
+
+    /**
+     * Color the visits on a logarithmic scale, see {@link DensityColors}
+     */
+    @Override
+    public synchronized void tonemap(final int[] pixels, final int[] palette, final int offset) {
+        int max = 0;
+        for (int i = 0; i < width * height; i++) {
+            max = Math.max(max, hits.get(i));
+        }
+        final double scale = DensityColors.logScale(max);
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                for (int x = left; x < right; x++) {
+                    int value = hits.get(row + x);
+                    pixels[row + x] = DensityColors.color(
+                            DensityColors.logBrightness(value, scale), value == 0, palette,
+                            offset);
+                }
+            }
+        });
+    }
+
+    /**
+     * Take points off the stack of a stream, pushing the preimages of those not pruned
+     * @return Number of points taken, fewer than asked if the stack ran dry
+     */
+    private long walk(int stream, long count) {
+        double[] stack = stacks[stream];
+        int size = sizes[stream];
+        double[] root = new double[2];
+        long taken = 0;
+        while ((taken < count) && (size > 0)) {
+            size--;
+            double zr = stack[2 * size];
+            double zi = stack[2 * size + 1];
+            taken++;
+            if (!claim(zr, zi)) {
+                continue;
+            }
+            if (2 * size + 4 > stack.length) {
+                double[] grown = new double[2 * stack.length];
+                System.arraycopy(stack, 0, grown, 0, 2 * size);
+                stack = grown;
+                stacks[stream] = stack;
+            }
+            sqrt(zr - kr, zi - ki, root);
+            stack[2 * size] = root[0];
+            stack[2 * size + 1] = root[1];
+            stack[2 * size + 2] = -root[0];
+            stack[2 * size + 3] = -root[1];
+            size += 2;
+        }
+        sizes[stream] = size;
+        return taken;
+    }
+
+    /**
+     * Count a visit of the pixel or, outside of the frame, the grid cell of a point
+     * @return false if the cell already had all its visits and the subtree is pruned
+     */
+    private boolean claim(double zr, double zi) {
+        double px = (zr - x0) * pixelsPerUnitX;
+        double py = (zi - y0) * pixelsPerUnitY;
+        if ((px >= 0) && (px < width) && (py >= 0) && (py < height)) {
+            return claim(hits, (int) py * width + (int) px);
+        }
+        int cx = (int) ((zr + radius) * cellsPerUnit);
+        int cy = (int) ((zi + radius) * cellsPerUnit);
+        cx = Math.max(0, Math.min(OUTSIDE_GRID - 1, cx));
+        cy = Math.max(0, Math.min(OUTSIDE_GRID - 1, cy));
+        return claim(outsideHits, cy * OUTSIDE_GRID + cx);
+    }
+
+    private boolean claim(AtomicIntegerArray counts, int index) {
+        while (true) {
+            int count = counts.get(index);
+            if (count >= maxHits) {
+                return false;
+            }
+            if (counts.compareAndSet(index, count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give every empty stack the bottom half of the largest one, the shallowest points of a
+     * depth-first walk having the largest subtrees
+     */
+    private void balance() {
+        for (int stream = 0; stream < streams; stream++) {
+            if (sizes[stream] > 0) {
+                continue;
+            }
+            int largest = 0;
+            for (int other = 1; other < streams; other++) {
+                if (sizes[other] > sizes[largest]) {
+                    largest = other;
+                }
+            }
+            int size = sizes[largest];
+            if (size < 2) {
+                return;
+            }
+            int moved = size / 2;
+            double[] from = stacks[largest];
+            if (stacks[stream].length < 2 * moved) {
+                stacks[stream] = new double[2 * from.length];
+            }
+            System.arraycopy(from, 0, stacks[stream], 0, 2 * moved);
+            System.arraycopy(from, 2 * moved, from, 0, 2 * (size - moved));
+            sizes[stream] = moved;
+            sizes[largest] = size - moved;
+        }
+    }
+
+    /**
+     * Principal square root, the one with a non-negative real part
+     */
+    private static void sqrt(double re, double im, double[] root) {
+        double modulus = Math.sqrt(re * re + im * im);
+        root[0] = Math.sqrt((modulus + re) / 2);
+        root[1] = Math.copySign(Math.sqrt(Math.max(0, (modulus - re) / 2)), im);
+    }
+}
@@ -0,0 +1,71 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Per-pixel result of an escape-time render before any color is applied. A value is the
+ * normalized number of iterations before the orbit escaped, see
+ * {@link EscapeTimeKernel#iterateSmooth}: its whole part is the count and the fraction
+ * follows |z| at the escape. Values of at least {@link #getMaxIterations()} mark points that
+ * did not escape.
+ * <p>
+ * Keeping the buffer lets {@link Colorizer} repaint a frame with another palette in a single
+ * cheap pass instead of iterating again. Frames of {@link DistanceRenderer} hold distance
+ * shades instead of counts, see {@link #isDistances()}.
+ */
+public final class IterationBuffer {
+    private final int width;
+    private final int height;
+    private final float[] values;
+    private int maxIterations;
+    private boolean distances;
+
+    public IterationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        values = new float[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Values row by row, written directly by the renderers
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return Iteration limit the values were computed with
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @return true if the values are shades of {@link DistanceRenderer}, to be colorized by
+     * {@link DistanceColorizer}
+     */
+    public boolean isDistances() {
+        return distances;
+    }
+
+    public void setDistances(boolean distances) {
+        this.distances = distances;
+    }
+
+    /**
+     * @return true if the buffer can hold a frame of the given size
+     */
+    public boolean fits(int width, int height) {
+        return (this.width == width) && (this.height == height);
+    }
+}
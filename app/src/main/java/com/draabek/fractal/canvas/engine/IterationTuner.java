@@ -0,0 +1,110 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Picks the iteration limit for a view from the escape counts of a low resolution probe.
+ * The probe is iterated to doubling limits until some of its pixels escaped and a doubling
+ * lets hardly any more of them escape. The limit is then lowered to the smallest one below
+ * which all but {@link #TOLERANCE} of the escaping probe pixels escape. Shallow views thus
+ * get a few hundred iterations, deep zooms near the boundary as many as their filaments
+ * need, views that do not resolve within the highest limit allowed get that limit.
+ */
+public final class IterationTuner {
+    /** Longer edge of the probe in pixels */
+    static final int PROBE_SIZE = 64;
+    /** Share of the probe that may escape beyond the chosen limit */
+    static final double TOLERANCE = 0.001;
+
+    private final EscapeTimeKernel kernel;
+    private final PrecisionLadderRenderer ladder;
+
+    /**
+     * @param doubleDoubleKernel Null if the formula has no double-double kernel
+     * @param fixedPointKernel Null if the formula has no fixed-point kernel
+     */
+    public IterationTuner(EscapeTimeKernel kernel, DoubleDoubleKernel doubleDoubleKernel,
+                          FixedPointKernel fixedPointKernel) {
+        this.kernel = kernel;
+        ladder = new PrecisionLadderRenderer(kernel, doubleDoubleKernel, fixedPointKernel);
+    }
+
+    /**
+     * @param width Width of the frame the viewport is rendered to
+     * @param height Height of the frame the viewport is rendered to
+     * @return Limit for the frame, between minIterations and maxIterations
+     */
+    public int tune(PreciseViewport viewport, int width, int height, int minIterations,
+                    int maxIterations) {
+        double shrink = Math.max(1, Math.max(width, height) / (double) PROBE_SIZE);
+        int probeWidth = Math.max(1, (int) Math.round(width / shrink));
+        int probeHeight = Math.max(1, (int) Math.round(height / shrink));
+        PreciseViewport probe = new PreciseViewport(viewport.getCenterX(),
+                viewport.getCenterY(), viewport.getPixelSize() * shrink);
+        IterationBuffer buffer = new IterationBuffer(probeWidth, probeHeight);
+        int allowed = (int) (TOLERANCE * probeWidth * probeHeight);
+        int limit = Math.max(1, minIterations);
+        Precision precision = Precision.forViewport(probe, probeWidth, probeHeight);
+        boolean inDouble = precision.compareTo(Precision.DOUBLE) <= 0;
+        // In double each doubling only iterates the pixels that did not escape yet
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(kernel);
+        Viewport rounded = probe.toViewport(probeWidth, probeHeight);
+        OrbitStore orbits = new OrbitStore();
+        if (inDouble) {
+            renderer.render(buffer, rounded, limit, orbits);
+        } else {
+            ladder.render(buffer, probe, limit);
+        }
+        while (limit < maxIterations) {
+            int unresolved = countUnresolved(buffer);
+            limit = next(limit, maxIterations);
+            if (inDouble) {
+                renderer.continueRender(buffer, rounded, limit, orbits);
+            } else {
+                ladder.render(buffer, probe, limit);
+            }
+            int stillUnresolved = countUnresolved(buffer);
+            // Deep zooms escape late, nothing escaping yet does not mean the boundary is resolved
+            if ((unresolved - stillUnresolved <= allowed)
+                    && (buffer.getValues().length - stillUnresolved > allowed)) {
+                return Math.max(minIterations, lowestLimit(buffer, allowed));
+            }
+        }
+        // Not resolved within the highest limit allowed
+        return limit;
+    }
+
+    private static int next(int limit, int maxIterations) {
+        return (int) Math.min(2L * limit, maxIterations);
+    }
+
+    private static int countUnresolved(IterationBuffer buffer) {
+        int count = 0;
+        for (float value : buffer.getValues()) {
+            if (value >= buffer.getMaxIterations()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Smallest limit that leaves at most the given number of the escaped pixels
+     * unescaped
+     */
+    static int lowestLimit(IterationBuffer buffer, int allowed) {
+        float[] values = buffer.getValues();
+        float[] escaped = new float[values.length];
+        int count = 0;
+        for (float value : values) {
+            if (value < buffer.getMaxIterations()) {
+                escaped[count++] = value;
+            }
+        }
+        if (count <= allowed) {
+            return 1;
+        }
+        Arrays.sort(escaped, 0, count);
+        return (int) Math.ceil(escaped[count - allowed - 1]) + 1;
+    }
+}
@@ -0,0 +1,114 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * z -> z^2 + k for a fixed k, starting from z = c. The distance estimate iterates the
+ * derivative dz -> 2 z dz from dz = 1 along with the orbit.
+ */
+public class JuliaKernel extends EscapeTimeKernel implements DistanceEstimator {
+    private final double kr;
+    private final double ki;
+
+    public JuliaKernel(double kr, double ki) {
+        this.kr = kr;
+        this.ki = ki;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.ROTATIONAL;
+    }
+
+    @Override
+    public boolean hasConnectedLevelSets() {
+        return true;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        return (int) escape(x, y, maxIterations, false, stats);
+    }
+
+    @Override
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        return escape(x, y, maxIterations, true, stats);
+    }
+
+    @Override
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        return Formula.JULIA.smooth(count, zr, zi, kr, ki, maxIterations);
+    }
+
+    /**
+     * @param smooth true for the normalized count, false for the count itself
+     */
+    private float escape(double x, double y, int maxIterations, boolean smooth,
+                         RenderStats stats) {
+        double zr = x;
+        double zi = y;
+        double zr2 = zr * zr;
+        double zi2 = zi * zi;
+        int i = 0;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = 2 * zr * zi + ki;
+            zr = zr2 - zi2 + kr;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+        }
+        stats.countPixel(i);
+        return smooth ? smooth(x, y, i, zr, zi, maxIterations) : i;
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        double zr = x;
+        double zi = y;
+        if (iteration > 0) {
+            zr = orbit[offset];
+            zi = orbit[offset + 1];
+        }
+        double zr2 = zr * zr;
+        double zi2 = zi * zi;
+        int i = iteration;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = 2 * zr * zi + ki;
+            zr = zr2 - zi2 + kr;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+        }
+        orbit[offset] = zr;
+        orbit[offset + 1] = zi;
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    @Override
+    public double estimateDistance(double x, double y, int maxIterations, RenderStats stats) {
+        double zr = x;
+        double zi = y;
+        double dr = 1;
+        double di = 0;
+        int i = 0;
+        while (i < maxIterations) {
+            double t = 2 * (zr * dr - zi * di);
+            di = 2 * (zr * di + zi * dr);
+            dr = t;
+            t = zr * zr - zi * zi + kr;
+            zi = 2 * zr * zi + ki;
+            zr = t;
+            i++;
+            double magnitude = zr * zr + zi * zi;
+            if (magnitude > ESCAPE_RADIUS_SQUARED) {
+                stats.countPixel(i);
+                return 0.25 * Math.sqrt(magnitude / (dr * dr + di * di)) * Math.log(magnitude);
+            }
+        }
+        stats.countPixel(i);
+        return 0;
+    }
+}
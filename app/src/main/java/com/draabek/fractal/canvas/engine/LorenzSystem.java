@@ -0,0 +1,78 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Lorenz equations dx/dt = sigma (y - x), dy/dt = x (rho - z) - y, dz/dt = x y - beta z,
+ * integrated with the classic fourth order Runge-Kutta method at a fixed time step.
+ * The attractor is plotted in the x-z plane, z growing upwards.
+ */
+public class LorenzSystem extends Attractor {
+    public static final double DEFAULT_SIGMA = 10;
+    public static final double DEFAULT_RHO = 28;
+    public static final double DEFAULT_BETA = 8.0 / 3;
+    public static final double DEFAULT_STEP = 0.005;
+
+    private final double sigma;
+    private final double rho;
+    private final double beta;
+    private final double dt;
+
+    public LorenzSystem(double sigma, double rho, double beta, double dt) {
+        this.sigma = sigma;
+        this.rho = rho;
+        this.beta = beta;
+        this.dt = dt;
+    }
+
+    @Override
+    public int getDimensions() {
+        return 3;
+    }
+
+    @Override
+    public void start(double[] state, int stream) {
+        state[0] = 1 + jitter(stream, 0);
+        state[1] = 1 + jitter(stream, 1);
+        state[2] = 20 + jitter(stream, 2);
+    }
+
+    @Override
+    public void step(double[] state) {
+        double x = state[0];
+        double y = state[1];
+        double z = state[2];
+        double k1x = sigma * (y - x);
+        double k1y = x * (rho - z) - y;
+        double k1z = x * y - beta * z;
+        double x2 = x + dt / 2 * k1x;
+        double y2 = y + dt / 2 * k1y;
+        double z2 = z + dt / 2 * k1z;
+        double k2x = sigma * (y2 - x2);
+        double k2y = x2 * (rho - z2) - y2;
+        double k2z = x2 * y2 - beta * z2;
+        double x3 = x + dt / 2 * k2x;
+        double y3 = y + dt / 2 * k2y;
+        double z3 = z + dt / 2 * k2z;
+        double k3x = sigma * (y3 - x3);
+        double k3y = x3 * (rho - z3) - y3;
+        double k3z = x3 * y3 - beta * z3;
+        double x4 = x + dt * k3x;
+        double y4 = y + dt * k3y;
+        double z4 = z + dt * k3z;
+        double k4x = sigma * (y4 - x4);
+        double k4y = x4 * (rho - z4) - y4;
+        double k4z = x4 * y4 - beta * z4;
+        state[0] = x + dt / 6 * (k1x + 2 * k2x + 2 * k3x + k4x);
+        state[1] = y + dt / 6 * (k1y + 2 * k2y + 2 * k3y + k4y);
+        state[2] = z + dt / 6 * (k1z + 2 * k2z + 2 * k3z + k4z);
+    }
+
+    @Override
+    public double projectX(double[] state) {
+        return state[0];
+    }
+
+    @Override
+    public double projectY(double[] state) {
+        return -state[2];
+    }
+}
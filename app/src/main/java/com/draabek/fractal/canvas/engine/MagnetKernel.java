@@ -0,0 +1,144 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * Magnet formulas of the renormalization of the Ising model on hierarchical lattices,
+ * starting from z = c with a fixed constant k like the magnet1 and magnet2 shaders:
+ * <ul>
+ * <li>type 1: z -> ((z^2 + k - 1) / (2z + k - 2))^2</li>
+ * <li>type 2: z -> ((z^3 + 3(k - 1)z + (k - 1)(k - 2))
+ * / (3z^2 + 3(k - 2)z + (k - 1)(k - 2) + 1))^2</li>
+ * </ul>
+ * The orbits that do not escape mostly settle on the fixed point 1, where numerator and
+ * denominator both vanish. Rounding would turn them into a quotient of tiny numbers and
+ * eventually NaN, so an orbit closer to 1 than {@link #SETTLED_DISTANCE} stops as bounded,
+ * like a periodic orbit of the Mandelbrot set. Each type has a loop of its own, picked once
+ * per pixel.
+ */
+public class MagnetKernel extends EscapeTimeKernel {
+    static final double SETTLED_DISTANCE = 1e-6;
+    private static final double SETTLED_SQUARED = SETTLED_DISTANCE * SETTLED_DISTANCE;
+
+    private final int type;
+    private final double kr;
+    private final double ki;
+
+    /**
+     * @param type 1 or 2
+     */
+    public MagnetKernel(int type, double kr, double ki) {
+        if ((type != 1) && (type != 2)) {
+            throw new IllegalArgumentException("No magnet formula of type " + type);
+        }
+        this.type = type;
+        this.kr = kr;
+        this.ki = ki;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return (ki == 0) ? Symmetry.CONJUGATE : Symmetry.NONE;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        return (type == 1) ? quadratic(x, y, 0, maxIterations, null, 0, stats)
+                : cubic(x, y, 0, maxIterations, null, 0, stats);
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        double zr = (iteration > 0) ? orbit[offset] : x;
+        double zi = (iteration > 0) ? orbit[offset + 1] : y;
+        return (type == 1) ? quadratic(zr, zi, iteration, maxIterations, orbit, offset, stats)
+                : cubic(zr, zi, iteration, maxIterations, orbit, offset, stats);
+    }
+
+    /**
+     * @param orbit Receives the last z at offset, NaN if it settled, null if not needed
+     * @return Iteration the orbit escaped at, maxIterations if it did not
+     */
+    private int quadratic(double zr, double zi, int iteration, int maxIterations,
+                          double[] orbit, int offset, RenderStats stats) {
+        int i = iteration;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4.0)) {
+            double nr = zr * zr - zi * zi + kr - 1;
+            double ni = 2 * zr * zi + ki;
+            double dr = 2 * zr + kr - 2;
+            double di = 2 * zi + ki;
+            double d = dr * dr + di * di;
+            double qr = (nr * dr + ni * di) / d;
+            double qi = (ni * dr - nr * di) / d;
+            zr = qr * qr - qi * qi;
+            zi = 2 * qr * qi;
+            i++;
+            if (isSettled(zr, zi)) {
+                return settle(iteration, i, maxIterations, orbit, offset, stats);
+            }
+        }
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    /**
+     * @param orbit Receives the last z at offset, NaN if it settled, null if not needed
+     * @return Iteration the orbit escaped at, maxIterations if it did not
+     */
+    private int cubic(double zr, double zi, int iteration, int maxIterations, double[] orbit,
+                      int offset, RenderStats stats) {
+        // (k - 1)(k - 2), 3(k - 1) and 3(k - 2) do not change along the orbit
+        double pr = (kr - 1) * (kr - 2) - ki * ki;
+        double pi = ki * (2 * kr - 3);
+        double ar = 3 * (kr - 1);
+        double br = 3 * (kr - 2);
+        double bi = 3 * ki;
+        int i = iteration;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4.0)) {
+            double zr2 = zr * zr - zi * zi;
+            double zi2 = 2 * zr * zi;
+            double nr = zr2 * zr - zi2 * zi + ar * zr - bi * zi + pr;
+            double ni = zr2 * zi + zi2 * zr + ar * zi + bi * zr + pi;
+            double dr = 3 * zr2 + br * zr - bi * zi + pr + 1;
+            double di = 3 * zi2 + br * zi + bi * zr + pi;
+            double d = dr * dr + di * di;
+            double qr = (nr * dr + ni * di) / d;
+            double qi = (ni * dr - nr * di) / d;
+            zr = qr * qr - qi * qi;
+            zi = 2 * qr * qi;
+            i++;
+            if (isSettled(zr, zi)) {
+                return settle(iteration, i, maxIterations, orbit, offset, stats);
+            }
+        }
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    private static boolean isSettled(double zr, double zi) {
+        double dr = zr - 1;
+        return dr * dr + zi * zi < SETTLED_SQUARED;
+    }
+
+    private static int settle(int iteration, int i, int maxIterations, double[] orbit,
+                              int offset, RenderStats stats) {
+        if (orbit != null) {
+            orbit[offset] = Double.NaN;
+        }
+        stats.countPeriodicPixel(i - iteration, maxIterations - iteration);
+        return maxIterations;
+    }
+}
@@ -0,0 +1,181 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * z -> z^2 + c, starting from z = 0.
+ * <p>
+ * Points inside the main cardioid and the period-2 bulb are recognized in closed form.
+ * Other orbits are checked for cycles with Brent's algorithm: z is saved at every power
+ * of two iterations and iteration stops as soon as the orbit returns to the saved value.
+ * The distance estimate iterates the derivative dz -> 2 z dz + 1 along with the orbit.
+ */
+public class MandelbrotKernel extends EscapeTimeKernel implements DistanceEstimator {
+    /** Orbit points closer than this are considered equal by the periodicity check */
+    static final double PERIODICITY_EPSILON = 1e-13;
+
+    /**
+     * @return true if c lies in the main cardioid or in the period-2 bulb
+     */
+    static boolean isInMainBulbs(double x, double y) {
+        double y2 = y * y;
+        double xq = x - 0.25;
+        double q = xq * xq + y2;
+        if (q * (q + xq) <= 0.25 * y2) {
+            return true;
+        }
+        double x1 = x + 1;
+        return x1 * x1 + y2 <= 0.0625;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public boolean hasConnectedLevelSets() {
+        return true;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        return (int) escape(x, y, maxIterations, false, stats);
+    }
+
+    @Override
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        return escape(x, y, maxIterations, true, stats);
+    }
+
+    @Override
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        return Formula.MANDELBROT.smooth(count, zr, zi, x, y, maxIterations);
+    }
+
+    /**
+     * @param smooth true for the normalized count, false for the count itself
+     */
+    private float escape(double x, double y, int maxIterations, boolean smooth,
+                         RenderStats stats) {
+        if (isInMainBulbs(x, y)) {
+            stats.countBulbPixel(maxIterations);
+            return maxIterations;
+        }
+        double zr = 0;
+        double zi = 0;
+        double zr2 = 0;
+        double zi2 = 0;
+        double savedR = 0;
+        double savedI = 0;
+        int nextSave = 1;
+        int i = 0;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = 2 * zr * zi + y;
+            zr = zr2 - zi2 + x;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+            if ((Math.abs(zr - savedR) < PERIODICITY_EPSILON)
+                    && (Math.abs(zi - savedI) < PERIODICITY_EPSILON)) {
+                stats.countPeriodicPixel(i, maxIterations);
+                return maxIterations;
+            }
+            if (i == nextSave) {
+                savedR = zr;
+                savedI = zi;
+                nextSave <<= 1;
+            }
+        }
+        stats.countPixel(i);
+        return smooth ? smooth(x, y, i, zr, zi, maxIterations) : i;
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        if ((iteration == 0) && isInMainBulbs(x, y)) {
+            orbit[offset] = Double.NaN;
+            stats.countBulbPixel(maxIterations);
+            return maxIterations;
+        }
+        double zr = 0;
+        double zi = 0;
+        if (iteration > 0) {
+            zr = orbit[offset];
+            zi = orbit[offset + 1];
+        }
+        double zr2 = zr * zr;
+        double zi2 = zi * zi;
+        // Brent's cycle detection restarts from the state the orbit continues from
+        double savedR = zr;
+        double savedI = zi;
+        int nextSave = 1;
+        int i = iteration;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = 2 * zr * zi + y;
+            zr = zr2 - zi2 + x;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+            if ((Math.abs(zr - savedR) < PERIODICITY_EPSILON)
+                    && (Math.abs(zi - savedI) < PERIODICITY_EPSILON)) {
+                orbit[offset] = Double.NaN;
+                stats.countPeriodicPixel(i - iteration, maxIterations - iteration);
+                return maxIterations;
+            }
+            if (i - iteration == nextSave) {
+                savedR = zr;
+                savedI = zi;
+                nextSave <<= 1;
+            }
+        }
+        orbit[offset] = zr;
+        orbit[offset + 1] = zi;
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    @Override
+    public double estimateDistance(double x, double y, int maxIterations, RenderStats stats) {
+        if (isInMainBulbs(x, y)) {
+            stats.countBulbPixel(maxIterations);
+            return 0;
+        }
+        double zr = 0;
+        double zi = 0;
+        double dr = 0;
+        double di = 0;
+        double savedR = 0;
+        double savedI = 0;
+        int nextSave = 1;
+        int i = 0;
+        while (i < maxIterations) {
+            double t = 2 * (zr * dr - zi * di) + 1;
+            di = 2 * (zr * di + zi * dr);
+            dr = t;
+            t = zr * zr - zi * zi + x;
+            zi = 2 * zr * zi + y;
+            zr = t;
+            i++;
+            double magnitude = zr * zr + zi * zi;
+            if (magnitude > ESCAPE_RADIUS_SQUARED) {
+                stats.countPixel(i);
+                return 0.25 * Math.sqrt(magnitude / (dr * dr + di * di)) * Math.log(magnitude);
+            }
+            if ((Math.abs(zr - savedR) < PERIODICITY_EPSILON)
+                    && (Math.abs(zi - savedI) < PERIODICITY_EPSILON)) {
+                stats.countPeriodicPixel(i, maxIterations);
+                return 0;
+            }
+            if (i == nextSave) {
+                savedR = zr;
+                savedI = zi;
+                nextSave <<= 1;
+            }
+        }
+        stats.countPixel(i);
+        return 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Mariani-Silver rectangle subdivision. Only the border of a rectangle is iterated;
+ * if the whole border has the same iteration count the inside is filled with it,
+ * otherwise the rectangle is split in two and both halves are processed the same way.
+ * <p>
+ * Relies on the level sets of the iteration count being connected, which holds for
+ * the Mandelbrot and Julia sets, see {@link EscapeTimeKernel#hasConnectedLevelSets()}.
+ * Pixels only sample the plane though, and filaments escaping between two pixels of the set
+ * can run through a rectangle bordered by it. Such rectangles are therefore filled only when
+ * they are large and their middle lines are in the set too. Each tile of the frame is
+ * subdivided independently.
+ * <p>
+ * The buffer holds whole counts, not the normalized ones of
+ * {@link EscapeTimeKernel#iterateSmooth}: a rectangle filled from its border has no fractions
+ * to fill it with, and fractional borders would never be uniform.
+ */
+public class MarianiSilverRenderer {
+    /** Rectangles with a side shorter than this are iterated pixel by pixel */
+    public static final int MIN_SIZE = 4;
+    /** Rectangles bordered by points of the set are only filled from this side length on */
+    public static final int MIN_SET_FILL = 32;
+    private static final float NOT_COMPUTED = -1;
+
+    private final EscapeTimeKernel kernel;
+
+    public MarianiSilverRenderer(EscapeTimeKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Render the whole frame
+     * @return Statistics of the frame, only pixels the kernel was evaluated for are counted
+     */
+    public RenderStats render(int[] pixels, int width, int height, Viewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame, only pixels the kernel was evaluated for are counted
+     */
+    public RenderStats render(IterationBuffer buffer, Viewport viewport, final int maxIterations) {
+        final float[] counts = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        Arrays.fill(counts, NOT_COMPUTED);
+        buffer.setMaxIterations(maxIterations);
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(height);
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(0, 0, width, height, 2 * TileScheduler.DEFAULT_TILE_SIZE,
+                (left, top, right, bottom) -> {
+                    Tile tile = new Tile(counts, width, x0, y0, dx, dy, maxIterations);
+                    tile.subdivide(left, top, right - 1, bottom - 1);
+                    stats.add(tile.stats);
+                });
+        stats.countPrecision(Precision.DOUBLE, (long) width * height);
+        return stats;
+    }
+
+    /**
+     * Subdivision state of one tile, confined to the thread rendering it
+     */
+    private final class Tile {
+        private final float[] counts;
+        private final int width;
+        private final double x0;
+        private final double y0;
+        private final double dx;
+        private final double dy;
+        private final int maxIterations;
+        final RenderStats stats = new RenderStats();
+
+        Tile(float[] counts, int width, double x0, double y0, double dx, double dy,
+             int maxIterations) {
+            this.counts = counts;
+            this.width = width;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.dx = dx;
+            this.dy = dy;
+            this.maxIterations = maxIterations;
+        }
+
+        private float count(int x, int y) {
+            int index = y * width + x;
+            float count = counts[index];
+            if (count == NOT_COMPUTED) {
+                count = kernel.iterate(x0 + x * dx, y0 + y * dy, maxIterations, stats);
+                counts[index] = count;
+            }
+            return count;
+        }
+
+        /**
+         * Process the rectangle with inclusive corners [x1, y1] and [x2, y2]
+         */
+        void subdivide(int x1, int y1, int x2, int y2) {
+            if ((x2 - x1 < MIN_SIZE) || (y2 - y1 < MIN_SIZE)) {
+                for (int y = y1; y <= y2; y++) {
+                    for (int x = x1; x <= x2; x++) {
+                        count(x, y);
+                    }
+                }
+                return;
+            }
+            float border = count(x1, y1);
+            boolean uniform = true;
+            for (int x = x1; x <= x2; x++) {
+                uniform &= (count(x, y1) == border) & (count(x, y2) == border);
+            }
+            for (int y = y1 + 1; y < y2; y++) {
+                uniform &= (count(x1, y) == border) & (count(x2, y) == border);
+            }
+            if (uniform && (border == maxIterations)) {
+                // Filaments escaping between two border pixels of the set cross the middle, or
+                // run through small rectangles near the boundary, which are iterated instead
+                uniform = (x2 - x1 >= MIN_SET_FILL - 1) && (y2 - y1 >= MIN_SET_FILL - 1);
+                int middleX = (x1 + x2) >>> 1;
+                int middleY = (y1 + y2) >>> 1;
+                for (int x = x1 + 1; uniform && (x < x2); x++) {
+                    uniform = count(x, middleY) == border;
+                }
+                for (int y = y1 + 1; uniform && (y < y2); y++) {
+                    uniform = count(middleX, y) == border;
+                }
+            }
+            if (uniform) {
+                for (int y = y1 + 1; y < y2; y++) {
+                    Arrays.fill(counts, y * width + x1 + 1, y * width + x2, border);
+                }
+                return;
+            }
+            // Split along the longer side, the dividing line is shared by both halves
+            if (x2 - x1 >= y2 - y1) {
+                int middle = (x1 + x2) >>> 1;
+                subdivide(x1, y1, middle, y2);
+                subdivide(middle, y1, x2, y2);
+            } else {
+                int middle = (y1 + y2) >>> 1;
+                subdivide(x1, y1, x2, middle);
+                subdivide(x1, middle, x2, y2);
+            }
+        }
+    }
+}
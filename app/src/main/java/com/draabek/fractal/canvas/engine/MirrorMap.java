@@ -0,0 +1,143 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * Rectangle of a frame whose pixels are mirror images of pixels outside of it.
+ * Only the rest of the frame has to be computed, {@link #copy(int[])} fills the
+ * rectangle afterwards.
+ * <p>
+ * A pixel row y mirrors row ky - y (and column x mirrors column kx - x), which only maps
+ * pixels onto pixels when ky (kx) is an integer, i.e. when the axis of symmetry runs
+ * through a pixel center or exactly between two of them.
+ */
+public final class MirrorMap {
+    /** Maximum distance of the mirrored sample from a pixel center, in pixels */
+    static final double ALIGNMENT_TOLERANCE = 1e-3;
+
+    private final Symmetry symmetry;
+    private final int width;
+    private final int kx;
+    private final int ky;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+
+    private MirrorMap(Symmetry symmetry, int width, int kx, int ky,
+                      int left, int top, int right, int bottom) {
+        this.symmetry = symmetry;
+        this.width = width;
+        this.kx = kx;
+        this.ky = ky;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @param kx Sum of the indices of two mirrored columns
+     * @param ky Sum of the indices of two mirrored rows
+     * @return Map for the frame, null if the symmetry does not map any pixel onto another one
+     */
+    public static MirrorMap create(Symmetry symmetry, double kx, double ky, int width, int height) {
+        if ((symmetry == null) || (symmetry == Symmetry.NONE)) {
+            return null;
+        }
+        long roundedY = Math.round(ky);
+        if (!(Math.abs(ky - roundedY) <= ALIGNMENT_TOLERANCE)) {
+            return null;
+        }
+        // Rows past the axis whose mirror image lies inside the frame
+        long top = Math.max(0, roundedY / 2 + 1);
+        long bottom = Math.min(height, roundedY + 1);
+        long left = 0;
+        long right = width;
+        long roundedX = 0;
+        if (symmetry == Symmetry.ROTATIONAL) {
+            roundedX = Math.round(kx);
+            if (!(Math.abs(kx - roundedX) <= ALIGNMENT_TOLERANCE)) {
+                return null;
+            }
+            left = Math.max(0, roundedX - width + 1);
+            right = Math.min(width, roundedX + 1);
+        }
+        if ((top >= bottom) || (left >= right)) {
+            return null;
+        }
+        return new MirrorMap(symmetry, width, (int) roundedX, (int) roundedY,
+                (int) left, (int) top, (int) right, (int) bottom);
+    }
+
+    /**
+     * Map for a frame rendered by the CPU engine
+     */
+    public static MirrorMap create(Symmetry symmetry, Viewport viewport, int width, int height) {
+        double dx = viewport.getPixelWidth(width);
+        double dy = viewport.getPixelHeight(height);
+        if ((dx == 0) || (dy == 0)) {
+            return null;
+        }
+        return create(symmetry, -2 * viewport.getLeft() / dx, -2 * viewport.getTop() / dy,
+                width, height);
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getPixelCount() {
+        return (right - left) * (bottom - top);
+    }
+
+    public boolean contains(int x, int y) {
+        return (x >= left) && (x < right) && (y >= top) && (y < bottom);
+    }
+
+    /**
+     * Fill the mirrored rectangle from the computed part of the frame
+     */
+    public void copy(int[] pixels) {
+        for (int y = top; y < bottom; y++) {
+            int offset = y * width;
+            int sourceOffset = (ky - y) * width;
+            if (symmetry == Symmetry.CONJUGATE) {
+                System.arraycopy(pixels, sourceOffset, pixels, offset, width);
+            } else {
+                for (int x = left; x < right; x++) {
+                    pixels[offset + x] = pixels[sourceOffset + kx - x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #copy(int[])} for an iteration buffer
+     */
+    public void copy(float[] values) {
+        for (int y = top; y < bottom; y++) {
+            int offset = y * width;
+            int sourceOffset = (ky - y) * width;
+            if (symmetry == Symmetry.CONJUGATE) {
+                System.arraycopy(values, sourceOffset, values, offset, width);
+            } else {
+                for (int x = left; x < right; x++) {
+                    values[offset + x] = values[sourceOffset + kx - x];
+                }
+            }
+        }
+    }
+}
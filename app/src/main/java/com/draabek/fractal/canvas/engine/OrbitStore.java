@@ -0,0 +1,114 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Orbit states of the pixels of a frame that reached its iteration limit. When the limit is
+ * raised, only these pixels are iterated further, each from where it stopped, see
+ * {@link EscapeTimeRenderer#continueRender}. Memory is proportional to the number of
+ * unresolved pixels, not to the frame size.
+ */
+public final class OrbitStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int maxIterations;
+    private int size;
+    private int[] pixels = new int[INITIAL_CAPACITY];
+    /** Real and imaginary part of z of pixel i at [2 i] and [2 i + 1] */
+    private double[] orbits = new double[2 * INITIAL_CAPACITY];
+
+    /**
+     * Forget all orbits, the store is not valid for any frame until it is filled again
+     */
+    public synchronized void clear() {
+        size = 0;
+        maxIterations = 0;
+    }
+
+    /**
+     * @return Iteration limit the stored states reached, 0 if the store is empty and invalid
+     */
+    public synchronized int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    synchronized void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Add the unresolved pixels of a tile
+     */
+    synchronized void add(int[] tilePixels, double[] tileOrbits, int count) {
+        if (size + count > pixels.length) {
+            int capacity = Math.max(size + count, 2 * pixels.length);
+            pixels = Arrays.copyOf(pixels, capacity);
+            orbits = Arrays.copyOf(orbits, 2 * capacity);
+        }
+        System.arraycopy(tilePixels, 0, pixels, size, count);
+        System.arraycopy(tileOrbits, 0, orbits, 2 * size, 2 * count);
+        size += count;
+    }
+
+    int getPixel(int i) {
+        return pixels[i];
+    }
+
+    /**
+     * @return Orbit states, owned by the store
+     */
+    double[] getOrbits() {
+        return orbits;
+    }
+
+    /**
+     * Drop the pixels that escaped below the given limit, keeping the order of the others
+     */
+    synchronized void retainUnresolved(float[] values, int limit) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[pixels[i]] >= limit) {
+                pixels[kept] = pixels[i];
+                orbits[2 * kept] = orbits[2 * i];
+                orbits[2 * kept + 1] = orbits[2 * i + 1];
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Tile-local collection of unresolved pixels, merged into the store when the tile is done
+     */
+    static final class TileOrbits {
+        final double[] orbit = new double[2];
+        private int[] tilePixels = new int[0];
+        private double[] tileOrbits = new double[0];
+        private int count;
+
+        /**
+         * Keep the state left in {@link #orbit} for the given pixel
+         */
+        void keep(int pixel) {
+            if (count == tilePixels.length) {
+                int capacity = Math.max(64, 2 * count);
+                tilePixels = Arrays.copyOf(tilePixels, capacity);
+                tileOrbits = Arrays.copyOf(tileOrbits, 2 * capacity);
+            }
+            tilePixels[count] = pixel;
+            tileOrbits[2 * count] = orbit[0];
+            tileOrbits[2 * count + 1] = orbit[1];
+            count++;
+        }
+
+        void addTo(OrbitStore store) {
+            if (count > 0) {
+                store.add(tilePixels, tileOrbits, count);
+            }
+        }
+    }
+}
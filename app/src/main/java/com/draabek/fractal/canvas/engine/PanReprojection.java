@@ -0,0 +1,120 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Move of a frame by a whole number of pixels. The pixels still visible after the move are
+ * shifted instead of being rendered again, only the exposed L-shaped border, a horizontal
+ * strip and a vertical strip, has to be computed.
+ */
+public final class PanReprojection implements Reprojection {
+    private final int width;
+    private final int height;
+    private final int dx;
+    private final int dy;
+
+    /**
+     * @param dx Columns the content moves to the right, negative to the left
+     * @param dy Rows the content moves down, negative up
+     */
+    public PanReprojection(int width, int height, int dx, int dy) {
+        if ((Math.abs(dx) >= width) || (Math.abs(dy) >= height)) {
+            throw new IllegalArgumentException("Move by [" + dx + ", " + dy
+                    + "] leaves nothing of a " + width + "x" + height + " frame");
+        }
+        this.width = width;
+        this.height = height;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * @return Reprojection turning the frame of one viewport into the frame of the other,
+     * null if they differ by anything but a move by whole pixels that keeps part of the frame
+     */
+    public static PanReprojection between(PreciseViewport from, PreciseViewport to,
+                                          int width, int height) {
+        if (from.getPixelSize() != to.getPixelSize()) {
+            return null;
+        }
+        double pixelSize = from.getPixelSize();
+        BigDecimal moveX = from.getCenterX().subtract(to.getCenterX());
+        BigDecimal moveY = from.getCenterY().subtract(to.getCenterY());
+        double dx = Math.rint(moveX.doubleValue() / pixelSize);
+        double dy = Math.rint(moveY.doubleValue() / pixelSize);
+        if ((Math.abs(dx) >= width) || (Math.abs(dy) >= height)) {
+            return null;
+        }
+        // The centers are rounded to a fixed scale, translating again must hit them exactly
+        if (!from.translate(dx, dy).equals(to)) {
+            return null;
+        }
+        return new PanReprojection(width, height, (int) dx, (int) dy);
+    }
+
+    public int getDx() {
+        return dx;
+    }
+
+    public int getDy() {
+        return dy;
+    }
+
+    @Override
+    public int[][] getMissingRegions() {
+        int stripTop = (dy > 0) ? 0 : height + dy;
+        int stripBottom = (dy > 0) ? dy : height;
+        int columnsLeft = (dx > 0) ? 0 : width + dx;
+        int columnsRight = (dx > 0) ? dx : width;
+        // The vertical strip only covers the rows the horizontal one leaves out
+        int restTop = (dy > 0) ? dy : 0;
+        int restBottom = (dy > 0) ? height : height + dy;
+        return new int[][] {
+                {0, stripTop, width, stripBottom},
+                {columnsLeft, restTop, columnsRight, restBottom}};
+    }
+
+    @Override
+    public int getKnownStep() {
+        return 0;
+    }
+
+    @Override
+    public long getMissingPixelCount() {
+        return (long) width * height - (long) (width - Math.abs(dx)) * (height - Math.abs(dy));
+    }
+
+    /**
+     * Shift the values, the exposed regions keep stale values
+     */
+    @Override
+    public void apply(float[] values) {
+        shiftRows(values);
+    }
+
+    /**
+     * Shift the pixels, the exposed regions keep stale pixels
+     */
+    @Override
+    public void apply(int[] pixels) {
+        shiftRows(pixels);
+    }
+
+    private void shiftRows(Object array) {
+        int sourceX = Math.max(0, -dx);
+        int targetX = Math.max(0, dx);
+        int length = width - Math.abs(dx);
+        // Walk against the direction of the move so no row is overwritten before it is copied
+        if (dy > 0) {
+            for (int y = height - 1; y >= dy; y--) {
+                System.arraycopy(array, (y - dy) * width + sourceX, array, y * width + targetX,
+                        length);
+            }
+        } else {
+            for (int y = 0; y < height + dy; y++) {
+                System.arraycopy(array, (y - dy) * width + sourceX, array, y * width + targetX,
+                        length);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Notified when a progressive render pass has finished writing its pixels
+ */
+public interface PassListener {
+    /**
+     * @param step Distance between the samples computed so far, 1 for the final pass
+     */
+    void onPassComplete(int step);
+}
@@ -0,0 +1,224 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Deep zoom Mandelbrot renderer. One reference orbit is computed in high precision, every
+ * pixel then only iterates its difference dz to the reference in double precision:
+ * dz(n+1) = 2 Z(n) dz(n) + dz(n)^2 + dc, skipping ahead with {@link BilinearApproximation}
+ * where possible.
+ * <p>
+ * Pixels whose orbit gets much closer to 0 than the reference orbit lose all precision of dz
+ * (Pauldelbrot's glitch criterion |Z + dz| &lt; 10^-3 |Z|). They are rendered again against a
+ * new reference placed at the most glitched pixel, up to {@link #MAX_REFERENCES} times.
+ */
+public class PerturbationRenderer {
+    /** Relative orbit size below which a pixel is considered glitched */
+    static final double GLITCH_TOLERANCE = 1e-3;
+    public static final int MAX_REFERENCES = 16;
+
+    /** Normalized counts like {@link EscapeTimeKernel#iterateSmooth} */
+    private float[] iterations;
+    private boolean[] pending;
+    private float[] glitchSize;
+    private int referenceCount;
+
+    /**
+     * Render the whole frame
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @return Statistics of the frame, pixels rendered against several references are
+     * counted each time
+     */
+    public RenderStats render(int[] pixels, int width, int height, PreciseViewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame, pixels rendered against several references are
+     * counted each time
+     */
+    public RenderStats render(IterationBuffer buffer, PreciseViewport viewport,
+                              int maxIterations) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        RenderStats stats = new RenderStats();
+        computeIterations(width, height, viewport, maxIterations, stats);
+        float[] values = buffer.getValues();
+        for (int i = 0; i < width * height; i++) {
+            values[i] = iterations[i];
+        }
+        buffer.setMaxIterations(maxIterations);
+        stats.countPrecision(Precision.ARBITRARY, (long) width * height);
+        return stats;
+    }
+
+    /**
+     * @return Number of reference orbits used by the last frame
+     */
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    private void computeIterations(final int width, final int height, PreciseViewport viewport,
+                                   final int maxIterations, RenderStats stats) {
+        int size = width * height;
+        if ((iterations == null) || (iterations.length != size)) {
+            iterations = new float[size];
+            pending = new boolean[size];
+            glitchSize = new float[size];
+        }
+        Arrays.fill(pending, true);
+        int fractionBits = viewport.getFractionBits();
+        final double pixelSize = viewport.getPixelSize();
+        // The first reference sits at the center of the frame
+        int referenceX = width / 2;
+        int referenceY = height / 2;
+        referenceCount = 0;
+        while (referenceCount < MAX_REFERENCES) {
+            referenceCount++;
+            ReferenceOrbit orbit = ReferenceOrbit.compute(viewport.getX(referenceX, width),
+                    viewport.getY(referenceY, height), maxIterations, fractionBits);
+            double maxDelta = Math.hypot(Math.max(referenceX, width - referenceX),
+                    Math.max(referenceY, height - referenceY)) * pixelSize;
+            final Pass pass = new Pass(orbit, new BilinearApproximation(orbit, maxDelta, pixelSize),
+                    referenceX, referenceY, pixelSize, width, maxIterations,
+                    referenceCount == MAX_REFERENCES);
+            TileScheduler.render(width, height, (left, top, right, bottom) -> {
+                RenderStats tileStats = new RenderStats();
+                int glitched = -1;
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        int index = y * width + x;
+                        if (pending[index]) {
+                            pass.iterate(x, y, tileStats);
+                            if (pending[index] && ((glitched == -1)
+                                    || (glitchSize[index] < glitchSize[glitched]))) {
+                                glitched = index;
+                            }
+                        }
+                    }
+                }
+                pass.offerGlitch(glitched);
+                stats.add(tileStats);
+            });
+            if (pass.worstGlitch == -1) {
+                break;
+            }
+            referenceX = pass.worstGlitch % width;
+            referenceY = pass.worstGlitch / width;
+        }
+        stats.countReferences(referenceCount);
+    }
+
+    /**
+     * Rendering of the pending pixels against one reference orbit
+     */
+    private final class Pass {
+        private final double[] zr;
+        private final double[] zi;
+        private final int orbitEnd;
+        private final BilinearApproximation bla;
+        private final int referenceX;
+        private final int referenceY;
+        private final double pixelSize;
+        private final int width;
+        private final int maxIterations;
+        private final boolean last;
+        int worstGlitch = -1;
+
+        /**
+         * @param last No more references follow, glitched pixels are finished as well as possible
+         */
+        Pass(ReferenceOrbit orbit, BilinearApproximation bla, int referenceX, int referenceY,
+             double pixelSize, int width, int maxIterations, boolean last) {
+            this.zr = orbit.getRe();
+            this.zi = orbit.getIm();
+            this.orbitEnd = orbit.getLength() - 1;
+            this.bla = bla;
+            this.referenceX = referenceX;
+            this.referenceY = referenceY;
+            this.pixelSize = pixelSize;
+            this.width = width;
+            this.maxIterations = maxIterations;
+            this.last = last;
+        }
+
+        synchronized void offerGlitch(int index) {
+            if ((index != -1) && ((worstGlitch == -1)
+                    || (glitchSize[index] < glitchSize[worstGlitch]))) {
+                worstGlitch = index;
+            }
+        }
+
+        /**
+         * Iterate pixel [x, y], it stays pending if it glitched
+         */
+        void iterate(int x, int y, RenderStats stats) {
+            int index = y * width + x;
+            double dcr = (x - referenceX) * pixelSize;
+            double dci = (y - referenceY) * pixelSize;
+            // dz(1) = dc since Z(0) = 0
+            double dzr = dcr;
+            double dzi = dci;
+            int n = 1;
+            int performed = 1;
+            int skipped = 0;
+            boolean escaped = false;
+            double fr = 0;
+            double fi = 0;
+            while (n < maxIterations) {
+                fr = zr[n] + dzr;
+                fi = zi[n] + dzi;
+                double norm = fr * fr + fi * fi;
+                if (norm > 4.0) {
+                    escaped = true;
+                    break;
+                }
+                double referenceNorm = zr[n] * zr[n] + zi[n] * zi[n];
+                if (!last && (norm < GLITCH_TOLERANCE * GLITCH_TOLERANCE * referenceNorm)) {
+                    glitchSize[index] = (float) (norm / referenceNorm);
+                    stats.countPixel(performed, skipped);
+                    return;
+                }
+                if (n >= orbitEnd) {
+                    // The reference escaped before this pixel did
+                    if (last) {
+                        break;
+                    }
+                    glitchSize[index] = Float.MAX_VALUE;
+                    stats.countPixel(performed, skipped);
+                    return;
+                }
+                int level = bla.findLevel(n, Math.sqrt(dzr * dzr + dzi * dzi),
+                        Math.min(maxIterations, orbitEnd) - n);
+                if (level >= 0) {
+                    double ar = bla.getAr(level, n);
+                    double ai = bla.getAi(level, n);
+                    double br = bla.getBr(level, n);
+                    double bi = bla.getBi(level, n);
+                    double r = ar * dzr - ai * dzi + br * dcr - bi * dci;
+                    dzi = ar * dzi + ai * dzr + br * dci + bi * dcr;
+                    dzr = r;
+                    n += 1 << level;
+                    skipped += (1 << level) - 1;
+                } else {
+                    double r = 2 * (zr[n] * dzr - zi[n] * dzi) + dzr * dzr - dzi * dzi + dcr;
+                    dzi = 2 * (zr[n] * dzi + zi[n] * dzr) + 2 * dzr * dzi + dci;
+                    dzr = r;
+                    n++;
+                }
+                performed++;
+            }
+            pending[index] = false;
+            // Z(1) is the c of the reference
+            iterations[index] = escaped ? Formula.MANDELBROT.smooth(n, fr, fi, zr[1] + dcr,
+                    zi[1] + dci, maxIterations) : n;
+            stats.countPixel(performed, skipped);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Viewport for deep zooms: the center is kept as a decimal with as many digits as the
+ * zoom level needs, the distance between pixels as a double (good down to about 1e-300).
+ * Pixels are square, pixel [x, y] maps to center + ((x - width / 2) * pixelSize,
+ * (y - height / 2) * pixelSize), the same orientation as {@link Viewport}.
+ */
+public final class PreciseViewport {
+    /** Decimal digits kept beyond the ones needed to tell adjacent pixels apart */
+    static final int GUARD_DIGITS = 10;
+    /** Binary counterpart of GUARD_DIGITS */
+    static final int GUARD_BITS = 34;
+
+    private final BigDecimal centerX;
+    private final BigDecimal centerY;
+    private final double pixelSize;
+
+    public PreciseViewport(BigDecimal centerX, BigDecimal centerY, double pixelSize) {
+        if (!(pixelSize > 0) || Double.isInfinite(pixelSize)) {
+            throw new IllegalArgumentException("Invalid pixel size " + pixelSize);
+        }
+        int scale = getDecimalPlaces(pixelSize);
+        this.centerX = centerX.setScale(scale, RoundingMode.HALF_EVEN);
+        this.centerY = centerY.setScale(scale, RoundingMode.HALF_EVEN);
+        this.pixelSize = pixelSize;
+    }
+
+    /**
+     * Viewport showing the same part of the plane as the given one, the pixel size
+     * is taken from the horizontal extent
+     */
+    public static PreciseViewport fromViewport(Viewport viewport, int width, int height) {
+        BigDecimal two = BigDecimal.valueOf(2);
+        BigDecimal x = new BigDecimal(viewport.getLeft()).add(new BigDecimal(viewport.getRight()))
+                .divide(two);
+        BigDecimal y = new BigDecimal(viewport.getTop()).add(new BigDecimal(viewport.getBottom()))
+                .divide(two);
+        return new PreciseViewport(x, y, viewport.getPixelWidth(width));
+    }
+
+    private static int getDecimalPlaces(double pixelSize) {
+        return Math.max(0, (int) Math.ceil(-Math.log10(pixelSize))) + GUARD_DIGITS;
+    }
+
+    public BigDecimal getCenterX() {
+        return centerX;
+    }
+
+    public BigDecimal getCenterY() {
+        return centerY;
+    }
+
+    public double getPixelSize() {
+        return pixelSize;
+    }
+
+    /**
+     * @return Precision for arithmetic on coordinates of this viewport
+     */
+    public MathContext getMathContext() {
+        int integerDigits = Math.max(centerX.precision() - centerX.scale(),
+                centerY.precision() - centerY.scale());
+        return new MathContext(Math.max(1, integerDigits) + getDecimalPlaces(pixelSize),
+                RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * @return Number of fractional bits for fixed-point arithmetic on coordinates of this viewport
+     */
+    public int getFractionBits() {
+        return Math.max(0, Math.getExponent(1 / pixelSize) + 1) + GUARD_BITS;
+    }
+
+    /**
+     * @return Real part of the point at column x of a frame width pixels wide
+     */
+    public BigDecimal getX(double x, int width) {
+        return centerX.add(new BigDecimal((x - width / 2.0) * pixelSize));
+    }
+
+    /**
+     * @return Imaginary part of the point at row y of a frame height pixels high
+     */
+    public BigDecimal getY(double y, int height) {
+        return centerY.add(new BigDecimal((y - height / 2.0) * pixelSize));
+    }
+
+    /**
+     * @return Viewport with the content moved by the given number of pixels
+     */
+    public PreciseViewport translate(double dx, double dy) {
+        return new PreciseViewport(centerX.subtract(new BigDecimal(dx * pixelSize)),
+                centerY.subtract(new BigDecimal(dy * pixelSize)), pixelSize);
+    }
+
+    /**
+     * @param factor Magnification, greater than 1 zooms in
+     * @param focusX Column that keeps showing the same point
+     * @param focusY Row that keeps showing the same point
+     */
+    public PreciseViewport zoom(double factor, double focusX, double focusY, int width, int height) {
+        double newPixelSize = pixelSize / factor;
+        double shrink = pixelSize - newPixelSize;
+        return new PreciseViewport(
+                centerX.add(new BigDecimal((focusX - width / 2.0) * shrink)),
+                centerY.add(new BigDecimal((focusY - height / 2.0) * shrink)), newPixelSize);
+    }
+
+    /**
+     * @return The same part of the plane in double precision, only accurate for shallow zooms
+     */
+    public Viewport toViewport(int width, int height) {
+        double x = centerX.doubleValue();
+        double y = centerY.doubleValue();
+        return new Viewport(x - width / 2.0 * pixelSize, y - height / 2.0 * pixelSize,
+                x + width / 2.0 * pixelSize, y + height / 2.0 * pixelSize);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PreciseViewport)) {
+            return false;
+        }
+        PreciseViewport other = (PreciseViewport) o;
+        // The pixel size fixes the scale of the centers, so equals compares their values
+        return (pixelSize == other.pixelSize) && centerX.equals(other.centerX)
+                && centerY.equals(other.centerY);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * centerX.hashCode() + centerY.hashCode())
+                + Double.valueOf(pixelSize).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PreciseViewport[" + centerX + ", " + centerY + ", pixel " + pixelSize + "]";
+    }
+}
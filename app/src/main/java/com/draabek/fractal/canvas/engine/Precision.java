@@ -0,0 +1,65 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Numeric representations of pixel coordinates, from the cheapest to the most exact.
+ * A tier is good enough for a region while adjacent pixels are at least
+ * {@link #MIN_PIXEL_ULPS} units in the last place apart at the largest coordinate
+ * of the region, iterating amplifies the rounding errors.
+ */
+public enum Precision {
+    /** 24 bit significand, what the GLSL shaders compute with */
+    FLOAT,
+    /** 53 bit significand */
+    DOUBLE,
+    /** About 106 bits, see {@link DoubleDouble} */
+    DOUBLE_DOUBLE,
+    /** As many bits as needed, see {@link FixedPoint} */
+    ARBITRARY;
+
+    static final double MIN_PIXEL_ULPS = 1024;
+    /**
+     * Smaller margin for the GPU tier, float is kept until rounding the coordinates becomes
+     * visible and not only until the deepest iterations start to drift, the CPU tiers
+     * are too slow to take over that early
+     */
+    static final double MIN_FLOAT_PIXEL_ULPS = 16;
+
+    /**
+     * @param magnitude Largest absolute coordinate
+     * @return Cheapest tier that tells apart points pixelSize apart around magnitude
+     */
+    public static Precision forMagnitude(double pixelSize, double magnitude) {
+        if (pixelSize / MIN_FLOAT_PIXEL_ULPS >= Math.ulp((float) magnitude)) {
+            return FLOAT;
+        }
+        double pixelUlps = pixelSize / MIN_PIXEL_ULPS;
+        double ulp = Math.ulp(magnitude);
+        if (pixelUlps >= ulp) {
+            return DOUBLE;
+        }
+        if (pixelUlps >= Math.scalb(ulp, -53)) {
+            return DOUBLE_DOUBLE;
+        }
+        return ARBITRARY;
+    }
+
+    /**
+     * @return Cheapest tier for the pixels [left, right) x [top, bottom) of a frame
+     */
+    public static Precision forRegion(PreciseViewport viewport, int width, int height,
+                                      int left, int top, int right, int bottom) {
+        double pixelSize = viewport.getPixelSize();
+        double x = Math.abs(viewport.getCenterX().doubleValue())
+                + Math.max(Math.abs(left - width / 2.0), Math.abs(right - width / 2.0)) * pixelSize;
+        double y = Math.abs(viewport.getCenterY().doubleValue())
+                + Math.max(Math.abs(top - height / 2.0), Math.abs(bottom - height / 2.0)) * pixelSize;
+        return forMagnitude(pixelSize, Math.max(x, y));
+    }
+
+    /**
+     * @return Cheapest tier for the whole frame
+     */
+    public static Precision forViewport(PreciseViewport viewport, int width, int height) {
+        return forRegion(viewport, width, height, 0, 0, width, height);
+    }
+}
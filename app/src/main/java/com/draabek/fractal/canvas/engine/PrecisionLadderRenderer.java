@@ -0,0 +1,128 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Renderer that picks the cheapest {@link Precision} every tile needs, so a frame with
+ * coordinates of very different magnitudes only pays for high precision where it must.
+ * Float is left to the GPU, tiles that float would do are rendered in double.
+ * A tier without a kernel falls back to the most exact kernel available.
+ */
+public class PrecisionLadderRenderer {
+    private final EscapeTimeKernel kernel;
+    private final DoubleDoubleRenderer doubleDoubleRenderer;
+    private final FixedPointRenderer fixedPointRenderer;
+
+    /**
+     * @param doubleDoubleKernel Null if the formula has no double-double kernel
+     * @param fixedPointKernel Null if the formula has no fixed-point kernel
+     */
+    public PrecisionLadderRenderer(EscapeTimeKernel kernel, DoubleDoubleKernel doubleDoubleKernel,
+                                   FixedPointKernel fixedPointKernel) {
+        this.kernel = kernel;
+        doubleDoubleRenderer = (doubleDoubleKernel == null) ? null
+                : new DoubleDoubleRenderer(doubleDoubleKernel);
+        fixedPointRenderer = (fixedPointKernel == null) ? null
+                : new FixedPointRenderer(fixedPointKernel);
+    }
+
+    /**
+     * @return Tier the pixels [left, right) x [top, bottom) are rendered with
+     */
+    public Precision getPrecision(PreciseViewport viewport, int width, int height,
+                                  int left, int top, int right, int bottom) {
+        Precision needed = Precision.forRegion(viewport, width, height, left, top, right, bottom);
+        if (needed.compareTo(Precision.DOUBLE) <= 0) {
+            return Precision.DOUBLE;
+        }
+        if ((fixedPointRenderer != null)
+                && ((needed == Precision.ARBITRARY) || (doubleDoubleRenderer == null))) {
+            return Precision.ARBITRARY;
+        }
+        if (doubleDoubleRenderer != null) {
+            return Precision.DOUBLE_DOUBLE;
+        }
+        return Precision.DOUBLE;
+    }
+
+    /**
+     * Render the whole frame
+     * @param palette Colors indexed by relative iteration count, null for grayscale
+     * @return Statistics of the frame, including the pixels rendered with each tier
+     */
+    public RenderStats render(int[] pixels, int width, int height, PreciseViewport viewport,
+                              int maxIterations, int[] palette) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        RenderStats stats = render(buffer, viewport, maxIterations);
+        Colorizer.colorize(buffer, pixels, palette, 0);
+        return stats;
+    }
+
+    /**
+     * Compute the iteration counts of the whole frame
+     * @return Statistics of the frame, including the pixels rendered with each tier
+     */
+    public RenderStats render(IterationBuffer buffer, PreciseViewport viewport,
+                              int maxIterations) {
+        return render(buffer, viewport, maxIterations, 0, 0, buffer.getWidth(),
+                buffer.getHeight(), 0);
+    }
+
+    /**
+     * Compute only the pixels of the given region, the rest of the buffer is left untouched
+     * @param knownStep Pixels whose column and row are both multiples of it already hold
+     * their values and are skipped, 0 to compute all
+     * @return Statistics of the region, including the pixels rendered with each tier
+     */
+    public RenderStats render(IterationBuffer buffer, final PreciseViewport viewport,
+                              final int maxIterations, int regionLeft, int regionTop,
+                              int regionRight, int regionBottom, final int knownStep) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        buffer.setMaxIterations(maxIterations);
+        final RenderStats stats = new RenderStats();
+        TileScheduler.render(regionLeft, regionTop, regionRight, regionBottom,
+                TileScheduler.DEFAULT_TILE_SIZE, (left, top, right, bottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    Precision precision = getPrecision(viewport, width, height,
+                            left, top, right, bottom);
+                    switch (precision) {
+                        case ARBITRARY:
+                            fixedPointRenderer.render(values, width, height, viewport,
+                                    maxIterations, left, top, right, bottom, knownStep, tileStats);
+                            break;
+                        case DOUBLE_DOUBLE:
+                            doubleDoubleRenderer.render(values, width, height, viewport,
+                                    maxIterations, left, top, right, bottom, knownStep, tileStats);
+                            break;
+                        default:
+                            renderDouble(values, width, height, viewport, maxIterations,
+                                    left, top, right, bottom, knownStep, tileStats);
+                            break;
+                    }
+                    tileStats.countPrecision(precision,
+                            (long) (right - left) * (bottom - top));
+                    stats.add(tileStats);
+                });
+        return stats;
+    }
+
+    private void renderDouble(float[] values, int width, int height, PreciseViewport viewport,
+                              int maxIterations, int left, int top, int right, int bottom,
+                              int knownStep, RenderStats stats) {
+        double cx = viewport.getCenterX().doubleValue();
+        double cy = viewport.getCenterY().doubleValue();
+        double pixelSize = viewport.getPixelSize();
+        for (int py = top; py < bottom; py++) {
+            double y = cy + (py - height / 2.0) * pixelSize;
+            int offset = py * width;
+            boolean knownRow = (knownStep > 0) && (py % knownStep == 0);
+            for (int px = left; px < right; px++) {
+                if (knownRow && (px % knownStep == 0)) {
+                    continue;
+                }
+                values[offset + px] = kernel.iterateSmooth(cx + (px - width / 2.0) * pixelSize,
+                        y, maxIterations, stats);
+            }
+        }
+    }
+}
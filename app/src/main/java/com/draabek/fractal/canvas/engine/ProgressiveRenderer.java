@@ -0,0 +1,180 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Arrays;
+
+/**
+ * Coarse-to-fine escape-time renderer. The first pass samples every 8th pixel and
+ * fills 8x8 blocks, each following pass halves the step and only computes the samples
+ * that are not on the grid of the previous pass. A full render therefore costs the
+ * same number of kernel evaluations as a direct one. Pixels mirrored by the kernel's
+ * symmetry are copied after each pass instead of being computed.
+ * <p>
+ * One instance renders one frame, {@link #cancel()} stops it between rows.
+ */
+public class ProgressiveRenderer {
+    public static final int COARSEST_STEP = 8;
+
+    private final EscapeTimeKernel kernel;
+    private final RenderStats stats = new RenderStats();
+    private volatile boolean cancelled;
+
+    public ProgressiveRenderer(EscapeTimeKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Statistics of all passes rendered so far
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Render all passes, notifying the listener after each of them
+     * @return true if the frame was finished, false if it was cancelled
+     */
+    public boolean render(final int[] pixels, int width, int height, Viewport viewport,
+                          int maxIterations, final int[] palette, final PassListener listener) {
+        final IterationBuffer buffer = new IterationBuffer(width, height);
+        return render(buffer, viewport, maxIterations, step -> {
+            Colorizer.colorize(buffer, pixels, palette, 0);
+            if (listener != null) {
+                listener.onPassComplete(step);
+            }
+        });
+    }
+
+    /**
+     * Compute the iteration counts in all passes, notifying the listener after each of them
+     * @return true if the frame was finished, false if it was cancelled
+     */
+    public boolean render(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                          PassListener listener) {
+        return render(buffer, viewport, maxIterations, null, listener);
+    }
+
+    /**
+     * Compute the iteration counts in all passes, keeping the orbits of the pixels that reach
+     * the limit for {@link EscapeTimeRenderer#continueRender}
+     * @param orbits Filled with the unresolved pixels, null to keep nothing. It is left empty
+     * if the frame is cancelled.
+     * @return true if the frame was finished, false if it was cancelled
+     */
+    public boolean render(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                          OrbitStore orbits, PassListener listener) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        buffer.setMaxIterations(maxIterations);
+        if (orbits != null) {
+            orbits.clear();
+        }
+        MirrorMap mirror = MirrorMap.create(kernel.getSymmetry(), viewport, width, height);
+        for (int step = COARSEST_STEP; step >= 1; step /= 2) {
+            renderPass(buffer, viewport, maxIterations, step, step != COARSEST_STEP, mirror,
+                    orbits);
+            if (cancelled) {
+                if (orbits != null) {
+                    orbits.clear();
+                }
+                return false;
+            }
+            if (mirror != null) {
+                mirror.copy(buffer.getValues());
+            }
+            if (listener != null) {
+                listener.onPassComplete(step);
+            }
+        }
+        if (mirror != null) {
+            stats.countMirroredPixels(mirror.getPixelCount());
+        }
+        stats.countPrecision(Precision.DOUBLE, (long) width * height);
+        if (orbits != null) {
+            orbits.setMaxIterations(maxIterations);
+        }
+        return true;
+    }
+
+    /**
+     * Compute samples on the grid of the given step and fill the step x step block
+     * below and right of each of them
+     * @param skipCoarser Skip samples already computed by the pass with twice the step
+     * @param mirror Samples inside this rectangle are skipped, null to compute all
+     */
+    void renderPass(IterationBuffer buffer, Viewport viewport, int maxIterations,
+                    int step, boolean skipCoarser, MirrorMap mirror) {
+        renderPass(buffer, viewport, maxIterations, step, skipCoarser, mirror, null);
+    }
+
+    /**
+     * @param orbits Collects the samples that reach the limit, null to keep nothing
+     */
+    private void renderPass(IterationBuffer buffer, Viewport viewport, final int maxIterations,
+                            final int step, final boolean skipCoarser, final MirrorMap mirror,
+                            final OrbitStore orbits) {
+        final float[] values = buffer.getValues();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final double x0 = viewport.getLeft();
+        final double y0 = viewport.getTop();
+        final double dx = viewport.getPixelWidth(width);
+        final double dy = viewport.getPixelHeight(height);
+        final int coarserStep = 2 * step;
+        // Tile edges are multiples of the coarsest step, so no block crosses a tile
+        TileScheduler.render(0, 0, width, height, TileScheduler.DEFAULT_TILE_SIZE,
+                (left, top, right, bottom) -> {
+                    RenderStats tileStats = new RenderStats();
+                    OrbitStore.TileOrbits unresolved = (orbits == null) ? null
+                            : new OrbitStore.TileOrbits();
+                    for (int py = top; py < bottom; py += step) {
+                        if (cancelled) {
+                            break;
+                        }
+                        double y = y0 + py * dy;
+                        int blockBottom = Math.min(py + step, bottom);
+                        boolean coarserRow = (py % coarserStep) == 0;
+                        for (int px = left; px < right; px += step) {
+                            if (skipCoarser && coarserRow && ((px % coarserStep) == 0)) {
+                                continue;
+                            }
+                            int blockRight = Math.min(px + step, right);
+                            // Blocks sticking out of the mirrored area are computed for the preview
+                            if ((mirror != null) && mirror.contains(px, py)
+                                    && mirror.contains(blockRight - 1, blockBottom - 1)) {
+                                continue;
+                            }
+                            float value;
+                            if (unresolved == null) {
+                                value = kernel.iterateSmooth(x0 + px * dx, y, maxIterations,
+                                        tileStats);
+                            } else {
+                                double x = x0 + px * dx;
+                                int iterations = kernel.continueOrbit(x, y, unresolved.orbit,
+                                        0, 0, maxIterations, tileStats);
+                                if (iterations >= maxIterations) {
+                                    unresolved.keep(py * width + px);
+                                }
+                                value = kernel.smooth(x, y, iterations, unresolved.orbit[0],
+                                        unresolved.orbit[1], maxIterations);
+                            }
+                            for (int by = py; by < blockBottom; by++) {
+                                int offset = by * width;
+                                Arrays.fill(values, offset + px, offset + blockRight, value);
+                            }
+                        }
+                    }
+                    if (unresolved != null) {
+                        unresolved.addTo(orbits);
+                    }
+                    stats.add(tileStats);
+                });
+    }
+}
@@ -0,0 +1,72 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Mandelbrot orbit Z(n+1) = Z(n)^2 + C of a single point, computed in {@link FixedPoint}
+ * with as many bits as the viewport needs and stored rounded to doubles. Perturbation only needs the rounded
+ * values, the full precision is required to keep the orbit itself from drifting.
+ */
+public final class ReferenceOrbit {
+    private final double[] re;
+    private final double[] im;
+    private final int length;
+
+    private ReferenceOrbit(double[] re, double[] im, int length) {
+        this.re = re;
+        this.im = im;
+        this.length = length;
+    }
+
+    /**
+     * Iterate until the orbit escapes or maxIterations is reached
+     * @param fractionBits Precision of the iteration
+     */
+    public static ReferenceOrbit compute(BigDecimal cx, BigDecimal cy, int maxIterations,
+                                         int fractionBits) {
+        double[] re = new double[maxIterations + 1];
+        double[] im = new double[maxIterations + 1];
+        int limbCount = FixedPoint.limbsForBits(fractionBits);
+        FixedPoint cr = new FixedPoint(limbCount).set(cx);
+        FixedPoint ci = new FixedPoint(limbCount).set(cy);
+        FixedPoint zr = new FixedPoint(limbCount);
+        FixedPoint zi = new FixedPoint(limbCount);
+        FixedPoint zi2 = new FixedPoint(limbCount);
+        FixedPoint twiceZr = new FixedPoint(limbCount);
+        int n = 0;
+        while ((n < maxIterations) && (re[n] * re[n] + im[n] * im[n] <= 4.0)) {
+            zi2.square(zi);
+            twiceZr.set(zr).twice();
+            zr.squareAdd(zr, cr).subtract(zr, zi2);
+            zi.multiplyAdd(twiceZr, zi, ci);
+            n++;
+            re[n] = zr.doubleValue();
+            im[n] = zi.doubleValue();
+        }
+        return new ReferenceOrbit(re, im, n + 1);
+    }
+
+    /**
+     * @return Number of stored points Z(0) .. Z(length - 1), the last one may lie outside
+     * the escape radius
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public double getRe(int n) {
+        return re[n];
+    }
+
+    public double getIm(int n) {
+        return im[n];
+    }
+
+    double[] getRe() {
+        return re;
+    }
+
+    double[] getIm() {
+        return im;
+    }
+}
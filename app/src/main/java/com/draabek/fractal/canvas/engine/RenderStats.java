@@ -0,0 +1,157 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.Locale;
+
+/**
+ * Counters collected while rendering a frame. Each tile fills its own instance
+ * without synchronization and merges it into the frame total with {@link #add(RenderStats)}.
+ */
+public class RenderStats {
+    private long pixels;
+    private long iterations;
+    private long bulbPixels;
+    private long periodicPixels;
+    private long savedIterations;
+    private long mirroredPixels;
+    private long references;
+    private final long[] precisionPixels = new long[Precision.values().length];
+
+    /**
+     * A pixel was iterated
+     * @param performed Number of iterations actually computed
+     */
+    public void countPixel(int performed) {
+        pixels++;
+        iterations += performed;
+    }
+
+    /**
+     * A pixel was iterated, skipping some of its iterations
+     * @param performed Number of iterations actually computed
+     * @param skipped Number of iterations that were approximated
+     */
+    public void countPixel(int performed, int skipped) {
+        pixels++;
+        iterations += performed;
+        savedIterations += skipped;
+    }
+
+    /**
+     * A pixel was found inside the main cardioid or the period-2 bulb without iterating
+     */
+    public void countBulbPixel(int maxIterations) {
+        pixels++;
+        bulbPixels++;
+        savedIterations += maxIterations;
+    }
+
+    /**
+     * Iteration of a pixel stopped early because its orbit became periodic
+     */
+    public void countPeriodicPixel(int performed, int maxIterations) {
+        pixels++;
+        periodicPixels++;
+        iterations += performed;
+        savedIterations += maxIterations - performed;
+    }
+
+    /**
+     * Pixels were copied from their mirror images instead of being computed
+     */
+    public synchronized void countMirroredPixels(long count) {
+        mirroredPixels += count;
+    }
+
+    /**
+     * High precision reference orbits were computed for the frame
+     */
+    public synchronized void countReferences(int count) {
+        references += count;
+    }
+
+    /**
+     * Pixels were computed with the given numeric precision
+     */
+    public synchronized void countPrecision(Precision precision, long count) {
+        precisionPixels[precision.ordinal()] += count;
+    }
+
+    public synchronized void add(RenderStats other) {
+        pixels += other.pixels;
+        iterations += other.iterations;
+        bulbPixels += other.bulbPixels;
+        periodicPixels += other.periodicPixels;
+        savedIterations += other.savedIterations;
+        mirroredPixels += other.mirroredPixels;
+        references += other.references;
+        for (int i = 0; i < precisionPixels.length; i++) {
+            precisionPixels[i] += other.precisionPixels[i];
+        }
+    }
+
+    public synchronized long getPixels() {
+        return pixels;
+    }
+
+    public synchronized long getIterations() {
+        return iterations;
+    }
+
+    public synchronized long getBulbPixels() {
+        return bulbPixels;
+    }
+
+    public synchronized long getPeriodicPixels() {
+        return periodicPixels;
+    }
+
+    public synchronized long getSavedIterations() {
+        return savedIterations;
+    }
+
+    public synchronized long getMirroredPixels() {
+        return mirroredPixels;
+    }
+
+    public synchronized long getReferences() {
+        return references;
+    }
+
+    public synchronized long getPrecisionPixels(Precision precision) {
+        return precisionPixels[precision.ordinal()];
+    }
+
+    /**
+     * @return Most exact precision any pixel was computed with, null if none was counted
+     */
+    public synchronized Precision getPrecision() {
+        Precision[] values = Precision.values();
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (precisionPixels[i] > 0) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "%d pixels, %d iterations, %d saved (%d in cardioid/bulb, %d periodic), %d mirrored, "
+                        + "%d references",
+                pixels, iterations, savedIterations, bulbPixels, periodicPixels, mirroredPixels,
+                references) + getPrecisionSummary();
+    }
+
+    private String getPrecisionSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Precision precision : Precision.values()) {
+            long count = precisionPixels[precision.ordinal()];
+            if (count > 0) {
+                summary.append((summary.length() == 0) ? ", precision " : " + ")
+                        .append(count).append(' ').append(precision);
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Reuse of the last frame for a new viewport: the samples of the last frame that are also
+ * samples of the new one are moved to their new pixels, only the missing ones are rendered.
+ */
+public interface Reprojection {
+    /**
+     * Move the values of the last frame in place to the pixels of the new frame, pixels
+     * without an exact sample get an approximation usable as a preview
+     */
+    void apply(float[] values);
+
+    /**
+     * Move the colored pixels of the last frame the same way as the values
+     */
+    void apply(int[] pixels);
+
+    /**
+     * @return Regions as {left, top, right, bottom} that contain all missing pixels,
+     * they do not overlap and may be empty
+     */
+    int[][] getMissingRegions();
+
+    /**
+     * @return Pixels of the missing regions whose column and row are both multiples of this
+     * step hold exact samples already, 0 if all pixels of the regions are missing
+     */
+    int getKnownStep();
+
+    /**
+     * @return Number of pixels that have to be rendered
+     */
+    long getMissingPixelCount();
+}
@@ -0,0 +1,15 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Renders one rectangular tile of a frame. Implementations are called concurrently
+ * for different tiles and must only write to pixels inside the tile they were given.
+ */
+public interface TileRenderer {
+    /**
+     * @param left First column of the tile (inclusive)
+     * @param top First row of the tile (inclusive)
+     * @param right Last column of the tile (exclusive)
+     * @param bottom Last row of the tile (exclusive)
+     */
+    void renderTile(int left, int top, int right, int bottom);
+}
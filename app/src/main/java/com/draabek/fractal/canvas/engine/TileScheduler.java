@@ -0,0 +1,97 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a frame into square tiles and renders them on a shared work-stealing pool.
+ * Tiles never overlap, so renderers can write into a shared pixel array without locking;
+ * the pool's join establishes visibility of the results for the calling thread.
+ */
+public final class TileScheduler {
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static ForkJoinPool pool;
+
+    private TileScheduler() {}
+
+    /**
+     * @return Pool shared by all CPU renderers, sized to the number of available cores
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * Render the whole width x height frame and block until all tiles are finished
+     */
+    public static void render(int width, int height, TileRenderer renderer) {
+        render(0, 0, width, height, DEFAULT_TILE_SIZE, renderer);
+    }
+
+    /**
+     * Render the given region of a frame and block until all tiles are finished
+     * @param tileSize Edge length of a tile in pixels
+     */
+    public static void render(int left, int top, int right, int bottom, int tileSize,
+                              TileRenderer renderer) {
+        if ((right <= left) || (bottom <= top)) {
+            return;
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        int columns = (right - left + tileSize - 1) / tileSize;
+        int rows = (bottom - top + tileSize - 1) / tileSize;
+        getPool().invoke(new TileAction(renderer, left, top, right, bottom, tileSize, columns,
+                0, columns * rows));
+    }
+
+    /**
+     * Recursively halves a range of tile indices so that idle workers can steal
+     * the other half
+     */
+    private static final class TileAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileRenderer renderer;
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+        private final int tileSize;
+        private final int columns;
+        private final int from;
+        private final int to;
+
+        TileAction(TileRenderer renderer, int left, int top, int right, int bottom,
+                   int tileSize, int columns, int from, int to) {
+            this.renderer = renderer;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.tileSize = tileSize;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int tileLeft = left + (from % columns) * tileSize;
+                int tileTop = top + (from / columns) * tileSize;
+                renderer.renderTile(tileLeft, tileTop,
+                        Math.min(tileLeft + tileSize, right), Math.min(tileTop + tileSize, bottom));
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileAction(renderer, left, top, right, bottom, tileSize, columns, from, middle),
+                        new TileAction(renderer, left, top, right, bottom, tileSize, columns, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+/**
+ * z -> conj(z)^2 + c, starting from z = 0
+ */
+public class TricornKernel extends EscapeTimeKernel {
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        return (int) escape(x, y, maxIterations, false, stats);
+    }
+
+    @Override
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        return escape(x, y, maxIterations, true, stats);
+    }
+
+    @Override
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        return Formula.TRICORN.smooth(count, zr, zi, x, y, maxIterations);
+    }
+
+    /**
+     * @param smooth true for the normalized count, false for the count itself
+     */
+    private float escape(double x, double y, int maxIterations, boolean smooth,
+                         RenderStats stats) {
+        double zr = 0;
+        double zi = 0;
+        double zr2 = 0;
+        double zi2 = 0;
+        int i = 0;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = -2 * zr * zi + y;
+            zr = zr2 - zi2 + x;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+        }
+        stats.countPixel(i);
+        return smooth ? smooth(x, y, i, zr, zi, maxIterations) : i;
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        double zr = 0;
+        double zi = 0;
+        if (iteration > 0) {
+            zr = orbit[offset];
+            zi = orbit[offset + 1];
+        }
+        double zr2 = zr * zr;
+        double zi2 = zi * zi;
+        int i = iteration;
+        while ((i < maxIterations) && (zr2 + zi2 <= 4.0)) {
+            zi = -2 * zr * zi + y;
+            zr = zr2 - zi2 + x;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            i++;
+        }
+        orbit[offset] = zr;
+        orbit[offset + 1] = zi;
+        stats.countPixel(i - iteration);
+        return i;
+    }
+}
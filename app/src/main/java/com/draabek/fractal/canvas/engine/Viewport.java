@@ -0,0 +1,54 @@
+package com.draabek.fractal.canvas.engine;
+
+/**
+ * Part of the complex plane mapped onto a frame. Same orientation as the RectF
+ * passed to BitmapDrawFractal: left/top belong to pixel [0, 0]
+ */
+public final class Viewport {
+    private final double left;
+    private final double top;
+    private final double right;
+    private final double bottom;
+
+    public Viewport(double left, double top, double right, double bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public double getLeft() {
+        return left;
+    }
+
+    public double getTop() {
+        return top;
+    }
+
+    public double getRight() {
+        return right;
+    }
+
+    public double getBottom() {
+        return bottom;
+    }
+
+    /**
+     * @return Distance between horizontally adjacent pixels when mapped to width columns
+     */
+    public double getPixelWidth(int width) {
+        return (right - left) / width;
+    }
+
+    /**
+     * @return Distance between vertically adjacent pixels when mapped to height rows
+     */
+    public double getPixelHeight(int height) {
+        return (bottom - top) / height;
+    }
+
+    @Override
+    public String toString() {
+        return "Viewport[" + left + ", " + top + ", " + right + ", " + bottom + "]";
+    }
+}
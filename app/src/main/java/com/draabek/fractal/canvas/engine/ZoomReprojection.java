@@ -0,0 +1,201 @@
+package com.draabek.fractal.canvas.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Zoom by a power of two around an anchor pixel that keeps showing the same point.
+ * Zooming in by 2^k makes every 2^k-th column and row of the new frame a sample of the last
+ * frame, a quarter of the pixels at 2x; zooming out by 2^k shrinks the whole last frame to
+ * a rectangle of exact samples. Pixels in between get the nearest known value as a preview.
+ * <p>
+ * Zooming in requires the anchor to lie on the grid of known samples, which holds for the
+ * frame origin the pinch gesture scales around.
+ */
+public final class ZoomReprojection implements Reprojection {
+    /** Deepest zoom step that still reuses samples, 8x */
+    public static final int MAX_LEVELS = 3;
+    /** Zoom factors within this many binary orders of magnitude of a power of two snap to it */
+    static final double SNAP_TOLERANCE = 0.2;
+
+    private final int width;
+    private final int height;
+    private final int levels;
+    private final int factor;
+    private final int anchorX;
+    private final int anchorY;
+
+    /**
+     * @param levels Binary logarithm of the magnification, negative zooms out
+     * @param anchorX Column showing the same point in both frames
+     * @param anchorY Row showing the same point in both frames
+     */
+    public ZoomReprojection(int width, int height, int levels, int anchorX, int anchorY) {
+        if ((levels == 0) || (Math.abs(levels) > MAX_LEVELS)) {
+            throw new IllegalArgumentException("Unsupported zoom by 2^" + levels);
+        }
+        factor = 1 << Math.abs(levels);
+        if ((anchorX < 0) || (anchorX >= width) || (anchorY < 0) || (anchorY >= height)
+                || ((levels > 0) && ((anchorX % factor != 0) || (anchorY % factor != 0)))) {
+            throw new IllegalArgumentException("Anchor [" + anchorX + ", " + anchorY
+                    + "] not usable for zoom by 2^" + levels);
+        }
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+    }
+
+    /**
+     * @param factor Magnification of a gesture, greater than 1 zooms in
+     * @return The nearest power of two if the factor is close enough to it, the factor otherwise
+     */
+    public static double snapFactor(double factor) {
+        double log = Math.log(factor) / Math.log(2);
+        long levels = Math.round(log);
+        if ((levels == 0) || (Math.abs(levels) > MAX_LEVELS)
+                || !(Math.abs(log - levels) <= SNAP_TOLERANCE)) {
+            return factor;
+        }
+        return Math.scalb(1.0, (int) levels);
+    }
+
+    /**
+     * @return Reprojection turning the frame of one viewport into the frame of the other,
+     * null if the second one is not a zoom of the first by a power of two this class supports
+     */
+    public static ZoomReprojection between(PreciseViewport from, PreciseViewport to,
+                                           int width, int height) {
+        double ratio = from.getPixelSize() / to.getPixelSize();
+        int levels = Math.getExponent(ratio);
+        if ((ratio != Math.scalb(1.0, levels)) || (levels == 0)
+                || (Math.abs(levels) > MAX_LEVELS)) {
+            return null;
+        }
+        // The anchor shows the same point: (anchor - size / 2) * (from - to pixel size)
+        // equals the move of the center
+        double shrink = from.getPixelSize() - to.getPixelSize();
+        BigDecimal moveX = to.getCenterX().subtract(from.getCenterX());
+        BigDecimal moveY = to.getCenterY().subtract(from.getCenterY());
+        double anchorX = Math.rint(width / 2.0 + moveX.doubleValue() / shrink);
+        double anchorY = Math.rint(height / 2.0 + moveY.doubleValue() / shrink);
+        if (!(anchorX >= 0) || (anchorX >= width) || !(anchorY >= 0) || (anchorY >= height)) {
+            return null;
+        }
+        int factor = 1 << Math.abs(levels);
+        if ((levels > 0) && (((int) anchorX % factor != 0) || ((int) anchorY % factor != 0))) {
+            return null;
+        }
+        if (!from.zoom(ratio, anchorX, anchorY, width, height).equals(to)) {
+            return null;
+        }
+        return new ZoomReprojection(width, height, levels, (int) anchorX, (int) anchorY);
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    @Override
+    public void apply(float[] values) {
+        float[] last = values.clone();
+        if (levels > 0) {
+            for (int y = 0; y < height; y++) {
+                int sourceRow = sourceIn(y, anchorY) * width;
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    values[row + x] = last[sourceRow + sourceIn(x, anchorX)];
+                }
+            }
+        } else {
+            // Outside of the shrunk frame nothing is known, 0 until rendered
+            Arrays.fill(values, 0);
+            int[] known = getKnownRectangle();
+            for (int y = known[1]; y < known[3]; y++) {
+                int sourceRow = sourceOut(y, anchorY) * width;
+                int row = y * width;
+                for (int x = known[0]; x < known[2]; x++) {
+                    values[row + x] = last[sourceRow + sourceOut(x, anchorX)];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void apply(int[] pixels) {
+        int[] last = pixels.clone();
+        if (levels > 0) {
+            for (int y = 0; y < height; y++) {
+                int sourceRow = sourceIn(y, anchorY) * width;
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    pixels[row + x] = last[sourceRow + sourceIn(x, anchorX)];
+                }
+            }
+        } else {
+            Arrays.fill(pixels, 0xff000000);
+            int[] known = getKnownRectangle();
+            for (int y = known[1]; y < known[3]; y++) {
+                int sourceRow = sourceOut(y, anchorY) * width;
+                int row = y * width;
+                for (int x = known[0]; x < known[2]; x++) {
+                    pixels[row + x] = last[sourceRow + sourceOut(x, anchorX)];
+                }
+            }
+        }
+    }
+
+    /**
+     * Nearest known sample when zooming in, exact for multiples of the factor. The anchor is
+     * one of them and i is not negative, so plain division rounds down.
+     */
+    private int sourceIn(int i, int anchor) {
+        return anchor + i / factor - anchor / factor;
+    }
+
+    private int sourceOut(int i, int anchor) {
+        return anchor + (i - anchor) * factor;
+    }
+
+    /**
+     * @return Pixels of the zoomed out frame holding the whole last frame as
+     * {left, top, right, bottom}
+     */
+    private int[] getKnownRectangle() {
+        return new int[] {
+                anchorX - anchorX / factor, anchorY - anchorY / factor,
+                anchorX + (width - 1 - anchorX) / factor + 1,
+                anchorY + (height - 1 - anchorY) / factor + 1};
+    }
+
+    @Override
+    public int[][] getMissingRegions() {
+        if (levels > 0) {
+            return new int[][] {{0, 0, width, height}};
+        }
+        int[] known = getKnownRectangle();
+        return new int[][] {
+                {0, 0, width, known[1]},
+                {0, known[3], width, height},
+                {0, known[1], known[0], known[3]},
+                {known[2], known[1], width, known[3]}};
+    }
+
+    @Override
+    public int getKnownStep() {
+        return (levels > 0) ? factor : 0;
+    }
+
+    @Override
+    public long getMissingPixelCount() {
+        if (levels > 0) {
+            long knownColumns = (width - 1) / factor + 1;
+            long knownRows = (height - 1) / factor + 1;
+            return (long) width * height - knownColumns * knownRows;
+        }
+        int[] known = getKnownRectangle();
+        return (long) width * height
+                - (long) (known[2] - known[0]) * (known[3] - known[1]);
+    }
+}
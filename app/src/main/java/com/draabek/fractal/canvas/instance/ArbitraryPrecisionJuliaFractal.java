@@ -0,0 +1,29 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.ArbitraryPrecisionFractal;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+
+/**
+ * Julia set of the constant given by the "cX" and "cY" parameters, iterated in full
+ * precision at every pixel
+ */
+public class ArbitraryPrecisionJuliaFractal extends ArbitraryPrecisionFractal {
+    private FixedPointKernel kernel;
+    private float kernelX;
+    private float kernelY;
+
+    @Override
+    protected synchronized FixedPointKernel getKernel() {
+        Float x = parameters.get("cX");
+        Float y = parameters.get("cY");
+        float cx = (x == null) ? 0 : x;
+        float cy = (y == null) ? 0 : y;
+        if ((kernel == null) || (cx != kernelX) || (cy != kernelY)) {
+            kernel = new FixedPointKernel(Formula.JULIA, cx, cy);
+            kernelX = cx;
+            kernelY = cy;
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,17 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.ArbitraryPrecisionFractal;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+
+/**
+ * Mandelbrot set iterated in full precision at every pixel
+ */
+public class ArbitraryPrecisionMandelbrotFractal extends ArbitraryPrecisionFractal {
+    private final FixedPointKernel kernel = new FixedPointKernel(Formula.MANDELBROT);
+
+    @Override
+    protected FixedPointKernel getKernel() {
+        return kernel;
+    }
+}
@@ -0,0 +1,42 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.DensityFractal;
+import com.draabek.fractal.canvas.engine.BuddhabrotRenderer;
+import com.draabek.fractal.canvas.engine.DensityRenderer;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Buddhabrot rendered by {@link BuddhabrotRenderer}, the "points" parameter counts sampled
+ * orbits. The orbits escaping within the "iterations" parameter are plotted. With the
+ * "redIterations", "greenIterations" and "blueIterations" parameters the fractal is a
+ * Nebulabrot instead, each color channel plotting the orbits escaping within its limit.
+ * The "importance" parameter turns Metropolis-Hastings sampling on (1) or off (0).
+ */
+public class BuddhabrotFractal extends DensityFractal {
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    /**
+     * @return Iteration limit of each channel
+     */
+    public int[] getLimits() {
+        if (parameters.containsKey("redIterations")) {
+            return new int[]{limit("redIterations"), limit("greenIterations"),
+                    limit("blueIterations")};
+        }
+        return new int[]{limit("iterations")};
+    }
+
+    public boolean isImportanceSampling() {
+        return getParameter("importance", 1) > 0;
+    }
+
+    @Override
+    protected DensityRenderer createRenderer(int width, int height, Viewport viewport) {
+        return new BuddhabrotRenderer(width, height, viewport, getLimits(),
+                isImportanceSampling());
+    }
+
+    private int limit(String name) {
+        return Math.max(1, (int) getParameter(name, DEFAULT_ITERATIONS));
+    }
+}
@@ -0,0 +1,33 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.BurningShipKernel;
+import com.draabek.fractal.canvas.engine.DoubleDoubleKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+
+/**
+ * Burning Ship fractal rendered on all CPU cores
+ */
+public class BurningShipFractal extends EscapeTimeFractal {
+    private final EscapeTimeKernel kernel = new BurningShipKernel();
+    private final DoubleDoubleKernel doubleDoubleKernel =
+            new DoubleDoubleKernel(Formula.BURNING_SHIP);
+    private final FixedPointKernel fixedPointKernel = new FixedPointKernel(Formula.BURNING_SHIP);
+
+    @Override
+    protected EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    protected DoubleDoubleKernel getDoubleDoubleKernel() {
+        return doubleDoubleKernel;
+    }
+
+    @Override
+    protected FixedPointKernel getFixedPointKernel() {
+        return fixedPointKernel;
+    }
+}
@@ -0,0 +1,16 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.AttractorFractal;
+import com.draabek.fractal.canvas.engine.Attractor;
+import com.draabek.fractal.canvas.engine.CliffordMap;
+
+/**
+ * Clifford attractor of the "a", "b", "c" and "d" parameters
+ */
+public class CliffordAttractor extends AttractorFractal {
+    @Override
+    protected Attractor getAttractor() {
+        return new CliffordMap(getParameter("a", -1.4f), getParameter("b", 1.6f),
+                getParameter("c", 1.0f), getParameter("d", 0.7f));
+    }
+}
@@ -0,0 +1,39 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.CollatzKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+
+import java.math.BigDecimal;
+
+/**
+ * Escape times of the Collatz map extended to the complex plane, rendered on all CPU cores.
+ * Views beyond double precision are rendered in double.
+ * <p>
+ * The "centerX", "centerY" and "scale" parameters place the first view like the collatz
+ * shader, which maps the view to z = uv / scale - center with uv running from -0.5 to 0.5
+ * over its height.
+ */
+public class CollatzFractal extends EscapeTimeFractal {
+    private final EscapeTimeKernel kernel = new CollatzKernel();
+
+    @Override
+    protected EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    public PreciseViewport getInitialViewport(int width, int height) {
+        Float centerX = parameters.get("centerX");
+        Float centerY = parameters.get("centerY");
+        Float scale = parameters.get("scale");
+        if ((centerX == null) || (centerY == null) || (scale == null) || (scale <= 0)) {
+            return null;
+        }
+        // Rows run top to bottom, opposite to gl_FragCoord. The map commutes with conjugation,
+        // so the mirrored center shows the same picture.
+        return new PreciseViewport(new BigDecimal(-centerX), new BigDecimal(centerY),
+                1 / (Math.max(1, height) * scale));
+    }
+}
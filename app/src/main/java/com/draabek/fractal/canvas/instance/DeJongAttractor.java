@@ -0,0 +1,16 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.AttractorFractal;
+import com.draabek.fractal.canvas.engine.Attractor;
+import com.draabek.fractal.canvas.engine.DeJongMap;
+
+/**
+ * Peter de Jong attractor of the "a", "b", "c" and "d" parameters
+ */
+public class DeJongAttractor extends AttractorFractal {
+    @Override
+    protected Attractor getAttractor() {
+        return new DeJongMap(getParameter("a", 1.4f), getParameter("b", -2.3f),
+                getParameter("c", 2.4f), getParameter("d", -2.1f));
+    }
+}
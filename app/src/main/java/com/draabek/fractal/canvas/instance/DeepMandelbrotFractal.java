@@ -0,0 +1,75 @@
+package com.draabek.fractal.canvas.instance;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.IterationFrame;
+import com.draabek.fractal.canvas.engine.IterationBuffer;
+import com.draabek.fractal.canvas.engine.PerturbationRenderer;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Mandelbrot set for deep zooms, rendered by perturbation against high precision
+ * reference orbits. Zooming is only limited by the double exponent range of the pixel size.
+ */
+public class DeepMandelbrotFractal extends BitmapDrawFractal {
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    private final PerturbationRenderer renderer = new PerturbationRenderer();
+    private final IterationFrame frame = new IterationFrame();
+    private volatile RenderStats lastStats;
+
+    public int getMaxIterations() {
+        Float iterations = parameters.get("iterations");
+        return (iterations == null) ? DEFAULT_ITERATIONS : Math.max(1, iterations.intValue());
+    }
+
+    /**
+     * @return Statistics of the last rendered frame, null before the first one
+     */
+    public RenderStats getLastStats() {
+        return lastStats;
+    }
+
+    @Override
+    public synchronized Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        IterationBuffer iterations = frame.prepare(bitmap);
+        lastStats = renderer.render(iterations, viewport, getMaxIterations());
+        frame.complete(viewport, parameters);
+        recolor(bitmap);
+        return bitmap;
+    }
+
+    @Override
+    public synchronized boolean recolorBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        if (!frame.matches(bitmap, viewport, parameters)) {
+            return false;
+        }
+        recolor(bitmap);
+        return true;
+    }
+
+    private void recolor(Bitmap bitmap) {
+        frame.colorize(bitmap, (colorPalette == null) ? null : colorPalette.getColorsInt(),
+                parameters);
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, RectF rect) {
+        return redrawBitmap(bitmap, PreciseViewport.fromViewport(
+                new Viewport(rect.left, rect.top, rect.right, rect.bottom),
+                bitmap.getWidth(), bitmap.getHeight()));
+    }
+
+    /**
+     * All pixels share the reference orbits, so the whole frame is rendered
+     */
+    @Override
+    public Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part) {
+        return redrawBitmap(bitmap, rect);
+    }
+}
@@ -0,0 +1,30 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.DensityFractal;
+import com.draabek.fractal.canvas.engine.DensityRenderer;
+import com.draabek.fractal.canvas.engine.FlameRenderer;
+import com.draabek.fractal.canvas.engine.FlameTransform;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Fractal flame rendered by {@link FlameRenderer}, the "points" parameter counts points of
+ * the chaos game. The transforms are read from the "xform" parameters, see
+ * {@link FlameTransform#fromParameters}, and the flame is placed in the view by
+ * {@link #toPlane}. The "gamma" parameter sets the gamma of the brightness, "supersample"
+ * the number of accumulator cells per pixel along each axis.
+ */
+public class FlameFractal extends DensityFractal {
+    public static final int DEFAULT_SUPERSAMPLE = 2;
+
+    public int getSupersample() {
+        int supersample = (int) getParameter("supersample", DEFAULT_SUPERSAMPLE);
+        return Math.max(1, Math.min(FlameRenderer.MAX_SUPERSAMPLE, supersample));
+    }
+
+    @Override
+    protected DensityRenderer createRenderer(int width, int height, Viewport viewport) {
+        return new FlameRenderer(FlameTransform.fromParameters(parameters), width, height,
+                toPlane(viewport), getSupersample(),
+                getParameter("gamma", (float) FlameRenderer.DEFAULT_GAMMA));
+    }
+}
@@ -0,0 +1,59 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.formula.Expression;
+import com.draabek.fractal.formula.FormulaKernel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escape-time fractal of a formula from its catalog entry, like "z^3 + c*sin(z)", iterated
+ * from the start formula, c by default, rendered on all CPU cores. The "bailout" parameter is
+ * the escape radius, other names in the formulas are parameters as well. Views beyond double
+ * precision are rendered in double.
+ */
+public class FormulaFractal extends EscapeTimeFractal {
+    public static final String DEFAULT_FORMULA = "z^2 + c";
+    public static final String DEFAULT_START = "c";
+    public static final float DEFAULT_BAILOUT = 2;
+
+    private Expression formula = Expression.parse(DEFAULT_FORMULA);
+    private Expression start = Expression.parse(DEFAULT_START);
+    private FormulaKernel kernel;
+    private Map<String, Float> kernelParameters;
+
+    /**
+     * @param start Formula of the first z from c, null for c
+     * @throws com.draabek.fractal.formula.FormulaSyntaxException if either formula is invalid
+     */
+    public synchronized void setFormula(String formula, String start) {
+        this.formula = Expression.parse(formula);
+        this.start = Expression.parse((start == null) ? DEFAULT_START : start);
+        kernel = null;
+    }
+
+    public synchronized Expression getFormula() {
+        return formula;
+    }
+
+    @Override
+    protected synchronized EscapeTimeKernel getKernel() {
+        // Only the parameters of the formulas change the kernel, not the view
+        Map<String, Float> used = new HashMap<>();
+        for (String name : formula.getParameterNames()) {
+            used.put(name, parameters.get(name));
+        }
+        for (String name : start.getParameterNames()) {
+            used.put(name, parameters.get(name));
+        }
+        Float bailout = parameters.get("bailout");
+        used.put("bailout", (bailout == null) ? DEFAULT_BAILOUT : bailout);
+        if ((kernel == null) || !used.equals(kernelParameters)) {
+            kernel = FormulaKernel.compile(formula, start, used.get("bailout"), used);
+            kernelParameters = used;
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,25 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.GeneralizedMandelbrotKernel;
+
+/**
+ * Mandelbrot set of z^p + c for the real exponent p given by the "exponent" parameter,
+ * rendered on all CPU cores. Views beyond double precision are rendered in double.
+ */
+public class GeneralizedMandelbrotFractal extends EscapeTimeFractal {
+    public static final float DEFAULT_EXPONENT = 3;
+
+    private GeneralizedMandelbrotKernel kernel;
+
+    @Override
+    protected synchronized EscapeTimeKernel getKernel() {
+        Float value = parameters.get("exponent");
+        float exponent = (value == null) ? DEFAULT_EXPONENT : value;
+        if ((kernel == null) || (kernel.getExponent() != exponent)) {
+            kernel = new GeneralizedMandelbrotKernel(exponent);
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,22 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.DensityFractal;
+import com.draabek.fractal.canvas.engine.DensityRenderer;
+import com.draabek.fractal.canvas.engine.InverseJuliaRenderer;
+import com.draabek.fractal.canvas.engine.Viewport;
+
+/**
+ * Boundary of the Julia set of the constant given by the "cX" and "cY" parameters, drawn by
+ * {@link InverseJuliaRenderer}. The "hits" parameter limits the visits of a pixel, "points"
+ * the number of preimages walked in millions, though the walk usually ends well before it.
+ * Fast enough to follow changes of the constant live, the set is placed in the view like by
+ * {@link JuliaFractal}.
+ */
+public class InverseJuliaFractal extends DensityFractal {
+    @Override
+    protected DensityRenderer createRenderer(int width, int height, Viewport viewport) {
+        int maxHits = (int) getParameter("hits", InverseJuliaRenderer.DEFAULT_MAX_HITS);
+        return new InverseJuliaRenderer(getParameter("cX", 0), getParameter("cY", 0), width,
+                height, viewport, Math.max(1, maxHits));
+    }
+}
@@ -0,0 +1,51 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.DoubleDoubleKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+import com.draabek.fractal.canvas.engine.JuliaKernel;
+
+/**
+ * Julia set of the constant given by the "cX" and "cY" parameters, rendered on all CPU cores
+ */
+public class JuliaFractal extends EscapeTimeFractal {
+    private JuliaKernel kernel;
+    private DoubleDoubleKernel doubleDoubleKernel;
+    private FixedPointKernel fixedPointKernel;
+    private float kernelX;
+    private float kernelY;
+
+    private synchronized void updateKernels() {
+        Float x = parameters.get("cX");
+        Float y = parameters.get("cY");
+        float cx = (x == null) ? 0 : x;
+        float cy = (y == null) ? 0 : y;
+        if ((kernel == null) || (cx != kernelX) || (cy != kernelY)) {
+            kernel = new JuliaKernel(cx, cy);
+            doubleDoubleKernel = new DoubleDoubleKernel(Formula.JULIA, cx, cy);
+            fixedPointKernel = new FixedPointKernel(Formula.JULIA, cx, cy);
+            kernelX = cx;
+            kernelY = cy;
+        }
+    }
+
+    @Override
+    protected EscapeTimeKernel getKernel() {
+        updateKernels();
+        return kernel;
+    }
+
+    @Override
+    protected DoubleDoubleKernel getDoubleDoubleKernel() {
+        updateKernels();
+        return doubleDoubleKernel;
+    }
+
+    @Override
+    protected FixedPointKernel getFixedPointKernel() {
+        updateKernels();
+        return fixedPointKernel;
+    }
+}
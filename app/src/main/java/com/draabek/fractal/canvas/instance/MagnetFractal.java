@@ -0,0 +1,33 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.MagnetKernel;
+
+/**
+ * Magnet fractal of the formula given by the "type" parameter, 1 or 2, and the constant
+ * given by the "cX" and "cY" parameters, rendered on all CPU cores. Views beyond double
+ * precision are rendered in double.
+ */
+public class MagnetFractal extends EscapeTimeFractal {
+    private MagnetKernel kernel;
+    private float kernelX;
+    private float kernelY;
+
+    @Override
+    protected synchronized EscapeTimeKernel getKernel() {
+        Float t = parameters.get("type");
+        Float x = parameters.get("cX");
+        Float y = parameters.get("cY");
+        int type = ((t != null) && (t.intValue() == 2)) ? 2 : 1;
+        float cx = (x == null) ? 0 : x;
+        float cy = (y == null) ? 0 : y;
+        if ((kernel == null) || (kernel.getType() != type) || (cx != kernelX)
+                || (cy != kernelY)) {
+            kernel = new MagnetKernel(type, cx, cy);
+            kernelX = cx;
+            kernelY = cy;
+        }
+        return kernel;
+    }
+}
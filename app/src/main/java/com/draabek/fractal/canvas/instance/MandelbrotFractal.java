@@ -0,0 +1,33 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.DoubleDoubleKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+import com.draabek.fractal.canvas.engine.MandelbrotKernel;
+
+/**
+ * Mandelbrot set rendered on all CPU cores without the native library
+ */
+public class MandelbrotFractal extends EscapeTimeFractal {
+    private final EscapeTimeKernel kernel = new MandelbrotKernel();
+    private final DoubleDoubleKernel doubleDoubleKernel =
+            new DoubleDoubleKernel(Formula.MANDELBROT);
+    private final FixedPointKernel fixedPointKernel = new FixedPointKernel(Formula.MANDELBROT);
+
+    @Override
+    protected EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    protected DoubleDoubleKernel getDoubleDoubleKernel() {
+        return doubleDoubleKernel;
+    }
+
+    @Override
+    protected FixedPointKernel getFixedPointKernel() {
+        return fixedPointKernel;
+    }
+}
@@ -5,34 +5,84 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 
 import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.IterationFrame;
 import com.draabek.fractal.canvas.NativeLib;
+import com.draabek.fractal.canvas.engine.Colorizer;
+import com.draabek.fractal.canvas.engine.IterationBuffer;
 
 public class MandelbrotFractalJNI extends BitmapDrawFractal {
+	private IterationBuffer iterations;
 	private int[] buffer;
+	private MandelbrotFractal fallback;
 
-	/* Redraw bitmap via JNI */
+	/* Pure Java renderer used when the native library is missing */
+	private MandelbrotFractal getFallback() {
+		if (fallback == null) {
+			fallback = new MandelbrotFractal();
+		}
+		fallback.updateSettings(parameters);
+		fallback.setColorPalette(colorPalette);
+		return fallback;
+	}
+
+	private int getMaxIterations() {
+		Float iterations = parameters.get("iterations");
+		return (iterations == null) ? EscapeTimeFractal.DEFAULT_ITERATIONS
+				: Math.max(1, iterations.intValue());
+	}
+
+	private int[] getPaletteColors() {
+		return (colorPalette == null) ? null : colorPalette.getColorsInt();
+	}
+
+	private void prepareBuffers(Bitmap bitmap) {
+		if ((iterations == null) || !iterations.fits(bitmap.getWidth(), bitmap.getHeight())) {
+			iterations = new IterationBuffer(bitmap.getWidth(), bitmap.getHeight());
+			buffer = new int[bitmap.getWidth()*bitmap.getHeight()];
+		}
+	}
+
+	/* Iterate via JNI, colorize in Java */
 	@Override
 	public Bitmap redrawBitmap(Bitmap bitmap, RectF orig) {
-		if ((buffer == null) || (buffer.length != bitmap.getWidth()*bitmap.getHeight())) {
-			buffer = new int[bitmap.getWidth()*bitmap.getHeight()];
+		if (!NativeLib.isAvailable()) {
+			return getFallback().redrawBitmap(bitmap, orig);
+		}
+		prepareBuffers(bitmap);
+		int maxIterations = getMaxIterations();
+		Float subdivision = parameters.get("subdivision");
+		if ((subdivision != null) && (subdivision > 0)) {
+			NativeLib.redrawMandelbrotSubdivided(iterations.getValues(), bitmap.getWidth(),
+					bitmap.getHeight(), orig.left, orig.top, orig.right, orig.bottom, maxIterations);
+		} else {
+			NativeLib.redrawMandelbrot(iterations.getValues(), bitmap.getWidth(), bitmap.getHeight(),
+					orig.left, orig.top, orig.right, orig.bottom, maxIterations);
 		}
-		NativeLib.redrawMandelbrot(buffer, bitmap.getWidth(), bitmap.getHeight(),
-				orig.left, orig.top, orig.right, orig.bottom, 200);
+		iterations.setMaxIterations(maxIterations);
+		IterationFrame.colorize(iterations, buffer, getPaletteColors(), parameters);
 		bitmap.setPixels(buffer, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 		return bitmap;
 	}
 
 	@Override
 	public Bitmap redrawBitmapPart(Bitmap bitmap, RectF orig, Rect part) {
-		if ((buffer == null) || (buffer.length != bitmap.getWidth()*bitmap.getHeight())) {
-			buffer = new int[bitmap.getWidth()*bitmap.getHeight()];
+		if (!NativeLib.isAvailable()) {
+			return getFallback().redrawBitmapPart(bitmap, orig, part);
 		}
+		prepareBuffers(bitmap);
+		int maxIterations = getMaxIterations();
 		int width = part.right - part.left;
 		int height = part.bottom - part.top;
-		NativeLib.redrawMandelbrotPart(buffer, bitmap.getWidth(), bitmap.getHeight(), 
-				orig.left, orig.top, orig.right, orig.bottom, 200, part.left, part.top,
+		NativeLib.redrawMandelbrotPart(iterations.getValues(), bitmap.getWidth(), bitmap.getHeight(),
+				orig.left, orig.top, orig.right, orig.bottom, maxIterations, part.left, part.top,
 				part.right, part.bottom);
-		bitmap.setPixels(buffer, 0, bitmap.getWidth(), part.left, part.top, width, height);
+		iterations.setMaxIterations(maxIterations);
+		Colorizer.colorize(iterations, buffer, getPaletteColors(),
+				IterationFrame.getPaletteOffset(parameters), part.left, part.top, part.right,
+				part.bottom);
+		bitmap.setPixels(buffer, part.top*bitmap.getWidth() + part.left, bitmap.getWidth(),
+				part.left, part.top, width, height);
 		return bitmap;
 	}
 
@@ -0,0 +1,33 @@
+package com.draabek.fractal.canvas.instance;
+
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.DoubleDoubleKernel;
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.FixedPointKernel;
+import com.draabek.fractal.canvas.engine.Formula;
+import com.draabek.fractal.canvas.engine.TricornKernel;
+
+/**
+ * Tricorn (Mandelbar) fractal rendered on all CPU cores
+ */
+public class TricornFractal extends EscapeTimeFractal {
+    private final EscapeTimeKernel kernel = new TricornKernel();
+    private final DoubleDoubleKernel doubleDoubleKernel =
+            new DoubleDoubleKernel(Formula.TRICORN);
+    private final FixedPointKernel fixedPointKernel = new FixedPointKernel(Formula.TRICORN);
+
+    @Override
+    protected EscapeTimeKernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    protected DoubleDoubleKernel getDoubleDoubleKernel() {
+        return doubleDoubleKernel;
+    }
+
+    @Override
+    protected FixedPointKernel getFixedPointKernel() {
+        return fixedPointKernel;
+    }
+}
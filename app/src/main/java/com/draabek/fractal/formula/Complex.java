@@ -0,0 +1,165 @@
+package com.draabek.fractal.formula;
+
+/**
+ * Complex arithmetic of the formulas. The static methods write their result to an operation
+ * and are what compiled formulas run; the immutable values built on them are for
+ * folding constants, where allocating does not matter.
+ */
+final class Complex {
+    static final Complex ZERO = new Complex(0, 0);
+    static final Complex ONE = new Complex(1, 0);
+    /** Integer exponents up to this are computed by multiplication, larger ones in polar form */
+    static final int MAX_MULTIPLIED_EXPONENT = 64;
+
+    final double re;
+    final double im;
+
+    Complex(double re, double im) {
+        this.re = re;
+        this.im = im;
+    }
+
+    Complex add(Complex other) {
+        return new Complex(re + other.re, im + other.im);
+    }
+
+    Complex subtract(Complex other) {
+        return new Complex(re - other.re, im - other.im);
+    }
+
+    Complex negate() {
+        return new Complex(-re, -im);
+    }
+
+    Complex multiply(Complex other) {
+        Op result = new Op.Value(0, 0);
+        multiply(re, im, other.re, other.im, result);
+        return new Complex(result.re, result.im);
+    }
+
+    Complex divide(Complex other) {
+        Op result = new Op.Value(0, 0);
+        divide(re, im, other.re, other.im, result);
+        return new Complex(result.re, result.im);
+    }
+
+    Complex power(Complex exponent) {
+        Op result = new Op.Value(0, 0);
+        if (isMultipliedExponent(exponent)) {
+            integerPower(re, im, (int) exponent.re, result);
+        } else if (exponent.im == 0) {
+            realPower(re, im, exponent.re, result);
+        } else {
+            power(re, im, exponent.re, exponent.im, result);
+        }
+        return new Complex(result.re, result.im);
+    }
+
+    Complex apply(ComplexFunction function) {
+        Op result = new Op.Value(0, 0);
+        function.apply(re, im, result);
+        return new Complex(result.re, result.im);
+    }
+
+    /**
+     * @return true for the integer exponents computed by multiplication
+     */
+    static boolean isMultipliedExponent(Complex exponent) {
+        return (exponent.im == 0) && (exponent.re == Math.rint(exponent.re))
+                && (Math.abs(exponent.re) <= MAX_MULTIPLIED_EXPONENT);
+    }
+
+    static void multiply(double ar, double ai, double br, double bi, Op out) {
+        out.re = ar * br - ai * bi;
+        out.im = ar * bi + ai * br;
+    }
+
+    static void divide(double ar, double ai, double br, double bi, Op out) {
+        double denominator = br * br + bi * bi;
+        out.re = (ar * br + ai * bi) / denominator;
+        out.im = (ai * br - ar * bi) / denominator;
+    }
+
+    static void square(double x, double y, Op out) {
+        out.re = x * x - y * y;
+        out.im = 2 * x * y;
+    }
+
+    static void cube(double x, double y, Op out) {
+        double sr = x * x - y * y;
+        double si = 2 * x * y;
+        out.re = x * sr - y * si;
+        out.im = x * si + y * sr;
+    }
+
+    /**
+     * Power by repeated squaring, the reciprocal for negative exponents
+     */
+    static void integerPower(double x, double y, int exponent, Op out) {
+        // The squares and cubes of most formulas written out, the same products as below
+        if (exponent == 2) {
+            square(x, y, out);
+            return;
+        }
+        if (exponent == 3) {
+            cube(x, y, out);
+            return;
+        }
+        int m = Math.abs(exponent);
+        double pr = 1;
+        double pi = 0;
+        double br = x;
+        double bi = y;
+        while (m > 0) {
+            if ((m & 1) != 0) {
+                double t = pr * br - pi * bi;
+                pi = pr * bi + pi * br;
+                pr = t;
+            }
+            m >>= 1;
+            if (m > 0) {
+                double t = br * br - bi * bi;
+                bi = 2 * br * bi;
+                br = t;
+            }
+        }
+        if (exponent < 0) {
+            divide(1, 0, pr, pi, out);
+        } else {
+            out.re = pr;
+            out.im = pi;
+        }
+    }
+
+    /**
+     * Principal power of a real exponent, in polar form
+     */
+    static void realPower(double x, double y, double exponent, Op out) {
+        double modulus = Math.pow(x * x + y * y, exponent / 2);
+        double angle = exponent * Math.atan2(y, x);
+        out.re = modulus * Math.cos(angle);
+        out.im = modulus * Math.sin(angle);
+    }
+
+    /**
+     * Principal power exp(w log z), 0 for z = 0
+     */
+    static void power(double x, double y, double wr, double wi, Op out) {
+        if ((x == 0) && (y == 0)) {
+            out.re = 0;
+            out.im = 0;
+            return;
+        }
+        double logModulus = 0.5 * Math.log(x * x + y * y);
+        double angle = Math.atan2(y, x);
+        double modulus = Math.exp(wr * logModulus - wi * angle);
+        double phase = wi * logModulus + wr * angle;
+        out.re = modulus * Math.cos(phase);
+        out.im = modulus * Math.sin(phase);
+    }
+
+    @Override
+    public String toString() {
+        return re + ((im < 0) ? " - " : " + ") + Math.abs(im) + "i";
+    }
+}
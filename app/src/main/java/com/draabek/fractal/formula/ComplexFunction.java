@@ -0,0 +1,165 @@
+package com.draabek.fractal.formula;
+
+import java.util.Locale;
+
+/**
+ * Functions of the formula language, principal branches where there is a choice
+ */
+enum ComplexFunction {
+    SIN,
+    COS,
+    TAN,
+    SINH,
+    COSH,
+    TANH,
+    EXP,
+    LOG,
+    SQRT,
+    CONJ,
+    /** Modulus */
+    ABS,
+    RE,
+    IM;
+
+    /**
+     * Write f(x + iy) to the value of the operation. The functions are small methods of their
+     * own and this only picks one, the compiled formulas call the one they apply directly.
+     */
+    void apply(double x, double y, Op out) {
+        switch (this) {
+            case SIN:
+                sin(x, y, out);
+                return;
+            case COS:
+                cos(x, y, out);
+                return;
+            case TAN:
+                tan(x, y, out);
+                return;
+            case SINH:
+                sinh(x, y, out);
+                return;
+            case COSH:
+                cosh(x, y, out);
+                return;
+            case TANH:
+                tanh(x, y, out);
+                return;
+            case EXP:
+                exp(x, y, out);
+                return;
+            case LOG:
+                log(x, y, out);
+                return;
+            case SQRT:
+                sqrt(x, y, out);
+                return;
+            case CONJ:
+                conj(x, y, out);
+                return;
+            case ABS:
+                abs(x, y, out);
+                return;
+            case RE:
+                re(x, y, out);
+                return;
+            case IM:
+                im(x, y, out);
+                return;
+            default:
+                throw new IllegalStateException("Unexpected " + this);
+        }
+    }
+
+    /**
+     * @return false if conjugating the argument does not conjugate the value
+     */
+    boolean commutesWithConjugation() {
+        return this != IM;
+    }
+
+    /**
+     * @return Function of the name, null if there is none
+     */
+    static ComplexFunction forName(String name) {
+        for (ComplexFunction function : values()) {
+            if (function.name().toLowerCase(Locale.US).equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    static void sin(double x, double y, Op out) {
+        double e = Math.exp(y);
+        out.re = Math.sin(x) * (e + 1 / e) / 2;
+        out.im = Math.cos(x) * (e - 1 / e) / 2;
+    }
+
+    static void cos(double x, double y, Op out) {
+        double e = Math.exp(y);
+        out.re = Math.cos(x) * (e + 1 / e) / 2;
+        out.im = -Math.sin(x) * (e - 1 / e) / 2;
+    }
+
+    static void tan(double x, double y, Op out) {
+        double denominator = Math.cos(2 * x) + Math.cosh(2 * y);
+        out.re = Math.sin(2 * x) / denominator;
+        out.im = Math.sinh(2 * y) / denominator;
+    }
+
+    static void sinh(double x, double y, Op out) {
+        double e = Math.exp(x);
+        out.re = (e - 1 / e) / 2 * Math.cos(y);
+        out.im = (e + 1 / e) / 2 * Math.sin(y);
+    }
+
+    static void cosh(double x, double y, Op out) {
+        double e = Math.exp(x);
+        out.re = (e + 1 / e) / 2 * Math.cos(y);
+        out.im = (e - 1 / e) / 2 * Math.sin(y);
+    }
+
+    static void tanh(double x, double y, Op out) {
+        double denominator = Math.cosh(2 * x) + Math.cos(2 * y);
+        out.re = Math.sinh(2 * x) / denominator;
+        out.im = Math.sin(2 * y) / denominator;
+    }
+
+    static void exp(double x, double y, Op out) {
+        double modulus = Math.exp(x);
+        out.re = modulus * Math.cos(y);
+        out.im = modulus * Math.sin(y);
+    }
+
+    static void log(double x, double y, Op out) {
+        out.re = 0.5 * Math.log(x * x + y * y);
+        out.im = Math.atan2(y, x);
+    }
+
+    static void sqrt(double x, double y, Op out) {
+        double modulus = Math.sqrt(x * x + y * y);
+        out.re = Math.sqrt((modulus + x) / 2);
+        out.im = Math.copySign(Math.sqrt(Math.max(0, (modulus - x) / 2)), y);
+    }
+
+    static void conj(double x, double y, Op out) {
+        out.re = x;
+        out.im = -y;
+    }
+
+    static void abs(double x, double y, Op out) {
+        out.re = Math.sqrt(x * x + y * y);
+        out.im = 0;
+    }
+
+    static void re(double x, double y, Op out) {
+        out.re = x;
+        out.im = 0;
+    }
+
+    static void im(double x, double y, Op out) {
+        out.re = y;
+        out.im = 0;
+    }
+}
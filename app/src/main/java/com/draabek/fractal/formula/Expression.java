@@ -0,0 +1,252 @@
+package com.draabek.fractal.formula;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Parsed formula of a complex number from z and c, like "z^3 + c*sin(z)", optionally
+ * written as the assignment "z = ...".
+ * <p>
+ * The operators are + - * / and ^, which binds tighter than the unary minus and to the
+ * right. A number followed by a name or a parenthesis multiplies them, as in 2z or 0.5i.
+ * The names are z, c, i, pi, e, the functions sin, cos, tan, sinh, cosh, tanh, exp, log, sqrt,
+ * conj, abs, re and im, and otherwise real parameters of the fractal.
+ */
+public final class Expression {
+    private final String source;
+    private final Node root;
+    private final Set<String> parameterNames;
+
+    private Expression(String source, Node root, Set<String> parameterNames) {
+        this.source = source;
+        this.root = root;
+        this.parameterNames = Collections.unmodifiableSet(parameterNames);
+    }
+
+    /**
+     * @throws FormulaSyntaxException if the source is not a formula
+     */
+    public static Expression parse(String source) {
+        Parser parser = new Parser(source);
+        Node root = parser.parse();
+        return new Expression(source, root, parser.parameterNames);
+    }
+
+    /**
+     * @return Names of the parameters in the formula, sorted
+     */
+    public Set<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static final class Parser {
+        private final String source;
+        private final Set<String> parameterNames = new TreeSet<>();
+        private int position;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Node parse() {
+            skipSpace();
+            int start = position;
+            if (identifier().equals("z") && peek('=')) {
+                position++;
+            } else {
+                position = start;
+            }
+            Node root = sum();
+            if (position < source.length()) {
+                throw error(position, "Unexpected '" + source.charAt(position) + "'");
+            }
+            return root;
+        }
+
+        private Node sum() {
+            Node node = product();
+            while (true) {
+                if (peek('+')) {
+                    position++;
+                    node = Node.add(node, product());
+                } else if (peek('-')) {
+                    position++;
+                    node = Node.subtract(node, product());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node product() {
+            Node node = unary();
+            while (true) {
+                if (peek('*')) {
+                    position++;
+                    node = Node.multiply(node, unary());
+                } else if (peek('/')) {
+                    position++;
+                    node = Node.divide(node, unary());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node unary() {
+            if (peek('-')) {
+                position++;
+                return Node.negate(unary());
+            }
+            if (peek('+')) {
+                position++;
+                return unary();
+            }
+            return power();
+        }
+
+        private Node power() {
+            Node base = primary();
+            if (peek('^')) {
+                position++;
+                return Node.power(base, unary());
+            }
+            return base;
+        }
+
+        private Node primary() {
+            skipSpace();
+            if (position >= source.length()) {
+                throw error(position, "Unexpected end of the formula");
+            }
+            char ch = source.charAt(position);
+            if (Character.isDigit(ch) || (ch == '.')) {
+                Node number = Node.constant(new Complex(number(), 0));
+                // Implicit multiplication, like 2z or 3(z + 1)
+                if ((position < source.length())
+                        && (Character.isLetter(source.charAt(position))
+                        || (source.charAt(position) == '('))) {
+                    return Node.multiply(number, power());
+                }
+                return number;
+            }
+            if (ch == '(') {
+                position++;
+                Node node = sum();
+                expect(')');
+                return node;
+            }
+            if (!Character.isLetter(ch)) {
+                throw error(position, "Unexpected '" + ch + "'");
+            }
+            int start = position;
+            String name = identifier();
+            switch (name) {
+                case "z":
+                    return Node.Z;
+                case "c":
+                    return Node.C;
+                case "i":
+                    return Node.constant(new Complex(0, 1));
+                case "pi":
+                    return Node.constant(new Complex(Math.PI, 0));
+                case "e":
+                    return Node.constant(new Complex(Math.E, 0));
+                default:
+                    break;
+            }
+            ComplexFunction function = ComplexFunction.forName(name);
+            if (function != null) {
+                if (!peek('(')) {
+                    throw error(position, "Expected '(' after " + name);
+                }
+                position++;
+                Node argument = sum();
+                expect(')');
+                return Node.apply(function, argument);
+            }
+            if (peek('(')) {
+                throw error(start, "Unknown function " + name);
+            }
+            parameterNames.add(name);
+            return Node.parameter(name);
+        }
+
+        private double number() {
+            int start = position;
+            while ((position < source.length()) && (Character.isDigit(source.charAt(position))
+                    || (source.charAt(position) == '.'))) {
+                position++;
+            }
+            // An exponent only if digits follow, so that 2e is 2 times e
+            if ((position < source.length()) && ((source.charAt(position) == 'e')
+                    || (source.charAt(position) == 'E'))) {
+                int exponent = position + 1;
+                if ((exponent < source.length()) && ((source.charAt(exponent) == '+')
+                        || (source.charAt(exponent) == '-'))) {
+                    exponent++;
+                }
+                if ((exponent < source.length()) && Character.isDigit(source.charAt(exponent))) {
+                    position = exponent;
+                    while ((position < source.length())
+                            && Character.isDigit(source.charAt(position))) {
+                        position++;
+                    }
+                }
+            }
+            try {
+                return Double.parseDouble(source.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error(start, "Invalid number " + source.substring(start, position));
+            }
+        }
+
+        private String identifier() {
+            int start = position;
+            while ((position < source.length())
+                    && (Character.isLetterOrDigit(source.charAt(position))
+                    || (source.charAt(position) == '_'))) {
+                position++;
+            }
+            return source.substring(start, position);
+        }
+
+        private void expect(char ch) {
+            if (!peek(ch)) {
+                throw error(position, (position < source.length())
+                        ? "Expected '" + ch + "' instead of '" + source.charAt(position) + "'"
+                        : "Expected '" + ch + "' at the end");
+            }
+            position++;
+        }
+
+        /**
+         * @return true if the next character after spaces is the one
+         */
+        private boolean peek(char ch) {
+            skipSpace();
+            return (position < source.length()) && (source.charAt(position) == ch);
+        }
+
+        private void skipSpace() {
+            while ((position < source.length())
+                    && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private FormulaSyntaxException error(int at, String message) {
+            return new FormulaSyntaxException(at + 1, message);
+        }
+    }
+}
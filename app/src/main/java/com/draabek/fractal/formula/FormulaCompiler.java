@@ -0,0 +1,373 @@
+package com.draabek.fractal.formula;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles formulas to a {@link FormulaKernel}. Constants become values set once, and the
+ * subtrees not depending on z become operations run once per pixel, read by the loop as values.
+ */
+final class FormulaCompiler {
+    /** Highest degree expanded to a polynomial, beyond that the formula runs as it is */
+    private static final int MAX_DEGREE = 16;
+    private static final Op[] NO_OPS = new Op[0];
+
+    private final Map<String, Float> parameters;
+    private final List<Op.Hoisted> invariants = new ArrayList<>();
+    private final Op.Value c = new Op.Value(0, 0);
+    private final Op z = new Op.Z();
+
+    FormulaCompiler(Map<String, Float> parameters) {
+        this.parameters = parameters;
+    }
+
+    FormulaKernel compile(Expression step, Expression start, double bailout) {
+        Node first = substitute(start.getRoot());
+        if (first.dependsOnZ()) {
+            throw new FormulaSyntaxException(1, "The start cannot depend on z");
+        }
+        Node next = substitute(step.getRoot());
+        Symmetry symmetry =
+                (first.commutesWithConjugation() && next.commutesWithConjugation())
+                        ? Symmetry.CONJUGATE : Symmetry.NONE;
+        Op startOp = invariant(first);
+        Node[] polynomial = polynomial(next);
+        if (polynomial == null) {
+            return tree(startOp, next, bailout, symmetry);
+        }
+        int degree = degree(polynomial);
+        if (isMonomial(polynomial, degree) && (degree >= 2)) {
+            FormulaKernel.Program program =
+                    program(startOp, new Op[]{invariant(polynomial[0])}, NO_OPS, NO_OPS);
+            switch (degree) {
+                case 2:
+                    return new FormulaKernel.Quadratic(program, bailout, symmetry);
+                case 3:
+                    return new FormulaKernel.Cubic(program, bailout, symmetry);
+                default:
+                    return new FormulaKernel.Power(program, bailout, symmetry, degree);
+            }
+        }
+        return new FormulaKernel.Polynomial(
+                program(startOp, coefficients(polynomial, degree), NO_OPS, NO_OPS), bailout,
+                symmetry);
+    }
+
+    /**
+     * The formula as a polynomial in z plus invariant multiples of the other terms, the
+     * polynomial is computed in the loop and only the other terms run as operations
+     */
+    private FormulaKernel tree(Op start, Node step, double bailout, Symmetry symmetry) {
+        List<Node> factors = new ArrayList<>();
+        List<Node> terms = new ArrayList<>();
+        split(step, Node.ONE, factors, terms);
+        Node[] polynomial = new Node[1];
+        List<Op> factorOps = new ArrayList<>();
+        List<Op> termOps = new ArrayList<>();
+        for (int t = 0; t < terms.size(); t++) {
+            Node factor = factors.get(t);
+            Node[] term = polynomial(terms.get(t));
+            if (term == null) {
+                factorOps.add(invariant(factor));
+                termOps.add(compile(terms.get(t)));
+                continue;
+            }
+            if (term.length > polynomial.length) {
+                polynomial = Arrays.copyOf(polynomial, term.length);
+            }
+            for (int d = 0; d < term.length; d++) {
+                polynomial[d] = Node.add(polynomial[d], Node.multiply(factor, term[d]));
+            }
+        }
+        int degree = degree(polynomial);
+        int power = (isMonomial(polynomial, degree) && ((degree == 2) || (degree == 3)))
+                ? degree : 0;
+        Op[] coefficients = (power > 0) ? new Op[]{invariant(polynomial[0])}
+                : coefficients(polynomial, degree);
+        return new FormulaKernel.Tree(program(start, coefficients,
+                factorOps.toArray(new Op[factorOps.size()]),
+                termOps.toArray(new Op[termOps.size()])), bailout, symmetry, power);
+    }
+
+    /**
+     * Split a sum into its terms, each times the invariant factor it is multiplied by
+     */
+    private static void split(Node node, Node factor, List<Node> factors, List<Node> terms) {
+        switch (node.kind) {
+            case NEGATE:
+                split(node.left, Node.negate(factor), factors, terms);
+                return;
+            case ADD:
+                split(node.left, factor, factors, terms);
+                split(node.right, factor, factors, terms);
+                return;
+            case SUBTRACT:
+                split(node.left, factor, factors, terms);
+                split(node.right, Node.negate(factor), factors, terms);
+                return;
+            case MULTIPLY:
+                if (!node.left.dependsOnZ()) {
+                    split(node.right, Node.multiply(factor, node.left), factors, terms);
+                    return;
+                }
+                if (!node.right.dependsOnZ()) {
+                    split(node.left, Node.multiply(factor, node.right), factors, terms);
+                    return;
+                }
+                break;
+            case DIVIDE:
+                if (!node.right.dependsOnZ()) {
+                    split(node.left, Node.divide(factor, node.right), factors, terms);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        factors.add(factor);
+        terms.add(node);
+    }
+
+    /**
+     * @return Degree of the polynomial, its coefficients being null where they are zero
+     */
+    private static int degree(Node[] polynomial) {
+        int degree = polynomial.length - 1;
+        while ((degree > 0) && (polynomial[degree] == null)) {
+            degree--;
+        }
+        return degree;
+    }
+
+    /**
+     * @return true if the polynomial is z^n + k
+     */
+    private static boolean isMonomial(Node[] polynomial, int degree) {
+        boolean monomial = (polynomial[degree] != null) && polynomial[degree].isOne();
+        for (int d = 1; d < degree; d++) {
+            monomial &= polynomial[d] == null;
+        }
+        return monomial;
+    }
+
+    /**
+     * @return Values of the coefficients up to the degree, the highest power first
+     */
+    private Op[] coefficients(Node[] polynomial, int degree) {
+        Op[] coefficients = new Op[degree + 1];
+        for (int d = 0; d <= degree; d++) {
+            coefficients[degree - d] = invariant(polynomial[d]);
+        }
+        return coefficients;
+    }
+
+    /**
+     * @return The tree with the parameters replaced by their values and constants folded
+     */
+    private Node substitute(Node node) {
+        switch (node.kind) {
+            case PARAMETER:
+                Float value = parameters.get(node.name);
+                return Node.constant(new Complex((value == null) ? 0 : value, 0));
+            case NEGATE:
+                return Node.negate(substitute(node.left));
+            case ADD:
+                return Node.add(substitute(node.left), substitute(node.right));
+            case SUBTRACT:
+                return Node.subtract(substitute(node.left), substitute(node.right));
+            case MULTIPLY:
+                return Node.multiply(substitute(node.left), substitute(node.right));
+            case DIVIDE:
+                return Node.divide(substitute(node.left), substitute(node.right));
+            case POWER:
+                return Node.power(substitute(node.left), substitute(node.right));
+            case FUNCTION:
+                return Node.apply(node.function, substitute(node.left));
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * Coefficients of the formula as a polynomial in z, null where they are zero
+     * @return null if the formula is not a polynomial of at most {@link #MAX_DEGREE}
+     */
+    private static Node[] polynomial(Node node) {
+        if (!node.dependsOnZ()) {
+            return new Node[]{node};
+        }
+        Node[] left;
+        Node[] right;
+        switch (node.kind) {
+            case Z:
+                return new Node[]{null, Node.ONE};
+            case NEGATE:
+                left = polynomial(node.left);
+                if (left == null) {
+                    return null;
+                }
+                for (int d = 0; d < left.length; d++) {
+                    left[d] = Node.negate(left[d]);
+                }
+                return left;
+            case ADD:
+            case SUBTRACT:
+                left = polynomial(node.left);
+                right = polynomial(node.right);
+                if ((left == null) || (right == null)) {
+                    return null;
+                }
+                Node[] sum = Arrays.copyOf(left, Math.max(left.length, right.length));
+                for (int d = 0; d < right.length; d++) {
+                    sum[d] = (node.kind == Node.Kind.ADD) ? Node.add(sum[d], right[d])
+                            : Node.subtract(sum[d], right[d]);
+                }
+                return sum;
+            case MULTIPLY:
+                left = polynomial(node.left);
+                right = polynomial(node.right);
+                return ((left == null) || (right == null)) ? null : multiply(left, right);
+            case DIVIDE:
+                if (node.right.dependsOnZ()) {
+                    return null;
+                }
+                left = polynomial(node.left);
+                if (left == null) {
+                    return null;
+                }
+                for (int d = 0; d < left.length; d++) {
+                    left[d] = (left[d] == null) ? null : Node.divide(left[d], node.right);
+                }
+                return left;
+            case POWER:
+                if ((node.right.kind != Node.Kind.CONSTANT) || (node.right.value.im != 0)) {
+                    return null;
+                }
+                double exponent = node.right.value.re;
+                if ((exponent != Math.rint(exponent)) || (exponent < 1)
+                        || (exponent > MAX_DEGREE)) {
+                    return null;
+                }
+                Node[] base = polynomial(node.left);
+                if (base == null) {
+                    return null;
+                }
+                Node[] power = base;
+                for (int n = 1; (n < exponent) && (power != null); n++) {
+                    power = multiply(power, base);
+                }
+                return power;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return Product of the polynomials, null if its degree is too high
+     */
+    private static Node[] multiply(Node[] left, Node[] right) {
+        if (left.length + right.length - 2 > MAX_DEGREE) {
+            return null;
+        }
+        Node[] product = new Node[left.length + right.length - 1];
+        for (int i = 0; i < left.length; i++) {
+            for (int j = 0; j < right.length; j++) {
+                product[i + j] = Node.add(product[i + j], Node.multiply(left[i], right[j]));
+            }
+        }
+        return product;
+    }
+
+    /**
+     * @return Value of a subtree not depending on z, computed once per pixel
+     */
+    private Op invariant(Node node) {
+        if (node == null) {
+            return constant(Complex.ZERO);
+        }
+        switch (node.kind) {
+            case C:
+                return c;
+            case CONSTANT:
+                return constant(node.value);
+            default:
+                Op.Hoisted op = new Op.Hoisted(compile(node, true));
+                invariants.add(op);
+                return op;
+        }
+    }
+
+    private Op compile(Node node) {
+        return compile(node, false);
+    }
+
+    /**
+     * @param hoisted true if the node is computed before the loop, false if the subtrees not
+     *                depending on z still have to be hoisted out of it
+     */
+    private Op compile(Node node, boolean hoisted) {
+        switch (node.kind) {
+            case Z:
+                return z;
+            case C:
+                return c;
+            case CONSTANT:
+                return constant(node.value);
+            default:
+                break;
+        }
+        if (!hoisted && !node.dependsOnZ()) {
+            return invariant(node);
+        }
+        switch (node.kind) {
+            case NEGATE:
+                return new Op.Negate(compile(node.left, hoisted));
+            case ADD:
+                return new Op.Add(compile(node.left, hoisted), compile(node.right, hoisted));
+            case SUBTRACT:
+                return new Op.Subtract(compile(node.left, hoisted), compile(node.right, hoisted));
+            case MULTIPLY:
+                return new Op.Multiply(compile(node.left, hoisted), compile(node.right, hoisted));
+            case DIVIDE:
+                return new Op.Divide(compile(node.left, hoisted), compile(node.right, hoisted));
+            case POWER:
+                Node exponent = node.right;
+                if (exponent.kind == Node.Kind.CONSTANT) {
+                    Op base = compile(node.left, hoisted);
+                    if (Complex.isMultipliedExponent(exponent.value)) {
+                        int n = (int) exponent.value.re;
+                        if (n == 2) {
+                            return new Op.Square(base);
+                        }
+                        if (n == 3) {
+                            return new Op.Cube(base);
+                        }
+                        return new Op.IntegerPower(base, n);
+                    }
+                    if (exponent.value.im == 0) {
+                        return new Op.RealPower(base, exponent.value.re);
+                    }
+                }
+                return new Op.Power(compile(node.left, hoisted), compile(node.right, hoisted));
+            case FUNCTION:
+                return Op.apply(node.function, compile(node.left, hoisted));
+            default:
+                throw new IllegalStateException("Unexpected " + node.kind);
+        }
+    }
+
+    private static Op constant(Complex value) {
+        return new Op.Value(value.re, value.im);
+    }
+
+    private FormulaKernel.Program program(Op start, Op[] coefficients, Op[] factors,
+                                          Op[] terms) {
+        return new FormulaKernel.Program(c,
+                invariants.toArray(new Op.Hoisted[invariants.size()]), start, coefficients,
+                factors, terms);
+    }
+}
@@ -0,0 +1,356 @@
+package com.draabek.fractal.formula;
+
+import com.draabek.fractal.canvas.engine.EscapeTimeKernel;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.fractal.Symmetry;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Escape-time kernel of a formula z -> f(z, c), compiled once when the fractal is loaded.
+ * <p>
+ * Parameters are substituted and constants folded, and the parts of the formula that do not
+ * depend on z are computed once per pixel before the loop. What is left picks the loop:
+ * z^2 + k, z^3 + k and z^n + k run the same loops as the handwritten kernels, other
+ * polynomials in z run Horner's scheme over their coefficients. Any other formula is split
+ * into a polynomial in z and invariant multiples of the other terms, like c*sin(z), and only
+ * those terms walk the compiled operations each iteration.
+ */
+public abstract class FormulaKernel extends EscapeTimeKernel {
+    final double bailoutSquared;
+    private final Symmetry symmetry;
+    private final ThreadLocal<Program> programs;
+    /** Logarithms the counts are normalized with, 0 if they are not */
+    private final double logBailoutSquared;
+    private final double logDegree;
+
+    /**
+     * @param degree Degree of the polynomial in z, 0 if the step is not one
+     */
+    FormulaKernel(final Program program, double bailout, Symmetry symmetry, int degree) {
+        this.bailoutSquared = bailout * bailout;
+        this.symmetry = symmetry;
+        boolean normalized = (degree > 1) && (bailout > 1);
+        logBailoutSquared = normalized ? Math.log(bailoutSquared) : 0;
+        logDegree = normalized ? Math.log(degree) : 0;
+        // The kernel is shared by the render threads, each runs operations of its own
+        this.programs = new ThreadLocal<Program>() {
+            @Override
+            protected Program initialValue() {
+                return program.copy();
+            }
+        };
+    }
+
+    /**
+     * Compiled operations of a formula, what the loops read
+     */
+    static final class Program {
+        final Op.Value c;
+        /** Parts not depending on z, in the order they are computed for each pixel */
+        final Op.Hoisted[] invariants;
+        final Op start;
+        /** Coefficients of the polynomials, the highest power first, k alone for z^n + k */
+        final Op[] coefficients;
+        /** Invariant factors of the terms, empty for the polynomial kernels */
+        final Op[] factors;
+        /** Terms of the formula that are not polynomials in z, run each iteration */
+        final Op[] terms;
+        /** Where the smooth counts get the last z */
+        final double[] last = new double[2];
+
+        Program(Op.Value c, Op.Hoisted[] invariants, Op start, Op[] coefficients,
+                Op[] factors, Op[] terms) {
+            this.c = c;
+            this.invariants = invariants;
+            this.start = start;
+            this.coefficients = coefficients;
+            this.factors = factors;
+            this.terms = terms;
+        }
+
+        /**
+         * @return Program on copies of the operations
+         */
+        Program copy() {
+            Map<Op, Op> copies = new IdentityHashMap<>();
+            Op.Hoisted[] invariants = new Op.Hoisted[this.invariants.length];
+            for (int i = 0; i < invariants.length; i++) {
+                invariants[i] = (Op.Hoisted) Op.copyOf(this.invariants[i], copies);
+            }
+            return new Program((Op.Value) Op.copyOf(c, copies), invariants,
+                    Op.copyOf(start, copies), copyOf(coefficients, copies),
+                    copyOf(factors, copies), copyOf(terms, copies));
+        }
+
+        private static Op[] copyOf(Op[] ops, Map<Op, Op> copies) {
+            Op[] copy = new Op[ops.length];
+            for (int i = 0; i < ops.length; i++) {
+                copy[i] = Op.copyOf(ops[i], copies);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * @param step Formula of the next z
+     * @param start Formula of the first z from c
+     * @param bailout Radius z escapes beyond
+     * @param parameters Values of the parameters of the formulas, 0 for the missing ones
+     * @throws FormulaSyntaxException if the start depends on z
+     */
+    public static FormulaKernel compile(Expression step, Expression start, double bailout,
+                                        Map<String, Float> parameters) {
+        return new FormulaCompiler(parameters).compile(step, start, bailout);
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return symmetry;
+    }
+
+    @Override
+    public int iterate(double x, double y, int maxIterations, RenderStats stats) {
+        Program p = prepare(x, y);
+        int i = run(p, p.start.re, p.start.im, 0, maxIterations, null, 0);
+        stats.countPixel(i);
+        return i;
+    }
+
+    @Override
+    public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+        Program p = prepare(x, y);
+        int i = run(p, p.start.re, p.start.im, 0, maxIterations, p.last, 0);
+        stats.countPixel(i);
+        return smooth(x, y, i, p.last[0], p.last[1], maxIterations);
+    }
+
+    /**
+     * The orbits are not continued past the bailout, so the counts of small bailouts still
+     * step a little where the whole count does
+     */
+    @Override
+    public float smooth(double x, double y, int count, double zr, double zi,
+                        int maxIterations) {
+        return ((count < maxIterations) && (logDegree > 0)) ? normalize(count,
+                zr * zr + zi * zi, logBailoutSquared, logDegree, maxIterations) : count;
+    }
+
+    @Override
+    public int continueOrbit(double x, double y, double[] orbit, int offset, int iteration,
+                             int maxIterations, RenderStats stats) {
+        Program p = prepare(x, y);
+        double zr = (iteration == 0) ? p.start.re : orbit[offset];
+        double zi = (iteration == 0) ? p.start.im : orbit[offset + 1];
+        int i = run(p, zr, zi, iteration, maxIterations, orbit, offset);
+        stats.countPixel(i - iteration);
+        return i;
+    }
+
+    private Program prepare(double x, double y) {
+        Program p = programs.get();
+        p.c.set(x, y);
+        for (Op.Hoisted op : p.invariants) {
+            op.update();
+        }
+        return p;
+    }
+
+    /**
+     * Iterate z until it escapes or the limit
+     * @param orbit Where to store the last z, or null
+     * @return Iteration count
+     */
+    abstract int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                     double[] orbit, int offset);
+
+    static void store(double[] orbit, int offset, double zr, double zi) {
+        if (orbit != null) {
+            orbit[offset] = zr;
+            orbit[offset + 1] = zi;
+        }
+    }
+
+    /** z^2 + k */
+    static final class Quadratic extends FormulaKernel {
+        Quadratic(Program program, double bailout, Symmetry symmetry) {
+            super(program, bailout, symmetry, 2);
+        }
+
+        @Override
+        int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                double[] orbit, int offset) {
+            double kr = p.coefficients[0].re;
+            double ki = p.coefficients[0].im;
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            int i = iteration;
+            while ((i < maxIterations) && (zr2 + zi2 <= bailoutSquared)) {
+                zi = 2 * zr * zi + ki;
+                zr = zr2 - zi2 + kr;
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                i++;
+            }
+            store(orbit, offset, zr, zi);
+            return i;
+        }
+    }
+
+    /** z^3 + k */
+    static final class Cubic extends FormulaKernel {
+        Cubic(Program program, double bailout, Symmetry symmetry) {
+            super(program, bailout, symmetry, 3);
+        }
+
+        @Override
+        int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                double[] orbit, int offset) {
+            double kr = p.coefficients[0].re;
+            double ki = p.coefficients[0].im;
+            int i = iteration;
+            while ((i < maxIterations) && (zr * zr + zi * zi <= bailoutSquared)) {
+                double sr = zr * zr - zi * zi;
+                double si = 2 * zr * zi;
+                double t = zr * sr - zi * si + kr;
+                zi = zr * si + zi * sr + ki;
+                zr = t;
+                i++;
+            }
+            store(orbit, offset, zr, zi);
+            return i;
+        }
+    }
+
+    /** z^n + k, the power by repeated squaring */
+    static final class Power extends FormulaKernel {
+        private final int n;
+
+        Power(Program program, double bailout, Symmetry symmetry, int n) {
+            super(program, bailout, symmetry, n);
+            this.n = n;
+        }
+
+        @Override
+        int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                double[] orbit, int offset) {
+            double kr = p.coefficients[0].re;
+            double ki = p.coefficients[0].im;
+            int i = iteration;
+            while ((i < maxIterations) && (zr * zr + zi * zi <= bailoutSquared)) {
+                double pr = 1;
+                double pi = 0;
+                double br = zr;
+                double bi = zi;
+                int m = n;
+                while (m > 0) {
+                    if ((m & 1) != 0) {
+                        double t = pr * br - pi * bi;
+                        pi = pr * bi + pi * br;
+                        pr = t;
+                    }
+                    m >>= 1;
+                    if (m > 0) {
+                        double t = br * br - bi * bi;
+                        bi = 2 * br * bi;
+                        br = t;
+                    }
+                }
+                zr = pr + kr;
+                zi = pi + ki;
+                i++;
+            }
+            store(orbit, offset, zr, zi);
+            return i;
+        }
+    }
+
+    /** Polynomial in z by Horner's scheme, the coefficients from the highest power down */
+    static final class Polynomial extends FormulaKernel {
+        Polynomial(Program program, double bailout, Symmetry symmetry) {
+            super(program, bailout, symmetry, program.coefficients.length - 1);
+        }
+
+        @Override
+        int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                double[] orbit, int offset) {
+            Op[] coefficients = p.coefficients;
+            int i = iteration;
+            while ((i < maxIterations) && (zr * zr + zi * zi <= bailoutSquared)) {
+                double pr = coefficients[0].re;
+                double pi = coefficients[0].im;
+                for (int d = 1; d < coefficients.length; d++) {
+                    Op k = coefficients[d];
+                    double t = pr * zr - pi * zi + k.re;
+                    pi = pr * zi + pi * zr + k.im;
+                    pr = t;
+                }
+                zr = pr;
+                zi = pi;
+                i++;
+            }
+            store(orbit, offset, zr, zi);
+            return i;
+        }
+    }
+
+    /**
+     * Any other formula, a polynomial in z plus the factors times the terms, whose compiled
+     * operations run each iteration. Each term costs a call the JIT no longer inlines once
+     * other formulas have run, so the polynomial and the factors stay in the loop, z^2 + k and
+     * z^3 + k written out like in the handwritten kernels and others by Horner's scheme.
+     */
+    static final class Tree extends FormulaKernel {
+        /** 2 or 3 if the polynomial is z^2 + k or z^3 + k, 0 for Horner's scheme */
+        private final int power;
+
+        Tree(Program program, double bailout, Symmetry symmetry, int power) {
+            super(program, bailout, symmetry, 0);
+            this.power = power;
+        }
+
+        @Override
+        int run(Program p, double zr, double zi, int iteration, int maxIterations,
+                double[] orbit, int offset) {
+            Op[] coefficients = p.coefficients;
+            Op[] factors = p.factors;
+            Op[] terms = p.terms;
+            int i = iteration;
+            while ((i < maxIterations) && (zr * zr + zi * zi <= bailoutSquared)) {
+                double pr;
+                double pi;
+                if (power == 2) {
+                    pr = zr * zr - zi * zi + coefficients[0].re;
+                    pi = 2 * zr * zi + coefficients[0].im;
+                } else if (power == 3) {
+                    double sr = zr * zr - zi * zi;
+                    double si = 2 * zr * zi;
+                    pr = zr * sr - zi * si + coefficients[0].re;
+                    pi = zr * si + zi * sr + coefficients[0].im;
+                } else {
+                    pr = coefficients[0].re;
+                    pi = coefficients[0].im;
+                    for (int d = 1; d < coefficients.length; d++) {
+                        Op k = coefficients[d];
+                        double t = pr * zr - pi * zi + k.re;
+                        pi = pr * zi + pi * zr + k.im;
+                        pr = t;
+                    }
+                }
+                for (int t = 0; t < terms.length; t++) {
+                    Op term = terms[t];
+                    Op k = factors[t];
+                    term.run(zr, zi);
+                    pr += k.re * term.re - k.im * term.im;
+                    pi += k.re * term.im + k.im * term.re;
+                }
+                zr = pr;
+                zi = pi;
+                i++;
+            }
+            store(orbit, offset, zr, zi);
+            return i;
+        }
+    }
+}
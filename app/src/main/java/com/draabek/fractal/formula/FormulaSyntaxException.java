@@ -0,0 +1,22 @@
+package com.draabek.fractal.formula;
+
+/**
+ * Formula that cannot be parsed or compiled
+ */
+public class FormulaSyntaxException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int column;
+
+    FormulaSyntaxException(int column, String message) {
+        super("Column " + column + ": " + message);
+        this.column = column;
+    }
+
+    /**
+     * @return Column of the formula the error is at, counted from 1
+     */
+    public int getColumn() {
+        return column;
+    }
+}
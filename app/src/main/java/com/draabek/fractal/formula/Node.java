@@ -0,0 +1,150 @@
+package com.draabek.fractal.formula;
+
+/**
+ * Node of a parsed formula. The factories fold constant operands, and the products and sums
+ * drop ones and zeros, where null stands for zero, so that expanded polynomials stay small.
+ */
+final class Node {
+    enum Kind {
+        CONSTANT, Z, C, PARAMETER, NEGATE, ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER, FUNCTION
+    }
+
+    static final Node Z = new Node(Kind.Z, null, null, null, null, null);
+    static final Node C = new Node(Kind.C, null, null, null, null, null);
+    static final Node ONE = constant(Complex.ONE);
+
+    final Kind kind;
+    final Complex value;
+    final String name;
+    final ComplexFunction function;
+    final Node left;
+    final Node right;
+
+    private Node(Kind kind, Complex value, String name, ComplexFunction function, Node left,
+                 Node right) {
+        this.kind = kind;
+        this.value = value;
+        this.name = name;
+        this.function = function;
+        this.left = left;
+        this.right = right;
+    }
+
+    static Node constant(Complex value) {
+        return new Node(Kind.CONSTANT, value, null, null, null, null);
+    }
+
+    static Node parameter(String name) {
+        return new Node(Kind.PARAMETER, null, name, null, null, null);
+    }
+
+    static Node negate(Node operand) {
+        if (operand == null) {
+            return null;
+        }
+        if (operand.kind == Kind.CONSTANT) {
+            return constant(operand.value.negate());
+        }
+        return new Node(Kind.NEGATE, null, null, null, operand, null);
+    }
+
+    static Node add(Node left, Node right) {
+        if ((left == null) || (right == null)) {
+            return (left == null) ? right : left;
+        }
+        if ((left.kind == Kind.CONSTANT) && (right.kind == Kind.CONSTANT)) {
+            return constant(left.value.add(right.value));
+        }
+        return new Node(Kind.ADD, null, null, null, left, right);
+    }
+
+    static Node subtract(Node left, Node right) {
+        if ((left == null) || (right == null)) {
+            return (right == null) ? left : negate(right);
+        }
+        if ((left.kind == Kind.CONSTANT) && (right.kind == Kind.CONSTANT)) {
+            return constant(left.value.subtract(right.value));
+        }
+        return new Node(Kind.SUBTRACT, null, null, null, left, right);
+    }
+
+    static Node multiply(Node left, Node right) {
+        if ((left == null) || (right == null)) {
+            return null;
+        }
+        if (left.isOne() || right.isOne()) {
+            return left.isOne() ? right : left;
+        }
+        if ((left.kind == Kind.CONSTANT) && (right.kind == Kind.CONSTANT)) {
+            return constant(left.value.multiply(right.value));
+        }
+        return new Node(Kind.MULTIPLY, null, null, null, left, right);
+    }
+
+    static Node divide(Node left, Node right) {
+        if ((left == null) || ((right != null) && right.isOne())) {
+            return left;
+        }
+        if (right == null) {
+            right = constant(Complex.ZERO);
+        }
+        if ((left.kind == Kind.CONSTANT) && (right.kind == Kind.CONSTANT)) {
+            return constant(left.value.divide(right.value));
+        }
+        return new Node(Kind.DIVIDE, null, null, null, left, right);
+    }
+
+    static Node power(Node base, Node exponent) {
+        if (base == null) {
+            base = constant(Complex.ZERO);
+        }
+        if (exponent == null) {
+            exponent = constant(Complex.ZERO);
+        }
+        if ((base.kind == Kind.CONSTANT) && (exponent.kind == Kind.CONSTANT)) {
+            return constant(base.value.power(exponent.value));
+        }
+        return new Node(Kind.POWER, null, null, null, base, exponent);
+    }
+
+    static Node apply(ComplexFunction function, Node argument) {
+        if (argument == null) {
+            argument = constant(Complex.ZERO);
+        }
+        if (argument.kind == Kind.CONSTANT) {
+            return constant(argument.value.apply(function));
+        }
+        return new Node(Kind.FUNCTION, null, null, function, argument, null);
+    }
+
+    boolean isOne() {
+        return (kind == Kind.CONSTANT) && (value.re == 1) && (value.im == 0);
+    }
+
+    /**
+     * @return true if the value depends on z, false if it is the same for each iteration
+     */
+    boolean dependsOnZ() {
+        return (kind == Kind.Z) || ((left != null) && left.dependsOnZ())
+                || ((right != null) && right.dependsOnZ());
+    }
+
+    /**
+     * @return true if conjugating z and c conjugates the value
+     */
+    boolean commutesWithConjugation() {
+        switch (kind) {
+            case CONSTANT:
+                return value.im == 0;
+            case FUNCTION:
+                if (!function.commutesWithConjugation()) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        return ((left == null) || left.commutesWithConjugation())
+                && ((right == null) || right.commutesWithConjugation());
+    }
+}
@@ -0,0 +1,515 @@
+package com.draabek.fractal.formula;
+
+import java.util.Map;
+
+/**
+ * Compiled operation of a formula. Each operation keeps its value in fields of its own and
+ * runs its operands before reading theirs, z being passed down the tree as arguments. Every
+ * operator and function is a class of its own, squares and cubes too, so once a loop inlines
+ * the tree each call is bound to one class and each value is a field of a known object the JIT
+ * keeps in registers, where slots of a shared array at computed offsets went through memory.
+ * <p>
+ * Operations hold their values, so every thread runs a copy of the tree of its own.
+ */
+abstract class Op {
+    /** Real and imaginary part of the value after the last run */
+    double re;
+    double im;
+
+    /**
+     * Compute the value for the given z
+     */
+    abstract void run(double zr, double zi);
+
+    /**
+     * @return Operation of the same kind on copies of the operands
+     */
+    abstract Op copy(Map<Op, Op> copies);
+
+    /**
+     * @return Copy of the operation, made the first time it is asked for, so that operations
+     * shared by others stay shared in the copy
+     */
+    static Op copyOf(Op op, Map<Op, Op> copies) {
+        Op copy = copies.get(op);
+        if (copy == null) {
+            copy = op.copy(copies);
+            copies.put(op, copy);
+        }
+        return copy;
+    }
+
+    /** z, the argument of the step */
+    static final class Z extends Op {
+        @Override
+        void run(double zr, double zi) {
+            re = zr;
+            im = zi;
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Z();
+        }
+    }
+
+    /** Value set before the loop, c or a constant */
+    static final class Value extends Op {
+        Value(double re, double im) {
+            set(re, im);
+        }
+
+        void set(double re, double im) {
+            this.re = re;
+            this.im = im;
+        }
+
+        @Override
+        void run(double zr, double zi) {
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Value(re, im);
+        }
+    }
+
+    /** Value of a part of the formula not depending on z, computed once per pixel */
+    static final class Hoisted extends Op {
+        private final Op op;
+
+        Hoisted(Op op) {
+            this.op = op;
+        }
+
+        /**
+         * Compute the value for the current c
+         */
+        void update() {
+            op.run(0, 0);
+            re = op.re;
+            im = op.im;
+        }
+
+        @Override
+        void run(double zr, double zi) {
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Hoisted(copyOf(op, copies));
+        }
+    }
+
+    abstract static class UnaryOp extends Op {
+        final Op a;
+
+        UnaryOp(Op a) {
+            this.a = a;
+        }
+    }
+
+    abstract static class BinaryOp extends Op {
+        final Op a;
+        final Op b;
+
+        BinaryOp(Op a, Op b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    static final class Negate extends UnaryOp {
+        Negate(Op a) {
+            super(a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            re = -a.re;
+            im = -a.im;
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Negate(copyOf(a, copies));
+        }
+    }
+
+    static final class Add extends BinaryOp {
+        Add(Op a, Op b) {
+            super(a, b);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            b.run(zr, zi);
+            re = a.re + b.re;
+            im = a.im + b.im;
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Add(copyOf(a, copies), copyOf(b, copies));
+        }
+    }
+
+    static final class Subtract extends BinaryOp {
+        Subtract(Op a, Op b) {
+            super(a, b);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            b.run(zr, zi);
+            re = a.re - b.re;
+            im = a.im - b.im;
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Subtract(copyOf(a, copies), copyOf(b, copies));
+        }
+    }
+
+    static final class Multiply extends BinaryOp {
+        Multiply(Op a, Op b) {
+            super(a, b);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            b.run(zr, zi);
+            Complex.multiply(a.re, a.im, b.re, b.im, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Multiply(copyOf(a, copies), copyOf(b, copies));
+        }
+    }
+
+    static final class Divide extends BinaryOp {
+        Divide(Op a, Op b) {
+            super(a, b);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            b.run(zr, zi);
+            Complex.divide(a.re, a.im, b.re, b.im, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Divide(copyOf(a, copies), copyOf(b, copies));
+        }
+    }
+
+    static final class Square extends UnaryOp {
+        Square(Op a) {
+            super(a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            Complex.square(a.re, a.im, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Square(copyOf(a, copies));
+        }
+    }
+
+    static final class Cube extends UnaryOp {
+        Cube(Op a) {
+            super(a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            Complex.cube(a.re, a.im, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Cube(copyOf(a, copies));
+        }
+    }
+
+    static final class IntegerPower extends UnaryOp {
+        private final int exponent;
+
+        IntegerPower(Op a, int exponent) {
+            super(a);
+            this.exponent = exponent;
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            Complex.integerPower(a.re, a.im, exponent, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new IntegerPower(copyOf(a, copies), exponent);
+        }
+    }
+
+    static final class RealPower extends UnaryOp {
+        private final double exponent;
+
+        RealPower(Op a, double exponent) {
+            super(a);
+            this.exponent = exponent;
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            Complex.realPower(a.re, a.im, exponent, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new RealPower(copyOf(a, copies), exponent);
+        }
+    }
+
+    static final class Power extends BinaryOp {
+        Power(Op a, Op b) {
+            super(a, b);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            b.run(zr, zi);
+            Complex.power(a.re, a.im, b.re, b.im, this);
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return new Power(copyOf(a, copies), copyOf(b, copies));
+        }
+    }
+
+    /**
+     * Function of the operand, each function is a class of its own that calls it directly, so
+     * that the JIT inlines it whatever functions other formulas applied
+     */
+    abstract static class Apply extends UnaryOp {
+        private final ComplexFunction function;
+
+        Apply(ComplexFunction function, Op a) {
+            super(a);
+            this.function = function;
+        }
+
+        @Override
+        Op copy(Map<Op, Op> copies) {
+            return apply(function, copyOf(a, copies));
+        }
+    }
+
+    /**
+     * @return Operation applying the function to the operand
+     */
+    static Apply apply(ComplexFunction function, Op a) {
+        switch (function) {
+            case SIN:
+                return new Sin(a);
+            case COS:
+                return new Cos(a);
+            case TAN:
+                return new Tan(a);
+            case SINH:
+                return new Sinh(a);
+            case COSH:
+                return new Cosh(a);
+            case TANH:
+                return new Tanh(a);
+            case EXP:
+                return new Exp(a);
+            case LOG:
+                return new Log(a);
+            case SQRT:
+                return new Sqrt(a);
+            case CONJ:
+                return new Conj(a);
+            case ABS:
+                return new Abs(a);
+            case RE:
+                return new Re(a);
+            case IM:
+                return new Im(a);
+            default:
+                throw new IllegalStateException("Unexpected " + function);
+        }
+    }
+
+    static final class Sin extends Apply {
+        Sin(Op a) {
+            super(ComplexFunction.SIN, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.sin(a.re, a.im, this);
+        }
+    }
+
+    static final class Cos extends Apply {
+        Cos(Op a) {
+            super(ComplexFunction.COS, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.cos(a.re, a.im, this);
+        }
+    }
+
+    static final class Tan extends Apply {
+        Tan(Op a) {
+            super(ComplexFunction.TAN, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.tan(a.re, a.im, this);
+        }
+    }
+
+    static final class Sinh extends Apply {
+        Sinh(Op a) {
+            super(ComplexFunction.SINH, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.sinh(a.re, a.im, this);
+        }
+    }
+
+    static final class Cosh extends Apply {
+        Cosh(Op a) {
+            super(ComplexFunction.COSH, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.cosh(a.re, a.im, this);
+        }
+    }
+
+    static final class Tanh extends Apply {
+        Tanh(Op a) {
+            super(ComplexFunction.TANH, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.tanh(a.re, a.im, this);
+        }
+    }
+
+    static final class Exp extends Apply {
+        Exp(Op a) {
+            super(ComplexFunction.EXP, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.exp(a.re, a.im, this);
+        }
+    }
+
+    static final class Log extends Apply {
+        Log(Op a) {
+            super(ComplexFunction.LOG, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.log(a.re, a.im, this);
+        }
+    }
+
+    static final class Sqrt extends Apply {
+        Sqrt(Op a) {
+            super(ComplexFunction.SQRT, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.sqrt(a.re, a.im, this);
+        }
+    }
+
+    static final class Conj extends Apply {
+        Conj(Op a) {
+            super(ComplexFunction.CONJ, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.conj(a.re, a.im, this);
+        }
+    }
+
+    static final class Abs extends Apply {
+        Abs(Op a) {
+            super(ComplexFunction.ABS, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.abs(a.re, a.im, this);
+        }
+    }
+
+    static final class Re extends Apply {
+        Re(Op a) {
+            super(ComplexFunction.RE, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.re(a.re, a.im, this);
+        }
+    }
+
+    static final class Im extends Apply {
+        Im(Op a) {
+            super(ComplexFunction.IM, a);
+        }
+
+        @Override
+        void run(double zr, double zi) {
+            a.run(zr, zi);
+            ComplexFunction.im(a.re, a.im, this);
+        }
+    }
+}
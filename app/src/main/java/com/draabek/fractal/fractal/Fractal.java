@@ -15,6 +15,8 @@ public abstract class Fractal {
 
 	protected ColorPalette colorPalette;
 
+	protected Symmetry symmetry = Symmetry.NONE;
+
 	public Fractal() {
 		parameters = new LinkedHashMap<>();
 	}
@@ -59,4 +61,12 @@ public abstract class Fractal {
 	public void setColorPalette(ColorPalette colorPalette) {
 		this.colorPalette = colorPalette;
 	}
+
+	public @NonNull Symmetry getSymmetry() {
+		return symmetry;
+	}
+
+	public void setSymmetry(@NonNull Symmetry symmetry) {
+		this.symmetry = symmetry;
+	}
 }
@@ -4,6 +4,9 @@ import android.content.Context;
 import android.util.Log;
 
 import com.draabek.fractal.activity.FractalZooApplication;
+import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.instance.FormulaFractal;
+import com.draabek.fractal.formula.FormulaSyntaxException;
 import com.draabek.fractal.gl.GLSLFractal;
 import com.draabek.fractal.palette.ColorPalette;
 import com.draabek.fractal.util.SimpleTree;
@@ -21,6 +24,7 @@ import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import static java.lang.Class.forName;
@@ -60,6 +64,14 @@ public final class FractalRegistry {
                 jsonObject.get("thumbnail").getAsString() : null;
         String paletteString = jsonObject.get("palette") != null ?
                 jsonObject.get("palette").getAsString() : null;
+        String symmetryString = jsonObject.get("symmetry") != null ?
+                jsonObject.get("symmetry").getAsString() : null;
+        String cpuFallbackString = jsonObject.get("cpuFallback") != null ?
+                jsonObject.get("cpuFallback").getAsString() : null;
+        String formulaString = jsonObject.get("formula") != null ?
+                jsonObject.get("formula").getAsString() : null;
+        String startString = jsonObject.get("start") != null ?
+                jsonObject.get("start").getAsString() : null;
         Context ctx = FractalZooApplication.getContext();
         String[] loadedShaders = loadShaders(ctx, shaders);
         Class cls;
@@ -81,6 +93,27 @@ public final class FractalRegistry {
                     }
                 }
                 ((GLSLFractal) fractal).setShaders(loadedShaders);
+                if (cpuFallbackString != null) {
+                    Object cpuFallback = Class.forName(cpuFallbackString).newInstance();
+                    if (cpuFallback instanceof BitmapDrawFractal) {
+                        ((GLSLFractal) fractal).setCpuFallback((BitmapDrawFractal) cpuFallback);
+                    } else {
+                        Log.w(LOG_KEY, "CPU fallback " + cpuFallbackString + " of " + name
+                                + " does not draw bitmaps");
+                    }
+                }
+            }
+            if ((fractal instanceof FormulaFractal) && (formulaString != null)) {
+                try {
+                    ((FormulaFractal) fractal).setFormula(formulaString, startString);
+                } catch (FormulaSyntaxException e) {
+                    if (Utils.DEBUG) {
+                        throw new RuntimeException("Invalid formula of " + name, e);
+                    } else {
+                        Log.e(LOG_KEY, "Invalid formula of " + name + ": " + e.getMessage());
+                        return null;
+                    }
+                }
             }
             if (settingsString != null) {
                 Map<String, Float> retMap = new Gson().fromJson(
@@ -93,6 +126,13 @@ public final class FractalRegistry {
                 ColorPalette colorPalette = (ColorPalette) Class.forName(paletteString).newInstance();
                 fractal.setColorPalette(colorPalette);
             }
+            if (symmetryString != null) {
+                try {
+                    fractal.setSymmetry(Symmetry.valueOf(symmetryString.toUpperCase(Locale.US)));
+                } catch (IllegalArgumentException e) {
+                    Log.w(LOG_KEY, "Unknown symmetry " + symmetryString + " of " + name);
+                }
+            }
             return fractal;
         } catch (ClassNotFoundException e) {
             Log.w(LOG_KEY, "Cannot find fractal class " + clazz);
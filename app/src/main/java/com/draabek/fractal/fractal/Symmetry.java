@@ -0,0 +1,12 @@
+package com.draabek.fractal.fractal;
+
+/**
+ * Symmetry of a fractal around the origin of the complex plane
+ */
+public enum Symmetry {
+    NONE,
+    /** Mirror image about the real axis, c and its complex conjugate look the same */
+    CONJUGATE,
+    /** 180 degree rotation around the origin, c and -c look the same */
+    ROTATIONAL
+}
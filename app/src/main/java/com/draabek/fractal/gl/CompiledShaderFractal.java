@@ -0,0 +1,52 @@
+package com.draabek.fractal.gl;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.glsl.ShaderProgram;
+import com.draabek.fractal.glsl.ShaderRenderer;
+
+/**
+ * CPU fallback of a {@link GLSLFractal} that has no hand-written one: its own fragment
+ * shader compiled by {@link ShaderProgram} and run for every pixel with the uniforms the GPU
+ * gets. The shader places the fractal by its parameters, so the viewport is not used. Like
+ * the GPU's, rows of the bitmap run bottom to top. Floats are computed in double precision.
+ */
+public class CompiledShaderFractal extends BitmapDrawFractal {
+    private final ShaderRenderer renderer;
+    private int[] buffer;
+
+    public CompiledShaderFractal(ShaderProgram program) {
+        renderer = new ShaderRenderer(program);
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, RectF rect) {
+        return render(bitmap);
+    }
+
+    @Override
+    public Bitmap redrawBitmap(Bitmap bitmap, PreciseViewport viewport) {
+        return render(bitmap);
+    }
+
+    @Override
+    public Bitmap redrawBitmapPart(Bitmap bitmap, RectF rect, Rect part) {
+        return render(bitmap);
+    }
+
+    private synchronized Bitmap render(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if ((buffer == null) || (buffer.length != width * height)) {
+            buffer = new int[width * height];
+        }
+        renderer.render(buffer, width, height, parameters,
+                (colorPalette == null) ? null : colorPalette.getColorsInt());
+        bitmap.setPixels(buffer, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+}
@@ -1,15 +1,27 @@
 package com.draabek.fractal.gl;
 
+import android.util.Log;
+
 import androidx.annotation.NonNull;
 
+import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.Precision;
 import com.draabek.fractal.fractal.FractalViewWrapper;
 import com.draabek.fractal.fractal.Fractal;
+import com.draabek.fractal.glsl.ShaderProgram;
+import com.draabek.fractal.glsl.ShaderSyntaxException;
+
+import java.math.BigDecimal;
 
 public class GLSLFractal extends Fractal {
     /**
      * A fractal subclass rendered using the GLSL language
      * directly on the graphics card*/
 	private String[] shaders = null;
+	private BitmapDrawFractal cpuFallback = null;
+	/** Set once the fragment shader failed to compile for the CPU, not to try again */
+	private boolean compileFailed = false;
 	public GLSLFractal() {super();}
 
 	@Override
@@ -21,8 +33,64 @@ public class GLSLFractal extends Fractal {
 		return shaders;
 	}
 
-	public void setShaders(@NonNull String[] shaders) {
+	public synchronized void setShaders(@NonNull String[] shaders) {
 		this.shaders = shaders;
+		if (cpuFallback instanceof CompiledShaderFractal) {
+			cpuFallback = null;
+		}
+		compileFailed = false;
 	}
 
+	/**
+	 * @return CPU fractal computing the same formula, rendered instead of the shader once
+	 * float no longer resolves the pixels. Without a hand-written one the fragment shader
+	 * compiled for the CPU, null if it uses more GLSL than {@link ShaderProgram} supports.
+	 */
+	public synchronized BitmapDrawFractal getCpuFallback() {
+		if ((cpuFallback == null) && !compileFailed && (shaders != null)) {
+			try {
+				cpuFallback = new CompiledShaderFractal(ShaderProgram.compile(shaders[1]));
+			} catch (ShaderSyntaxException e) {
+				Log.w(GLSLFractal.class.getName(), "Cannot compile " + name + " for the CPU: "
+						+ e.getMessage());
+				compileFailed = true;
+			}
+		}
+		return cpuFallback;
+	}
+
+	public synchronized void setCpuFallback(BitmapDrawFractal cpuFallback) {
+		this.cpuFallback = cpuFallback;
+	}
+
+	/**
+	 * The escape-time shaders map gl_FragCoord to c = (gl_FragCoord / resolution - center) / scale
+	 * with resolution = min(width, height). Rows of the returned viewport run bottom to top
+	 * like gl_FragCoord.
+	 * @return Part of the plane the shader shows, null if the fractal cannot be zoomed
+	 */
+	public PreciseViewport getViewport(int width, int height) {
+		Float centerX = parameters.get("centerX");
+		Float centerY = parameters.get("centerY");
+		Float scale = parameters.get("scale");
+		if ((centerX == null) || (centerY == null) || (scale == null) || (scale <= 0)) {
+			return null;
+		}
+		double resolution = Math.min(width, height);
+		// Fragment centers lie half a pixel off the pixel corners
+		return new PreciseViewport(
+				new BigDecimal(((width / 2.0 + 0.5) / resolution - centerX) / scale),
+				new BigDecimal(((height / 2.0 + 0.5) / resolution - centerY) / scale),
+				1 / (resolution * scale));
+	}
+
+	/**
+	 * @return Cheapest precision that resolves the current view, FLOAT if the fractal
+	 * cannot be zoomed
+	 */
+	public Precision getPrecision(int width, int height) {
+		PreciseViewport viewport = getViewport(width, height);
+		return (viewport == null) ? Precision.FLOAT
+				: Precision.forViewport(viewport, width, height);
+	}
 }
@@ -4,6 +4,8 @@ import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
 
+import com.draabek.fractal.canvas.engine.MirrorMap;
+
 import java.nio.IntBuffer;
 
 import javax.microedition.khronos.egl.EGL10;
@@ -166,6 +168,13 @@ public class PixelBuffer {
         IntBuffer ib = IntBuffer.allocate(mWidth*mHeight);
         IntBuffer ibt = IntBuffer.allocate(mWidth*mHeight);
         mGL.glReadPixels(0, 0, mWidth, mHeight, GL_RGBA, GL_UNSIGNED_BYTE, ib);
+        if (mRenderer instanceof SquareRenderer) {
+            // Fill in the symmetric part the renderer skipped
+            MirrorMap mirrorMap = ((SquareRenderer) mRenderer).getMirrorMap();
+            if (mirrorMap != null) {
+                mirrorMap.copy(ib.array());
+            }
+        }
  
         // Convert upside down mirror-reversed image to right-side up normal image.
         for (int i = 0; i < mHeight; i++) {    
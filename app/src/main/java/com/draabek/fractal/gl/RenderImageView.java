@@ -3,15 +3,23 @@ package com.draabek.fractal.gl;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Build;
 import android.os.Environment;
+import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.ViewTreeObserver;
 import android.widget.Toast;
 
+import com.draabek.fractal.canvas.BitmapDrawFractal;
+import com.draabek.fractal.canvas.EscapeTimeFractal;
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+import com.draabek.fractal.canvas.engine.Precision;
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.fractal.Fractal;
 import com.draabek.fractal.fractal.FractalViewWrapper;
 import com.draabek.fractal.R;
 import com.draabek.fractal.fractal.RenderListener;
@@ -31,10 +39,13 @@ import java.util.Map;
  */
 
 public class RenderImageView extends androidx.appcompat.widget.AppCompatImageView implements FractalViewWrapper {
+    private static final String LOG_KEY = RenderImageView.class.getName();
 
     private Map<Long, Boolean> terminateThreads = new Hashtable<>();
     private boolean renderingFlag;
     private boolean reinitFlag;
+    /** Set when a saved image is to be anti-aliased on the GL thread */
+    private volatile boolean exportFlag;
     private PixelBuffer pixelBuffer;
     private SquareRenderer squareRenderer;
 
@@ -46,6 +57,7 @@ public class RenderImageView extends androidx.appcompat.widget.AppCompatImageVie
 
     private RenderImageCache renderImageCache;
     private RenderListener renderListener;
+    private volatile Precision lastPrecision;
 
     public RenderImageView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -110,7 +122,7 @@ public class RenderImageView extends androidx.appcompat.widget.AppCompatImageVie
                         if ((exiting == null) || (exiting)) {
                             long start = System.currentTimeMillis();
                             this.renderListener.onRenderRequested();
-                            Bitmap bitmap = pixelBuffer.getBitmap();
+                            Bitmap bitmap = renderBitmap();
                             this.post(() -> {
                                 this.setImageBitmap(bitmap);
                                 this.renderingFlag = false;
@@ -119,6 +131,15 @@ public class RenderImageView extends androidx.appcompat.widget.AppCompatImageVie
                             });
                         }
                     }
+                    if (exportFlag) {
+                        exportFlag = false;
+                        long start = System.currentTimeMillis();
+                        Bitmap bitmap = renderAntialiased();
+                        this.post(() -> {
+                            this.renderListener.onRenderComplete(System.currentTimeMillis() - start);
+                            saveBitmap(bitmap != null ? bitmap : getBitmap());
+                        });
+                    }
                 }
             } while((exiting == null) || exiting);
         });
@@ -126,6 +147,118 @@ public class RenderImageView extends androidx.appcompat.widget.AppCompatImageVie
         terminateThreads.put(glThread.getId(), false);
     }
 
+    /**
+     * Render the current fractal with the shader, or with its CPU fallback once the view
+     * is zoomed too deep for float. Called from the thread owning the OpenGL context.
+     */
+    private Bitmap renderBitmap() {
+        Fractal fractal = FractalRegistry.getInstance().getCurrent();
+        int width = getWidth();
+        int height = getHeight();
+        Precision precision = Precision.FLOAT;
+        BitmapDrawFractal cpuFallback = null;
+        if (fractal instanceof GLSLFractal) {
+            tuneIterations((GLSLFractal) fractal, width, height);
+            precision = ((GLSLFractal) fractal).getPrecision(width, height);
+            cpuFallback = ((GLSLFractal) fractal).getCpuFallback();
+        }
+        if ((precision == Precision.FLOAT) || (cpuFallback == null)) {
+            if (precision != Precision.FLOAT) {
+                Log.w(LOG_KEY, fractal + " needs " + precision
+                        + " precision, but has no CPU fallback, rendering with float");
+            }
+            lastPrecision = Precision.FLOAT;
+            Log.i(LOG_KEY, "Rendered " + fractal + " with " + lastPrecision + " precision");
+            return pixelBuffer.getBitmap();
+        }
+        cpuFallback.updateSettings(fractal.getParameters());
+        cpuFallback.setColorPalette(fractal.getColorPalette());
+        // The viewport runs bottom to top like OpenGL, flip the result
+        Bitmap bitmap = cpuFallback.redrawBitmap(
+                Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888),
+                ((GLSLFractal) fractal).getViewport(width, height));
+        RenderStats stats = (cpuFallback instanceof EscapeTimeFractal)
+                ? ((EscapeTimeFractal) cpuFallback).getLastStats() : null;
+        if (cpuFallback instanceof CompiledShaderFractal) {
+            // Compiled shaders compute in double whatever the view would need
+            lastPrecision = Precision.DOUBLE;
+        } else {
+            lastPrecision = ((stats == null) || (stats.getPrecision() == null))
+                    ? precision : stats.getPrecision();
+        }
+        Log.i(LOG_KEY, "Rendered " + fractal + " on CPU with " + lastPrecision + " precision"
+                + ((stats == null) ? "" : ": " + stats));
+        return flipVertically(bitmap);
+    }
+
+    /**
+     * Render the view again with the CPU fallback and adaptive anti-aliasing, for export
+     * @return null if anti-aliasing is off, the last frame came from the shader, whose
+     * coloring the CPU fallback does not match, the fractal has no escape-time CPU fallback or
+     * the view needs more than double precision
+     */
+    private Bitmap renderAntialiased() {
+        int samples = Utils.getExportSamples(getContext());
+        Fractal fractal = FractalRegistry.getInstance().getCurrent();
+        if ((samples <= 1) || (lastPrecision == null) || (lastPrecision == Precision.FLOAT)
+                || !(fractal instanceof GLSLFractal)) {
+            return null;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        BitmapDrawFractal cpuFallback = ((GLSLFractal) fractal).getCpuFallback();
+        PreciseViewport viewport = ((GLSLFractal) fractal).getViewport(width, height);
+        if (!(cpuFallback instanceof EscapeTimeFractal) || (viewport == null)) {
+            return null;
+        }
+        EscapeTimeFractal escapeTimeFractal = (EscapeTimeFractal) cpuFallback;
+        cpuFallback.updateSettings(fractal.getParameters());
+        cpuFallback.setColorPalette(fractal.getColorPalette());
+        Bitmap bitmap = escapeTimeFractal.redrawBitmap(
+                Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888), viewport);
+        if (!escapeTimeFractal.antialiasBitmap(bitmap, viewport, samples,
+                Utils.getExportThreshold(getContext()))) {
+            return null;
+        }
+        return flipVertically(bitmap);
+    }
+
+    /**
+     * The CPU renders rows top to bottom, the viewports of the shaders run bottom to top
+     */
+    private static Bitmap flipVertically(Bitmap bitmap) {
+        Matrix matrix = new Matrix();
+        matrix.postScale(1, -1, bitmap.getWidth() / 2.0f, bitmap.getHeight() / 2.0f);
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix,
+                true);
+    }
+
+    /**
+     * Let the CPU fallback pick the iteration limit for the view if the preference asks
+     * for it, the shader gets the limit through the "iterations" uniform
+     */
+    private void tuneIterations(GLSLFractal fractal, int width, int height) {
+        BitmapDrawFractal cpuFallback = fractal.getCpuFallback();
+        PreciseViewport viewport = fractal.getViewport(width, height);
+        if (!(cpuFallback instanceof EscapeTimeFractal) || (viewport == null)
+                || !fractal.getParameters().containsKey("iterations")
+                || !PreferenceManager.getDefaultSharedPreferences(getContext()).getBoolean(
+                        getContext().getString(R.string.prefs_auto_iterations_key), false)) {
+            return;
+        }
+        cpuFallback.updateSettings(fractal.getParameters());
+        int limit = ((EscapeTimeFractal) cpuFallback).tuneIterations(viewport, width, height);
+        fractal.getParameters().put("iterations", (float) limit);
+        Log.v(LOG_KEY, "Iteration limit of " + fractal + " tuned to " + limit);
+    }
+
+    /**
+     * @return Precision of the last rendered frame, null before the first one
+     */
+    public Precision getLastPrecision() {
+        return lastPrecision;
+    }
+
     //or just save current bitmap redundantly
     public Bitmap getBitmap() {
             BitmapDrawable bitmapDrawable = ((BitmapDrawable) getDrawable());
@@ -142,9 +275,20 @@ public class RenderImageView extends androidx.appcompat.widget.AppCompatImageVie
 
     @Override
     public void saveBitmap() {
+        // Sampling again takes about as long as a CPU render, so it runs on the GL thread,
+        // the shader frames are saved as they are
+        if ((Utils.getExportSamples(getContext()) > 1) && (lastPrecision != null)
+                && (lastPrecision != Precision.FLOAT)) {
+            this.renderListener.onRenderRequested();
+            exportFlag = true;
+            return;
+        }
+        saveBitmap(this.getBitmap());
+    }
+
+    private void saveBitmap(Bitmap bitmap) {
         try {
             File tmpFile = File.createTempFile("bitmap", ".img", getContext().getCacheDir());
-            Bitmap bitmap = this.getBitmap();
             for (int i = 0;(i < 60) && (bitmap == null);i++) {
                 Log.d(this.getClass().getName(), "Wait for draw " + i);
                 try {
@@ -19,6 +19,7 @@ import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.util.Log;
 
+import com.draabek.fractal.canvas.engine.MirrorMap;
 import com.draabek.fractal.fractal.Fractal;
 import com.draabek.fractal.fractal.FractalRegistry;
 
@@ -124,6 +125,15 @@ public class Square {
      * Encapsulates the OpenGL ES instructions for drawing this shape.
      */
     public void draw(int width, int height) {
+        draw(width, height, false);
+    }
+
+    /**
+     * @param mirrored Skip the part of the frame that mirrors another part, the caller
+     *                 has to copy it with the returned map after reading the pixels back
+     * @return Map of the skipped part in glReadPixels row order, null if nothing was skipped
+     */
+    public MirrorMap draw(int width, int height, boolean mirrored) {
         if (currentFractal != FractalRegistry.getInstance().getCurrent()) {
             updateCurrentFractal();
         }
@@ -154,13 +164,53 @@ public class Square {
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
             GLES20.glUniform1i(paletteHandle,0 );
-        }        // Draw the square
+        }
+        MirrorMap mirrorMap = mirrored ? createMirrorMap(width, height) : null;
+        if (mirrorMap == null) {
+            // Draw the square
+            GLES20.glDrawElements(
+                    GLES20.GL_TRIANGLES, drawOrder.length,
+                    GLES20.GL_UNSIGNED_SHORT, drawListBuffer);
+        } else {
+            // Draw everything around the mirrored rectangle
+            GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+            drawScissored(0, 0, width, mirrorMap.getTop());
+            drawScissored(0, mirrorMap.getBottom(), width, height);
+            drawScissored(0, mirrorMap.getTop(), mirrorMap.getLeft(), mirrorMap.getBottom());
+            drawScissored(mirrorMap.getRight(), mirrorMap.getTop(), width, mirrorMap.getBottom());
+            GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        }
+
+        // Disable vertex array
+        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        return mirrorMap;
+    }
+
+    private void drawScissored(int left, int bottom, int right, int top) {
+        if ((left >= right) || (bottom >= top)) {
+            return;
+        }
+        GLES20.glScissor(left, bottom, right - left, top - bottom);
         GLES20.glDrawElements(
                 GLES20.GL_TRIANGLES, drawOrder.length,
                 GLES20.GL_UNSIGNED_SHORT, drawListBuffer);
+    }
 
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+    /**
+     * The escape-time shaders map gl_FragCoord to c = (gl_FragCoord / resolution - center) / scale
+     * with resolution = min(width, height), so the axes of symmetry run through
+     * the pixel row and column center * resolution - 1 / 2.
+     */
+    private MirrorMap createMirrorMap(int width, int height) {
+        Map<String, Float> settings = currentFractal.getParameters();
+        Float centerX = settings.get("centerX");
+        Float centerY = settings.get("centerY");
+        if ((centerX == null) || (centerY == null)) {
+            return null;
+        }
+        int resolution = Math.min(width, height);
+        return MirrorMap.create(currentFractal.getSymmetry(),
+                2.0 * centerX * resolution - 1, 2.0 * centerY * resolution - 1, width, height);
     }
 
 }
\ No newline at end of file
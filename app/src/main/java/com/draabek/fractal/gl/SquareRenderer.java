@@ -3,6 +3,8 @@ package com.draabek.fractal.gl;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView.Renderer;
 
+import com.draabek.fractal.canvas.engine.MirrorMap;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -18,6 +20,7 @@ public class SquareRenderer implements Renderer {
     private int width;
     private int height;
     private boolean renderInProgress;
+    private MirrorMap mirrorMap;
 
     public SquareRenderer() {}
     @Override
@@ -36,11 +39,18 @@ public class SquareRenderer implements Renderer {
         renderInProgress = true;
         // Draw background color
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        mSquare.draw(width, height);
+        mirrorMap = mSquare.draw(width, height, true);
         renderInProgress = false;
     }
 
     public boolean isRenderInProgress() {
         return renderInProgress;
     }
+
+    /**
+     * @return Part of the last frame that was not drawn and has to be mirrored, null if none
+     */
+    public MirrorMap getMirrorMap() {
+        return mirrorMap;
+    }
 }
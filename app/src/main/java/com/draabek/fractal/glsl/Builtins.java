@@ -0,0 +1,177 @@
+package com.draabek.fractal.glsl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in functions of GLSL ES 1.0 the shaders use: the angle, exponential and common
+ * functions componentwise on floats and vectors, the geometric functions and texture2D
+ */
+final class Builtins {
+    private static final double LN2 = Math.log(2);
+    private static final Map<String, Expr.Unary> UNARY = new HashMap<>();
+    private static final Map<String, Expr.Binary> BINARY = new HashMap<>();
+    private static final Map<String, Expr.Ternary> TERNARY = new HashMap<>();
+
+    static {
+        UNARY.put("radians", x -> x * (Math.PI / 180));
+        UNARY.put("degrees", x -> x * (180 / Math.PI));
+        UNARY.put("sin", Math::sin);
+        UNARY.put("cos", Math::cos);
+        UNARY.put("tan", Math::tan);
+        UNARY.put("asin", Math::asin);
+        UNARY.put("acos", Math::acos);
+        UNARY.put("atan", Math::atan);
+        UNARY.put("exp", Math::exp);
+        UNARY.put("log", Math::log);
+        UNARY.put("exp2", x -> Math.pow(2, x));
+        UNARY.put("log2", x -> Math.log(x) / LN2);
+        UNARY.put("sqrt", Math::sqrt);
+        UNARY.put("inversesqrt", x -> 1 / Math.sqrt(x));
+        UNARY.put("abs", Math::abs);
+        UNARY.put("sign", Math::signum);
+        UNARY.put("floor", Math::floor);
+        UNARY.put("ceil", Math::ceil);
+        UNARY.put("fract", x -> x - Math.floor(x));
+        // atan(y, x) is the angle of the point (x, y)
+        BINARY.put("atan", Math::atan2);
+        BINARY.put("pow", Math::pow);
+        BINARY.put("mod", (x, y) -> x - y * Math.floor(x / y));
+        BINARY.put("min", Math::min);
+        BINARY.put("max", Math::max);
+        BINARY.put("step", (edge, x) -> (x < edge) ? 0 : 1);
+        TERNARY.put("clamp", (x, low, high) -> Math.min(Math.max(x, low), high));
+        TERNARY.put("mix", (x, y, a) -> x * (1 - a) + y * a);
+        TERNARY.put("smoothstep", (edge0, edge1, x) -> {
+            double t = Math.min(Math.max((x - edge0) / (edge1 - edge0), 0), 1);
+            return t * t * (3 - 2 * t);
+        });
+    }
+
+    private Builtins() {
+    }
+
+    /**
+     * @return Call of the built-in function of the name and arguments
+     * @throws ShaderSyntaxException if there is none
+     */
+    static Expr call(ShaderCompiler compiler, Token name, List<Expr> arguments) {
+        Expr[] args = new Expr[arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compiler.toFloat(arguments.get(i));
+        }
+        Expr result = null;
+        switch (name.text) {
+            case "length":
+                if ((args.length == 1) && isFloats(args)) {
+                    result = args[0].type.isScalar() ? new Expr.Apply1(Math::abs, args[0])
+                            : new Expr.Length(args[0]);
+                }
+                break;
+            case "distance":
+                if ((args.length == 2) && isFloats(args) && (args[0].type == args[1].type)) {
+                    result = args[0].type.isScalar()
+                            ? new Expr.Apply2((x, y) -> Math.abs(x - y), args[0], args[1])
+                            : new Expr.Distance(args[0], args[1]);
+                }
+                break;
+            case "dot":
+                if ((args.length == 2) && isFloats(args) && (args[0].type == args[1].type)) {
+                    result = args[0].type.isScalar()
+                            ? new Expr.Multiply(Type.FLOAT, args[0], args[1])
+                            : new Expr.Dot(args[0], args[1]);
+                }
+                break;
+            case "normalize":
+                if ((args.length == 1) && isFloats(args)) {
+                    result = args[0].type.isScalar() ? new Expr.Apply1(Math::signum, args[0])
+                            : new Expr.Normalize(compiler.allocate(args[0].type.size), args[0]);
+                }
+                break;
+            case "cross":
+                if ((args.length == 2) && (args[0].type == Type.VEC3)
+                        && (args[1].type == Type.VEC3)) {
+                    result = new Expr.Cross(compiler.allocate(3), args[0], args[1]);
+                }
+                break;
+            case "texture2D":
+                // The bias of the third argument does not matter without mipmaps
+                if (((args.length == 2) || ((args.length == 3) && (args[2].type == Type.FLOAT)))
+                        && (args[0].type == Type.SAMPLER2D) && (args[1].type == Type.VEC2)) {
+                    return new Expr.Texture(compiler.allocate(4), args[1]);
+                }
+                break;
+            default:
+                result = componentwise(compiler, name.text, args);
+        }
+        if (result == null) {
+            StringBuilder signature = new StringBuilder(name.text).append('(');
+            for (int i = 0; i < arguments.size(); i++) {
+                signature.append((i > 0) ? ", " : "").append(arguments.get(i).type);
+            }
+            throw compiler.error(name, "No function " + signature.append(')'));
+        }
+        return compiler.fold(result, args);
+    }
+
+    /**
+     * Function of floats applied to each component of vectors of the same size, where float
+     * arguments stand for a vector of their value
+     * @return null if there is no such function of the arguments
+     */
+    private static Expr componentwise(ShaderCompiler compiler, String name, Expr[] args) {
+        if (!isFloats(args)) {
+            return null;
+        }
+        Type type = Type.FLOAT;
+        for (Expr arg : args) {
+            if (arg.type.isScalar()) {
+                continue;
+            }
+            if ((type != Type.FLOAT) && (arg.type != type)) {
+                return null;
+            }
+            type = arg.type;
+        }
+        boolean scalar = type == Type.FLOAT;
+        int slot = scalar ? -1 : compiler.allocate(type.size);
+        switch (args.length) {
+            case 1:
+                Expr.Unary unary = UNARY.get(name);
+                if (unary == null) {
+                    return null;
+                }
+                return scalar ? new Expr.Apply1(unary, args[0])
+                        : new Expr.Map1(type, slot, unary, args[0]);
+            case 2:
+                Expr.Binary binary = BINARY.get(name);
+                if (binary == null) {
+                    return null;
+                }
+                return scalar ? new Expr.Apply2(binary, args[0], args[1])
+                        : new Expr.Map2(type, slot, binary, args[0], args[1]);
+            case 3:
+                Expr.Ternary ternary = TERNARY.get(name);
+                if (ternary == null) {
+                    return null;
+                }
+                return scalar ? new Expr.Apply3(ternary, args[0], args[1], args[2])
+                        : new Expr.Map3(type, slot, ternary, args[0], args[1], args[2]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true if every argument is a float or a float vector
+     */
+    private static boolean isFloats(Expr[] args) {
+        for (Expr arg : args) {
+            if ((arg.type != Type.FLOAT) && !arg.type.isVector()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,1072 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Compiled expression of a shader. Scalars are returned by {@link #scalar}, vectors and
+ * matrices are written by {@link #evaluate} to the frame starting at {@link #slot}, slots
+ * the compiler reserved for the expression or, for a variable read in place, the slots of the
+ * variable. Every node is specialized for its types when the shader is compiled, so running
+ * it neither allocates nor checks types.
+ */
+abstract class Expr {
+    interface Unary {
+        double apply(double x);
+    }
+
+    interface Binary {
+        double apply(double x, double y);
+    }
+
+    interface Ternary {
+        double apply(double x, double y, double z);
+    }
+
+    final Type type;
+    /** First slot of the value of a vector or matrix */
+    final int slot;
+
+    Expr(Type type, int slot) {
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * @return Value of a scalar expression
+     */
+    double scalar(Frame frame) {
+        throw new IllegalStateException(type + " is not a scalar");
+    }
+
+    /**
+     * Write the value of a vector or matrix expression to its slots, nothing to do for
+     * constants and variables read in place
+     */
+    void evaluate(Frame frame) {
+    }
+
+    /**
+     * Evaluate for the side effects only
+     */
+    final void execute(Frame frame) {
+        if (type.isScalar()) {
+            scalar(frame);
+        } else {
+            evaluate(frame);
+        }
+    }
+
+    /**
+     * @return true for values known when the shader is compiled
+     */
+    final boolean isConstant() {
+        return (this instanceof Constant) || (this instanceof VectorConstant);
+    }
+
+    static final class Constant extends Expr {
+        final double value;
+
+        Constant(Type type, double value) {
+            super(type, -1);
+            this.value = value;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return value;
+        }
+    }
+
+    /**
+     * Vector or matrix whose value is in the template every frame is copied from
+     */
+    static final class VectorConstant extends Expr {
+        VectorConstant(Type type, int slot) {
+            super(type, slot);
+        }
+    }
+
+    /**
+     * Read of a variable or of some of its components, which is also what an assignment
+     * writes to
+     */
+    abstract static class Access extends Expr {
+        final int[] slots;
+        final boolean writable;
+
+        Access(Type type, int slot, int[] slots, boolean writable) {
+            super(type, slot);
+            this.slots = slots;
+            this.writable = writable;
+        }
+
+        /**
+         * @param temporary Slots to gather components that are not contiguous, unused
+         * otherwise
+         */
+        static Access of(Type type, int[] slots, boolean writable, int temporary) {
+            if (type.isScalar()) {
+                return new ScalarAccess(type, slots, writable);
+            }
+            if (!isContiguous(slots)) {
+                return new Gather(type, temporary, slots, writable);
+            }
+            // Samplers take no slots
+            return new VectorAccess(type, (slots.length > 0) ? slots[0] : -1, slots, writable);
+        }
+
+        static boolean isContiguous(int[] slots) {
+            for (int i = 1; i < slots.length; i++) {
+                if (slots[i] != slots[0] + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class ScalarAccess extends Access {
+        private final int source;
+
+        ScalarAccess(Type type, int[] slots, boolean writable) {
+            super(type, -1, slots, writable);
+            source = slots[0];
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return frame.values[source];
+        }
+    }
+
+    /**
+     * Read of a variable or a swizzle of consecutive components in place
+     */
+    static final class VectorAccess extends Access {
+        VectorAccess(Type type, int slot, int[] slots, boolean writable) {
+            super(type, slot, slots, writable);
+        }
+    }
+
+    static final class Gather extends Access {
+        Gather(Type type, int slot, int[] slots, boolean writable) {
+            super(type, slot, slots, writable);
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            double[] v = frame.values;
+            for (int k = 0; k < slots.length; k++) {
+                v[slot + k] = v[slots[k]];
+            }
+        }
+    }
+
+    /**
+     * Component of a vector or matrix computed by an expression
+     */
+    static final class Component extends Expr {
+        private final Expr vector;
+        private final int index;
+
+        Component(Type type, Expr vector, int index) {
+            super(type, -1);
+            this.vector = vector;
+            this.index = index;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            vector.evaluate(frame);
+            return frame.values[vector.slot + index];
+        }
+    }
+
+    /**
+     * Components of a vector or matrix computed by an expression
+     */
+    static final class Swizzle extends Expr {
+        private final Expr vector;
+        private final int[] components;
+
+        Swizzle(Type type, int slot, Expr vector, int[] components) {
+            super(type, slot);
+            this.vector = vector;
+            this.components = components;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            vector.evaluate(frame);
+            double[] v = frame.values;
+            for (int k = 0; k < components.length; k++) {
+                v[slot + k] = v[vector.slot + components[k]];
+            }
+        }
+    }
+
+    /**
+     * Scalar taken as another type of the same value: integers and booleans are doubles
+     * already
+     */
+    static final class Retype extends Expr {
+        private final Expr value;
+
+        Retype(Type type, Expr value) {
+            super(type, -1);
+            this.value = value;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return value.scalar(frame);
+        }
+    }
+
+    /**
+     * Conversion to int, truncating towards zero
+     */
+    static final class ToInt extends Expr {
+        private final Expr value;
+
+        ToInt(Expr value) {
+            super(Type.INT, -1);
+            this.value = value;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (long) value.scalar(frame);
+        }
+    }
+
+    static final class ToBool extends Expr {
+        private final Expr value;
+
+        ToBool(Expr value) {
+            super(Type.BOOL, -1);
+            this.value = value;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (value.scalar(frame) != 0) ? 1 : 0;
+        }
+    }
+
+    static final class Add extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Add(Type type, Expr a, Expr b) {
+            super(type, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return a.scalar(frame) + b.scalar(frame);
+        }
+    }
+
+    static final class Subtract extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Subtract(Type type, Expr a, Expr b) {
+            super(type, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return a.scalar(frame) - b.scalar(frame);
+        }
+    }
+
+    static final class Multiply extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Multiply(Type type, Expr a, Expr b) {
+            super(type, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return a.scalar(frame) * b.scalar(frame);
+        }
+    }
+
+    static final class Divide extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Divide(Expr a, Expr b) {
+            super(Type.FLOAT, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return a.scalar(frame) / b.scalar(frame);
+        }
+    }
+
+    /**
+     * Integer division truncating towards zero, 0 for a zero divisor where GLSL leaves the
+     * result undefined
+     */
+    static final class IntDivide extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        IntDivide(Expr a, Expr b) {
+            super(Type.INT, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            long divisor = (long) b.scalar(frame);
+            return (divisor == 0) ? 0 : (long) a.scalar(frame) / divisor;
+        }
+    }
+
+    static final class Negate extends Expr {
+        private final Expr a;
+
+        Negate(Expr a) {
+            super(a.type, -1);
+            this.a = a;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return -a.scalar(frame);
+        }
+    }
+
+    static final class Not extends Expr {
+        private final Expr a;
+
+        Not(Expr a) {
+            super(Type.BOOL, -1);
+            this.a = a;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (a.scalar(frame) != 0) ? 0 : 1;
+        }
+    }
+
+    /**
+     * Logical and, not evaluating the second operand if the first is false
+     */
+    static final class And extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        And(Expr a, Expr b) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return ((a.scalar(frame) != 0) && (b.scalar(frame) != 0)) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Logical or, not evaluating the second operand if the first is true
+     */
+    static final class Or extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Or(Expr a, Expr b) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return ((a.scalar(frame) != 0) || (b.scalar(frame) != 0)) ? 1 : 0;
+        }
+    }
+
+    static final class Less extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Less(Expr a, Expr b) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (a.scalar(frame) < b.scalar(frame)) ? 1 : 0;
+        }
+    }
+
+    static final class LessEqual extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        LessEqual(Expr a, Expr b) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (a.scalar(frame) <= b.scalar(frame)) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Scalar equality, or inequality of a negated node; xor of booleans is their inequality
+     */
+    static final class Equal extends Expr {
+        private final Expr a;
+        private final Expr b;
+        private final boolean negated;
+
+        Equal(Expr a, Expr b, boolean negated) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+            this.negated = negated;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return ((a.scalar(frame) == b.scalar(frame)) != negated) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Equality of all components of vectors or matrices, or inequality of a negated node
+     */
+    static final class VectorEqual extends Expr {
+        private final Expr a;
+        private final Expr b;
+        private final boolean negated;
+
+        VectorEqual(Expr a, Expr b, boolean negated) {
+            super(Type.BOOL, -1);
+            this.a = a;
+            this.b = b;
+            this.negated = negated;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            a.evaluate(frame);
+            b.evaluate(frame);
+            double[] v = frame.values;
+            boolean equal = true;
+            for (int k = 0; k < a.type.size; k++) {
+                equal &= v[a.slot + k] == v[b.slot + k];
+            }
+            return (equal != negated) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Scalar function of one argument
+     */
+    static final class Apply1 extends Expr {
+        private final Unary function;
+        private final Expr x;
+
+        Apply1(Unary function, Expr x) {
+            super(Type.FLOAT, -1);
+            this.function = function;
+            this.x = x;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return function.apply(x.scalar(frame));
+        }
+    }
+
+    static final class Apply2 extends Expr {
+        private final Binary function;
+        private final Expr x;
+        private final Expr y;
+
+        Apply2(Binary function, Expr x, Expr y) {
+            super(Type.FLOAT, -1);
+            this.function = function;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return function.apply(x.scalar(frame), y.scalar(frame));
+        }
+    }
+
+    static final class Apply3 extends Expr {
+        private final Ternary function;
+        private final Expr x;
+        private final Expr y;
+        private final Expr z;
+
+        Apply3(Ternary function, Expr x, Expr y, Expr z) {
+            super(Type.FLOAT, -1);
+            this.function = function;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return function.apply(x.scalar(frame), y.scalar(frame), z.scalar(frame));
+        }
+    }
+
+    /**
+     * Function of one argument applied to each component of a vector or matrix
+     */
+    static final class Map1 extends Expr {
+        private final Unary function;
+        private final Expr x;
+
+        Map1(Type type, int slot, Unary function, Expr x) {
+            super(type, slot);
+            this.function = function;
+            this.x = x;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            x.evaluate(frame);
+            double[] v = frame.values;
+            for (int k = 0; k < type.size; k++) {
+                v[slot + k] = function.apply(v[x.slot + k]);
+            }
+        }
+    }
+
+    /**
+     * Function of two arguments applied to each component, a scalar argument is used for
+     * every component
+     */
+    static final class Map2 extends Expr {
+        private final Binary function;
+        private final Expr x;
+        private final Expr y;
+
+        Map2(Type type, int slot, Binary function, Expr x, Expr y) {
+            super(type, slot);
+            this.function = function;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            double[] v = frame.values;
+            boolean scalarX = x.type.isScalar();
+            boolean scalarY = y.type.isScalar();
+            double sx = 0;
+            double sy = 0;
+            if (scalarX) {
+                sx = x.scalar(frame);
+            } else {
+                x.evaluate(frame);
+            }
+            if (scalarY) {
+                sy = y.scalar(frame);
+            } else {
+                y.evaluate(frame);
+            }
+            for (int k = 0; k < type.size; k++) {
+                v[slot + k] = function.apply(scalarX ? sx : v[x.slot + k],
+                        scalarY ? sy : v[y.slot + k]);
+            }
+        }
+    }
+
+    static final class Map3 extends Expr {
+        private final Ternary function;
+        private final Expr x;
+        private final Expr y;
+        private final Expr z;
+
+        Map3(Type type, int slot, Ternary function, Expr x, Expr y, Expr z) {
+            super(type, slot);
+            this.function = function;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            double[] v = frame.values;
+            boolean scalarX = x.type.isScalar();
+            boolean scalarY = y.type.isScalar();
+            boolean scalarZ = z.type.isScalar();
+            double sx = 0;
+            double sy = 0;
+            double sz = 0;
+            if (scalarX) {
+                sx = x.scalar(frame);
+            } else {
+                x.evaluate(frame);
+            }
+            if (scalarY) {
+                sy = y.scalar(frame);
+            } else {
+                y.evaluate(frame);
+            }
+            if (scalarZ) {
+                sz = z.scalar(frame);
+            } else {
+                z.evaluate(frame);
+            }
+            for (int k = 0; k < type.size; k++) {
+                v[slot + k] = function.apply(scalarX ? sx : v[x.slot + k],
+                        scalarY ? sy : v[y.slot + k], scalarZ ? sz : v[z.slot + k]);
+            }
+        }
+    }
+
+    static final class Dot extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Dot(Expr a, Expr b) {
+            super(Type.FLOAT, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            a.evaluate(frame);
+            b.evaluate(frame);
+            double[] v = frame.values;
+            double sum = 0;
+            for (int k = 0; k < a.type.size; k++) {
+                sum += v[a.slot + k] * v[b.slot + k];
+            }
+            return sum;
+        }
+    }
+
+    static final class Length extends Expr {
+        private final Expr a;
+
+        Length(Expr a) {
+            super(Type.FLOAT, -1);
+            this.a = a;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            a.evaluate(frame);
+            double[] v = frame.values;
+            double sum = 0;
+            for (int k = 0; k < a.type.size; k++) {
+                sum += v[a.slot + k] * v[a.slot + k];
+            }
+            return Math.sqrt(sum);
+        }
+    }
+
+    static final class Distance extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Distance(Expr a, Expr b) {
+            super(Type.FLOAT, -1);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            a.evaluate(frame);
+            b.evaluate(frame);
+            double[] v = frame.values;
+            double sum = 0;
+            for (int k = 0; k < a.type.size; k++) {
+                double d = v[a.slot + k] - v[b.slot + k];
+                sum += d * d;
+            }
+            return Math.sqrt(sum);
+        }
+    }
+
+    static final class Normalize extends Expr {
+        private final Expr a;
+
+        Normalize(int slot, Expr a) {
+            super(a.type, slot);
+            this.a = a;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            a.evaluate(frame);
+            double[] v = frame.values;
+            double sum = 0;
+            for (int k = 0; k < type.size; k++) {
+                sum += v[a.slot + k] * v[a.slot + k];
+            }
+            double scale = 1 / Math.sqrt(sum);
+            for (int k = 0; k < type.size; k++) {
+                v[slot + k] = v[a.slot + k] * scale;
+            }
+        }
+    }
+
+    static final class Cross extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        Cross(int slot, Expr a, Expr b) {
+            super(Type.VEC3, slot);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            a.evaluate(frame);
+            b.evaluate(frame);
+            double[] v = frame.values;
+            int p = a.slot;
+            int q = b.slot;
+            v[slot] = v[p + 1] * v[q + 2] - v[p + 2] * v[q + 1];
+            v[slot + 1] = v[p + 2] * v[q] - v[p] * v[q + 2];
+            v[slot + 2] = v[p] * v[q + 1] - v[p + 1] * v[q];
+        }
+    }
+
+    /**
+     * Product of a mat2 and a column vec2
+     */
+    static final class MatrixVector extends Expr {
+        private final Expr m;
+        private final Expr a;
+
+        MatrixVector(int slot, Expr m, Expr a) {
+            super(Type.VEC2, slot);
+            this.m = m;
+            this.a = a;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            m.evaluate(frame);
+            a.evaluate(frame);
+            double[] v = frame.values;
+            double x = v[a.slot];
+            double y = v[a.slot + 1];
+            v[slot] = v[m.slot] * x + v[m.slot + 2] * y;
+            v[slot + 1] = v[m.slot + 1] * x + v[m.slot + 3] * y;
+        }
+    }
+
+    /**
+     * Product of a row vec2 and a mat2
+     */
+    static final class VectorMatrix extends Expr {
+        private final Expr a;
+        private final Expr m;
+
+        VectorMatrix(int slot, Expr a, Expr m) {
+            super(Type.VEC2, slot);
+            this.a = a;
+            this.m = m;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            a.evaluate(frame);
+            m.evaluate(frame);
+            double[] v = frame.values;
+            double x = v[a.slot];
+            double y = v[a.slot + 1];
+            v[slot] = x * v[m.slot] + y * v[m.slot + 1];
+            v[slot + 1] = x * v[m.slot + 2] + y * v[m.slot + 3];
+        }
+    }
+
+    static final class MatrixMatrix extends Expr {
+        private final Expr a;
+        private final Expr b;
+
+        MatrixMatrix(int slot, Expr a, Expr b) {
+            super(Type.MAT2, slot);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            a.evaluate(frame);
+            b.evaluate(frame);
+            double[] v = frame.values;
+            int p = a.slot;
+            int q = b.slot;
+            double m0 = v[p] * v[q] + v[p + 2] * v[q + 1];
+            double m1 = v[p + 1] * v[q] + v[p + 3] * v[q + 1];
+            double m2 = v[p] * v[q + 2] + v[p + 2] * v[q + 3];
+            double m3 = v[p + 1] * v[q + 2] + v[p + 3] * v[q + 3];
+            v[slot] = m0;
+            v[slot + 1] = m1;
+            v[slot + 2] = m2;
+            v[slot + 3] = m3;
+        }
+    }
+
+    /**
+     * Vector or matrix constructor. A single scalar fills a vector or the diagonal of a
+     * matrix, otherwise the components of the arguments are taken in order.
+     */
+    static final class Construct extends Expr {
+        private final Expr[] arguments;
+        private final boolean broadcast;
+
+        Construct(Type type, int slot, Expr[] arguments) {
+            super(type, slot);
+            this.arguments = arguments;
+            broadcast = (arguments.length == 1) && arguments[0].type.isScalar();
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            double[] v = frame.values;
+            if (broadcast) {
+                double x = arguments[0].scalar(frame);
+                if (type == Type.MAT2) {
+                    v[slot] = x;
+                    v[slot + 1] = 0;
+                    v[slot + 2] = 0;
+                    v[slot + 3] = x;
+                } else {
+                    for (int k = 0; k < type.size; k++) {
+                        v[slot + k] = x;
+                    }
+                }
+                return;
+            }
+            int k = 0;
+            for (Expr argument : arguments) {
+                if (argument.type.isScalar()) {
+                    v[slot + k++] = argument.scalar(frame);
+                    continue;
+                }
+                argument.evaluate(frame);
+                for (int c = 0; (c < argument.type.size) && (k < type.size); c++) {
+                    v[slot + k++] = v[argument.slot + c];
+                }
+            }
+        }
+    }
+
+    static final class ScalarConditional extends Expr {
+        private final Expr condition;
+        private final Expr a;
+        private final Expr b;
+
+        ScalarConditional(Expr condition, Expr a, Expr b) {
+            super(a.type, -1);
+            this.condition = condition;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            return (condition.scalar(frame) != 0) ? a.scalar(frame) : b.scalar(frame);
+        }
+    }
+
+    static final class VectorConditional extends Expr {
+        private final Expr condition;
+        private final Expr a;
+        private final Expr b;
+
+        VectorConditional(int slot, Expr condition, Expr a, Expr b) {
+            super(a.type, slot);
+            this.condition = condition;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            Expr chosen = (condition.scalar(frame) != 0) ? a : b;
+            chosen.evaluate(frame);
+            System.arraycopy(frame.values, chosen.slot, frame.values, slot, type.size);
+        }
+    }
+
+    static final class AssignScalar extends Expr {
+        private final int target;
+        private final Expr value;
+
+        AssignScalar(int target, Expr value) {
+            super(value.type, -1);
+            this.target = target;
+            this.value = value;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            double x = value.scalar(frame);
+            frame.values[target] = x;
+            return x;
+        }
+    }
+
+    /**
+     * Assignment to a vector, a matrix or several components. The value must not be read in
+     * place from slots the assignment overwrites before reading them.
+     */
+    static final class AssignVector extends Expr {
+        private final int[] targets;
+        private final Expr value;
+
+        AssignVector(int slot, int[] targets, Expr value) {
+            super(value.type, slot);
+            this.targets = targets;
+            this.value = value;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            value.evaluate(frame);
+            double[] v = frame.values;
+            for (int k = 0; k < targets.length; k++) {
+                v[targets[k]] = v[value.slot + k];
+            }
+        }
+    }
+
+    /**
+     * ++ and -- of a scalar variable, before or after reading it
+     */
+    static final class Increment extends Expr {
+        private final int target;
+        private final double delta;
+        private final boolean postfix;
+
+        Increment(Type type, int target, double delta, boolean postfix) {
+            super(type, -1);
+            this.target = target;
+            this.delta = delta;
+            this.postfix = postfix;
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            double old = frame.values[target];
+            frame.values[target] = old + delta;
+            return postfix ? old : old + delta;
+        }
+    }
+
+    /**
+     * Call of a function of the shader. The arguments are evaluated into slots of the call
+     * before any is copied to the parameters, so that nested calls of the same function do
+     * not overwrite each other.
+     */
+    static final class Call extends Expr {
+        private final Function function;
+        private final Expr[] arguments;
+        private final int[] temporaries;
+
+        Call(int slot, Function function, Expr[] arguments, int[] temporaries) {
+            super(function.returnType, slot);
+            this.function = function;
+            this.arguments = arguments;
+            this.temporaries = temporaries;
+        }
+
+        private void invoke(Frame frame) {
+            double[] v = frame.values;
+            for (int i = 0; i < arguments.length; i++) {
+                Expr argument = arguments[i];
+                if (argument.type.isScalar()) {
+                    v[temporaries[i]] = argument.scalar(frame);
+                } else {
+                    argument.evaluate(frame);
+                    System.arraycopy(v, argument.slot, v, temporaries[i], argument.type.size);
+                }
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                System.arraycopy(v, temporaries[i], v, function.parameterSlots[i],
+                        arguments[i].type.size);
+            }
+            function.body.execute(frame);
+        }
+
+        @Override
+        double scalar(Frame frame) {
+            invoke(frame);
+            return frame.values[function.resultSlot];
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            invoke(frame);
+            System.arraycopy(frame.values, function.resultSlot, frame.values, slot, type.size);
+        }
+    }
+
+    /**
+     * texture2D of the palette, a texture of one row sampled at the nearest texel with the
+     * coordinates clamped to its edges. Opaque black without a palette.
+     */
+    static final class Texture extends Expr {
+        private final Expr coordinates;
+
+        Texture(int slot, Expr coordinates) {
+            super(Type.VEC4, slot);
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        void evaluate(Frame frame) {
+            coordinates.evaluate(frame);
+            double[] v = frame.values;
+            int[] palette = frame.palette;
+            if ((palette == null) || (palette.length == 0)) {
+                v[slot] = 0;
+                v[slot + 1] = 0;
+                v[slot + 2] = 0;
+                v[slot + 3] = 1;
+                return;
+            }
+            double s = v[coordinates.slot];
+            int index = (s > 0) ? (int) Math.min(palette.length - 1, s * palette.length) : 0;
+            int color = palette[index];
+            v[slot] = ((color >> 16) & 0xff) / 255.0;
+            v[slot + 1] = ((color >> 8) & 0xff) / 255.0;
+            v[slot + 2] = (color & 0xff) / 255.0;
+            v[slot + 3] = (color >>> 24) / 255.0;
+        }
+    }
+}
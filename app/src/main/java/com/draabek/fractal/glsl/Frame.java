@@ -0,0 +1,15 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * State of one shader invocation. Every variable, uniform and intermediate value of a vector
+ * has slots of its own assigned by the compiler, so running the shader allocates nothing.
+ */
+final class Frame {
+    final double[] values;
+    /** ARGB colors of the palette texture, null if none is bound */
+    int[] palette;
+
+    Frame(double[] template) {
+        values = template.clone();
+    }
+}
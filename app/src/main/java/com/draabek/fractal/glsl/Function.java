@@ -0,0 +1,33 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Function of a shader. GLSL has no recursion, so the parameters and the result have fixed
+ * slots like any other variable.
+ */
+final class Function {
+    final String name;
+    final Type returnType;
+    final Type[] parameterTypes;
+    final int[] parameterSlots;
+    final int resultSlot;
+    /** Null until the definition of a declared function is compiled */
+    Stmt body;
+
+    Function(String name, Type returnType, Type[] parameterTypes, int[] parameterSlots,
+             int resultSlot) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parameterTypes = parameterTypes;
+        this.parameterSlots = parameterSlots;
+        this.resultSlot = resultSlot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            signature.append((i > 0) ? ", " : "").append(parameterTypes[i]);
+        }
+        return signature.append(')').toString();
+    }
+}
@@ -0,0 +1,273 @@
+package com.draabek.fractal.glsl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits a shader into tokens. Comments are dropped; #define, #undef, #ifdef, #ifndef,
+ * #else and #endif are handled; object-like macros are expanded at the token level. The
+ * #version, #extension and #pragma directives only matter to the GPU and are skipped. GL_ES
+ * is defined, like on the devices the shaders are written for.
+ */
+final class Preprocessor {
+    /** Operators of more than one character, each before its prefixes */
+    private static final String[] OPERATORS = {
+            "<<=", ">>=", "++", "--", "+=", "-=", "*=", "/=", "%=", "==", "!=", "<=", ">=",
+            "&&", "||", "^^", "<<", ">>"
+    };
+    private static final String SYMBOLS = "+-*/%<>=!&|^~?:;,.()[]{}";
+
+    private final Map<String, List<Token>> macros = new HashMap<>();
+    private final List<Token> tokens = new ArrayList<>();
+
+    private Preprocessor() {
+        macros.put("GL_ES", tokenizeLine("1", 0));
+    }
+
+    /**
+     * @return Tokens of the source ending with an END token
+     * @throws ShaderSyntaxException on malformed tokens and directives
+     */
+    static List<Token> tokenize(String source) {
+        Preprocessor preprocessor = new Preprocessor();
+        String[] lines = stripComments(source).split("\n", -1);
+        // Whether the lines of each open conditional are kept, innermost on top
+        Deque<boolean[]> conditions = new ArrayDeque<>();
+        boolean active = true;
+        for (int i = 0; i < lines.length; i++) {
+            int line = i + 1;
+            String text = lines[i].trim();
+            if (!text.startsWith("#")) {
+                if (active) {
+                    preprocessor.expand(tokenizeLine(text, line), new HashSet<String>());
+                }
+                continue;
+            }
+            String[] directive = text.substring(1).trim().split("\\s+", 2);
+            String name = directive[0];
+            String argument = (directive.length > 1) ? directive[1].trim() : "";
+            switch (name) {
+                case "ifdef":
+                case "ifndef":
+                    boolean defined = preprocessor.macros.containsKey(
+                            identifier(argument, line));
+                    // The state outside of the conditional and whether this branch is kept
+                    conditions.push(new boolean[]{active, defined == name.equals("ifdef")});
+                    active = active && conditions.peek()[1];
+                    break;
+                case "else":
+                    if (conditions.isEmpty()) {
+                        throw new ShaderSyntaxException(line, "#else without #ifdef");
+                    }
+                    boolean[] condition = conditions.peek();
+                    condition[1] = !condition[1];
+                    active = condition[0] && condition[1];
+                    break;
+                case "endif":
+                    if (conditions.isEmpty()) {
+                        throw new ShaderSyntaxException(line, "#endif without #ifdef");
+                    }
+                    active = conditions.pop()[0];
+                    break;
+                case "define":
+                    if (active) {
+                        preprocessor.define(argument, line);
+                    }
+                    break;
+                case "undef":
+                    if (active) {
+                        preprocessor.macros.remove(identifier(argument, line));
+                    }
+                    break;
+                case "version":
+                case "extension":
+                case "pragma":
+                case "":
+                    break;
+                default:
+                    if (active) {
+                        throw new ShaderSyntaxException(line, "Unsupported directive #" + name);
+                    }
+            }
+        }
+        if (!conditions.isEmpty()) {
+            throw new ShaderSyntaxException(lines.length, "#ifdef without #endif");
+        }
+        preprocessor.tokens.add(new Token(Token.Kind.END, "", lines.length));
+        return preprocessor.tokens;
+    }
+
+    private void define(String argument, int line) {
+        int end = 0;
+        while ((end < argument.length())
+                && Character.isJavaIdentifierPart(argument.charAt(end))) {
+            end++;
+        }
+        String name = identifier(argument.substring(0, end), line);
+        if ((end < argument.length()) && (argument.charAt(end) == '(')) {
+            throw new ShaderSyntaxException(line, "Unsupported function-like macro " + name);
+        }
+        macros.put(name, tokenizeLine(argument.substring(end), line));
+    }
+
+    /**
+     * Add the tokens to the output with macros replaced, a macro is not expanded again within
+     * its own replacement
+     */
+    private void expand(List<Token> line, Set<String> expanding) {
+        for (Token token : line) {
+            List<Token> replacement = (token.kind == Token.Kind.IDENTIFIER)
+                    ? macros.get(token.text) : null;
+            if ((replacement == null) || expanding.contains(token.text)) {
+                tokens.add(token);
+                continue;
+            }
+            // Expanded tokens report the line of the use, not of the definition
+            List<Token> relocated = new ArrayList<>(replacement.size());
+            for (Token replaced : replacement) {
+                relocated.add(new Token(replaced.kind, replaced.text, token.line));
+            }
+            expanding.add(token.text);
+            expand(relocated, expanding);
+            expanding.remove(token.text);
+        }
+    }
+
+    private static String identifier(String text, int line) {
+        if (text.isEmpty() || !Character.isJavaIdentifierStart(text.charAt(0))) {
+            throw new ShaderSyntaxException(line, "Macro name expected");
+        }
+        for (int i = 1; i < text.length(); i++) {
+            if (!Character.isJavaIdentifierPart(text.charAt(i))) {
+                throw new ShaderSyntaxException(line, "Macro name expected");
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Replace comments by spaces, keeping the line breaks of block comments
+     */
+    static String stripComments(String source) {
+        StringBuilder result = new StringBuilder(source.length());
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (source.startsWith("//", i)) {
+                while ((i < source.length()) && (source.charAt(i) != '\n')) {
+                    i++;
+                }
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                end = (end < 0) ? source.length() : end + 2;
+                for (; i < end; i++) {
+                    if (source.charAt(i) == '\n') {
+                        result.append('\n');
+                    }
+                }
+                result.append(' ');
+            } else {
+                result.append((c == '\r') ? ' ' : c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    static List<Token> tokenizeLine(String text, int line) {
+        List<Token> result = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while ((i < text.length()) && Character.isJavaIdentifierPart(text.charAt(i))) {
+                    i++;
+                }
+                result.add(new Token(Token.Kind.IDENTIFIER, text.substring(start, i), line));
+            } else if (Character.isDigit(c) || ((c == '.') && (i + 1 < text.length())
+                    && Character.isDigit(text.charAt(i + 1)))) {
+                i = number(text, i, line, result);
+            } else {
+                String symbol = null;
+                for (String operator : OPERATORS) {
+                    if (text.startsWith(operator, i)) {
+                        symbol = operator;
+                        break;
+                    }
+                }
+                if ((symbol == null) && (SYMBOLS.indexOf(c) >= 0)) {
+                    symbol = String.valueOf(c);
+                }
+                if (symbol == null) {
+                    throw new ShaderSyntaxException(line, "Unexpected character '" + c + "'");
+                }
+                result.add(new Token(Token.Kind.SYMBOL, symbol, line));
+                i += symbol.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the number starting at the index, decimal or hexadecimal integers and floats with
+     * an optional fraction and exponent
+     * @return Index after the number
+     */
+    private static int number(String text, int start, int line, List<Token> result) {
+        int i = start;
+        if (text.startsWith("0x", i) || text.startsWith("0X", i)) {
+            i += 2;
+            while ((i < text.length()) && (Character.digit(text.charAt(i), 16) >= 0)) {
+                i++;
+            }
+            result.add(new Token(Token.Kind.INT,
+                    String.valueOf(Long.parseLong(text.substring(start + 2, i), 16)), line));
+            return i;
+        }
+        boolean isFloat = false;
+        while ((i < text.length()) && Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+        if ((i < text.length()) && (text.charAt(i) == '.')) {
+            isFloat = true;
+            i++;
+            while ((i < text.length()) && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+        if ((i < text.length()) && ((text.charAt(i) == 'e') || (text.charAt(i) == 'E'))) {
+            int exponent = i + 1;
+            if ((exponent < text.length())
+                    && ((text.charAt(exponent) == '+') || (text.charAt(exponent) == '-'))) {
+                exponent++;
+            }
+            if ((exponent < text.length()) && Character.isDigit(text.charAt(exponent))) {
+                isFloat = true;
+                i = exponent;
+                while ((i < text.length()) && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        String number = text.substring(start, i);
+        if ((i < text.length()) && ((text.charAt(i) == 'f') || (text.charAt(i) == 'F'))) {
+            isFloat = true;
+            i++;
+        }
+        if ((i < text.length()) && Character.isJavaIdentifierPart(text.charAt(i))) {
+            throw new ShaderSyntaxException(line, "Malformed number " + text.substring(start,
+                    i + 1));
+        }
+        result.add(new Token(isFloat ? Token.Kind.FLOAT : Token.Kind.INT, number, line));
+        return i;
+    }
+}
@@ -0,0 +1,1060 @@
+package com.draabek.fractal.glsl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses and type checks a fragment shader in one pass, building the nodes as it goes.
+ * Names are resolved to frame slots, operators and functions to nodes of their types, and
+ * everything computed from constants alone is folded into the frame template.
+ */
+final class ShaderCompiler {
+    private enum Storage {
+        GLOBAL,
+        LOCAL,
+        CONST,
+        UNIFORM
+    }
+
+    /** Binary operators from the lowest precedence to the highest */
+    private static final String[][] LEVELS = {
+            {"||"}, {"^^"}, {"&&"}, {"==", "!="}, {"<", ">", "<=", ">="}, {"+", "-"},
+            {"*", "/", "%"}
+    };
+    private static final Set<String> ASSIGNMENTS = new HashSet<>(Arrays.asList(
+            "=", "+=", "-=", "*=", "/="));
+    private static final Set<String> PRECISIONS = new HashSet<>(Arrays.asList(
+            "highp", "mediump", "lowp"));
+    private static final Set<String> UNSUPPORTED_TYPES = new HashSet<>(Arrays.asList(
+            "ivec2", "ivec3", "ivec4", "bvec2", "bvec3", "bvec4", "mat3", "mat4",
+            "samplerCube", "struct"));
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "attribute", "const", "uniform", "varying", "break", "continue", "do", "for",
+            "while", "if", "else", "in", "out", "inout", "true", "false", "discard", "return",
+            "invariant", "precision", "highp", "mediump", "lowp", "struct"));
+    private static final Expr.Binary[] ARITHMETIC = {
+            (x, y) -> x + y, (x, y) -> x - y, (x, y) -> x * y, (x, y) -> x / y
+    };
+
+    private final List<Token> tokens;
+    private int position;
+    /** Innermost scope on top */
+    private final Deque<Map<String, Variable>> scopes = new ArrayDeque<>();
+    private final Map<String, List<Function>> functions = new HashMap<>();
+    /** First call of every function called, to report those never defined */
+    private final Map<Function, Token> calls = new LinkedHashMap<>();
+    private final Map<String, Variable> uniforms = new LinkedHashMap<>();
+    /** Initialization of the global variables, run for every pixel */
+    private final List<Stmt> initialization = new ArrayList<>();
+    private double[] template = new double[64];
+    private int slots;
+    /** Function whose body is compiled, null outside of functions */
+    private Function function;
+    /** Loops the statement compiled is in */
+    private int loops;
+
+    ShaderCompiler(String source) {
+        tokens = Preprocessor.tokenize(source);
+    }
+
+    ShaderProgram compile() {
+        scopes.push(new HashMap<String, Variable>());
+        Variable fragCoord = declareBuiltin("gl_FragCoord", Type.VEC4, false);
+        Variable fragColor = declareBuiltin("gl_FragColor", Type.VEC4, true);
+        initialization.add(new Stmt.Clear(fragColor.slot, 4));
+        while (peek().kind != Token.Kind.END) {
+            externalDeclaration();
+        }
+        Function main = findExact("main", new Type[0]);
+        if ((main == null) || (main.body == null) || (main.returnType != Type.VOID)) {
+            throw error(peek(), "No void main() defined");
+        }
+        for (Map.Entry<Function, Token> call : calls.entrySet()) {
+            if (call.getKey().body == null) {
+                throw error(call.getValue(), "Function " + call.getKey() + " is not defined");
+            }
+        }
+        return new ShaderProgram(Arrays.copyOf(template, slots),
+                new Stmt.Block(initialization.toArray(new Stmt[0])), main, fragCoord.slot,
+                fragColor.slot, uniforms);
+    }
+
+    ShaderSyntaxException error(Token token, String message) {
+        return new ShaderSyntaxException(token.line, message);
+    }
+
+    /**
+     * Reserve consecutive slots of the frame
+     * @return The first of them
+     */
+    int allocate(int size) {
+        int slot = slots;
+        slots += size;
+        if (slots > template.length) {
+            template = Arrays.copyOf(template, Math.max(2 * template.length, slots));
+        }
+        return slot;
+    }
+
+    /**
+     * Evaluate an expression whose operands are all constants while compiling
+     * @return Constant of the value, the expression itself if it depends on anything else
+     */
+    Expr fold(Expr expression, Expr... operands) {
+        if (expression.isConstant()) {
+            return expression;
+        }
+        for (Expr operand : operands) {
+            if (!operand.isConstant()) {
+                return expression;
+            }
+        }
+        Frame frame = new Frame(Arrays.copyOf(template, slots));
+        if (expression.type.isScalar()) {
+            return new Expr.Constant(expression.type, expression.scalar(frame));
+        }
+        expression.evaluate(frame);
+        System.arraycopy(frame.values, expression.slot, template, expression.slot,
+                expression.type.size);
+        return new Expr.VectorConstant(expression.type, expression.slot);
+    }
+
+    /**
+     * @return The expression as a float if it is an int, GLSL ES would need a constructor
+     */
+    Expr toFloat(Expr expression) {
+        if (expression.type != Type.INT) {
+            return expression;
+        }
+        if (expression instanceof Expr.Constant) {
+            return new Expr.Constant(Type.FLOAT, ((Expr.Constant) expression).value);
+        }
+        return new Expr.Retype(Type.FLOAT, expression);
+    }
+
+    private Expr convert(Expr expression, Type type, Token at) {
+        if (expression.type == type) {
+            return expression;
+        }
+        if ((type == Type.FLOAT) && (expression.type == Type.INT)) {
+            return toFloat(expression);
+        }
+        throw error(at, "Cannot convert " + expression.type + " to " + type);
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token peek(int offset) {
+        return tokens.get(Math.min(position + offset, tokens.size() - 1));
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.kind != Token.Kind.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean accept(String text) {
+        if (peek().is(text)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String text) {
+        if (!accept(text)) {
+            throw error(peek(), "'" + text + "' expected, found " + peek());
+        }
+    }
+
+    private Token identifier() {
+        Token token = next();
+        if ((token.kind != Token.Kind.IDENTIFIER) || KEYWORDS.contains(token.text)
+                || (Type.forName(token.text) != null)) {
+            throw error(token, "Name expected, found " + token);
+        }
+        return token;
+    }
+
+    private void skipPrecision() {
+        while (PRECISIONS.contains(peek().text) && (peek().kind == Token.Kind.IDENTIFIER)) {
+            next();
+        }
+    }
+
+    private Type type() {
+        Token token = next();
+        Type type = Type.forName(token.text);
+        if ((token.kind != Token.Kind.IDENTIFIER) || (type == null)) {
+            if (UNSUPPORTED_TYPES.contains(token.text)) {
+                throw error(token, "Unsupported type " + token.text);
+            }
+            throw error(token, "Type expected, found " + token);
+        }
+        return type;
+    }
+
+    private Variable declareBuiltin(String name, Type type, boolean writable) {
+        Variable variable = new Variable(type, allocate(type.size), writable);
+        scopes.peek().put(name, variable);
+        return variable;
+    }
+
+    private Variable lookup(String name) {
+        for (Map<String, Variable> scope : scopes) {
+            Variable variable = scope.get(name);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    private void externalDeclaration() {
+        if (accept(";")) {
+            return;
+        }
+        if (accept("precision")) {
+            skipPrecision();
+            type();
+            expect(";");
+            return;
+        }
+        Storage storage = Storage.GLOBAL;
+        if (accept("uniform")) {
+            storage = Storage.UNIFORM;
+        } else if (accept("const")) {
+            storage = Storage.CONST;
+        } else if (peek().is("attribute") || peek().is("varying") || peek().is("invariant")) {
+            throw error(peek(), "Unsupported qualifier " + peek().text);
+        }
+        skipPrecision();
+        Type type = type();
+        Token name = identifier();
+        if ((storage == Storage.GLOBAL) && peek().is("(")) {
+            function(type, name);
+            return;
+        }
+        declarators(type, name, storage, initialization);
+    }
+
+    private void function(Type returnType, Token name) {
+        expect("(");
+        List<Type> types = new ArrayList<>();
+        List<Token> names = new ArrayList<>();
+        if (peek().is("void") && peek(1).is(")")) {
+            next();
+        }
+        if (!accept(")")) {
+            do {
+                accept("const");
+                if (peek().is("out") || peek().is("inout")) {
+                    throw error(peek(), "Unsupported qualifier " + peek().text);
+                }
+                accept("in");
+                skipPrecision();
+                Token at = peek();
+                Type type = type();
+                if (type == Type.VOID) {
+                    throw error(at, "Parameter of type void");
+                }
+                types.add(type);
+                names.add((peek().kind == Token.Kind.IDENTIFIER) ? identifier() : null);
+                if (peek().is("[")) {
+                    throw error(peek(), "Arrays are not supported");
+                }
+            } while (accept(","));
+            expect(")");
+        }
+        Type[] parameterTypes = types.toArray(new Type[0]);
+        Function declared = findExact(name.text, parameterTypes);
+        if (declared == null) {
+            int[] parameterSlots = new int[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterSlots[i] = allocate(parameterTypes[i].size);
+            }
+            declared = new Function(name.text, returnType, parameterTypes, parameterSlots,
+                    allocate(returnType.size));
+            List<Function> overloads = functions.get(name.text);
+            if (overloads == null) {
+                overloads = new ArrayList<>();
+                functions.put(name.text, overloads);
+            }
+            overloads.add(declared);
+        } else if (declared.returnType != returnType) {
+            throw error(name, "Function " + declared + " declared with another return type");
+        }
+        if (accept(";")) {
+            return;
+        }
+        if (declared.body != null) {
+            throw error(name, "Function " + declared + " is already defined");
+        }
+        expect("{");
+        Map<String, Variable> scope = new HashMap<>();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Token parameter = names.get(i);
+            if (parameter == null) {
+                continue;
+            }
+            if (scope.containsKey(parameter.text)) {
+                throw error(parameter, "Redeclaration of " + parameter.text);
+            }
+            scope.put(parameter.text, new Variable(parameterTypes[i],
+                    declared.parameterSlots[i], true));
+        }
+        scopes.push(scope);
+        function = declared;
+        declared.body = block();
+        function = null;
+        scopes.pop();
+    }
+
+    private Function findExact(String name, Type[] parameterTypes) {
+        List<Function> overloads = functions.get(name);
+        if (overloads != null) {
+            for (Function candidate : overloads) {
+                if (Arrays.equals(candidate.parameterTypes, parameterTypes)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void declarators(Type type, Token name, Storage storage, List<Stmt> out) {
+        if (type == Type.VOID) {
+            throw error(name, "Variable of type void");
+        }
+        while (true) {
+            if (peek().is("[")) {
+                throw error(peek(), "Arrays are not supported");
+            }
+            Expr value = null;
+            if (accept("=")) {
+                if (storage == Storage.UNIFORM) {
+                    throw error(name, "Uniform " + name.text + " cannot have a value");
+                }
+                Token at = peek();
+                value = convert(assignment(), type, at);
+            }
+            declare(type, name, storage, value, out);
+            if (!accept(",")) {
+                break;
+            }
+            name = identifier();
+        }
+        expect(";");
+    }
+
+    private void declare(Type type, Token name, Storage storage, Expr value, List<Stmt> out) {
+        Map<String, Variable> scope = scopes.peek();
+        if (scope.containsKey(name.text)) {
+            throw error(name, "Redeclaration of " + name.text);
+        }
+        if (storage == Storage.CONST) {
+            if ((value == null) || !value.isConstant()) {
+                throw error(name, "Constant " + name.text + " needs a constant value");
+            }
+            scope.put(name.text, new Variable(value));
+            return;
+        }
+        if ((type == Type.SAMPLER2D) && (storage != Storage.UNIFORM)) {
+            throw error(name, "Sampler " + name.text + " must be a uniform");
+        }
+        Variable variable = new Variable(type, allocate(type.size), storage != Storage.UNIFORM);
+        if (storage == Storage.UNIFORM) {
+            uniforms.put(name.text, variable);
+        } else if (value == null) {
+            out.add(new Stmt.Clear(variable.slot, type.size));
+        } else {
+            Expr.Access target = read(variable);
+            out.add(new Stmt.Evaluate(store(target, value)));
+        }
+        scope.put(name.text, variable);
+    }
+
+    /**
+     * Statements up to the closing brace, in the current scope
+     */
+    private Stmt block() {
+        List<Stmt> statements = new ArrayList<>();
+        while (!accept("}")) {
+            if (peek().kind == Token.Kind.END) {
+                throw error(peek(), "'}' expected, found " + peek());
+            }
+            statements.add(statement());
+        }
+        return new Stmt.Block(statements.toArray(new Stmt[0]));
+    }
+
+    /**
+     * Statement in a scope of its own, like the body of a loop
+     */
+    private Stmt scopedStatement() {
+        scopes.push(new HashMap<String, Variable>());
+        Stmt statement = statement();
+        scopes.pop();
+        return statement;
+    }
+
+    private Stmt statement() {
+        Token token = peek();
+        if (accept("{")) {
+            scopes.push(new HashMap<String, Variable>());
+            Stmt block = block();
+            scopes.pop();
+            return block;
+        }
+        if (accept("if")) {
+            expect("(");
+            Expr condition = condition();
+            expect(")");
+            Stmt then = scopedStatement();
+            Stmt otherwise = accept("else") ? scopedStatement() : null;
+            return new Stmt.If(condition, then, otherwise);
+        }
+        if (accept("for")) {
+            expect("(");
+            scopes.push(new HashMap<String, Variable>());
+            Stmt initialization = null;
+            if (!accept(";")) {
+                initialization = isDeclaration() ? declaration() : evaluation();
+            }
+            Expr condition = peek().is(";") ? null : condition();
+            expect(";");
+            Expr step = peek().is(")") ? null : expression();
+            expect(")");
+            Stmt body = loopBody();
+            scopes.pop();
+            return new Stmt.Loop(initialization, condition, step, body);
+        }
+        if (accept("while")) {
+            expect("(");
+            Expr condition = condition();
+            expect(")");
+            return new Stmt.Loop(null, condition, null, loopBody());
+        }
+        if (accept("do")) {
+            Stmt body = loopBody();
+            expect("while");
+            expect("(");
+            Expr condition = condition();
+            expect(")");
+            expect(";");
+            return new Stmt.DoWhile(body, condition);
+        }
+        if (accept("break") || accept("continue")) {
+            if (loops == 0) {
+                throw error(token, token.text + " outside of a loop");
+            }
+            expect(";");
+            return new Stmt.Jump(token.is("break") ? Stmt.BREAK : Stmt.CONTINUE);
+        }
+        if (accept("return")) {
+            if (function == null) {
+                throw error(token, "return outside of a function");
+            }
+            if (accept(";")) {
+                if (function.returnType != Type.VOID) {
+                    throw error(token, "Function " + function + " must return a value");
+                }
+                return new Stmt.Return(null, -1);
+            }
+            if (function.returnType == Type.VOID) {
+                throw error(token, "Function " + function + " returns void");
+            }
+            Token at = peek();
+            Expr value = convert(expression(), function.returnType, at);
+            expect(";");
+            return new Stmt.Return(value, function.resultSlot);
+        }
+        if (token.is("discard")) {
+            throw error(token, "discard is not supported");
+        }
+        if (accept(";")) {
+            return new Stmt.Block(new Stmt[0]);
+        }
+        if (isDeclaration()) {
+            return declaration();
+        }
+        return evaluation();
+    }
+
+    private Stmt loopBody() {
+        loops++;
+        Stmt body = scopedStatement();
+        loops--;
+        return body;
+    }
+
+    private boolean isDeclaration() {
+        Token token = peek();
+        if (token.kind != Token.Kind.IDENTIFIER) {
+            return false;
+        }
+        if (token.is("const") || token.is("precision") || PRECISIONS.contains(token.text)) {
+            return true;
+        }
+        return ((Type.forName(token.text) != null) || UNSUPPORTED_TYPES.contains(token.text))
+                && (peek(1).kind == Token.Kind.IDENTIFIER);
+    }
+
+    private Stmt declaration() {
+        if (accept("precision")) {
+            skipPrecision();
+            type();
+            expect(";");
+            return new Stmt.Block(new Stmt[0]);
+        }
+        Storage storage = accept("const") ? Storage.CONST : Storage.LOCAL;
+        skipPrecision();
+        Type type = type();
+        Token name = identifier();
+        List<Stmt> statements = new ArrayList<>();
+        declarators(type, name, storage, statements);
+        return (statements.size() == 1) ? statements.get(0)
+                : new Stmt.Block(statements.toArray(new Stmt[0]));
+    }
+
+    private Stmt evaluation() {
+        Expr expression = expression();
+        expect(";");
+        return new Stmt.Evaluate(expression);
+    }
+
+    private Expr condition() {
+        Token at = peek();
+        Expr condition = expression();
+        if (condition.type != Type.BOOL) {
+            throw error(at, "Condition of type " + condition.type + " instead of bool");
+        }
+        return condition;
+    }
+
+    private Expr expression() {
+        Token at = peek();
+        Expr expression = assignment();
+        if (peek().is(",")) {
+            throw error(at, "The comma operator is not supported");
+        }
+        return expression;
+    }
+
+    private Expr assignment() {
+        Token at = peek();
+        Expr left = conditional();
+        Token operator = peek();
+        if ((operator.kind == Token.Kind.SYMBOL) && ASSIGNMENTS.contains(operator.text)) {
+            next();
+            return assign(left, operator, assignment(), at);
+        }
+        return left;
+    }
+
+    private Expr conditional() {
+        Token at = peek();
+        Expr condition = binary(0);
+        if (!accept("?")) {
+            return condition;
+        }
+        if (condition.type != Type.BOOL) {
+            throw error(at, "Condition of type " + condition.type + " instead of bool");
+        }
+        Expr a = expression();
+        Token colon = peek();
+        expect(":");
+        Expr b = assignment();
+        if ((a.type == Type.INT) && (b.type == Type.FLOAT)) {
+            a = toFloat(a);
+        } else if ((a.type == Type.FLOAT) && (b.type == Type.INT)) {
+            b = toFloat(b);
+        }
+        if ((a.type != b.type) || (a.type == Type.VOID) || (a.type == Type.SAMPLER2D)) {
+            throw error(colon, "Conditional of " + a.type + " and " + b.type);
+        }
+        if (condition.isConstant()) {
+            return (((Expr.Constant) condition).value != 0) ? a : b;
+        }
+        if (a.type.isScalar()) {
+            return new Expr.ScalarConditional(condition, a, b);
+        }
+        return new Expr.VectorConditional(allocate(a.type.size), condition, a, b);
+    }
+
+    private Expr binary(int level) {
+        if (level == LEVELS.length) {
+            return unary();
+        }
+        Expr left = binary(level + 1);
+        while (true) {
+            Token operator = peek();
+            if ((operator.kind != Token.Kind.SYMBOL)
+                    || !Arrays.asList(LEVELS[level]).contains(operator.text)) {
+                return left;
+            }
+            next();
+            left = operate(operator, left, binary(level + 1));
+        }
+    }
+
+    private Expr unary() {
+        Token operator = peek();
+        if (operator.is("++") || operator.is("--")) {
+            next();
+            return increment(unary(), operator, false);
+        }
+        if (operator.is("-") || operator.is("+")) {
+            next();
+            Expr a = unary();
+            if ((a.type != Type.INT) && !isFloats(a.type)) {
+                throw error(operator, "Cannot apply " + operator.text + " to " + a.type);
+            }
+            if (operator.is("+")) {
+                return a;
+            }
+            if (a.type.isScalar()) {
+                return fold(new Expr.Negate(a), a);
+            }
+            return fold(new Expr.Map1(a.type, allocate(a.type.size), x -> -x, a), a);
+        }
+        if (operator.is("!")) {
+            next();
+            Expr a = unary();
+            if (a.type != Type.BOOL) {
+                throw error(operator, "Cannot apply ! to " + a.type);
+            }
+            return fold(new Expr.Not(a), a);
+        }
+        if (operator.is("~")) {
+            throw error(operator, "Unsupported operator ~");
+        }
+        return postfix();
+    }
+
+    private Expr postfix() {
+        Expr expression = primary();
+        while (true) {
+            Token token = peek();
+            if (accept(".")) {
+                Token field = next();
+                if (field.kind != Token.Kind.IDENTIFIER) {
+                    throw error(field, "Field expected, found " + field);
+                }
+                expression = select(expression, field);
+            } else if (accept("[")) {
+                Token at = peek();
+                Expr index = expression();
+                expect("]");
+                expression = index(expression, index, at);
+            } else if (token.is("++") || token.is("--")) {
+                next();
+                expression = increment(expression, token, true);
+            } else {
+                return expression;
+            }
+        }
+    }
+
+    private Expr primary() {
+        Token token = next();
+        switch (token.kind) {
+            case INT:
+                return new Expr.Constant(Type.INT, Double.parseDouble(token.text));
+            case FLOAT:
+                return new Expr.Constant(Type.FLOAT, Double.parseDouble(token.text));
+            case IDENTIFIER:
+                if (token.is("true") || token.is("false")) {
+                    return new Expr.Constant(Type.BOOL, token.is("true") ? 1 : 0);
+                }
+                if (peek().is("(")) {
+                    return call(token);
+                }
+                Variable variable = lookup(token.text);
+                if (variable == null) {
+                    throw error(token, "Undeclared identifier " + token.text);
+                }
+                return (variable.constant != null) ? variable.constant : read(variable);
+            default:
+                if (token.is("(")) {
+                    Expr expression = expression();
+                    expect(")");
+                    return expression;
+                }
+                throw error(token, "Expression expected, found " + token);
+        }
+    }
+
+    private Expr.Access read(Variable variable) {
+        int[] slots = new int[variable.type.size];
+        for (int k = 0; k < slots.length; k++) {
+            slots[k] = variable.slot + k;
+        }
+        return Expr.Access.of(variable.type, slots, variable.writable, -1);
+    }
+
+    /**
+     * Swizzle of a vector like .xy, .rgb or .s
+     */
+    private Expr select(Expr vector, Token field) {
+        if (!vector.type.isVector()) {
+            throw error(field, "Cannot select ." + field.text + " of " + vector.type);
+        }
+        String name = field.text;
+        if (name.length() > 4) {
+            throw error(field, "Invalid swizzle ." + name);
+        }
+        int[] components = new int[name.length()];
+        String set = null;
+        for (int k = 0; k < components.length; k++) {
+            char c = name.charAt(k);
+            for (String candidate : new String[]{"xyzw", "rgba", "stpq"}) {
+                if ((candidate.indexOf(c) >= 0) && ((set == null) || set.equals(candidate))) {
+                    set = candidate;
+                }
+            }
+            components[k] = (set == null) ? -1 : set.indexOf(c);
+            if ((components[k] < 0) || (components[k] >= vector.type.size)) {
+                throw error(field, "Invalid swizzle ." + name + " of " + vector.type);
+            }
+        }
+        return components(vector, components);
+    }
+
+    private Expr index(Expr base, Expr index, Token at) {
+        if (!(index instanceof Expr.Constant) || (index.type != Type.INT)) {
+            throw error(at, "Only constant int indices are supported");
+        }
+        int i = (int) ((Expr.Constant) index).value;
+        if (base.type.isVector() && (i >= 0) && (i < base.type.size)) {
+            return components(base, new int[]{i});
+        }
+        if ((base.type == Type.MAT2) && (i >= 0) && (i < 2)) {
+            return components(base, new int[]{2 * i, 2 * i + 1});
+        }
+        throw error(at, "Index " + i + " out of range of " + base.type);
+    }
+
+    private Expr components(Expr vector, int[] components) {
+        Type type = Type.vector(components.length);
+        if (vector instanceof Expr.Access) {
+            Expr.Access access = (Expr.Access) vector;
+            int[] slots = new int[components.length];
+            boolean distinct = true;
+            for (int k = 0; k < components.length; k++) {
+                slots[k] = access.slots[components[k]];
+                for (int j = 0; j < k; j++) {
+                    distinct &= slots[j] != slots[k];
+                }
+            }
+            return Expr.Access.of(type, slots, access.writable && distinct,
+                    Expr.Access.isContiguous(slots) ? -1 : allocate(slots.length));
+        }
+        if (components.length == 1) {
+            return fold(new Expr.Component(type, vector, components[0]), vector);
+        }
+        return fold(new Expr.Swizzle(type, allocate(type.size), vector, components), vector);
+    }
+
+    private Expr increment(Expr target, Token operator, boolean postfix) {
+        if (!(target instanceof Expr.Access) || !((Expr.Access) target).writable
+                || ((target.type != Type.INT) && (target.type != Type.FLOAT))) {
+            throw error(operator, "Cannot apply " + operator.text + " to this expression");
+        }
+        return new Expr.Increment(target.type, ((Expr.Access) target).slots[0],
+                operator.is("++") ? 1 : -1, postfix);
+    }
+
+    private Expr assign(Expr target, Token operator, Expr value, Token at) {
+        if (!(target instanceof Expr.Access) || !((Expr.Access) target).writable) {
+            throw error(at, "Cannot assign to this expression");
+        }
+        if (!operator.is("=")) {
+            Token arithmetic = new Token(Token.Kind.SYMBOL, operator.text.substring(0, 1),
+                    operator.line);
+            value = operate(arithmetic, target, value);
+        }
+        return store((Expr.Access) target, convert(value, target.type, operator));
+    }
+
+    private Expr store(Expr.Access target, Expr value) {
+        if (target.type.isScalar()) {
+            return new Expr.AssignScalar(target.slots[0], value);
+        }
+        if ((value instanceof Expr.VectorAccess)
+                && overlaps(((Expr.Access) value).slots, target.slots)
+                && !Arrays.equals(((Expr.Access) value).slots, target.slots)) {
+            // Copy first what the assignment would overwrite before reading it
+            int[] identity = new int[value.type.size];
+            for (int k = 0; k < identity.length; k++) {
+                identity[k] = k;
+            }
+            value = new Expr.Swizzle(value.type, allocate(value.type.size), value, identity);
+        }
+        int slot = Expr.Access.isContiguous(target.slots) ? target.slots[0] : value.slot;
+        return new Expr.AssignVector(slot, target.slots, value);
+    }
+
+    private static boolean overlaps(int[] a, int[] b) {
+        for (int x : a) {
+            for (int y : b) {
+                if (x == y) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Expr operate(Token operator, Expr a, Expr b) {
+        switch (operator.text) {
+            case "||":
+            case "&&":
+            case "^^":
+                if ((a.type != Type.BOOL) || (b.type != Type.BOOL)) {
+                    break;
+                }
+                Expr logical = operator.is("||") ? new Expr.Or(a, b)
+                        : operator.is("&&") ? new Expr.And(a, b) : new Expr.Equal(a, b, true);
+                return fold(logical, a, b);
+            case "==":
+            case "!=":
+                if (a.type != b.type) {
+                    a = toFloat(a);
+                    b = toFloat(b);
+                }
+                if ((a.type != b.type) || (a.type == Type.VOID) || (a.type == Type.SAMPLER2D)) {
+                    break;
+                }
+                boolean negated = operator.is("!=");
+                return fold(a.type.isScalar() ? new Expr.Equal(a, b, negated)
+                        : new Expr.VectorEqual(a, b, negated), a, b);
+            case "<":
+            case ">":
+            case "<=":
+            case ">=":
+                if (a.type != b.type) {
+                    a = toFloat(a);
+                    b = toFloat(b);
+                }
+                if ((a.type != b.type) || ((a.type != Type.INT) && (a.type != Type.FLOAT))) {
+                    break;
+                }
+                Expr comparison;
+                if (operator.is("<")) {
+                    comparison = new Expr.Less(a, b);
+                } else if (operator.is(">")) {
+                    comparison = new Expr.Less(b, a);
+                } else if (operator.is("<=")) {
+                    comparison = new Expr.LessEqual(a, b);
+                } else {
+                    comparison = new Expr.LessEqual(b, a);
+                }
+                return fold(comparison, a, b);
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+                Expr result = arithmetic(operator.text, a, b);
+                if (result != null) {
+                    return fold(result, a, b);
+                }
+                break;
+            default:
+                throw error(operator, "Unsupported operator " + operator.text);
+        }
+        throw error(operator, "Cannot apply " + operator.text + " to " + a.type + " and "
+                + b.type);
+    }
+
+    /**
+     * @return Node of the arithmetic operator for the types, null if they do not go together
+     */
+    private Expr arithmetic(String operator, Expr a, Expr b) {
+        if ((a.type == Type.INT) && (b.type == Type.INT)) {
+            return scalarArithmetic(Type.INT, operator, a, b);
+        }
+        a = toFloat(a);
+        b = toFloat(b);
+        Type ta = a.type;
+        Type tb = b.type;
+        if (!isFloats(ta) || !isFloats(tb)) {
+            return null;
+        }
+        if ((ta == Type.FLOAT) && (tb == Type.FLOAT)) {
+            return scalarArithmetic(Type.FLOAT, operator, a, b);
+        }
+        if (operator.equals("*")) {
+            if ((ta == Type.MAT2) && (tb == Type.MAT2)) {
+                return new Expr.MatrixMatrix(allocate(4), a, b);
+            }
+            if ((ta == Type.MAT2) && (tb == Type.VEC2)) {
+                return new Expr.MatrixVector(allocate(2), a, b);
+            }
+            if ((ta == Type.VEC2) && (tb == Type.MAT2)) {
+                return new Expr.VectorMatrix(allocate(2), a, b);
+            }
+        }
+        if ((ta != tb) && (ta != Type.FLOAT) && (tb != Type.FLOAT)) {
+            return null;
+        }
+        Type type = (ta == Type.FLOAT) ? tb : ta;
+        return new Expr.Map2(type, allocate(type.size), ARITHMETIC["+-*/".indexOf(operator)],
+                a, b);
+    }
+
+    private static Expr scalarArithmetic(Type type, String operator, Expr a, Expr b) {
+        switch (operator) {
+            case "+":
+                return new Expr.Add(type, a, b);
+            case "-":
+                return new Expr.Subtract(type, a, b);
+            case "*":
+                return new Expr.Multiply(type, a, b);
+            default:
+                return (type == Type.INT) ? new Expr.IntDivide(a, b) : new Expr.Divide(a, b);
+        }
+    }
+
+    /**
+     * @return true for floats, float vectors and matrices
+     */
+    private static boolean isFloats(Type type) {
+        return (type == Type.FLOAT) || type.isVector() || (type == Type.MAT2);
+    }
+
+    private Expr call(Token name) {
+        expect("(");
+        List<Expr> arguments = new ArrayList<>();
+        if (peek().is("void") && peek(1).is(")")) {
+            next();
+        }
+        if (!accept(")")) {
+            do {
+                arguments.add(assignment());
+            } while (accept(","));
+            expect(")");
+        }
+        Type type = Type.forName(name.text);
+        if (type != null) {
+            return construct(type, arguments, name);
+        }
+        if (UNSUPPORTED_TYPES.contains(name.text)) {
+            throw error(name, "Unsupported type " + name.text);
+        }
+        Function callee = resolve(name, arguments);
+        if (callee == null) {
+            return Builtins.call(this, name, arguments);
+        }
+        if (callee == function) {
+            throw error(name, "Recursive call of " + callee);
+        }
+        Expr[] args = new Expr[arguments.size()];
+        int[] temporaries = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = convert(arguments.get(i), callee.parameterTypes[i], name);
+            temporaries[i] = allocate(args[i].type.size);
+        }
+        if (!calls.containsKey(callee)) {
+            calls.put(callee, name);
+        }
+        int slot = callee.returnType.isScalar() ? -1 : allocate(callee.returnType.size);
+        return new Expr.Call(slot, callee, args, temporaries);
+    }
+
+    /**
+     * @return Function of the shader with the exact types of the arguments or, failing that,
+     * the only one taking floats where the arguments are ints; null if there is none
+     */
+    private Function resolve(Token name, List<Expr> arguments) {
+        List<Function> overloads = functions.get(name.text);
+        if (overloads == null) {
+            return null;
+        }
+        Type[] types = new Type[arguments.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = arguments.get(i).type;
+        }
+        Function exact = findExact(name.text, types);
+        if (exact != null) {
+            return exact;
+        }
+        Function match = null;
+        for (Function candidate : overloads) {
+            if (candidate.parameterTypes.length != types.length) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < types.length; i++) {
+                matches &= (candidate.parameterTypes[i] == types[i])
+                        || ((candidate.parameterTypes[i] == Type.FLOAT) && (types[i] == Type.INT));
+            }
+            if (matches) {
+                if (match != null) {
+                    throw error(name, "Ambiguous call of " + name.text);
+                }
+                match = candidate;
+            }
+        }
+        return match;
+    }
+
+    private Expr construct(Type type, List<Expr> arguments, Token at) {
+        if (arguments.isEmpty() || (type == Type.VOID) || (type == Type.SAMPLER2D)) {
+            throw error(at, "Invalid constructor of " + type);
+        }
+        for (Expr argument : arguments) {
+            if ((argument.type == Type.VOID) || (argument.type == Type.SAMPLER2D)) {
+                throw error(at, "Cannot construct " + type + " of " + argument.type);
+            }
+        }
+        if (type.isScalar()) {
+            if (arguments.size() != 1) {
+                throw error(at, type + " takes one argument");
+            }
+            Expr argument = arguments.get(0);
+            if (!argument.type.isScalar()) {
+                argument = components(argument, new int[]{0});
+            }
+            Expr result;
+            if (type == Type.FLOAT) {
+                result = (argument.type == Type.FLOAT) ? argument
+                        : new Expr.Retype(Type.FLOAT, argument);
+            } else if (type == Type.INT) {
+                result = (argument.type == Type.INT) ? argument
+                        : (argument.type == Type.BOOL) ? new Expr.Retype(Type.INT, argument)
+                        : new Expr.ToInt(argument);
+            } else {
+                result = (argument.type == Type.BOOL) ? argument : new Expr.ToBool(argument);
+            }
+            return fold(result, argument);
+        }
+        Expr[] args = arguments.toArray(new Expr[0]);
+        if ((args.length > 1) || !args[0].type.isScalar()) {
+            int components = 0;
+            for (Expr argument : args) {
+                components += argument.type.size;
+            }
+            if (components < type.size) {
+                throw error(at, "Not enough components to construct " + type);
+            }
+            if (components - args[args.length - 1].type.size >= type.size) {
+                throw error(at, "Too many arguments to construct " + type);
+            }
+        }
+        return fold(new Expr.Construct(type, allocate(type.size), args), args);
+    }
+}
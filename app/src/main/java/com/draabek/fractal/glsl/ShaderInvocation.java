@@ -0,0 +1,67 @@
+package com.draabek.fractal.glsl;
+
+import java.util.Map;
+
+/**
+ * State of a {@link ShaderProgram} for running it on one thread: the values of the uniforms,
+ * the palette and every variable. Uniforms keep their values between fragments.
+ */
+public final class ShaderInvocation {
+    private final ShaderProgram program;
+    private final Frame frame;
+
+    ShaderInvocation(ShaderProgram program, Frame frame) {
+        this.program = program;
+        this.frame = frame;
+    }
+
+    /**
+     * Set the components of a uniform, ints truncated and bools true unless 0
+     * @return false if the shader has no such uniform, which is ignored like in GL
+     */
+    public boolean setUniform(String name, double... values) {
+        Variable uniform = program.getUniform(name);
+        if (uniform == null) {
+            return false;
+        }
+        for (int k = 0; k < Math.min(values.length, uniform.type.size); k++) {
+            double value = values[k];
+            if (uniform.type == Type.INT) {
+                value = (long) value;
+            } else if (uniform.type == Type.BOOL) {
+                value = (value != 0) ? 1 : 0;
+            }
+            frame.values[uniform.slot + k] = value;
+        }
+        return true;
+    }
+
+    /**
+     * Set float parameters the way {@link com.draabek.fractal.gl.ShaderUtils#applyFloatUniforms}
+     * passes them to the GPU, one uniform each
+     */
+    public void setUniforms(Map<String, Float> parameters) {
+        for (Map.Entry<String, Float> parameter : parameters.entrySet()) {
+            if (parameter.getValue() != null) {
+                setUniform(parameter.getKey(), parameter.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param palette ARGB colors of the palette texture every sampler2D reads, null for none
+     */
+    public void setPalette(int[] palette) {
+        frame.palette = palette;
+    }
+
+    /**
+     * Run the shader for a fragment
+     * @param x Window coordinates of gl_FragCoord, the center of the bottom left pixel being
+     * (0.5, 0.5)
+     * @return ARGB color the shader wrote to gl_FragColor
+     */
+    public int shade(double x, double y) {
+        return program.shade(frame, x, y);
+    }
+}
@@ -0,0 +1,90 @@
+package com.draabek.fractal.glsl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fragment shader compiled for the CPU, for devices and environments without a GPU to render
+ * a {@link com.draabek.fractal.gl.GLSLFractal} on. It covers the GLSL ES 1.0 the bundled
+ * shaders are written in: float, int and bool scalars, float vectors, mat2 and sampler2D;
+ * functions without out parameters or recursion; the usual statements and operators;
+ * swizzles; the common built-in functions and texture2D of the palette; object-like macros
+ * and #ifdef. Arrays, structs, int and bool vectors and larger matrices are not supported.
+ * <p>
+ * The source is compiled to a tree of nodes specialized for their types, with every name
+ * resolved to fixed slots of a frame of doubles and expressions of constants folded. Doubles
+ * are used for floats, so shaders resolve deeper views on the CPU than in the float
+ * precision of the GPU. The program is immutable and shared, each thread runs it through an
+ * invocation of its own.
+ */
+public final class ShaderProgram {
+    private final double[] template;
+    private final Stmt initialization;
+    private final Function main;
+    private final int fragCoordSlot;
+    private final int fragColorSlot;
+    private final Map<String, Variable> uniforms;
+
+    ShaderProgram(double[] template, Stmt initialization, Function main, int fragCoordSlot,
+                  int fragColorSlot, Map<String, Variable> uniforms) {
+        this.template = template;
+        this.initialization = initialization;
+        this.main = main;
+        this.fragCoordSlot = fragCoordSlot;
+        this.fragColorSlot = fragColorSlot;
+        this.uniforms = uniforms;
+    }
+
+    /**
+     * @param source Fragment shader writing gl_FragColor
+     * @throws ShaderSyntaxException if the source is not valid or uses more than the subset
+     */
+    public static ShaderProgram compile(String source) {
+        return new ShaderCompiler(source).compile();
+    }
+
+    /**
+     * @return Names of the uniforms the shader declares
+     */
+    public Set<String> getUniformNames() {
+        return Collections.unmodifiableSet(uniforms.keySet());
+    }
+
+    /**
+     * @return New state to run the shader in, for one thread
+     */
+    public ShaderInvocation newInvocation() {
+        return new ShaderInvocation(this, new Frame(template));
+    }
+
+    Variable getUniform(String name) {
+        return uniforms.get(name);
+    }
+
+    /**
+     * Run the shader for a fragment of the frame
+     * @return ARGB color of gl_FragColor
+     */
+    int shade(Frame frame, double x, double y) {
+        double[] v = frame.values;
+        v[fragCoordSlot] = x;
+        v[fragCoordSlot + 1] = y;
+        v[fragCoordSlot + 2] = 0.5;
+        v[fragCoordSlot + 3] = 1;
+        initialization.execute(frame);
+        main.body.execute(frame);
+        return channel(v[fragColorSlot + 3]) << 24 | channel(v[fragColorSlot]) << 16
+                | channel(v[fragColorSlot + 1]) << 8 | channel(v[fragColorSlot + 2]);
+    }
+
+    /**
+     * @return Component of a color clamped to [0, 1] like in a framebuffer, as a byte
+     */
+    private static int channel(double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        return (value >= 1) ? 0xff : (int) (value * 255 + 0.5);
+    }
+}
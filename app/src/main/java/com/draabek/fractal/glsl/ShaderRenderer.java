@@ -0,0 +1,44 @@
+package com.draabek.fractal.glsl;
+
+import com.draabek.fractal.canvas.engine.TileScheduler;
+
+import java.util.Map;
+
+/**
+ * Renders a {@link ShaderProgram} over a whole frame like the full-screen quad of a
+ * {@link com.draabek.fractal.gl.GLSLFractal}, in tiles on the shared pool with an invocation
+ * per tile
+ */
+public final class ShaderRenderer {
+    private final ShaderProgram program;
+
+    public ShaderRenderer(ShaderProgram program) {
+        this.program = program;
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Shade every pixel. The uniforms are set like the GPU renderer sets them: every parameter
+     * as a float, resolution to the shorter side of the frame along both axes.
+     * @param pixels ARGB colors, rows from the bottom up like glReadPixels returns them
+     * @param palette Colors of the palette texture, null for none
+     */
+    public void render(final int[] pixels, final int width, int height,
+                       final Map<String, Float> parameters, final int[] palette) {
+        final double resolution = Math.min(width, height);
+        TileScheduler.render(width, height, (left, top, right, bottom) -> {
+            ShaderInvocation invocation = program.newInvocation();
+            invocation.setUniforms(parameters);
+            invocation.setUniform("resolution", resolution, resolution);
+            invocation.setPalette(palette);
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    pixels[y * width + x] = invocation.shade(x + 0.5, y + 0.5);
+                }
+            }
+        });
+    }
+}
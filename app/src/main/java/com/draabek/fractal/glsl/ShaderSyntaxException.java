@@ -0,0 +1,23 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Shader that is not valid GLSL or uses more of it than the subset {@link ShaderProgram}
+ * compiles
+ */
+public class ShaderSyntaxException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    ShaderSyntaxException(int line, String message) {
+        super("Line " + line + ": " + message);
+        this.line = line;
+    }
+
+    /**
+     * @return Line of the source the error is on, counted from 1
+     */
+    public int getLine() {
+        return line;
+    }
+}
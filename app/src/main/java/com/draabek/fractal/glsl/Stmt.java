@@ -0,0 +1,192 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Compiled statement of a shader, executing returns how control leaves it
+ */
+abstract class Stmt {
+    static final int NORMAL = 0;
+    static final int BREAK = 1;
+    static final int CONTINUE = 2;
+    static final int RETURN = 3;
+
+    abstract int execute(Frame frame);
+
+    static final class Evaluate extends Stmt {
+        private final Expr expression;
+
+        Evaluate(Expr expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            expression.execute(frame);
+            return NORMAL;
+        }
+    }
+
+    /**
+     * Zero the slots of a variable declared without a value, GLSL leaves it undefined
+     */
+    static final class Clear extends Stmt {
+        private final int slot;
+        private final int size;
+
+        Clear(int slot, int size) {
+            this.slot = slot;
+            this.size = size;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            for (int k = 0; k < size; k++) {
+                frame.values[slot + k] = 0;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Block extends Stmt {
+        private final Stmt[] statements;
+
+        Block(Stmt[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            for (Stmt statement : statements) {
+                int result = statement.execute(frame);
+                if (result != NORMAL) {
+                    return result;
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class If extends Stmt {
+        private final Expr condition;
+        private final Stmt then;
+        /** Null without an else branch */
+        private final Stmt otherwise;
+
+        If(Expr condition, Stmt then, Stmt otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            if (condition.scalar(frame) != 0) {
+                return then.execute(frame);
+            }
+            return (otherwise == null) ? NORMAL : otherwise.execute(frame);
+        }
+    }
+
+    /**
+     * for loop, also standing for while loops without the initialization and the step
+     */
+    static final class Loop extends Stmt {
+        /** Each part is null if left out */
+        private final Stmt initialization;
+        private final Expr condition;
+        private final Expr step;
+        private final Stmt body;
+
+        Loop(Stmt initialization, Expr condition, Expr step, Stmt body) {
+            this.initialization = initialization;
+            this.condition = condition;
+            this.step = step;
+            this.body = body;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            if (initialization != null) {
+                initialization.execute(frame);
+            }
+            while ((condition == null) || (condition.scalar(frame) != 0)) {
+                int result = body.execute(frame);
+                if (result == BREAK) {
+                    break;
+                }
+                if (result == RETURN) {
+                    return RETURN;
+                }
+                if (step != null) {
+                    step.execute(frame);
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class DoWhile extends Stmt {
+        private final Stmt body;
+        private final Expr condition;
+
+        DoWhile(Stmt body, Expr condition) {
+            this.body = body;
+            this.condition = condition;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            do {
+                int result = body.execute(frame);
+                if (result == BREAK) {
+                    break;
+                }
+                if (result == RETURN) {
+                    return RETURN;
+                }
+            } while (condition.scalar(frame) != 0);
+            return NORMAL;
+        }
+    }
+
+    /**
+     * break or continue
+     */
+    static final class Jump extends Stmt {
+        private final int result;
+
+        Jump(int result) {
+            this.result = result;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            return result;
+        }
+    }
+
+    static final class Return extends Stmt {
+        /** Null for functions returning void */
+        private final Expr value;
+        private final int resultSlot;
+
+        Return(Expr value, int resultSlot) {
+            this.value = value;
+            this.resultSlot = resultSlot;
+        }
+
+        @Override
+        int execute(Frame frame) {
+            if (value == null) {
+                return RETURN;
+            }
+            if (value.type.isScalar()) {
+                frame.values[resultSlot] = value.scalar(frame);
+            } else {
+                value.evaluate(frame);
+                System.arraycopy(frame.values, value.slot, frame.values, resultSlot,
+                        value.type.size);
+            }
+            return RETURN;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Token of a preprocessed shader, keywords are identifiers
+ */
+final class Token {
+    enum Kind {
+        IDENTIFIER,
+        INT,
+        FLOAT,
+        SYMBOL,
+        END
+    }
+
+    final Kind kind;
+    final String text;
+    final int line;
+
+    Token(Kind kind, String text, int line) {
+        this.kind = kind;
+        this.text = text;
+        this.line = line;
+    }
+
+    /**
+     * @return true for the identifier or symbol of the text
+     */
+    boolean is(String text) {
+        return ((kind == Kind.IDENTIFIER) || (kind == Kind.SYMBOL)) && this.text.equals(text);
+    }
+
+    @Override
+    public String toString() {
+        return (kind == Kind.END) ? "end of shader" : "'" + text + "'";
+    }
+}
@@ -0,0 +1,70 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Types of the GLSL subset, with the number of frame slots a value takes. Booleans and
+ * integers are kept in double slots like floats, 0 and 1 for false and true.
+ */
+enum Type {
+    VOID("void", 0),
+    BOOL("bool", 1),
+    INT("int", 1),
+    FLOAT("float", 1),
+    VEC2("vec2", 2),
+    VEC3("vec3", 3),
+    VEC4("vec4", 4),
+    /** Column major, the first column in the first two slots */
+    MAT2("mat2", 4),
+    /** Every sampler reads the palette texture, it takes no slots */
+    SAMPLER2D("sampler2D", 0);
+
+    final String name;
+    final int size;
+
+    Type(String name, int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    boolean isScalar() {
+        return (this == BOOL) || (this == INT) || (this == FLOAT);
+    }
+
+    boolean isVector() {
+        return (this == VEC2) || (this == VEC3) || (this == VEC4);
+    }
+
+    /**
+     * @return Float vector of the given size, FLOAT for 1
+     */
+    static Type vector(int size) {
+        switch (size) {
+            case 1:
+                return FLOAT;
+            case 2:
+                return VEC2;
+            case 3:
+                return VEC3;
+            case 4:
+                return VEC4;
+            default:
+                throw new IllegalArgumentException("No vector of size " + size);
+        }
+    }
+
+    /**
+     * @return Type of the name, null if it names none
+     */
+    static Type forName(String name) {
+        for (Type type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,27 @@
+package com.draabek.fractal.glsl;
+
+/**
+ * Variable, uniform or named constant of a shader
+ */
+final class Variable {
+    final Type type;
+    /** First slot of the value, unused by constants */
+    final int slot;
+    final boolean writable;
+    /** Value of a constant, null for variables */
+    final Expr constant;
+
+    Variable(Type type, int slot, boolean writable) {
+        this.type = type;
+        this.slot = slot;
+        this.writable = writable;
+        constant = null;
+    }
+
+    Variable(Expr constant) {
+        type = constant.type;
+        slot = -1;
+        writable = false;
+        this.constant = constant;
+    }
+}
@@ -1,10 +1,13 @@
 package com.draabek.fractal.util;
 
+import android.content.Context;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.preference.PreferenceManager;
 
 import com.draabek.fractal.BuildConfig;
+import com.draabek.fractal.R;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,6 +22,34 @@ public class Utils {
     public static final String PREFS_CURRENT_FRACTAL_PATH = "prefs_current_fractal_path";
     public static final boolean DEBUG = BuildConfig.DEBUG;
 
+    /**
+     * @return Samples per edge pixel of saved images from the preferences, 1 for none
+     */
+    public static int getExportSamples(Context context) {
+        String samples = PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.prefs_export_samples_key),
+                context.getString(R.string.prefs_export_samples_default));
+        try {
+            return Math.max(1, Integer.parseInt(samples));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * @return Relative difference that marks edge pixels of saved images, from the preferences
+     */
+    public static double getExportThreshold(Context context) {
+        String threshold = PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.prefs_export_threshold_key),
+                context.getString(R.string.prefs_export_threshold_default));
+        try {
+            return Double.parseDouble(threshold);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(context.getString(R.string.prefs_export_threshold_default));
+        }
+    }
+
     public static Bitmap getBitmapFromAsset(AssetManager mgr, String path) {
         InputStream is = null;
         Bitmap bitmap;
@@ -0,0 +1,174 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdaptiveAntialiaserTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int MAX_ITERATIONS = 256;
+    private static final Viewport VIEWPORT = new Viewport(-0.80, 0.20, -0.70, 0.125);
+    private static final int[] PALETTE = {0xff000000, 0xffff0000, 0xff00ff00, 0xff0000ff,
+            0xffffff00, 0xff00ffff, 0xffff00ff, 0xffffffff};
+
+    @Test
+    public void onlyEdgesAreResampled() {
+        IterationBuffer buffer = render(WIDTH, HEIGHT);
+        int[] pixels = colorize(buffer);
+        int[] base = pixels.clone();
+        AdaptiveAntialiaser antialiaser = new AdaptiveAntialiaser(new MandelbrotKernel(), 8, 0.1);
+        RenderStats stats = antialiaser.antialias(buffer, pixels, VIEWPORT, PALETTE, 0, false);
+        int edges = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int index = y * WIDTH + x;
+                if (antialiaser.isEdge(buffer.getValues(), base, WIDTH, HEIGHT, x, y,
+                        MAX_ITERATIONS)) {
+                    edges++;
+                } else {
+                    assertEquals("Pixel " + x + ", " + y, base[index], pixels[index]);
+                }
+            }
+        }
+        assertTrue(stats.getPixels() + " samples", (stats.getPixels() > 0)
+                && (stats.getPixels() <= 7L * edges));
+        assertTrue(edges + " edges", (edges > 0) && (edges < WIDTH * HEIGHT / 2));
+    }
+
+    @Test
+    public void singleSampleLeavesFrame() {
+        IterationBuffer buffer = render(WIDTH, HEIGHT);
+        int[] pixels = colorize(buffer);
+        int[] base = pixels.clone();
+        RenderStats stats = new AdaptiveAntialiaser(new MandelbrotKernel(), 1, 0.1)
+                .antialias(buffer, pixels, VIEWPORT, PALETTE, 0, false);
+        assertEquals(0, stats.getPixels());
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(base[i], pixels[i]);
+        }
+    }
+
+    @Test
+    public void noSamplesRejected() {
+        try {
+            new AdaptiveAntialiaser(new MandelbrotKernel(), 0, 0.1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void closerToSupersampledReferenceAtLittleCost() {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        RenderStats baseStats = new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer,
+                VIEWPORT, MAX_ITERATIONS);
+        int[] base = colorize(buffer);
+        int[] pixels = base.clone();
+        RenderStats stats = new AdaptiveAntialiaser(new MandelbrotKernel(), 16, 0.1)
+                .antialias(buffer, pixels, VIEWPORT, PALETTE, 0, false);
+        int[] reference = supersample(4);
+        double baseError = error(base, reference);
+        double error = error(pixels, reference);
+        assertTrue(error + " vs " + baseError, error < baseError / 2);
+        // A uniform 16x supersample costs about 16 times the base pass
+        double cost = (baseStats.getIterations() + stats.getIterations())
+                / (double) baseStats.getIterations();
+        assertTrue(cost + " times the base pass", (cost > 1.1) && (cost < 1.5));
+    }
+
+    @Test
+    public void costStaysWithinBudgetOnEveryView() {
+        Viewport[] viewports = {new Viewport(-2.5, 1.2, 1.0, -1.2), VIEWPORT,
+                new Viewport(-0.7475, 0.1075, -0.7385, 0.1015)};
+        for (Viewport viewport : viewports) {
+            IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+            RenderStats baseStats = new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer,
+                    viewport, 1000);
+            int[] pixels = colorize(buffer);
+            RenderStats stats = new AdaptiveAntialiaser(new MandelbrotKernel(),
+                    AdaptiveAntialiaser.DEFAULT_MAX_SAMPLES, AdaptiveAntialiaser.DEFAULT_THRESHOLD)
+                    .antialias(buffer, pixels, viewport, PALETTE, 0, false);
+            double cost = (baseStats.getIterations() + stats.getIterations())
+                    / (double) baseStats.getIterations();
+            assertTrue(viewport + ": " + cost + " times the base pass", cost < 1.5);
+        }
+    }
+
+    @Test
+    public void equalizedSamplesUseBaseHistogram() {
+        IterationBuffer buffer = render(WIDTH, HEIGHT);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        HistogramColorizer.colorize(buffer, pixels, PALETTE, 0);
+        int[] base = pixels.clone();
+        new AdaptiveAntialiaser(new MandelbrotKernel(), 8, 0.1)
+                .antialias(buffer, pixels, VIEWPORT, PALETTE, 0, true);
+        int changed = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] != base[i]) {
+                changed++;
+            }
+        }
+        assertTrue(changed > 0);
+    }
+
+    private static IterationBuffer render(int width, int height) {
+        IterationBuffer buffer = new IterationBuffer(width, height);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer, VIEWPORT, MAX_ITERATIONS);
+        return buffer;
+    }
+
+    private static int[] colorize(IterationBuffer buffer) {
+        int[] pixels = new int[buffer.getWidth() * buffer.getHeight()];
+        Colorizer.colorize(buffer, pixels, PALETTE, 0);
+        return pixels;
+    }
+
+    /**
+     * @return Frame averaging a uniform grid of factor x factor samples per pixel, centered
+     * on the point the base pass samples the pixel at
+     */
+    private static int[] supersample(int factor) {
+        double shift = (factor - 1) / (2.0 * factor);
+        double dx = VIEWPORT.getPixelWidth(WIDTH) * shift;
+        double dy = VIEWPORT.getPixelHeight(HEIGHT) * shift;
+        IterationBuffer buffer = new IterationBuffer(factor * WIDTH, factor * HEIGHT);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer,
+                new Viewport(VIEWPORT.getLeft() - dx, VIEWPORT.getTop() - dy,
+                        VIEWPORT.getRight() - dx, VIEWPORT.getBottom() - dy), MAX_ITERATIONS);
+        int[] fine = colorize(buffer);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        int samples = factor * factor;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int sy = 0; sy < factor; sy++) {
+                    for (int sx = 0; sx < factor; sx++) {
+                        int color = fine[(factor * y + sy) * factor * WIDTH + factor * x + sx];
+                        r += (color >> 16) & 0xff;
+                        g += (color >> 8) & 0xff;
+                        b += color & 0xff;
+                    }
+                }
+                pixels[y * WIDTH + x] = 0xff000000 | (r / samples) << 16 | (g / samples) << 8
+                        | (b / samples);
+            }
+        }
+        return pixels;
+    }
+
+    private static double error(int[] pixels, int[] reference) {
+        long sum = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                sum += Math.abs(((pixels[i] >> shift) & 0xff) - ((reference[i] >> shift) & 0xff));
+            }
+        }
+        return sum / (double) pixels.length;
+    }
+}
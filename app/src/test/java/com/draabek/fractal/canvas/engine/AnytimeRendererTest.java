@@ -0,0 +1,85 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnytimeRendererTest {
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+    /** Off the real axis, so the direct render mirrors no pixels */
+    private static final Viewport VIEWPORT = new Viewport(-2, -0.2, 0.5, 1.25);
+    private static final int MAX_ITERATIONS = 5000;
+
+    @Test
+    public void slicesAddUpToDirectRender() {
+        EscapeTimeKernel kernel = new MandelbrotKernel();
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        OrbitStore orbits = new OrbitStore();
+        AnytimeRenderer renderer = new AnytimeRenderer(kernel, buffer, VIEWPORT, MAX_ITERATIONS,
+                orbits);
+        int slices = 0;
+        while (!renderer.render(5000)) {
+            slices++;
+            assertTrue(slices < 10000);
+        }
+        assertTrue("Rendered in a single slice", slices > 1);
+        assertTrue(renderer.isFinished());
+        assertEquals(MAX_ITERATIONS, orbits.getMaxIterations());
+
+        IterationBuffer direct = new IterationBuffer(WIDTH, HEIGHT);
+        OrbitStore directOrbits = new OrbitStore();
+        new EscapeTimeRenderer(kernel).render(direct, VIEWPORT, MAX_ITERATIONS, directOrbits);
+        assertSameValues(direct, buffer);
+        assertEquals(directOrbits.size(), orbits.size());
+
+        // The kept orbits continue like those of a direct render
+        new EscapeTimeRenderer(kernel).continueRender(buffer, VIEWPORT, 2 * MAX_ITERATIONS,
+                orbits);
+        new EscapeTimeRenderer(kernel).render(direct, VIEWPORT, 2 * MAX_ITERATIONS);
+        assertSameValues(direct, buffer);
+    }
+
+    @Test
+    public void sliceStaysWithinBudget() {
+        AnytimeRenderer renderer = new AnytimeRenderer(new JuliaKernel(-0.8, 0.156),
+                new IterationBuffer(WIDTH, HEIGHT), new Viewport(-1.6, 0.1, 1.6, 1),
+                MAX_ITERATIONS, null);
+        long budget = 50000;
+        long before = 0;
+        while (!renderer.render(budget)) {
+            long spent = renderer.getStats().getIterations() - before;
+            // At most one batch of slices over the budget
+            assertTrue(spent < budget + (long) AnytimeRenderer.BATCH_SIZE
+                    * AnytimeRenderer.SLICE_ITERATIONS);
+            before = renderer.getStats().getIterations();
+        }
+    }
+
+    @Test
+    public void previewCoversFrameEarly() {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        float[] values = buffer.getValues();
+        java.util.Arrays.fill(values, -1);
+        AnytimeRenderer renderer = new AnytimeRenderer(new MandelbrotKernel(), buffer, VIEWPORT,
+                MAX_ITERATIONS, null);
+        // The coarsest grid alone fills every pixel
+        int coarseSamples = ((WIDTH + 7) / 8) * ((HEIGHT + 7) / 8);
+        assertTrue(coarseSamples <= AnytimeRenderer.BATCH_SIZE);
+        renderer.render(1);
+        for (float value : values) {
+            assertTrue(value >= 0);
+        }
+        renderer.cancel();
+        assertFalse(renderer.render(Long.MAX_VALUE));
+        assertFalse(renderer.isFinished());
+    }
+
+    private static void assertSameValues(IterationBuffer expected, IterationBuffer actual) {
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals("Pixel " + i, expected.getValues()[i], actual.getValues()[i], 0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AttractorRendererTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 100;
+    /** Covers the whole Clifford attractor, |x| <= 1 + |c| and |y| <= 1 + |d| */
+    private static final Viewport CLIFFORD_VIEWPORT = new Viewport(-2.5, -2, 2.5, 2);
+
+    @Test
+    public void everyPointInsideIsCounted() {
+        AttractorRenderer renderer = new AttractorRenderer(clifford(), WIDTH, HEIGHT,
+                CLIFFORD_VIEWPORT);
+        renderer.accumulate(100000);
+        renderer.accumulate(12345);
+        assertEquals(112345, renderer.getPoints());
+        assertEquals(112345, total(renderer));
+    }
+
+    @Test
+    public void pointsOutsideAreDropped() {
+        AttractorRenderer renderer = new AttractorRenderer(clifford(), WIDTH, HEIGHT,
+                new Viewport(0, -2, 2.5, 2));
+        renderer.accumulate(100000);
+        long inside = total(renderer);
+        assertTrue(inside + " inside", (inside > 10000) && (inside < 90000));
+    }
+
+    @Test
+    public void resultDoesNotDependOnSlices() {
+        AttractorRenderer whole = new AttractorRenderer(clifford(), WIDTH, HEIGHT,
+                CLIFFORD_VIEWPORT);
+        AttractorRenderer sliced = new AttractorRenderer(clifford(), WIDTH, HEIGHT,
+                CLIFFORD_VIEWPORT);
+        int slice = 1000 * whole.getStreams();
+        whole.accumulate(10L * slice);
+        for (int i = 0; i < 10; i++) {
+            sliced.accumulate(slice);
+        }
+        long[] expected = whole.getDensity();
+        long[] actual = sliced.getDensity();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Pixel " + i, expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void logDensityTonemap() {
+        AttractorRenderer renderer = new AttractorRenderer(clifford(), WIDTH, HEIGHT,
+                CLIFFORD_VIEWPORT);
+        renderer.accumulate(200000);
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = 0xff000000 | i;
+        }
+        int[] pixels = new int[WIDTH * HEIGHT];
+        renderer.tonemap(pixels, palette, 0);
+        long[] density = renderer.getDensity();
+        long max = 0;
+        for (long value : density) {
+            max = Math.max(max, value);
+        }
+        for (int i = 0; i < density.length; i++) {
+            if (density[i] == 0) {
+                assertEquals(palette[0], pixels[i]);
+            } else {
+                int expected = (int) (Math.log1p(density[i]) / Math.log1p(max) * 255);
+                assertEquals("Pixel " + i, palette[expected], pixels[i]);
+            }
+        }
+    }
+
+    @Test
+    public void lorenzStaysOnTheButterfly() {
+        Attractor lorenz = new LorenzSystem(LorenzSystem.DEFAULT_SIGMA, LorenzSystem.DEFAULT_RHO,
+                LorenzSystem.DEFAULT_BETA, LorenzSystem.DEFAULT_STEP);
+        double[] state = new double[3];
+        lorenz.start(state, 0);
+        boolean left = false;
+        boolean right = false;
+        for (int i = 0; i < 100000; i++) {
+            lorenz.step(state);
+            assertTrue(Math.abs(state[0]) < 25 && Math.abs(state[1]) < 35
+                    && state[2] > -1 && state[2] < 55);
+            left |= state[0] < -10;
+            right |= state[0] > 10;
+        }
+        // The orbit visits both wings
+        assertTrue(left && right);
+    }
+
+    @Test
+    public void lorenzStepIsFourthOrder() {
+        double[] coarse = {1, 2, 20};
+        double[] fine = coarse.clone();
+        double[] reference = coarse.clone();
+        new LorenzSystem(10, 28, 8.0 / 3, 0.01).step(coarse);
+        LorenzSystem half = new LorenzSystem(10, 28, 8.0 / 3, 0.005);
+        half.step(fine);
+        half.step(fine);
+        LorenzSystem tiny = new LorenzSystem(10, 28, 8.0 / 3, 0.00001);
+        for (int i = 0; i < 1000; i++) {
+            tiny.step(reference);
+        }
+        double coarseError = distance(coarse, reference);
+        double fineError = distance(fine, reference);
+        // Halving the step divides the local error by about 2^5 / 2
+        assertTrue(coarseError + " vs " + fineError, coarseError > 8 * fineError);
+        assertTrue(coarseError < 1e-5);
+    }
+
+    @Test
+    public void mapsFollowTheirFormulas() {
+        double[] state = {0.3, -0.2};
+        new CliffordMap(-1.4, 1.6, 1.0, 0.7).step(state);
+        assertEquals(Math.sin(-1.4 * -0.2) + Math.cos(-1.4 * 0.3), state[0], 1e-15);
+        assertEquals(Math.sin(1.6 * 0.3) + 0.7 * Math.cos(1.6 * -0.2), state[1], 1e-15);
+        state = new double[]{0.3, -0.2};
+        new DeJongMap(1.4, -2.3, 2.4, -2.1).step(state);
+        assertEquals(Math.sin(1.4 * -0.2) - Math.cos(-2.3 * 0.3), state[0], 1e-15);
+        assertEquals(Math.sin(2.4 * 0.3) - Math.cos(-2.1 * -0.2), state[1], 1e-15);
+    }
+
+    private static Attractor clifford() {
+        return new CliffordMap(-1.4, 1.6, 1.0, 0.7);
+    }
+
+    private static long total(AttractorRenderer renderer) {
+        long sum = 0;
+        for (long value : renderer.getDensity()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,111 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BuddhabrotRendererTest {
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 50;
+    private static final Viewport FULL_VIEWPORT = new Viewport(-2, -1.5, 1, 1.5);
+    private static final int[] NEBULABROT_LIMITS = {500, 200, 50};
+
+    @Test
+    public void higherLimitsCountMore() {
+        for (boolean importance : new boolean[]{false, true}) {
+            BuddhabrotRenderer renderer = new BuddhabrotRenderer(WIDTH, HEIGHT, FULL_VIEWPORT,
+                    NEBULABROT_LIMITS, importance);
+            renderer.accumulate(50000);
+            assertEquals(50000, renderer.getPoints());
+            long total = 0;
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                long red = renderer.getDensity(0, i);
+                long green = renderer.getDensity(1, i);
+                long blue = renderer.getDensity(2, i);
+                assertTrue("Pixel " + i, (red >= green) && (green >= blue));
+                total += blue;
+            }
+            assertTrue(total > 0);
+        }
+    }
+
+    @Test
+    public void uniformSamplesWeighOneEach() {
+        BuddhabrotRenderer renderer = new BuddhabrotRenderer(WIDTH, HEIGHT, FULL_VIEWPORT,
+                new int[]{100}, false);
+        renderer.accumulate(20000);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals(0, renderer.getDensity(0, i) % BuddhabrotRenderer.WEIGHT_ONE);
+        }
+        assertTrue(renderer.getIterations() >= 20000);
+    }
+
+    @Test
+    public void resultDoesNotDependOnSlices() {
+        for (boolean importance : new boolean[]{false, true}) {
+            BuddhabrotRenderer whole = new BuddhabrotRenderer(WIDTH, HEIGHT, FULL_VIEWPORT,
+                    new int[]{200}, importance);
+            BuddhabrotRenderer sliced = new BuddhabrotRenderer(WIDTH, HEIGHT, FULL_VIEWPORT,
+                    new int[]{200}, importance);
+            int slice = 1000 * TileScheduler.getPool().getParallelism();
+            whole.accumulate(5L * slice);
+            for (int i = 0; i < 5; i++) {
+                sliced.accumulate(slice);
+            }
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                assertEquals("Pixel " + i, whole.getDensity(0, i), sliced.getDensity(0, i));
+            }
+        }
+    }
+
+    @Test
+    public void importanceSamplingConvergesFasterWhenZoomed() {
+        int size = 8;
+        Viewport zoomed = new Viewport(-0.215, 0.685, -0.185, 0.715);
+        int[] limits = {1000};
+        BuddhabrotRenderer reference = new BuddhabrotRenderer(size, size, zoomed, limits, false);
+        reference.accumulate(10000000);
+        BuddhabrotRenderer uniform = new BuddhabrotRenderer(size, size, zoomed, limits, false);
+        uniform.accumulate(400000);
+        BuddhabrotRenderer importance = new BuddhabrotRenderer(size, size, zoomed, limits,
+                true);
+        importance.accumulate(50000);
+        // About the same work for both
+        assertTrue(uniform.getIterations() + " vs " + importance.getIterations(),
+                importance.getIterations() < 2 * uniform.getIterations());
+        double uniformError = error(uniform, reference);
+        double importanceError = error(importance, reference);
+        assertTrue(importanceError + " vs " + uniformError, importanceError < uniformError / 2);
+    }
+
+    @Test
+    public void limitsAreRequired() {
+        try {
+            new BuddhabrotRenderer(WIDTH, HEIGHT, FULL_VIEWPORT, new int[0], true);
+            fail("No limits accepted");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * @return L1 distance of the densities normalized to a sum of one
+     */
+    private static double error(BuddhabrotRenderer estimate, BuddhabrotRenderer reference) {
+        int pixels = reference.getWidth() * reference.getHeight();
+        double estimateTotal = 0;
+        double referenceTotal = 0;
+        for (int i = 0; i < pixels; i++) {
+            estimateTotal += estimate.getDensity(0, i);
+            referenceTotal += reference.getDensity(0, i);
+        }
+        double error = 0;
+        for (int i = 0; i < pixels; i++) {
+            error += Math.abs(estimate.getDensity(0, i) / estimateTotal
+                    - reference.getDensity(0, i) / referenceTotal);
+        }
+        return error;
+    }
+}
@@ -0,0 +1,61 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColorizerTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int MAX_ITERATIONS = 100;
+    private static final Viewport VIEWPORT = new Viewport(-2, -1.25, 0.5, 1.25);
+    private static final int[] PALETTE = {0xff000000, 0xffff0000, 0xff00ff00, 0xff0000ff};
+
+    @Test
+    public void recolorMatchesFullRender() {
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(new MandelbrotKernel());
+        int[] gray = new int[WIDTH * HEIGHT];
+        renderer.render(gray, WIDTH, HEIGHT, VIEWPORT, MAX_ITERATIONS, null);
+        int[] colored = new int[WIDTH * HEIGHT];
+        renderer.render(colored, WIDTH, HEIGHT, VIEWPORT, MAX_ITERATIONS, PALETTE);
+
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(buffer, VIEWPORT, MAX_ITERATIONS);
+        assertEquals(MAX_ITERATIONS, buffer.getMaxIterations());
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Colorizer.colorize(buffer, pixels, null, 0);
+        assertArrayEquals(gray, pixels);
+        Colorizer.colorize(buffer, pixels, PALETTE, 0);
+        assertArrayEquals(colored, pixels);
+    }
+
+    @Test
+    public void offsetRotatesEscapedColors() {
+        int length = PALETTE.length;
+        for (int offset = -5; offset <= 5; offset++) {
+            assertEquals(PALETTE[0], Colorizer.color(MAX_ITERATIONS, MAX_ITERATIONS, PALETTE, offset));
+            for (int value = 0; value < MAX_ITERATIONS; value += 7) {
+                int index = value * length / MAX_ITERATIONS;
+                assertEquals(PALETTE[((index + offset) % length + length) % length],
+                        Colorizer.color(value, MAX_ITERATIONS, PALETTE, offset));
+            }
+        }
+    }
+
+    @Test
+    public void regionLeavesOtherPixels() {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer, VIEWPORT, MAX_ITERATIONS);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Colorizer.colorize(buffer, pixels, PALETTE, 1, 10, 5, 20, 15);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = (x >= 10) && (x < 20) && (y >= 5) && (y < 15);
+                int expected = inside ? Colorizer.color(buffer.getValues()[y * WIDTH + x],
+                        MAX_ITERATIONS, PALETTE, 1) : 0;
+                assertEquals(expected, pixels[y * WIDTH + x]);
+            }
+        }
+    }
+}
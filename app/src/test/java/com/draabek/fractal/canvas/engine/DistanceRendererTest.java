@@ -0,0 +1,110 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceRendererTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final Viewport VIEWPORT = new Viewport(-2.5, -1.5, 1.5, 1.5);
+    private static final int MAX_ITERATIONS = 500;
+    private static final double GLOW = 2;
+
+    @Test
+    public void estimatesBracketTheDistance() {
+        MandelbrotKernel mandelbrot = new MandelbrotKernel();
+        // The tip of the antenna at -2 is the point of the set closest to the negative axis
+        assertBracketed(1, mandelbrot.estimateDistance(-3, 0, MAX_ITERATIONS,
+                new RenderStats()));
+        assertBracketed(0.5, mandelbrot.estimateDistance(-2.5, 0, MAX_ITERATIONS,
+                new RenderStats()));
+        // The Julia set of 0 is the unit circle
+        JuliaKernel circle = new JuliaKernel(0, 0);
+        assertBracketed(0.1, circle.estimateDistance(0, 1.1, MAX_ITERATIONS, new RenderStats()));
+        assertBracketed(1, circle.estimateDistance(-2, 0, MAX_ITERATIONS, new RenderStats()));
+    }
+
+    @Test
+    public void interiorPointsHaveNoDistance() {
+        MandelbrotKernel mandelbrot = new MandelbrotKernel();
+        assertEquals(0, mandelbrot.estimateDistance(0, 0, MAX_ITERATIONS, new RenderStats()), 0);
+        assertEquals(0, mandelbrot.estimateDistance(-1.3, 0, MAX_ITERATIONS, new RenderStats()),
+                0);
+        JuliaKernel circle = new JuliaKernel(0, 0);
+        assertEquals(0, circle.estimateDistance(0.5, 0.5, MAX_ITERATIONS, new RenderStats()), 0);
+    }
+
+    @Test
+    public void filledPixelsMatchTheirEstimates() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        RenderStats stats = new DistanceRenderer(kernel).render(buffer, VIEWPORT,
+                MAX_ITERATIONS, GLOW, 1);
+        assertTrue(buffer.isDistances());
+        assertEquals(MAX_ITERATIONS, buffer.getMaxIterations());
+        // Far from the set most pixels are filled without iterating
+        assertTrue(stats.getPixels() + " pixels iterated",
+                stats.getPixels() < WIDTH * HEIGHT * 3 / 4);
+        double dx = VIEWPORT.getPixelWidth(WIDTH);
+        double dy = VIEWPORT.getPixelHeight(HEIGHT);
+        double glowDistance = GLOW * Math.max(dx, dy);
+        float[] values = buffer.getValues();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double distance = kernel.estimateDistance(VIEWPORT.getLeft() + x * dx,
+                        VIEWPORT.getTop() + y * dy, MAX_ITERATIONS, new RenderStats());
+                assertEquals("Pixel " + x + ", " + y, Math.min(1, distance / glowDistance),
+                        values[y * WIDTH + x], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void onlyBoundaryPixelsAreResampled() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        IterationBuffer single = new IterationBuffer(WIDTH, HEIGHT);
+        RenderStats singleStats = new DistanceRenderer(kernel).render(single, VIEWPORT,
+                MAX_ITERATIONS, GLOW, 1);
+        IterationBuffer sampled = new IterationBuffer(WIDTH, HEIGHT);
+        RenderStats sampledStats = new DistanceRenderer(kernel).render(sampled, VIEWPORT,
+                MAX_ITERATIONS, GLOW, 8);
+        float[] base = single.getValues();
+        float[] values = sampled.getValues();
+        int boundary = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int i = y * WIDTH + x;
+                if (DistanceRenderer.isBoundary(base, WIDTH, HEIGHT, x, y, (float) (1 / GLOW))) {
+                    boundary++;
+                    assertTrue((values[i] >= 0) && (values[i] <= 1));
+                } else {
+                    assertEquals(base[i], values[i], 0);
+                }
+            }
+        }
+        assertTrue(boundary > 0);
+        assertTrue(boundary + " boundary pixels", boundary < WIDTH * HEIGHT / 5);
+        assertEquals(singleStats.getPixels() + 7L * boundary, sampledStats.getPixels());
+    }
+
+    @Test
+    public void shadesColorFromTheSetOutwards() {
+        int[] palette = {1, 2, 3, 4, 5};
+        assertEquals(1, DistanceColorizer.color(0, palette, 2));
+        assertEquals(5, DistanceColorizer.color(1, palette, 0));
+        assertEquals(2, DistanceColorizer.color(1, palette, 2));
+        assertEquals(3, DistanceColorizer.color(0.25f, palette, 0));
+        assertEquals(0xff000000, DistanceColorizer.color(0, null, 0));
+        assertEquals(0xffffffff, DistanceColorizer.color(1, null, 0));
+    }
+
+    /**
+     * The true distance lies between half and four times the estimate
+     */
+    private static void assertBracketed(double expected, double estimate) {
+        assertTrue(expected + " estimated " + estimate,
+                (estimate >= expected / 4) && (estimate <= 2 * expected));
+    }
+}
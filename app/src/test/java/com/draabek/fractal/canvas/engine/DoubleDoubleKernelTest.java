@@ -0,0 +1,116 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleDoubleKernelTest {
+    /** Boundary point with plenty of detail at pixel sizes around 1e-22 */
+    private static final BigDecimal X = new BigDecimal("-0.74072100300296039479");
+    private static final BigDecimal Y = new BigDecimal("0.13302000170113250180");
+
+    @Test
+    public void errorFreeTransformations() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double a = (random.nextDouble() - 0.5) * Math.pow(2, random.nextInt(40) - 20);
+            double b = (random.nextDouble() - 0.5) * Math.pow(2, random.nextInt(40) - 20);
+            double product = a * b;
+            assertEquals(new BigDecimal(a).multiply(new BigDecimal(b)),
+                    new BigDecimal(product).add(new BigDecimal(
+                            DoubleDouble.twoProdError(a, b, product))));
+            double square = a * a;
+            assertEquals(new BigDecimal(a).multiply(new BigDecimal(a)),
+                    new BigDecimal(square).add(new BigDecimal(
+                            DoubleDouble.twoSquareError(a, square))));
+            double sum = a + b;
+            assertEquals(0, new BigDecimal(a).add(new BigDecimal(b)).compareTo(
+                    new BigDecimal(sum).add(new BigDecimal(DoubleDouble.twoSumError(a, b, sum)))));
+        }
+    }
+
+    @Test
+    public void matchesDoubleKernels() {
+        EscapeTimeKernel[] kernels = {new MandelbrotKernel(), new JuliaKernel(-0.8, 0.156),
+                new BurningShipKernel(), new TricornKernel()};
+        DoubleDoubleKernel[] doubleDoubleKernels = {
+                new DoubleDoubleKernel(Formula.MANDELBROT),
+                new DoubleDoubleKernel(Formula.JULIA, -0.8, 0.156),
+                new DoubleDoubleKernel(Formula.BURNING_SHIP),
+                new DoubleDoubleKernel(Formula.TRICORN)};
+        RenderStats stats = new RenderStats();
+        for (int k = 0; k < kernels.length; k++) {
+            int different = 0;
+            for (int y = 0; y < 40; y++) {
+                for (int x = 0; x < 40; x++) {
+                    double cx = -2 + x * 0.0625;
+                    double cy = -1.25 + y * 0.0625;
+                    if (kernels[k].iterate(cx, cy, 100)
+                            != doubleDoubleKernels[k].iterate(cx, 0, cy, 0, 100, stats)) {
+                        different++;
+                    }
+                }
+            }
+            assertTrue(doubleDoubleKernels[k].getFormula() + ": " + different + " differ",
+                    different <= 16);
+        }
+    }
+
+    @Test
+    public void resolvesPixelsBeyondDouble() {
+        int width = 16;
+        int height = 16;
+        int maxIterations = 3000;
+        PreciseViewport viewport = new PreciseViewport(X, Y, 4e-22);
+        assertTrue(DoubleDoubleRenderer.isNeeded(viewport, width, height));
+        assertFalse(DoubleDoubleRenderer.isNeeded(new PreciseViewport(X, Y, 1e-9), width, height));
+        int[] palette = new int[maxIterations];
+        for (int i = 0; i < maxIterations; i++) {
+            palette[i] = i;
+        }
+        int[] pixels = new int[width * height];
+        new DoubleDoubleRenderer(new DoubleDoubleKernel(Formula.MANDELBROT))
+                .render(pixels, width, height, viewport, maxIterations, palette);
+        MathContext mc = new MathContext(50);
+        BigDecimal four = BigDecimal.valueOf(4);
+        int different = 0;
+        int escaped = 0;
+        for (int y = 0; y < height; y += 3) {
+            for (int x = 0; x < width; x += 3) {
+                BigDecimal cx = viewport.getX(x, width);
+                BigDecimal cy = viewport.getY(y, height);
+                BigDecimal zr = BigDecimal.ZERO;
+                BigDecimal zi = BigDecimal.ZERO;
+                int i = 0;
+                while (i < maxIterations) {
+                    BigDecimal zr2 = zr.multiply(zr, mc);
+                    BigDecimal zi2 = zi.multiply(zi, mc);
+                    if (zr2.add(zi2).compareTo(four) > 0) {
+                        break;
+                    }
+                    BigDecimal product = zr.multiply(zi, mc);
+                    zi = product.add(product).add(cy, mc);
+                    zr = zr2.subtract(zi2).add(cx, mc);
+                    i++;
+                }
+                int exact = (i < maxIterations) ? (int) Formula.MANDELBROT.smooth(i,
+                        zr.doubleValue(), zi.doubleValue(), cx.doubleValue(), cy.doubleValue(),
+                        maxIterations) : 0;
+                if (pixels[y * width + x] != exact) {
+                    different++;
+                }
+                if (i < maxIterations) {
+                    escaped++;
+                }
+            }
+        }
+        assertTrue(escaped + " pixels escaped", escaped > 10);
+        assertTrue(different + " pixels differ", different <= 1);
+    }
+}
@@ -0,0 +1,212 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EscapeTimeKernelTest {
+    private static final int MAX_ITERATIONS = 200;
+
+    @Test
+    public void squareIsTheMandelbrotSetOneStepLater() {
+        EscapeTimeKernel square = new GeneralizedMandelbrotKernel(2);
+        MandelbrotKernel mandelbrot = new MandelbrotKernel();
+        // Off the grid of round numbers, which hits boundary points like -i
+        for (double y = -1.213; y <= 1.2; y += 0.05) {
+            for (double x = -2.017; x <= 0.6; x += 0.05) {
+                int reference = mandelbrot.iterate(x, y, MAX_ITERATIONS);
+                // The Mandelbrot orbit starts at 0, its first step reaches c. The first step
+                // from c is taken even beyond the escape radius.
+                int expected = (reference < MAX_ITERATIONS) ? Math.max(1, reference - 1)
+                        : MAX_ITERATIONS;
+                assertEquals(x + ", " + y, expected, square.iterate(x, y, MAX_ITERATIONS));
+            }
+        }
+    }
+
+    @Test
+    public void normalizedCountsAreContinuousAcrossSteps() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        RenderStats stats = new RenderStats();
+        Random random = new Random(1);
+        List<Double> jumps = new ArrayList<>();
+        while (jumps.size() < 200) {
+            double y = -1.5 + 3 * random.nextDouble();
+            double left = -2.2 + 3 * random.nextDouble();
+            double right = left + 1e-3;
+            int count = kernel.iterate(left, y, MAX_ITERATIONS);
+            // Few iterations do not take z far from c
+            if ((count < 10) || (count >= MAX_ITERATIONS)
+                    || (Math.abs(kernel.iterate(right, y, MAX_ITERATIONS) - count) != 1)) {
+                continue;
+            }
+            // Close in on where the count steps
+            for (int i = 0; i < 40; i++) {
+                double middle = (left + right) / 2;
+                if (kernel.iterate(middle, y, MAX_ITERATIONS) == count) {
+                    left = middle;
+                } else {
+                    right = middle;
+                }
+            }
+            jumps.add((double) Math.abs(kernel.iterateSmooth(left, y, MAX_ITERATIONS, stats)
+                    - kernel.iterateSmooth(right, y, MAX_ITERATIONS, stats)));
+        }
+        Collections.sort(jumps);
+        // Whole counts step by one there
+        assertTrue("median " + jumps.get(jumps.size() / 2), jumps.get(jumps.size() / 2) < 0.01);
+    }
+
+    @Test
+    public void polarFormAgreesWithMultiplication() {
+        EscapeTimeKernel multiplied = new GeneralizedMandelbrotKernel(3);
+        EscapeTimeKernel polar = new GeneralizedMandelbrotKernel(3 + 1e-12);
+        int points = 0;
+        int different = 0;
+        for (double y = -1.2; y <= 1.2; y += 0.02) {
+            for (double x = -1.2; x <= 1.2; x += 0.02) {
+                points++;
+                if (multiplied.iterate(x, y, MAX_ITERATIONS)
+                        != polar.iterate(x, y, MAX_ITERATIONS)) {
+                    different++;
+                }
+            }
+        }
+        // Rounding only tells apart orbits that stay close to the boundary for long
+        assertTrue(different + " of " + points, different < points / 100);
+    }
+
+    @Test
+    public void countsLikeTheShaders() {
+        EscapeTimeKernel[] kernels = {new GeneralizedMandelbrotKernel(2),
+                new GeneralizedMandelbrotKernel(2.5)};
+        for (EscapeTimeKernel kernel : kernels) {
+            double exponent = ((GeneralizedMandelbrotKernel) kernel).getExponent();
+            for (double y = -2.513; y <= 2.5; y += 0.1) {
+                for (double x = -2.517; x <= 2.5; x += 0.1) {
+                    assertEquals(exponent + ": " + x + ", " + y,
+                            generalizedMandelbrotShader(x, y, exponent, MAX_ITERATIONS),
+                            kernel.iterate(x, y, MAX_ITERATIONS));
+                }
+            }
+        }
+        CollatzKernel collatz = new CollatzKernel();
+        for (double y = -3.013; y <= 3; y += 0.1) {
+            for (double x = -6.017; x <= 1; x += 0.1) {
+                // The shader leaves 0 for orbits that stay bounded
+                assertEquals(x + ", " + y, collatzShader(x, y, MAX_ITERATIONS),
+                        collatz.iterate(x, y, MAX_ITERATIONS) % MAX_ITERATIONS);
+            }
+        }
+    }
+
+    /**
+     * Loop of generalized_mandelbrot_fragment.glsl, which counts a step before checking it
+     */
+    private static int generalizedMandelbrotShader(double cr, double ci, double exponent,
+                                                   int iterations) {
+        double zr = cr;
+        double zi = ci;
+        int j = 0;
+        for (int i = 0; i < iterations; i++) {
+            j++;
+            double modulus = Math.exp(0.5 * exponent * Math.log(zr * zr + zi * zi));
+            double angle = exponent * Math.atan2(zi, zr);
+            double nr = modulus * Math.cos(angle) + cr;
+            double ni = modulus * Math.sin(angle) + ci;
+            if (nr * nr + ni * ni > 4) {
+                break;
+            }
+            zr = nr;
+            zi = ni;
+        }
+        return j;
+    }
+
+    /**
+     * Loop of collatz_fragment.glsl, which checks z before each step
+     */
+    private static int collatzShader(double zr, double zi, int iterations) {
+        for (int i = 0; i <= iterations; i++) {
+            if (Math.hypot(zr, zi) > CollatzKernel.ESCAPE_RADIUS) {
+                return i;
+            }
+            double e = Math.exp(Math.PI * zi);
+            double cosR = Math.cos(Math.PI * zr) * (e + 1 / e) / 2;
+            double cosI = -Math.sin(Math.PI * zr) * (e - 1 / e) / 2;
+            double wr = 1 + 2 * zr;
+            double wi = 2 * zi;
+            double t = (1 + 4 * zr - (wr * cosR - wi * cosI)) / 4;
+            zi = (4 * zi - (wr * cosI + wi * cosR)) / 4;
+            zr = t;
+        }
+        return 0;
+    }
+
+    @Test
+    public void collatzMapExtendsTheIntegerOne() {
+        CollatzKernel kernel = new CollatzKernel();
+        assertOneStep(kernel, 3, 0, 5, 0);
+        assertOneStep(kernel, 4, 0, 2, 0);
+        assertOneStep(kernel, -5, 0, -7, 0);
+        // 1 -> 2 -> 1 never escapes, 27 starts beyond the escape radius
+        assertEquals(MAX_ITERATIONS, kernel.iterate(1, 0, MAX_ITERATIONS));
+        assertEquals(0, kernel.iterate(27, 0, MAX_ITERATIONS));
+        assertTrue(kernel.iterate(0.5, 0.5, MAX_ITERATIONS) < MAX_ITERATIONS);
+    }
+
+    @Test
+    public void magnetFormulasReduceForZeroConstant() {
+        // For k = 0 type 1 is ((z + 1) / 2)^2 and type 2 is ((z + 2) / 3)^2
+        assertOneStep(new MagnetKernel(1, 0, 0), 0.5, 0.5, 0.5, 0.375);
+        assertOneStep(new MagnetKernel(2, 0, 0), 0.5, 0.5, 6.0 / 9, 2.5 / 9);
+        // Both settle on the fixed point 1 from below, it is parabolic for type 1
+        assertEquals(MAX_ITERATIONS, new MagnetKernel(1, 0, 0).iterate(0.9, 0, MAX_ITERATIONS));
+        assertEquals(MAX_ITERATIONS, new MagnetKernel(2, 0, 0).iterate(0.9, 0, MAX_ITERATIONS));
+        assertTrue(new MagnetKernel(1, 0, 0).iterate(1.9, 1.9, MAX_ITERATIONS) < MAX_ITERATIONS);
+        assertEquals(Symmetry.CONJUGATE, new MagnetKernel(2, 0.5, 0).getSymmetry());
+        assertEquals(Symmetry.NONE, new MagnetKernel(2, 0.5, 0.1).getSymmetry());
+    }
+
+    @Test
+    public void orbitsContinueWhereTheyStopped() {
+        EscapeTimeKernel[] kernels = {new GeneralizedMandelbrotKernel(3),
+                new GeneralizedMandelbrotKernel(2.5), new CollatzKernel(),
+                new MagnetKernel(1, 0.2, 0.1), new MagnetKernel(2, 0, 0)};
+        double[] orbit = new double[2];
+        for (EscapeTimeKernel kernel : kernels) {
+            for (double y = -1.5; y <= 1.5; y += 0.1) {
+                for (double x = -1.5; x <= 1.5; x += 0.1) {
+                    RenderStats stats = new RenderStats();
+                    int half = kernel.continueOrbit(x, y, orbit, 0, 0, MAX_ITERATIONS / 2,
+                            stats);
+                    // An orbit that settled is known to stay bounded
+                    boolean settled = Double.isNaN(orbit[0]);
+                    int whole = (half < MAX_ITERATIONS / 2) ? half : settled ? MAX_ITERATIONS
+                            : kernel.continueOrbit(x, y, orbit, 0, half, MAX_ITERATIONS, stats);
+                    assertEquals(kernel + " at " + x + ", " + y,
+                            kernel.iterate(x, y, MAX_ITERATIONS), whole);
+                    if (!settled) {
+                        assertEquals(whole, stats.getIterations());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertOneStep(EscapeTimeKernel kernel, double x, double y,
+                                      double expectedX, double expectedY) {
+        double[] orbit = new double[2];
+        assertEquals(1, kernel.continueOrbit(x, y, orbit, 0, 0, 1, new RenderStats()));
+        assertEquals(expectedX, orbit[0], 1e-9);
+        assertEquals(expectedY, orbit[1], 1e-9);
+    }
+}
@@ -0,0 +1,65 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EscapeTimeRendererTest {
+    private static final int WIDTH = 101;
+    private static final int HEIGHT = 67;
+    private static final int MAX_ITERATIONS = 100;
+    private static final Viewport VIEWPORT = new Viewport(-2, -1.25, 0.5, 1.25);
+
+    private static int[] renderSequentially(EscapeTimeKernel kernel) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        double dx = VIEWPORT.getPixelWidth(WIDTH);
+        double dy = VIEWPORT.getPixelHeight(HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float value = kernel.iterateSmooth(VIEWPORT.getLeft() + x * dx,
+                        VIEWPORT.getTop() + y * dy, MAX_ITERATIONS, new RenderStats());
+                pixels[y * WIDTH + x] = EscapeTimeRenderer.color(value, MAX_ITERATIONS, null);
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void mandelbrotKernel() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        assertEquals(MAX_ITERATIONS, kernel.iterate(0, 0, MAX_ITERATIONS));
+        assertEquals(MAX_ITERATIONS, kernel.iterate(-1, 0, MAX_ITERATIONS));
+        assertEquals(1, kernel.iterate(2, 2, MAX_ITERATIONS));
+    }
+
+    @Test
+    public void tiledRenderMatchesSequential() {
+        EscapeTimeKernel kernel = new MandelbrotKernel();
+        int[] pixels = new int[WIDTH * HEIGHT];
+        new EscapeTimeRenderer(kernel).render(pixels, WIDTH, HEIGHT, VIEWPORT, MAX_ITERATIONS, null);
+        assertArrayEquals(renderSequentially(kernel), pixels);
+    }
+
+    @Test
+    public void partialRenderLeavesOtherPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(pixels, WIDTH, HEIGHT, VIEWPORT,
+                MAX_ITERATIONS, null, 10, 20, 50, 40);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = (x >= 10) && (x < 50) && (y >= 20) && (y < 40);
+                assertTrue(inside == (pixels[y * WIDTH + x] != 0));
+            }
+        }
+    }
+
+    @Test
+    public void paletteColor() {
+        int[] palette = {1, 2, 3, 4};
+        assertEquals(1, EscapeTimeRenderer.color(MAX_ITERATIONS, MAX_ITERATIONS, palette));
+        assertEquals(1, EscapeTimeRenderer.color(0, MAX_ITERATIONS, palette));
+        assertEquals(4, EscapeTimeRenderer.color(MAX_ITERATIONS - 1, MAX_ITERATIONS, palette));
+    }
+}
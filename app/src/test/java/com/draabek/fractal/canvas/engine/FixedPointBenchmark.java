@@ -0,0 +1,57 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Time of a reference orbit in {@link FixedPoint} against the same orbit in BigDecimal.
+ * Runs only when asked for:
+ * <pre>
+ * ./gradlew testDebugUnitTest --tests '*FixedPointBenchmark' -Dbenchmarks=true
+ * </pre>
+ */
+public class FixedPointBenchmark {
+    /** Runs before timing, for the JIT to compile the loops */
+    private static final int WARM_UP = 3;
+    /** Runs timed, the best one counts */
+    private static final int RUNS = 5;
+
+    @Test
+    public void fasterThanBigDecimal() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        BigDecimal cx = new BigDecimal("-0.740721003002960394789804");
+        BigDecimal cy = new BigDecimal("0.133020001701132501800185");
+        int iterations = 2000;
+        int fractionBits = 256;
+        MathContext mc = new MathContext((int) Math.ceil(fractionBits * Math.log10(2)) + 2);
+        long fixedTime = Long.MAX_VALUE;
+        long decimalTime = Long.MAX_VALUE;
+        for (int run = 0; run < WARM_UP + RUNS; run++) {
+            long start = System.nanoTime();
+            ReferenceOrbit.compute(cx, cy, iterations, fractionBits);
+            long fixed = System.nanoTime() - start;
+            start = System.nanoTime();
+            BigDecimal zr = BigDecimal.ZERO;
+            BigDecimal zi = BigDecimal.ZERO;
+            for (int n = 0; n < iterations; n++) {
+                BigDecimal zr2 = zr.multiply(zr, mc);
+                BigDecimal zi2 = zi.multiply(zi, mc);
+                BigDecimal product = zr.multiply(zi, mc);
+                zi = product.add(product).add(cy, mc);
+                zr = zr2.subtract(zi2).add(cx, mc);
+            }
+            long decimal = System.nanoTime() - start;
+            if (run >= WARM_UP) {
+                fixedTime = Math.min(fixedTime, fixed);
+                decimalTime = Math.min(decimalTime, decimal);
+            }
+        }
+        assertTrue("FixedPoint " + fixedTime + " ns, BigDecimal " + decimalTime + " ns",
+                fixedTime < decimalTime);
+    }
+}
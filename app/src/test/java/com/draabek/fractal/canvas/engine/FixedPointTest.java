@@ -0,0 +1,127 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FixedPointTest {
+    private static final int LIMBS = 5;
+    /** Truncation error of a single operation, a few units of the last limb */
+    private static final BigDecimal TOLERANCE = new BigDecimal(
+            Math.scalb(4.0, -FixedPoint.LIMB_BITS * (LIMBS - 1)));
+
+    private static BigDecimal random(Random random) {
+        StringBuilder digits = new StringBuilder(random.nextBoolean() ? "-" : "");
+        digits.append(random.nextInt(2)).append('.');
+        for (int i = 0; i < 40; i++) {
+            digits.append(random.nextInt(10));
+        }
+        return new BigDecimal(digits.toString());
+    }
+
+    private static void assertClose(BigDecimal expected, FixedPoint actual) {
+        BigDecimal error = expected.subtract(actual.toBigDecimal()).abs();
+        assertTrue(expected + " != " + actual, error.compareTo(TOLERANCE) <= 0);
+    }
+
+    @Test
+    public void arithmeticMatchesBigDecimal() {
+        Random random = new Random(1);
+        FixedPoint a = new FixedPoint(LIMBS);
+        FixedPoint b = new FixedPoint(LIMBS);
+        FixedPoint result = new FixedPoint(LIMBS);
+        for (int i = 0; i < 1000; i++) {
+            BigDecimal x = random(random);
+            BigDecimal y = random(random);
+            assertClose(x, a.set(x));
+            b.set(y);
+            // Compare against the truncated operands
+            x = a.toBigDecimal();
+            y = b.toBigDecimal();
+            assertClose(x.add(y), result.add(a, b));
+            assertClose(x.subtract(y), result.subtract(a, b));
+            assertClose(x.multiply(y), result.multiply(a, b));
+            assertClose(x.multiply(x), result.square(a));
+            assertClose(x.multiply(y).add(y), result.multiplyAdd(a, b, b));
+            assertClose(x.multiply(x).add(y), result.squareAdd(a, b));
+            // The fused operations only save carry passes, the result is the same
+            FixedPoint unfused = new FixedPoint(LIMBS);
+            assertEquals(unfused.multiply(a, b).add(unfused, b).toBigDecimal(),
+                    result.multiplyAdd(a, b, b).toBigDecimal());
+            assertEquals(unfused.square(a).add(unfused, b).toBigDecimal(),
+                    result.squareAdd(a, b).toBigDecimal());
+            assertClose(x.add(x), result.set(a).twice());
+            assertEquals(x.doubleValue(), a.doubleValue(), Math.ulp(x.doubleValue()) * 2);
+        }
+    }
+
+    @Test
+    public void operandsMayAlias() {
+        FixedPoint a = new FixedPoint(LIMBS).set(-1.5);
+        a.multiply(a, a);
+        assertEquals(2.25, a.doubleValue(), 0);
+        a.subtract(a, a);
+        assertTrue(a.isZero());
+        a.set(0.75).add(a, a);
+        assertEquals(1.5, a.doubleValue(), 0);
+    }
+
+    @Test
+    public void limbsCoverViewport() {
+        PreciseViewport viewport = new PreciseViewport(BigDecimal.ZERO, BigDecimal.ZERO, 1e-40);
+        int bits = viewport.getFractionBits();
+        assertTrue(bits + " bits", Math.scalb(1.0, -bits) < 1e-40 / (1L << 30));
+        assertTrue(FixedPoint.limbsForBits(bits) * FixedPoint.LIMB_BITS > bits + FixedPoint.LIMB_BITS);
+    }
+
+    @Test
+    public void orbitMatchesBigDecimal() {
+        BigDecimal cx = new BigDecimal("-0.740721003002960394789804");
+        BigDecimal cy = new BigDecimal("0.133020001701132501800185");
+        int maxIterations = 3000;
+        MathContext mc = new MathContext(60);
+        ReferenceOrbit orbit = ReferenceOrbit.compute(cx, cy, maxIterations, 200);
+        BigDecimal zr = BigDecimal.ZERO;
+        BigDecimal zi = BigDecimal.ZERO;
+        for (int n = 1; n < orbit.getLength(); n++) {
+            BigDecimal zr2 = zr.multiply(zr, mc);
+            BigDecimal zi2 = zi.multiply(zi, mc);
+            BigDecimal product = zr.multiply(zi, mc);
+            zi = product.add(product).add(cy, mc);
+            zr = zr2.subtract(zi2).add(cx, mc);
+            assertEquals(zr.doubleValue(), orbit.getRe()[n], 1e-12);
+            assertEquals(zi.doubleValue(), orbit.getIm()[n], 1e-12);
+        }
+    }
+
+    @Test
+    public void kernelsMatchDoubleDouble() {
+        Formula[] formulas = Formula.values();
+        RenderStats stats = new RenderStats();
+        int limbCount = FixedPoint.limbsForBits(128);
+        FixedPointKernel.Workspace workspace = new FixedPointKernel.Workspace(limbCount);
+        FixedPoint x = new FixedPoint(limbCount);
+        FixedPoint y = new FixedPoint(limbCount);
+        for (Formula formula : formulas) {
+            FixedPointKernel kernel = new FixedPointKernel(formula, -0.8, 0.156);
+            DoubleDoubleKernel reference = new DoubleDoubleKernel(formula, -0.8, 0.156);
+            int different = 0;
+            for (int py = 0; py < 40; py++) {
+                for (int px = 0; px < 40; px++) {
+                    double cx = -2 + px * 0.0625;
+                    double cy = -1.25 + py * 0.0625;
+                    if (kernel.iterate(x.set(cx), y.set(cy), 100, workspace, stats)
+                            != reference.iterate(cx, 0, cy, 0, 100, stats)) {
+                        different++;
+                    }
+                }
+            }
+            assertTrue(formula + ": " + different + " differ", different <= 4);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlameRendererTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 64;
+    private static final Viewport UNIT_SQUARE = new Viewport(0, 0, 1, 1);
+
+    @Test
+    public void sierpinskiTriangle() {
+        FlameRenderer renderer = new FlameRenderer(sierpinski(), WIDTH, HEIGHT, UNIT_SQUARE, 2,
+                FlameRenderer.DEFAULT_GAMMA);
+        renderer.accumulate(200000);
+        renderer.accumulate(34567);
+        assertEquals(234567, renderer.getPoints());
+        long total = 0;
+        int cells = 2 * WIDTH;
+        for (int cy = 0; cy < cells; cy++) {
+            for (int cx = 0; cx < cells; cx++) {
+                long count = renderer.getDensity(cy * cells + cx);
+                total += count;
+                double x = (cx + 0.5) / cells;
+                double y = (cy + 0.5) / cells;
+                // Outside of the triangle or in its central hole, away from the edges
+                boolean empty = (x + y > 1.02)
+                        || ((x < 0.48) && (y < 0.48) && (x + y > 0.52));
+                if (empty) {
+                    assertEquals("Cell " + cx + ", " + cy, 0, count);
+                }
+            }
+        }
+        assertEquals(234567, total);
+    }
+
+    @Test
+    public void resultDoesNotDependOnSlices() {
+        FlameRenderer whole = new FlameRenderer(sierpinski(), WIDTH, HEIGHT, UNIT_SQUARE, 1,
+                FlameRenderer.DEFAULT_GAMMA);
+        FlameRenderer sliced = new FlameRenderer(sierpinski(), WIDTH, HEIGHT, UNIT_SQUARE, 1,
+                FlameRenderer.DEFAULT_GAMMA);
+        int slice = 1000 * whole.getStreams();
+        whole.accumulate(10L * slice);
+        for (int i = 0; i < 10; i++) {
+            sliced.accumulate(slice);
+        }
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals("Cell " + i, whole.getDensity(i), sliced.getDensity(i));
+            assertEquals("Cell " + i, whole.getHue(i), sliced.getHue(i));
+        }
+    }
+
+    @Test
+    public void colorsFollowTheTransforms() {
+        FlameRenderer renderer = new FlameRenderer(sierpinski(), WIDTH, HEIGHT, UNIT_SQUARE, 1,
+                FlameRenderer.DEFAULT_GAMMA);
+        renderer.accumulate(100000);
+        // The corner at the origin is reached through the transform of color 0
+        int corner = 1;
+        assertTrue(renderer.getDensity(corner) > 0);
+        assertTrue(renderer.getHue(corner)
+                < 0.1 * FlameRenderer.COLOR_ONE * renderer.getDensity(corner));
+        // The corner at (1, 0) through the one of color 1
+        int right = WIDTH - 2;
+        assertTrue(renderer.getDensity(right) > 0);
+        assertTrue(renderer.getHue(right)
+                > 0.9 * FlameRenderer.COLOR_ONE * renderer.getDensity(right));
+    }
+
+    @Test
+    public void tonemapAveragesTheCells() {
+        FlameRenderer renderer = new FlameRenderer(sierpinski(), WIDTH, HEIGHT, UNIT_SQUARE, 2,
+                FlameRenderer.DEFAULT_GAMMA);
+        renderer.accumulate(100000);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        renderer.tonemap(pixels, null, 0);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                long hits = 0;
+                for (int sy = 0; sy < 2; sy++) {
+                    for (int sx = 0; sx < 2; sx++) {
+                        hits += renderer.getDensity((2 * y + sy) * 2 * WIDTH + 2 * x + sx);
+                    }
+                }
+                int pixel = pixels[y * WIDTH + x];
+                assertEquals(0xff000000, pixel & 0xff000000);
+                if (hits == 0) {
+                    assertEquals(0xff000000, pixel);
+                }
+            }
+        }
+        // The transform of color 0 gives gray 0 without a palette, the others are visible
+        assertTrue(pixels[(HEIGHT / 2) * WIDTH + 2] != 0xff000000);
+    }
+
+    @Test
+    public void parametersDefineTheTransforms() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put("points", 10f);
+        parameters.put("xform0.weight", 2f);
+        parameters.put("xform0.c", 0.5f);
+        parameters.put("xform1.weight", 1f);
+        parameters.put("xform1.color", 0.25f);
+        parameters.put("xform1.spherical", 1f);
+        parameters.put("xform3.weight", 1f);
+        FlameTransform[] transforms = FlameTransform.fromParameters(parameters);
+        assertEquals(2, transforms.length);
+        assertEquals(2, transforms[0].getWeight(), 0);
+        assertEquals(0, transforms[0].getColor(), 0);
+        assertEquals(0.25, transforms[1].getColor(), 1e-7);
+        double[] point = {1, 2, 1};
+        // Identity affine map with a linear variation
+        transforms[0].apply(point, new Random(0));
+        assertEquals(1.5, point[0], 1e-12);
+        assertEquals(2, point[1], 1e-12);
+        assertEquals(0.5, point[2], 1e-12);
+        point = new double[]{1, 2, 0};
+        transforms[1].apply(point, new Random(0));
+        assertEquals(0.2, point[0], 1e-9);
+        assertEquals(0.4, point[1], 1e-9);
+        assertEquals(0.125, point[2], 1e-12);
+    }
+
+    @Test
+    public void variationsFollowTheirFormulas() {
+        double x = 0.3;
+        double y = -0.4;
+        double r2 = x * x + y * y;
+        double[] point = apply(FlameVariation.SWIRL, x, y);
+        assertEquals(x * Math.sin(r2) - y * Math.cos(r2), point[0], 1e-9);
+        assertEquals(x * Math.cos(r2) + y * Math.sin(r2), point[1], 1e-9);
+        point = apply(FlameVariation.POLAR, x, y);
+        assertEquals(Math.atan2(x, y) / Math.PI, point[0], 1e-9);
+        assertEquals(Math.sqrt(r2) - 1, point[1], 1e-9);
+        point = apply(FlameVariation.JULIA, x, y);
+        assertEquals(Math.sqrt(Math.sqrt(r2)), Math.hypot(point[0], point[1]), 1e-9);
+        point = apply(FlameVariation.BENT, x, y);
+        assertEquals(x, point[0], 1e-12);
+        assertEquals(y / 2, point[1], 1e-12);
+    }
+
+    private static double[] apply(FlameVariation variation, double x, double y) {
+        FlameTransform transform = new FlameTransform(new double[]{1, 0, 0, 0, 1, 0}, 1, 0,
+                new FlameVariation[]{variation}, new double[]{1});
+        double[] point = {x, y, 0};
+        transform.apply(point, new Random(0));
+        return point;
+    }
+
+    /**
+     * @return Maps halving the plane towards (0, 0), (1, 0) and (0, 1), colored 0, 1 and 0.5
+     */
+    private static FlameTransform[] sierpinski() {
+        FlameVariation[] linear = {FlameVariation.LINEAR};
+        double[] one = {1};
+        return new FlameTransform[]{
+                new FlameTransform(new double[]{0.5, 0, 0, 0, 0.5, 0}, 1, 0, linear, one),
+                new FlameTransform(new double[]{0.5, 0, 0.5, 0, 0.5, 0}, 1, 1, linear, one),
+                new FlameTransform(new double[]{0.5, 0, 0, 0, 0.5, 0.5}, 1, 0.5, linear, one)};
+    }
+}
@@ -0,0 +1,76 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramColorizerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int MAX_ITERATIONS = 1000;
+    /** Deep enough that the counts crowd into a narrow part of the range */
+    private static final Viewport VIEWPORT = new Viewport(-0.7460, 0.1120, -0.7445, 0.1131);
+    private static final int[] PALETTE = {0xff000000, 0xffff0000, 0xff00ff00, 0xff0000ff};
+
+    @Test
+    public void histogramCountsEscapedPixels() {
+        IterationBuffer buffer = render();
+        int[] bins = HistogramColorizer.histogram(buffer);
+        int[] expected = new int[MAX_ITERATIONS + 1];
+        int escaped = 0;
+        for (float value : buffer.getValues()) {
+            if (value < MAX_ITERATIONS) {
+                expected[(int) value]++;
+                escaped++;
+            }
+        }
+        for (int i = 0; i <= MAX_ITERATIONS; i++) {
+            assertEquals("Bin " + i, expected[i], bins[i]);
+        }
+        int[] cumulative = HistogramColorizer.cumulate(bins);
+        assertEquals(escaped, cumulative[MAX_ITERATIONS]);
+        assertEquals(0, cumulative[0]);
+    }
+
+    @Test
+    public void equalizedColorsShareEscapedPixels() {
+        IterationBuffer buffer = render();
+        int[] pixels = new int[WIDTH * HEIGHT];
+        HistogramColorizer.colorize(buffer, pixels, PALETTE, 0);
+        int[] linearPixels = new int[WIDTH * HEIGHT];
+        Colorizer.colorize(buffer, linearPixels, PALETTE, 0);
+        int[] shares = new int[PALETTE.length];
+        int[] linearShares = new int[PALETTE.length];
+        int escaped = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if (buffer.getValues()[i] >= MAX_ITERATIONS) {
+                assertEquals(PALETTE[0], pixels[i]);
+                continue;
+            }
+            escaped++;
+            shares[indexOf(pixels[i])]++;
+            linearShares[indexOf(linearPixels[i])]++;
+        }
+        for (int share : shares) {
+            assertTrue(share + " of " + escaped, (share > escaped / 8) && (share < escaped / 2));
+        }
+        // The linear mapping puts most of this view into the first band
+        assertTrue(linearShares[0] > escaped * 3 / 4);
+    }
+
+    private static IterationBuffer render() {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(buffer, VIEWPORT, MAX_ITERATIONS);
+        return buffer;
+    }
+
+    private static int indexOf(int color) {
+        for (int i = 0; i < PALETTE.length; i++) {
+            if (PALETTE[i] == color) {
+                return i;
+            }
+        }
+        throw new AssertionError("Not a palette color: " + Integer.toHexString(color));
+    }
+}
@@ -0,0 +1,96 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InverseJuliaRendererTest {
+    private static final int SIZE = 128;
+    private static final Viewport SQUARE = new Viewport(-1.5, -1.5, 1.5, 1.5);
+    private static final int MAX_HITS = 4;
+
+    @Test
+    public void fixedPointIsRepelling() {
+        double[][] constants = {{0, 0}, {-0.8, 0.15}, {-0.122565, 0.744864}, {0.3, 0.5},
+                {-2, 0}};
+        for (double[] k : constants) {
+            double[] z = InverseJuliaRenderer.getRepellingFixedPoint(k[0], k[1]);
+            assertEquals(z[0], z[0] * z[0] - z[1] * z[1] + k[0], 1e-12);
+            assertEquals(z[1], 2 * z[0] * z[1] + k[1], 1e-12);
+            assertTrue(2 * Math.hypot(z[0], z[1]) >= 1);
+        }
+    }
+
+    @Test
+    public void unitCircle() {
+        InverseJuliaRenderer renderer = new InverseJuliaRenderer(0, 0, SIZE, SIZE, SQUARE,
+                MAX_HITS);
+        renderer.accumulate(Long.MAX_VALUE);
+        assertTrue(renderer.isFinished());
+        int[] density = renderer.getDensity();
+        double pixel = SQUARE.getPixelWidth(SIZE);
+        int circle = 0;
+        int hit = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                double r = Math.hypot(SQUARE.getLeft() + (x + 0.5) * pixel,
+                        SQUARE.getTop() + (y + 0.5) * pixel);
+                int hits = density[y * SIZE + x];
+                assertTrue(hits <= MAX_HITS);
+                if (hits > 0) {
+                    hit++;
+                    assertTrue("Pixel " + x + ", " + y, Math.abs(r - 1) < pixel);
+                }
+                if (Math.abs(r - 1) < pixel / 4) {
+                    circle++;
+                    assertTrue("Pixel " + x + ", " + y, hits > 0);
+                }
+            }
+        }
+        assertTrue(circle > 0);
+        assertTrue(hit < SIZE * SIZE / 10);
+    }
+
+    @Test
+    public void everyPointIsCountedOrPruned() {
+        // The whole set is in the frame, every point passed on counts a hit of its pixel
+        InverseJuliaRenderer renderer = new InverseJuliaRenderer(-0.8, 0.15, SIZE, SIZE,
+                new Viewport(-2, -2, 2, 2), MAX_HITS);
+        renderer.accumulate(Long.MAX_VALUE);
+        long passed = 0;
+        for (int hits : renderer.getDensity()) {
+            passed += hits;
+        }
+        assertTrue(passed > 0);
+        // The fixed point and two preimages of each point passed on
+        assertEquals(1 + 2 * passed, renderer.getPoints());
+        assertEquals(renderer.getPoints(), renderer.getIterations());
+    }
+
+    @Test
+    public void slicesEndWithTheWalk() {
+        InverseJuliaRenderer renderer = new InverseJuliaRenderer(-0.122565, 0.744864, SIZE,
+                SIZE, SQUARE, MAX_HITS);
+        int slices = 0;
+        while (!renderer.isFinished()) {
+            long before = renderer.getPoints();
+            renderer.accumulate(1000);
+            assertTrue(renderer.getPoints() - before <= 1000);
+            slices++;
+        }
+        assertTrue(slices > 1);
+        long points = renderer.getPoints();
+        renderer.accumulate(1000);
+        assertEquals(points, renderer.getPoints());
+        int[] pixels = new int[SIZE * SIZE];
+        renderer.tonemap(pixels, null, 0);
+        int lit = 0;
+        for (int pixel : pixels) {
+            if (pixel != 0xff000000) {
+                lit++;
+            }
+        }
+        assertTrue(lit > SIZE);
+    }
+}
@@ -0,0 +1,63 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IterationTunerTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final IterationTuner TUNER = new IterationTuner(new MandelbrotKernel(),
+            new DoubleDoubleKernel(Formula.MANDELBROT), null);
+
+    @Test
+    public void deeperZoomsNeedMoreIterations() {
+        int shallow = TUNER.tune(new PreciseViewport(new BigDecimal("-0.5"), BigDecimal.ZERO,
+                3.0 / HEIGHT), WIDTH, HEIGHT, 16, 65535);
+        int deep = TUNER.tune(new PreciseViewport(new BigDecimal("-0.743643887037151"),
+                new BigDecimal("0.131825904205330"), 1e-10), WIDTH, HEIGHT, 16, 65535);
+        assertTrue("Shallow view tuned to " + shallow, (shallow >= 16) && (shallow <= 1024));
+        assertTrue("Deep view tuned to " + deep + ", shallow to " + shallow, deep > 2 * shallow);
+        assertTrue(deep <= 65535);
+    }
+
+    @Test
+    public void limitsAreClamped() {
+        PreciseViewport viewport = new PreciseViewport(new BigDecimal("-0.743643887037151"),
+                new BigDecimal("0.131825904205330"), 1e-10);
+        assertEquals(300, TUNER.tune(viewport, WIDTH, HEIGHT, 16, 300));
+        assertEquals(5000, TUNER.tune(new PreciseViewport(new BigDecimal("-0.5"),
+                BigDecimal.ZERO, 3.0 / HEIGHT), WIDTH, HEIGHT, 5000, 65535));
+    }
+
+    @Test
+    public void tunedLimitResolvesProbe() {
+        PreciseViewport viewport = new PreciseViewport(new BigDecimal("-0.7453"),
+                new BigDecimal("0.1127"), 1e-6);
+        int limit = TUNER.tune(viewport, WIDTH, HEIGHT, 16, 65535);
+        IterationBuffer probe = new IterationBuffer(64, 48);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(probe,
+                new PreciseViewport(viewport.getCenterX(), viewport.getCenterY(),
+                        viewport.getPixelSize() * 5).toViewport(64, 48), 4 * limit);
+        int late = 0;
+        for (float value : probe.getValues()) {
+            if ((value >= limit) && (value < 4 * limit)) {
+                late++;
+            }
+        }
+        assertTrue(late + " probe pixels escape after " + limit, late <= 3);
+    }
+
+    @Test
+    public void lowestLimitSkipsAllowedOutliers() {
+        IterationBuffer buffer = new IterationBuffer(4, 1);
+        buffer.setMaxIterations(1000);
+        System.arraycopy(new float[] {10, 20, 900, 1000}, 0, buffer.getValues(), 0, 4);
+        assertEquals(901, IterationTuner.lowestLimit(buffer, 0));
+        assertEquals(21, IterationTuner.lowestLimit(buffer, 1));
+        assertEquals(1, IterationTuner.lowestLimit(buffer, 3));
+    }
+}
@@ -0,0 +1,61 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MandelbrotKernelTest {
+    private static final int MAX_ITERATIONS = 1000;
+
+    /** Plain escape-time loop without any shortcuts */
+    private static int bruteForce(double x, double y, int maxIterations) {
+        double zr = 0;
+        double zi = 0;
+        int i = 0;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4.0)) {
+            double t = zr * zr - zi * zi + x;
+            zi = 2 * zr * zi + y;
+            zr = t;
+            i++;
+        }
+        return i;
+    }
+
+    @Test
+    public void mainBulbs() {
+        assertTrue(MandelbrotKernel.isInMainBulbs(0, 0));
+        assertTrue(MandelbrotKernel.isInMainBulbs(-1, 0));
+        assertTrue(MandelbrotKernel.isInMainBulbs(0.2, 0.3));
+        assertFalse(MandelbrotKernel.isInMainBulbs(0.3, 0));
+        assertFalse(MandelbrotKernel.isInMainBulbs(-1.3, 0));
+        assertFalse(MandelbrotKernel.isInMainBulbs(-0.1, 0.9));
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        for (double y = -1.2; y <= 1.2; y += 0.0371) {
+            for (double x = -2.1; x <= 0.6; x += 0.0413) {
+                assertEquals(bruteForce(x, y, MAX_ITERATIONS), kernel.iterate(x, y, MAX_ITERATIONS));
+            }
+        }
+    }
+
+    @Test
+    public void statistics() {
+        MandelbrotKernel kernel = new MandelbrotKernel();
+        RenderStats stats = new RenderStats();
+        // cardioid
+        kernel.iterate(0, 0, MAX_ITERATIONS, stats);
+        // period 3 bulb, outside the cardioid, caught by the cycle check
+        kernel.iterate(-0.122, 0.745, MAX_ITERATIONS, stats);
+        // escapes after one iteration
+        kernel.iterate(2, 2, MAX_ITERATIONS, stats);
+        assertEquals(3, stats.getPixels());
+        assertEquals(1, stats.getBulbPixels());
+        assertEquals(1, stats.getPeriodicPixels());
+        assertTrue(stats.getSavedIterations() > MAX_ITERATIONS);
+    }
+}
@@ -0,0 +1,64 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MarianiSilverRendererTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 160;
+    private static final int MAX_ITERATIONS = 500;
+
+    @Test
+    public void matchesBruteForceAndSkipsInterior() {
+        long evaluated = assertMatchesBruteForce(new MandelbrotKernel(),
+                new Viewport(-2, -1, 1, 1));
+        assertTrue("Evaluated " + evaluated + " pixels", evaluated < WIDTH * HEIGHT * 3 / 4);
+    }
+
+    @Test
+    public void matchesBruteForceAlongFilaments() {
+        // Seahorse valley and the antenna left of the period-2 bulb, where filaments escape
+        // between pixels bordering rectangles inside the set
+        assertMatchesBruteForce(new MandelbrotKernel(),
+                new Viewport(-0.753, 0.0735, -0.7455, 0.0785));
+        assertMatchesBruteForce(new MandelbrotKernel(),
+                new Viewport(-1.4, -0.06, -1.2, 0.0733));
+        assertMatchesBruteForce(new JuliaKernel(-0.8, 0.156),
+                new Viewport(-1.6, -0.9, 1.6, 0.9));
+    }
+
+    @Test
+    public void onlyMandelbrotAndJuliaKernelsAreSubdivided() {
+        assertTrue(new MandelbrotKernel().hasConnectedLevelSets());
+        assertTrue(new JuliaKernel(-0.8, 0.156).hasConnectedLevelSets());
+        assertFalse(new BurningShipKernel().hasConnectedLevelSets());
+        assertFalse(new TricornKernel().hasConnectedLevelSets());
+        assertFalse(new CollatzKernel().hasConnectedLevelSets());
+        assertFalse(new GeneralizedMandelbrotKernel(3).hasConnectedLevelSets());
+        assertFalse(new MagnetKernel(1, 0, 0).hasConnectedLevelSets());
+    }
+
+    /**
+     * @return Number of pixels the subdivision evaluated
+     */
+    private static long assertMatchesBruteForce(EscapeTimeKernel kernel, Viewport viewport) {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        long evaluated = new MarianiSilverRenderer(kernel).render(buffer, viewport,
+                MAX_ITERATIONS).getPixels();
+        // Subdivision keeps whole counts
+        double dx = viewport.getPixelWidth(WIDTH);
+        double dy = viewport.getPixelHeight(HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = kernel.iterate(viewport.getLeft() + x * dx,
+                        viewport.getTop() + y * dy, MAX_ITERATIONS);
+                assertEquals("Pixel " + x + ", " + y, expected,
+                        buffer.getValues()[y * WIDTH + x], 0);
+            }
+        }
+        return evaluated;
+    }
+}
@@ -0,0 +1,71 @@
+package com.draabek.fractal.canvas.engine;
+
+import com.draabek.fractal.fractal.Symmetry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MirrorMapTest {
+    private static final int MAX_ITERATIONS = 200;
+
+    /** Renders without symmetry by going through the region overload */
+    private static int[] renderDirectly(EscapeTimeKernel kernel, Viewport viewport,
+                                        int width, int height) {
+        int[] pixels = new int[width * height];
+        new EscapeTimeRenderer(kernel).render(pixels, width, height, viewport, MAX_ITERATIONS,
+                null, 0, 0, width, height);
+        return pixels;
+    }
+
+    @Test
+    public void conjugateHalvesCenteredView() {
+        Viewport viewport = new Viewport(-2, -1.2, 1, 1.2);
+        MirrorMap map = MirrorMap.create(Symmetry.CONJUGATE, viewport, 90, 60);
+        assertNotNull(map);
+        assertEquals(31, map.getTop());
+        assertEquals(60, map.getBottom());
+        int[] pixels = new int[90 * 60];
+        RenderStats stats = new EscapeTimeRenderer(new MandelbrotKernel()).render(pixels, 90, 60,
+                viewport, MAX_ITERATIONS, null);
+        assertEquals(29 * 90, stats.getMirroredPixels());
+        assertArrayEquals(renderDirectly(new MandelbrotKernel(), viewport, 90, 60), pixels);
+    }
+
+    @Test
+    public void conjugateOffCenter() {
+        // Axis at row 10 of 50, rows 11..20 mirror rows 9..0
+        Viewport viewport = new Viewport(-2, -0.5, 0.5, 2);
+        MirrorMap map = MirrorMap.create(Symmetry.CONJUGATE, viewport, 50, 50);
+        assertNotNull(map);
+        assertEquals(11, map.getTop());
+        assertEquals(21, map.getBottom());
+        int[] pixels = new int[50 * 50];
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(pixels, 50, 50, viewport,
+                MAX_ITERATIONS, null);
+        assertArrayEquals(renderDirectly(new MandelbrotKernel(), viewport, 50, 50), pixels);
+    }
+
+    @Test
+    public void rotationalJulia() {
+        Viewport viewport = new Viewport(-1.6, -1.0, 1.2, 1.0);
+        JuliaKernel kernel = new JuliaKernel(-0.8, 0.156);
+        int[] pixels = new int[70 * 50];
+        RenderStats stats = new EscapeTimeRenderer(kernel).render(pixels, 70, 50, viewport,
+                MAX_ITERATIONS, null);
+        assertEquals(true, stats.getMirroredPixels() > 0);
+        assertArrayEquals(renderDirectly(kernel, viewport, 70, 50), pixels);
+    }
+
+    @Test
+    public void misalignedAxis() {
+        assertNull(MirrorMap.create(Symmetry.CONJUGATE, 0, 30.5, 40, 40));
+        assertNull(MirrorMap.create(Symmetry.ROTATIONAL, 10.3, 30, 40, 40));
+        assertNull(MirrorMap.create(Symmetry.NONE, 0, 30, 40, 40));
+        // Axis above the frame
+        assertNull(MirrorMap.create(Symmetry.CONJUGATE, 0, -4, 40, 40));
+    }
+}
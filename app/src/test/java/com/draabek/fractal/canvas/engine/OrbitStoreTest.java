@@ -0,0 +1,78 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrbitStoreTest {
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    private static final Viewport VIEWPORT = new Viewport(-2, -1.25, 0.5, 1.25);
+
+    @Test
+    public void continuedMandelbrotMatchesDirectRender() {
+        assertContinuationMatches(new MandelbrotKernel(), VIEWPORT);
+    }
+
+    @Test
+    public void continuedJuliaMatchesDirectRender() {
+        assertContinuationMatches(new JuliaKernel(-0.8, 0.156),
+                new Viewport(-1.6, -1, 1.6, 1));
+    }
+
+    @Test
+    public void progressiveRenderKeepsOrbits() {
+        EscapeTimeKernel kernel = new MandelbrotKernel();
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        OrbitStore orbits = new OrbitStore();
+        assertTrue(new ProgressiveRenderer(kernel).render(buffer, VIEWPORT, 50, orbits, null));
+        assertEquals(50, orbits.getMaxIterations());
+        new EscapeTimeRenderer(kernel).continueRender(buffer, VIEWPORT, 300, orbits);
+
+        IterationBuffer direct = new IterationBuffer(WIDTH, HEIGHT);
+        new EscapeTimeRenderer(kernel).render(direct, VIEWPORT, 300);
+        assertSameValues(direct, buffer);
+    }
+
+    @Test
+    public void lowerLimitIsRejected() {
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(new MandelbrotKernel());
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        OrbitStore orbits = new OrbitStore();
+        renderer.render(buffer, VIEWPORT, 100, orbits);
+        try {
+            renderer.continueRender(buffer, VIEWPORT, 100, orbits);
+            fail("Continued to the same limit");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(100, orbits.getMaxIterations());
+        }
+    }
+
+    private static void assertContinuationMatches(EscapeTimeKernel kernel, Viewport viewport) {
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(kernel);
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        OrbitStore orbits = new OrbitStore();
+        renderer.render(buffer, viewport, 40, orbits);
+        int unresolved = orbits.size();
+        assertTrue(unresolved > 0);
+        RenderStats stats = renderer.continueRender(buffer, viewport, 120, orbits);
+        // Only the stored pixels are iterated again
+        assertTrue(stats.getPixels() <= unresolved);
+        assertTrue(orbits.size() <= unresolved);
+        renderer.continueRender(buffer, viewport, 500, orbits);
+        assertEquals(500, buffer.getMaxIterations());
+        assertEquals(500, orbits.getMaxIterations());
+
+        IterationBuffer direct = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(direct, viewport, 500);
+        assertSameValues(direct, buffer);
+    }
+
+    private static void assertSameValues(IterationBuffer expected, IterationBuffer actual) {
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals("Pixel " + i, expected.getValues()[i], actual.getValues()[i], 0);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PanReprojectionTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 80;
+    private static final int MAX_ITERATIONS = 200;
+    private static final PreciseViewport VIEWPORT = new PreciseViewport(
+            new BigDecimal("-0.7435"), new BigDecimal("0.1314"), 1e-4);
+
+    @Test
+    public void shiftMovesContent() {
+        int[][] moves = {{0, 0}, {5, 0}, {-5, 0}, {0, 7}, {0, -7}, {13, -2},
+                {-WIDTH + 1, HEIGHT - 1}};
+        for (int[] move : moves) {
+            PanReprojection pan = new PanReprojection(WIDTH, HEIGHT, move[0], move[1]);
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = i;
+            }
+            pan.apply(pixels);
+            boolean[] exposed = new boolean[WIDTH * HEIGHT];
+            long exposedCount = 0;
+            for (int[] region : pan.getMissingRegions()) {
+                for (int y = region[1]; y < region[3]; y++) {
+                    for (int x = region[0]; x < region[2]; x++) {
+                        assertTrue("Regions overlap", !exposed[y * WIDTH + x]);
+                        exposed[y * WIDTH + x] = true;
+                        exposedCount++;
+                    }
+                }
+            }
+            assertEquals(pan.getMissingPixelCount(), exposedCount);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int sourceX = x - move[0];
+                    int sourceY = y - move[1];
+                    boolean inside = (sourceX >= 0) && (sourceX < WIDTH)
+                            && (sourceY >= 0) && (sourceY < HEIGHT);
+                    assertEquals(!inside, exposed[y * WIDTH + x]);
+                    if (inside) {
+                        assertEquals(sourceY * WIDTH + sourceX, pixels[y * WIDTH + x]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void betweenRecognizesWholePixelMoves() {
+        PanReprojection pan = PanReprojection.between(VIEWPORT, VIEWPORT.translate(12, -3),
+                WIDTH, HEIGHT);
+        assertNotNull(pan);
+        assertEquals(12, pan.getDx());
+        assertEquals(-3, pan.getDy());
+        assertNull(PanReprojection.between(VIEWPORT, VIEWPORT.translate(0.5, 0), WIDTH, HEIGHT));
+        assertNull(PanReprojection.between(VIEWPORT, VIEWPORT.translate(WIDTH, 0), WIDTH, HEIGHT));
+        assertNull(PanReprojection.between(VIEWPORT, VIEWPORT.zoom(2, 0, 0, WIDTH, HEIGHT),
+                WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void panMatchesFullRender() {
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(new MandelbrotKernel());
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(buffer, VIEWPORT.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS);
+        PreciseViewport moved = VIEWPORT.translate(-9, 4);
+        PanReprojection pan = PanReprojection.between(VIEWPORT, moved, WIDTH, HEIGHT);
+        pan.apply(buffer.getValues());
+        RenderStats stats = new RenderStats();
+        for (int[] region : pan.getMissingRegions()) {
+            stats.add(renderer.render(buffer, moved.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS,
+                    region[0], region[1], region[2], region[3]));
+        }
+        assertEquals(pan.getMissingPixelCount(), stats.getPixels());
+        assertTrue(pan.getMissingPixelCount() < WIDTH * HEIGHT / 5);
+
+        IterationBuffer full = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(full, moved.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS);
+        int different = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (buffer.getValues()[i] != full.getValues()[i]) {
+                different++;
+            }
+        }
+        // Coordinates of shifted pixels may differ from the full render in the last bit
+        assertTrue(different + " pixels differ", different <= WIDTH * HEIGHT / 1000);
+    }
+}
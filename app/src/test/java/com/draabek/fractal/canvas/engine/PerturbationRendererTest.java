@@ -0,0 +1,155 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerturbationRendererTest {
+    /** Close to the seahorse valley, the orbits there need many iterations */
+    private static final BigDecimal X = new BigDecimal("-0.743643887037158704752191506114774");
+    private static final BigDecimal Y = new BigDecimal("0.131825904205311970493132056385139");
+
+    /**
+     * Palette that maps every iteration count below the limit to itself
+     */
+    private static int[] identityPalette(int maxIterations) {
+        int[] palette = new int[maxIterations];
+        for (int i = 0; i < maxIterations; i++) {
+            palette[i] = i;
+        }
+        return palette;
+    }
+
+    /**
+     * @return Palette entry of the normalized count of the orbit iterated exactly
+     */
+    private static int iterateExactly(BigDecimal cx, BigDecimal cy, int maxIterations,
+                                      MathContext mc) {
+        BigDecimal zr = BigDecimal.ZERO;
+        BigDecimal zi = BigDecimal.ZERO;
+        BigDecimal four = BigDecimal.valueOf(4);
+        for (int i = 0; i < maxIterations; i++) {
+            BigDecimal zr2 = zr.multiply(zr, mc);
+            BigDecimal zi2 = zi.multiply(zi, mc);
+            if (zr2.add(zi2).compareTo(four) > 0) {
+                return (int) Formula.MANDELBROT.smooth(i, zr.doubleValue(), zi.doubleValue(),
+                        cx.doubleValue(), cy.doubleValue(), maxIterations);
+            }
+            BigDecimal product = zr.multiply(zi, mc);
+            zi = product.add(product).add(cy, mc);
+            zr = zr2.subtract(zi2).add(cx, mc);
+        }
+        return maxIterations;
+    }
+
+    @Test
+    public void matchesDoubleRenderWhenShallow() {
+        int width = 64;
+        int height = 48;
+        int maxIterations = 300;
+        int[] palette = identityPalette(maxIterations);
+        PreciseViewport viewport = new PreciseViewport(X, Y, 1e-4);
+        int[] expected = new int[width * height];
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(expected, width, height,
+                viewport.toViewport(width, height), maxIterations, palette, 0, 0, width, height);
+        int[] pixels = new int[width * height];
+        new PerturbationRenderer().render(pixels, width, height, viewport, maxIterations, palette);
+        int different = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] != expected[i]) {
+                different++;
+            }
+        }
+        assertTrue(different + " pixels differ", different <= pixels.length / 100);
+    }
+
+    @Test
+    public void deepZoomMatchesExactIteration() {
+        int width = 24;
+        int height = 24;
+        int maxIterations = 3000;
+        // Boundary point with plenty of detail at this depth
+        PreciseViewport viewport = new PreciseViewport(
+                new BigDecimal("-0.740721003002960394789804"),
+                new BigDecimal("0.133020001701132501800185"), 1e-26);
+        int[] pixels = new int[width * height];
+        PerturbationRenderer renderer = new PerturbationRenderer();
+        RenderStats stats = renderer.render(pixels, width, height, viewport, maxIterations,
+                identityPalette(maxIterations));
+        MathContext mc = viewport.getMathContext();
+        int different = 0;
+        int checked = 0;
+        int escaped = 0;
+        for (int y = 0; y < height; y += 3) {
+            for (int x = 0; x < width; x += 3) {
+                int exact = iterateExactly(viewport.getX(x, width), viewport.getY(y, height),
+                        maxIterations, mc) % maxIterations;
+                checked++;
+                if (pixels[y * width + x] != exact) {
+                    different++;
+                }
+                if (exact != 0) {
+                    escaped++;
+                }
+            }
+        }
+        assertTrue(escaped + " pixels escaped", escaped > checked / 4);
+        assertTrue(different + " of " + checked + " pixels differ", different <= checked / 20);
+        // Iterations close to the reference were skipped by the bilinear approximation
+        assertTrue(stats.toString(), stats.getSavedIterations() > 0);
+        assertEquals(renderer.getReferenceCount(), stats.getReferences());
+    }
+
+    @Test
+    public void zoomBeyondTenToTheHundredSkipsMostIterations() {
+        int width = 24;
+        int height = 24;
+        int maxIterations = 1000;
+        // c = i is a Misiurewicz point on the boundary, its spirals go on at any depth
+        PreciseViewport viewport = new PreciseViewport(BigDecimal.ZERO, BigDecimal.ONE, 1e-100);
+        int[] pixels = new int[width * height];
+        RenderStats stats = new PerturbationRenderer().render(pixels, width, height, viewport,
+                maxIterations, identityPalette(maxIterations));
+        MathContext mc = viewport.getMathContext();
+        int different = 0;
+        int checked = 0;
+        int escaped = 0;
+        for (int y = 1; y < height; y += 3) {
+            for (int x = 1; x < width; x += 3) {
+                int exact = iterateExactly(viewport.getX(x, width), viewport.getY(y, height),
+                        maxIterations, mc) % maxIterations;
+                checked++;
+                if (pixels[y * width + x] != exact) {
+                    different++;
+                }
+                if (exact != 0) {
+                    escaped++;
+                }
+            }
+        }
+        assertTrue(escaped + " pixels escaped", escaped > checked / 2);
+        assertTrue(different + " of " + checked + " pixels differ", different <= checked / 20);
+        // The orbits stay close to the reference for hundreds of iterations
+        assertTrue(stats.toString(), stats.getSavedIterations() > 4 * stats.getIterations());
+    }
+
+    @Test
+    public void zoomKeepsFocus() {
+        PreciseViewport viewport = new PreciseViewport(X, Y, 1e-20);
+        PreciseViewport zoomed = viewport.zoom(4, 10, 30, 100, 80);
+        assertEquals(2.5e-21, zoomed.getPixelSize(), 1e-35);
+        BigDecimal before = viewport.getX(10, 100);
+        BigDecimal after = zoomed.getX(10, 100);
+        assertTrue(before.subtract(after).abs().doubleValue() < 1e-26);
+        before = viewport.getY(30, 80);
+        after = zoomed.getY(30, 80);
+        assertTrue(before.subtract(after).abs().doubleValue() < 1e-26);
+        PreciseViewport moved = viewport.translate(5, -2);
+        assertEquals(viewport.getX(5, 100).doubleValue(), moved.getX(10, 100).doubleValue(),
+                1e-30);
+    }
+}
@@ -0,0 +1,101 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrecisionLadderRendererTest {
+    private static final BigDecimal X = new BigDecimal("-0.74072100300296039479");
+    private static final BigDecimal Y = new BigDecimal("0.13302000170113250180");
+
+    private static PrecisionLadderRenderer createRenderer() {
+        return new PrecisionLadderRenderer(new MandelbrotKernel(),
+                new DoubleDoubleKernel(Formula.MANDELBROT), new FixedPointKernel(Formula.MANDELBROT));
+    }
+
+    @Test
+    public void tiersFollowPixelSize() {
+        assertEquals(Precision.FLOAT, Precision.forMagnitude(1e-3, 2));
+        assertEquals(Precision.DOUBLE, Precision.forMagnitude(1e-9, 2));
+        assertEquals(Precision.DOUBLE_DOUBLE, Precision.forMagnitude(1e-20, 2));
+        assertEquals(Precision.ARBITRARY, Precision.forMagnitude(1e-40, 2));
+        // The same spacing needs more bits further from the origin
+        assertEquals(Precision.FLOAT, Precision.forMagnitude(1e-5, 1e-3));
+        assertEquals(Precision.DOUBLE, Precision.forMagnitude(1e-5, 1e3));
+        assertEquals(Precision.DOUBLE_DOUBLE, Precision.forMagnitude(1e-5, 1e10));
+    }
+
+    @Test
+    public void tilesPickTheirOwnTier() {
+        // Coordinates of the outer tiles reach 1, where the spacing of doubles doubles
+        double pixelSize = 0.75 * Precision.MIN_PIXEL_ULPS * Math.ulp(1.0);
+        PreciseViewport viewport = new PreciseViewport(new BigDecimal(1 - 100 * pixelSize),
+                BigDecimal.ZERO, pixelSize);
+        PrecisionLadderRenderer renderer = createRenderer();
+        assertEquals(Precision.DOUBLE_DOUBLE, renderer.getPrecision(viewport, 200, 16,
+                0, 0, 10, 16));
+        assertEquals(Precision.DOUBLE, renderer.getPrecision(viewport, 200, 16, 95, 0, 105, 16));
+        RenderStats stats = renderer.render(new int[200 * 16], 200, 16, viewport, 10, null);
+        assertEquals(Precision.DOUBLE_DOUBLE, stats.getPrecision());
+        assertTrue(stats.toString(), stats.getPrecisionPixels(Precision.DOUBLE) > 0);
+        assertEquals(200 * 16, stats.getPrecisionPixels(Precision.DOUBLE)
+                + stats.getPrecisionPixels(Precision.DOUBLE_DOUBLE));
+    }
+
+    @Test
+    public void missingKernelsFallBack() {
+        PrecisionLadderRenderer doubleOnly = new PrecisionLadderRenderer(new MandelbrotKernel(),
+                null, null);
+        assertEquals(Precision.DOUBLE, doubleOnly.getPrecision(new PreciseViewport(X, Y, 1e-30),
+                64, 64, 0, 0, 64, 64));
+        PrecisionLadderRenderer fixedPointOnly = new PrecisionLadderRenderer(
+                new MandelbrotKernel(), null, new FixedPointKernel(Formula.MANDELBROT));
+        assertEquals(Precision.ARBITRARY, fixedPointOnly.getPrecision(
+                new PreciseViewport(X, Y, 1e-20), 64, 64, 0, 0, 64, 64));
+        assertEquals(Precision.DOUBLE_DOUBLE, createRenderer().getPrecision(
+                new PreciseViewport(X, Y, 1e-20), 64, 64, 0, 0, 64, 64));
+    }
+
+    @Test
+    public void matchesSingleTierRenderers() {
+        int width = 32;
+        int height = 24;
+        int maxIterations = 500;
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+
+        PreciseViewport shallow = new PreciseViewport(X, Y, 1e-6);
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(expected, width, height,
+                shallow.toViewport(width, height), maxIterations, null, 0, 0, width, height);
+        RenderStats stats = createRenderer().render(actual, width, height, shallow,
+                maxIterations, null);
+        assertEquals(Precision.DOUBLE, stats.getPrecision());
+        int different = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                different++;
+            }
+        }
+        // Pixel coordinates are computed from the center instead of the corner
+        assertEquals(0, different, 4);
+
+        PreciseViewport deep = new PreciseViewport(X, Y, 4e-22);
+        new DoubleDoubleRenderer(new DoubleDoubleKernel(Formula.MANDELBROT)).render(expected,
+                width, height, deep, maxIterations, null);
+        stats = createRenderer().render(actual, width, height, deep, maxIterations, null);
+        assertArrayEquals(expected, actual);
+        assertEquals(Precision.DOUBLE_DOUBLE, stats.getPrecision());
+        assertEquals(width * height, stats.getPrecisionPixels(Precision.DOUBLE_DOUBLE));
+
+        PreciseViewport deeper = new PreciseViewport(X, Y, 1e-36);
+        new FixedPointRenderer(new FixedPointKernel(Formula.MANDELBROT)).render(expected,
+                width, height, deeper, 100, null);
+        stats = createRenderer().render(actual, width, height, deeper, 100, null);
+        assertArrayEquals(expected, actual);
+        assertEquals(Precision.ARBITRARY, stats.getPrecision());
+    }
+}
@@ -0,0 +1,72 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ProgressiveRendererTest {
+    private static final int WIDTH = 77;
+    private static final int HEIGHT = 45;
+    private static final int MAX_ITERATIONS = 64;
+    private static final Viewport VIEWPORT = new Viewport(-2, -1.25, 0.5, 1.25);
+
+    /** Counts kernel evaluations */
+    private static class CountingKernel extends MandelbrotKernel {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public float iterateSmooth(double x, double y, int maxIterations, RenderStats stats) {
+            calls.incrementAndGet();
+            return super.iterateSmooth(x, y, maxIterations, stats);
+        }
+    }
+
+    @Test
+    public void finalPassMatchesDirectRender() {
+        int[] expected = new int[WIDTH * HEIGHT];
+        new EscapeTimeRenderer(new MandelbrotKernel()).render(expected, WIDTH, HEIGHT, VIEWPORT,
+                MAX_ITERATIONS, null);
+        CountingKernel kernel = new CountingKernel();
+        int[] pixels = new int[WIDTH * HEIGHT];
+        final List<Integer> steps = new ArrayList<>();
+        ProgressiveRenderer renderer = new ProgressiveRenderer(kernel);
+        renderer.render(pixels, WIDTH, HEIGHT, VIEWPORT, MAX_ITERATIONS, null, steps::add);
+        assertArrayEquals(expected, pixels);
+        assertEquals(Arrays.asList(8, 4, 2, 1), steps);
+        // Every pixel that is not mirrored evaluated exactly once across all passes
+        assertEquals(WIDTH * HEIGHT - renderer.getStats().getMirroredPixels(), kernel.calls.get());
+    }
+
+    @Test
+    public void coarsePassFillsWholeFrame() {
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        ProgressiveRenderer renderer = new ProgressiveRenderer(new MandelbrotKernel());
+        renderer.renderPass(buffer, VIEWPORT, MAX_ITERATIONS, ProgressiveRenderer.COARSEST_STEP,
+                false, null);
+        // Every orbit takes at least one iteration to escape
+        for (float value : buffer.getValues()) {
+            assertFalse(value == 0);
+        }
+    }
+
+    @Test
+    public void cancelStopsRender() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        final ProgressiveRenderer renderer = new ProgressiveRenderer(new MandelbrotKernel());
+        final List<Integer> steps = new ArrayList<>();
+        boolean finished = renderer.render(pixels, WIDTH, HEIGHT, VIEWPORT, MAX_ITERATIONS, null,
+                step -> {
+                    steps.add(step);
+                    renderer.cancel();
+                });
+        assertFalse(finished);
+        assertEquals(1, steps.size());
+    }
+}
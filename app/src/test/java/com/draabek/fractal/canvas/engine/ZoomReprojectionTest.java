@@ -0,0 +1,87 @@
+package com.draabek.fractal.canvas.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZoomReprojectionTest {
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+    private static final int MAX_ITERATIONS = 200;
+    private static final PreciseViewport VIEWPORT = new PreciseViewport(
+            new BigDecimal("-0.7435"), new BigDecimal("0.1314"), 1e-4);
+
+    @Test
+    public void snapsNearPowersOfTwo() {
+        assertEquals(2.0, ZoomReprojection.snapFactor(1.9), 0);
+        assertEquals(0.25, ZoomReprojection.snapFactor(0.26), 0);
+        assertEquals(1.5, ZoomReprojection.snapFactor(1.5), 0);
+        assertEquals(1.05, ZoomReprojection.snapFactor(1.05), 0);
+        assertEquals(20.0, ZoomReprojection.snapFactor(20.0), 0);
+    }
+
+    @Test
+    public void betweenRecognizesPowerOfTwoZooms() {
+        ZoomReprojection in = ZoomReprojection.between(VIEWPORT,
+                VIEWPORT.zoom(4, 0, 0, WIDTH, HEIGHT), WIDTH, HEIGHT);
+        assertNotNull(in);
+        assertEquals(2, in.getLevels());
+        assertEquals(4, in.getKnownStep());
+        assertNotNull(ZoomReprojection.between(VIEWPORT,
+                VIEWPORT.zoom(2, 64, 32, WIDTH, HEIGHT), WIDTH, HEIGHT));
+        ZoomReprojection out = ZoomReprojection.between(VIEWPORT,
+                VIEWPORT.zoom(0.5, 13, 7, WIDTH, HEIGHT), WIDTH, HEIGHT);
+        assertNotNull(out);
+        assertEquals(-1, out.getLevels());
+        // Anchor off the grid of known samples
+        assertNull(ZoomReprojection.between(VIEWPORT,
+                VIEWPORT.zoom(2, 3, 0, WIDTH, HEIGHT), WIDTH, HEIGHT));
+        assertNull(ZoomReprojection.between(VIEWPORT,
+                VIEWPORT.zoom(1.5, 0, 0, WIDTH, HEIGHT), WIDTH, HEIGHT));
+        assertNull(ZoomReprojection.between(VIEWPORT, VIEWPORT.translate(5, 0), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void zoomInReusesQuarterAtTwice() {
+        assertReprojectionMatchesFullRender(VIEWPORT.zoom(2, 0, 0, WIDTH, HEIGHT),
+                WIDTH * HEIGHT / 4);
+    }
+
+    @Test
+    public void zoomOutReusesShrunkFrame() {
+        assertReprojectionMatchesFullRender(VIEWPORT.zoom(0.25, 40, 20, WIDTH, HEIGHT),
+                WIDTH * HEIGHT / 16);
+    }
+
+    private static void assertReprojectionMatchesFullRender(PreciseViewport zoomed, int reused) {
+        EscapeTimeRenderer renderer = new EscapeTimeRenderer(new MandelbrotKernel());
+        IterationBuffer buffer = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(buffer, VIEWPORT.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS);
+        Reprojection reprojection = ZoomReprojection.between(VIEWPORT, zoomed, WIDTH, HEIGHT);
+        assertNotNull(reprojection);
+        assertEquals(WIDTH * HEIGHT - reused, reprojection.getMissingPixelCount());
+        reprojection.apply(buffer.getValues());
+        RenderStats stats = new RenderStats();
+        for (int[] region : reprojection.getMissingRegions()) {
+            stats.add(renderer.render(buffer, zoomed.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS,
+                    region[0], region[1], region[2], region[3], reprojection.getKnownStep()));
+        }
+        assertEquals(reprojection.getMissingPixelCount(), stats.getPixels());
+
+        IterationBuffer full = new IterationBuffer(WIDTH, HEIGHT);
+        renderer.render(full, zoomed.toViewport(WIDTH, HEIGHT), MAX_ITERATIONS);
+        int different = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (buffer.getValues()[i] != full.getValues()[i]) {
+                different++;
+            }
+        }
+        // Coordinates of reused samples may differ from the full render in the last bits
+        assertTrue(different + " pixels differ", different <= WIDTH * HEIGHT / 1000);
+    }
+}
@@ -0,0 +1,182 @@
+package com.draabek.fractal.formula;
+
+import com.draabek.fractal.canvas.engine.RenderStats;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Time of compiled formulas relative to handwritten loops and to interpreting the formula.
+ * Runs only when asked for, in a JVM of its own:
+ * <pre>
+ * ./gradlew testDebugUnitTest --tests '*FormulaKernelBenchmark' -Dbenchmarks=true
+ * </pre>
+ * Other formulas run first, as they do in the app once a few have been shown, so that the JIT
+ * compiles the operations for all of them rather than inlining those of the timed formula.
+ * The tree kernel still misses the bound there, it takes 1.2 to 1.35 times the handwritten
+ * loop, where it took about 1.8 times before the polynomial and the factors moved out of the
+ * operations.
+ */
+public class FormulaKernelBenchmark {
+    private static final Map<String, Float> NO_PARAMETERS = new HashMap<>();
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    private static final int ITERATIONS = 256;
+    /** Runs before timing, for the JIT to compile the loops */
+    private static final int WARM_UP = 10;
+    /** Runs timed, the best one counts */
+    private static final int RUNS = 10;
+    /** Most time a compiled formula may take relative to the handwritten loop */
+    private static final double MAX_HANDWRITTEN_RATIO = 1.2;
+    /** Most time a compiled formula may take relative to interpreting it */
+    private static final double MAX_INTERPRETED_RATIO = 0.5;
+    /** Formulas run before timing, with operations and functions of all kinds */
+    private static final String[] OTHER_FORMULAS = {"z^2 + c*cos(z)", "exp(z) + c/z",
+            "sinh(z)*z + c - 1", "z^z + c", "z^1.5 + c*tan(z)", "-z^4/(z + 1) + sqrt(c)",
+            "log(z*z + 1)*cosh(z) + c", "conj(z)^2 + abs(z) + c", "z^3 - 0.5z + c"};
+
+    private interface Loop {
+        int iterate(double cx, double cy, int maxIterations);
+    }
+
+    @Test
+    public void quadraticRunsNearHandwrittenSpeed() {
+        assertNearHandwrittenSpeed("z^2 + c", new Loop() {
+            @Override
+            public int iterate(double cx, double cy, int maxIterations) {
+                return FormulaKernelTest.mandelbrot(cx, cy, maxIterations);
+            }
+        });
+    }
+
+    @Test
+    public void cubicRunsNearHandwrittenSpeed() {
+        assertNearHandwrittenSpeed("z^3 + c", new Loop() {
+            @Override
+            public int iterate(double cx, double cy, int maxIterations) {
+                return cubic(cx, cy, maxIterations);
+            }
+        });
+    }
+
+    @Test
+    public void treeRunsNearHandwrittenSpeed() {
+        assertNearHandwrittenSpeed("z^3 + c*sin(z)", new Loop() {
+            @Override
+            public int iterate(double cx, double cy, int maxIterations) {
+                return cubicSine(cx, cy, maxIterations);
+            }
+        });
+    }
+
+    private static void assertNearHandwrittenSpeed(String source, Loop handwritten) {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        runOtherFormulas();
+        Expression formula = Expression.parse(source);
+        Expression start = Expression.parse("0");
+        FormulaKernel kernel = FormulaKernel.compile(formula, start, 2, NO_PARAMETERS);
+        long compiledTime = Long.MAX_VALUE;
+        long handwrittenTime = Long.MAX_VALUE;
+        long interpretedTime = Long.MAX_VALUE;
+        // One tile's counters like the renderer
+        RenderStats stats = new RenderStats();
+        for (int run = 0; run < WARM_UP + RUNS; run++) {
+            long checksum = 0;
+            long begin = System.nanoTime();
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    Complex c = FormulaKernelTest.point(x, y);
+                    checksum += kernel.iterate(c.re, c.im, ITERATIONS, stats);
+                }
+            }
+            long compiled = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    Complex c = FormulaKernelTest.point(x, y);
+                    checksum -= handwritten.iterate(c.re, c.im, ITERATIONS);
+                }
+            }
+            long loop = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    FormulaKernelTest.interpret(formula, start, FormulaKernelTest.point(x, y), 2,
+                            ITERATIONS, NO_PARAMETERS);
+                }
+            }
+            long interpreted = System.nanoTime() - begin;
+            assertEquals(source, 0, checksum);
+            if (run >= WARM_UP) {
+                compiledTime = Math.min(compiledTime, compiled);
+                handwrittenTime = Math.min(handwrittenTime, loop);
+                interpretedTime = Math.min(interpretedTime, interpreted);
+            }
+        }
+        double handwrittenRatio = (double) compiledTime / handwrittenTime;
+        double interpretedRatio = (double) compiledTime / interpretedTime;
+        assertTrue(source + ": " + handwrittenRatio + "x the handwritten loop",
+                handwrittenRatio <= MAX_HANDWRITTEN_RATIO);
+        assertTrue(source + ": " + interpretedRatio + "x the interpreter",
+                interpretedRatio <= MAX_INTERPRETED_RATIO);
+    }
+
+    private static void runOtherFormulas() {
+        RenderStats stats = new RenderStats();
+        for (String source : OTHER_FORMULAS) {
+            FormulaKernel kernel = FormulaKernel.compile(Expression.parse(source),
+                    Expression.parse("c"), 2, NO_PARAMETERS);
+            for (int run = 0; run < WARM_UP; run++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        Complex c = FormulaKernelTest.point(x, y);
+                        kernel.iterate(c.re, c.im, ITERATIONS, stats);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cubic(double cx, double cy, int maxIterations) {
+        double zr = 0;
+        double zi = 0;
+        int i = 0;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4)) {
+            double zr2 = zr * zr - zi * zi;
+            double zi2 = 2 * zr * zi;
+            double t = zr * zr2 - zi * zi2 + cx;
+            zi = zr * zi2 + zi * zr2 + cy;
+            zr = t;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * z^3 + c*sin(z) written out, the same arithmetic as the compiled operations
+     */
+    private static int cubicSine(double cx, double cy, int maxIterations) {
+        double zr = 0;
+        double zi = 0;
+        int i = 0;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4)) {
+            double zr2 = zr * zr - zi * zi;
+            double zi2 = 2 * zr * zi;
+            double cubeR = zr2 * zr - zi2 * zi;
+            double cubeI = zr2 * zi + zi2 * zr;
+            double e = Math.exp(zi);
+            double sinR = Math.sin(zr) * (e + 1 / e) / 2;
+            double sinI = Math.cos(zr) * (e - 1 / e) / 2;
+            zr = cubeR + (cx * sinR - cy * sinI);
+            zi = cubeI + (cx * sinI + cy * sinR);
+            i++;
+        }
+        return i;
+    }
+}
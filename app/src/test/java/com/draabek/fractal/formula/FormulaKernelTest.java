@@ -0,0 +1,205 @@
+package com.draabek.fractal.formula;
+
+import com.draabek.fractal.canvas.engine.RenderStats;
+import com.draabek.fractal.fractal.Symmetry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FormulaKernelTest {
+    private static final Map<String, Float> NO_PARAMETERS = new HashMap<>();
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+
+    @Test
+    public void operatorsBindLikeInMath() {
+        assertValue(1, 0, "-z^2", 0, 1);
+        assertValue(512, 0, "2^3^2", 0, 0);
+        assertValue(18, 0, "2z^2", 3, 0);
+        assertValue(-4, 0, "z = 1 - 2 - 3", 0, 0);
+        assertValue(2, 0, "8 / 2 / 2", 0, 0);
+        assertValue(6, 0, "3(z + 1)", 1, 0);
+        assertValue(0.5, 0, "z^-1", 2, 0);
+        assertValue(2 * Math.E + 0.001, 0, "2e + 1e-3", 0, 0);
+        assertValue(0, 1.5, "1.5i", 0, 0);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")),
+                Expression.parse("a + b*z + sin(a)").getParameterNames());
+    }
+
+    @Test
+    public void errorsReportTheirColumn() {
+        assertSyntaxError(4, "z^ ");
+        assertSyntaxError(5, "sin z");
+        assertSyntaxError(5, "z + foo(z)");
+        assertSyntaxError(5, "z + )");
+        assertSyntaxError(5, "(z +");
+        assertSyntaxError(1, "1..2");
+        assertSyntaxError(3, "z c");
+    }
+
+    @Test
+    public void compiledKernelsMatchTheInterpreter() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put("k", 0.4f);
+        // Each kind of loop, then operations of all kinds
+        String[] formulas = {"z^2 + c", "z^2 + k*c + 0.1", "z^3 + c", "z^5 - k + c",
+                "z^3 - 0.5z + c", "(z^2 + c)^2 + c", "(z + 1)^2 / 2 + c", "z^3 + c*sin(z)",
+                "exp(z) * k + c", "z^2 + c / z", "conj(z)^2 + c", "z^1.5 + c",
+                "z^(1 + 0.1i) + c", "cosh(z) + c + log(c) - sqrt(z) + tan(tanh(z))",
+                "abs(z) - z*z + re(c) + im(c)*i + cos(sinh(z))"};
+        for (String source : formulas) {
+            Expression formula = Expression.parse(source);
+            Expression start = Expression.parse("c");
+            FormulaKernel kernel = FormulaKernel.compile(formula, start, 4, parameters);
+            int different = 0;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    Complex c = point(x, y);
+                    int expected = interpret(formula, start, c, 4, 64, parameters);
+                    if (kernel.iterate(c.re, c.im, 64) != expected) {
+                        different++;
+                    }
+                }
+            }
+            // Expanded polynomials round differently, which tips a few points on the border
+            assertTrue(source + ": " + different + " differ", different <= WIDTH * HEIGHT / 100);
+        }
+    }
+
+    @Test
+    public void continuedOrbitsMatchIteratingAtOnce() {
+        String[] formulas = {"z^2 + c", "z^4 + c", "z^3 + z + c", "z^3 + c*sin(z)"};
+        for (String source : formulas) {
+            FormulaKernel kernel = FormulaKernel.compile(Expression.parse(source),
+                    Expression.parse("0"), 2, NO_PARAMETERS);
+            double[] orbit = new double[2];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    Complex c = point(x, y);
+                    int first = kernel.continueOrbit(c.re, c.im, orbit, 0, 0, 20,
+                            new RenderStats());
+                    int count = (first < 20) ? first : kernel.continueOrbit(c.re, c.im, orbit,
+                            0, first, 64, new RenderStats());
+                    assertEquals(source + " at " + c, kernel.iterate(c.re, c.im, 64), count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void realFormulasAreSymmetric() {
+        assertEquals(Symmetry.CONJUGATE, symmetry("z^3 + c*sin(z)", "c"));
+        assertEquals(Symmetry.CONJUGATE, symmetry("conj(z)^2 + abs(z) + c", "0"));
+        assertEquals(Symmetry.NONE, symmetry("z^2 + i*c", "c"));
+        assertEquals(Symmetry.NONE, symmetry("z^2 + c", "c + 0.1i"));
+        assertEquals(Symmetry.NONE, symmetry("z^2 + im(z) + c", "c"));
+    }
+
+    @Test
+    public void quadraticFormulaMatchesTheHandwrittenLoop() {
+        FormulaKernel kernel = FormulaKernel.compile(Expression.parse("z^2 + c"),
+                Expression.parse("0"), 2, NO_PARAMETERS);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Complex c = point(x, y);
+                assertEquals(mandelbrot(c.re, c.im, 256), kernel.iterate(c.re, c.im, 256));
+            }
+        }
+    }
+
+    static int mandelbrot(double cx, double cy, int maxIterations) {
+        double zr = 0;
+        double zi = 0;
+        int i = 0;
+        while ((i < maxIterations) && (zr * zr + zi * zi <= 4)) {
+            double t = zr * zr - zi * zi + cx;
+            zi = 2 * zr * zi + cy;
+            zr = t;
+            i++;
+        }
+        return i;
+    }
+
+    static Complex point(int x, int y) {
+        return new Complex(-2.2 + 3.2 * x / WIDTH, -1.2 + 2.4 * y / HEIGHT);
+    }
+
+    /**
+     * Evaluate the formula for every iteration by walking its tree
+     */
+    static int interpret(Expression formula, Expression start, Complex c, double bailout,
+                         int maxIterations, Map<String, Float> parameters) {
+        Complex z = evaluate(start.getRoot(), Complex.ZERO, c, parameters);
+        int i = 0;
+        while ((i < maxIterations) && (z.re * z.re + z.im * z.im <= bailout * bailout)) {
+            z = evaluate(formula.getRoot(), z, c, parameters);
+            i++;
+        }
+        return i;
+    }
+
+    private static Complex evaluate(Node node, Complex z, Complex c,
+                                    Map<String, Float> parameters) {
+        switch (node.kind) {
+            case CONSTANT:
+                return node.value;
+            case Z:
+                return z;
+            case C:
+                return c;
+            case PARAMETER:
+                Float value = parameters.get(node.name);
+                return new Complex((value == null) ? 0 : value, 0);
+            case NEGATE:
+                return evaluate(node.left, z, c, parameters).negate();
+            case FUNCTION:
+                return evaluate(node.left, z, c, parameters).apply(node.function);
+            default:
+                break;
+        }
+        Complex left = evaluate(node.left, z, c, parameters);
+        Complex right = evaluate(node.right, z, c, parameters);
+        switch (node.kind) {
+            case ADD:
+                return left.add(right);
+            case SUBTRACT:
+                return left.subtract(right);
+            case MULTIPLY:
+                return left.multiply(right);
+            case DIVIDE:
+                return left.divide(right);
+            default:
+                return left.power(right);
+        }
+    }
+
+    private static Symmetry symmetry(String formula, String start) {
+        return FormulaKernel.compile(Expression.parse(formula), Expression.parse(start), 2,
+                NO_PARAMETERS).getSymmetry();
+    }
+
+    private static void assertValue(double re, double im, String source, double zr,
+                                    double zi) {
+        Complex value = evaluate(Expression.parse(source).getRoot(), new Complex(zr, zi),
+                Complex.ZERO, NO_PARAMETERS);
+        assertEquals(source, re, value.re, 1e-12);
+        assertEquals(source, im, value.im, 1e-12);
+    }
+
+    private static void assertSyntaxError(int column, String source) {
+        try {
+            Expression.parse(source);
+            fail("Parsed " + source);
+        } catch (FormulaSyntaxException e) {
+            assertEquals(e.getMessage(), column, e.getColumn());
+        }
+    }
+}
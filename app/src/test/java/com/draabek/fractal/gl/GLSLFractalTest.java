@@ -0,0 +1,52 @@
+package com.draabek.fractal.gl;
+
+import com.draabek.fractal.canvas.engine.PreciseViewport;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class GLSLFractalTest {
+    private static final float CENTER_X = 0.7f;
+    private static final float CENTER_Y = 0.5f;
+    private static final float SCALE = 0.6f;
+
+    @Test
+    public void viewportMatchesTheFragmentCoordinates() {
+        assertMatchesFragmentCoordinates(64, 48);
+    }
+
+    @Test
+    public void viewportMatchesTheFragmentCoordinatesOfOddSizes() {
+        assertMatchesFragmentCoordinates(65, 47);
+        assertMatchesFragmentCoordinates(1, 1);
+    }
+
+    /**
+     * The shaders put pixel [x, y] at c = (((x, y) + 0.5) / min(width, height) - center) / scale
+     */
+    private static void assertMatchesFragmentCoordinates(int width, int height) {
+        GLSLFractal fractal = new GLSLFractal();
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put("centerX", CENTER_X);
+        parameters.put("centerY", CENTER_Y);
+        parameters.put("scale", SCALE);
+        fractal.updateSettings(parameters);
+        PreciseViewport viewport = fractal.getViewport(width, height);
+        double resolution = Math.min(width, height);
+        assertEquals(1 / (resolution * SCALE), viewport.getPixelSize(), 1e-12);
+        for (int x : new int[] {0, width / 2, width - 1}) {
+            assertEquals(width + "x" + height + ", column " + x,
+                    ((x + 0.5) / resolution - CENTER_X) / SCALE,
+                    viewport.getX(x, width).doubleValue(), 1e-9);
+        }
+        for (int y : new int[] {0, height / 2, height - 1}) {
+            assertEquals(width + "x" + height + ", row " + y,
+                    ((y + 0.5) / resolution - CENTER_Y) / SCALE,
+                    viewport.getY(y, height).doubleValue(), 1e-9);
+        }
+    }
+}
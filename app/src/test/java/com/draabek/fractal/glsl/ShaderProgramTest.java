@@ -0,0 +1,213 @@
+package com.draabek.fractal.glsl;
+
+import com.draabek.fractal.canvas.engine.JuliaKernel;
+import com.draabek.fractal.canvas.engine.RenderStats;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShaderProgramTest {
+    /** Shaders of the app, relative to the module the tests run in */
+    private static final File SHADERS = new File("src/main/assets/shaders");
+
+    @Test
+    public void bundledShadersCompileAndRender() throws Exception {
+        File[] files = SHADERS.listFiles();
+        assertTrue("No shaders in " + SHADERS.getAbsolutePath(), files != null);
+        int compiled = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith("_fragment.glsl")) {
+                continue;
+            }
+            ShaderProgram program = ShaderProgram.compile(
+                    new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+            Map<String, Float> parameters = new HashMap<>();
+            for (String uniform : program.getUniformNames()) {
+                parameters.put(uniform, 0.5f);
+            }
+            parameters.put("iterations", 16f);
+            int[] pixels = new int[12 * 8];
+            new ShaderRenderer(program).render(pixels, 12, 8, parameters, palette(16));
+            compiled++;
+        }
+        assertTrue(compiled > 10);
+    }
+
+    @Test
+    public void juliaShaderMatchesTheKernel() throws Exception {
+        ShaderProgram program = ShaderProgram.compile(new String(Files.readAllBytes(
+                new File(SHADERS, "julia_fragment.glsl").toPath()), "UTF-8"));
+        int width = 64;
+        int height = 48;
+        int iterations = 64;
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put("centerX", 0.7f);
+        parameters.put("centerY", 0.5f);
+        parameters.put("scale", 0.6f);
+        parameters.put("iterations", (float) iterations);
+        parameters.put("cX", -0.8f);
+        parameters.put("cY", 0.15f);
+        // A color per iteration count
+        int[] palette = palette(iterations);
+        int[] pixels = new int[width * height];
+        new ShaderRenderer(program).render(pixels, width, height, parameters, palette);
+        JuliaKernel kernel = new JuliaKernel(-0.8f, 0.15f);
+        double resolution = Math.min(width, height);
+        int checked = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double cx = ((x + 0.5) / resolution - 0.7f) / 0.6f;
+                double cy = ((y + 0.5) / resolution - 0.5f) / 0.6f;
+                // The shader does not test the starting point
+                if (cx * cx + cy * cy > 4) {
+                    continue;
+                }
+                int count = kernel.iterate(cx, cy, iterations, new RenderStats());
+                assertEquals("Pixel " + x + ", " + y,
+                        palette[(count == iterations) ? 0 : count], pixels[y * width + x]);
+                checked++;
+            }
+        }
+        assertTrue(checked > width * height / 2);
+    }
+
+    @Test
+    public void swizzlesReadAndWriteComponents() {
+        assertEquals(color(3, 2, 1), shade("vec3 v = vec3(1., 2., 3.); v.xz = v.zx;"
+                + "gl_FragColor = vec4(v / 255., 1.);"));
+        assertEquals(color(2, 2, 7), shade("vec4 v = vec4(2.); v.b += 5.;"
+                + "gl_FragColor = vec4(v.rgb / 255., 1.);"));
+        assertEquals(color(4, 1, 0), shade("vec2 v = vec2(1., 4.);"
+                + "gl_FragColor = vec4(v.yxx.xy, 0., 255.) / 255.;"));
+    }
+
+    @Test
+    public void matricesAreColumnMajor() {
+        // mat2(c, -s, s, c) rotates a row vector one way and a column vector the other
+        assertEquals(color(3, 0, 1), shade("mat2 m = mat2(0., -1., 1., 0.);"
+                + "vec2 p = vec2(1., 0.) * m; vec2 q = m * vec2(1., 0.);"
+                + "gl_FragColor = vec4(p.y + 2., q.y + 1., q.x + 1., 255.) / 255.;"));
+        assertEquals(color(7, 14, 0), shade("mat2 m = mat2(1., 2., 3., 4.) * mat2(1.);"
+                + "vec2 v = vec2(1., 2.); v *= m; v = m[1] + v;"
+                + "gl_FragColor = vec4(v.x - 1., v.y - 1., 0., 255.) / 255.;"));
+    }
+
+    @Test
+    public void functionsCallEachOther() {
+        assertEquals(color(10, 7, 0), shade(
+                "float twice(float x) { return 2. * x; }"
+                        + "vec2 swap(vec2 v) { return v.yx; }"
+                        + "float add(float a, float b) { return a + b; }",
+                "vec2 v = swap(vec2(twice(twice(1.)), 3.));"
+                        + "gl_FragColor = vec4(add(v.y, twice(v.x)), add(add(1., 2.), 4.), 0.,"
+                        + " 255.) / 255.;"));
+    }
+
+    @Test
+    public void loopsBreakAndContinue() {
+        assertEquals(color(16, 6, 3), shade("int sum = 0; int count = 0;"
+                + "for (int i = 0; i < 100; i++) { if (i == 8) break; if (i / 2 * 2 != i)"
+                + " continue; sum += i; count++; }"
+                + "float steps = 0.; while (true) { steps++; if (steps > 5.) break; }"
+                + "int j = 0; do { j++; } while (j < 3);"
+                + "gl_FragColor = vec4(float(sum + count), steps, float(j), 255.) / 255.;"));
+    }
+
+    @Test
+    public void integersTruncate() {
+        assertEquals(color(3, 3, 1), shade("int a = 7 / 2; int b = int(-3.7) + 6;"
+                + "bool odd = (7 - 7 / 2 * 2) == 1;"
+                + "gl_FragColor = vec4(float(a), float(b), float(odd), 255.) / 255.;"));
+    }
+
+    @Test
+    public void preprocessorExpandsMacros() {
+        assertEquals(color(9, 4, 1), shade(
+                "#define THREE 3.\n#define NINE THREE*THREE\n#ifdef GL_ES\n#define ES 1.\n"
+                        + "#else\n#define ES 0.\n#endif\n#ifndef NINE\n#error\n#endif\n"
+                        + "/* block\ncomment */ const float FOUR = 2. * 2.; // line comment\n",
+                "gl_FragColor = vec4(NINE, FOUR, ES, 255.) / 255.;"));
+    }
+
+    @Test
+    public void textureReadsThePaletteClamped() {
+        ShaderProgram program = ShaderProgram.compile("uniform sampler2D palette;"
+                + "uniform float s; void main() { gl_FragColor = texture2D(palette,"
+                + " vec2(s, 0.5)); }");
+        ShaderInvocation invocation = program.newInvocation();
+        int[] palette = {0xff000001, 0x80000002, 0xff000003, 0xff000004};
+        invocation.setPalette(palette);
+        float[] coordinates = {-1, 0, 0.3f, 0.5f, 0.99f, 1, 2};
+        int[] expected = {0, 0, 1, 2, 3, 3, 3};
+        for (int i = 0; i < coordinates.length; i++) {
+            invocation.setUniform("s", coordinates[i]);
+            assertEquals(palette[expected[i]], invocation.shade(0.5, 0.5));
+        }
+        invocation.setPalette(null);
+        assertEquals(0xff000000, invocation.shade(0.5, 0.5));
+    }
+
+    @Test
+    public void fragCoordIsThePixelCenter() {
+        ShaderProgram program = ShaderProgram.compile("uniform vec2 resolution;"
+                + "void main() { gl_FragColor = vec4(gl_FragCoord.xy / resolution, 0., 1.); }");
+        int[] pixels = new int[4 * 8];
+        new ShaderRenderer(program).render(pixels, 4, 8, new HashMap<String, Float>(), null);
+        // resolution is the shorter side along both axes like on the GPU, the first row is
+        // the bottom one
+        assertEquals(color(32, 32, 0), pixels[0]);
+        assertEquals(color(223, 255, 0), pixels[7 * 4 + 3]);
+    }
+
+    @Test
+    public void errorsReportTheirLine() {
+        assertSyntaxError(3, "void main() {\n float x = 1.;\n x = y;\n}");
+        assertSyntaxError(2, "void main() {\n vec2 v = vec3(1.);\n}");
+        assertSyntaxError(1, "float f(float x) { return f(x); } void main() { }");
+        assertSyntaxError(2, "void main() {\n int a[2];\n}");
+        assertSyntaxError(1, "void notMain() { }");
+        assertSyntaxError(4, "uniform float u;\nvoid main() {\n float x = 2.;\n u = x;\n}");
+    }
+
+    private static void assertSyntaxError(int line, String source) {
+        try {
+            ShaderProgram.compile(source);
+            fail("Compiled " + source);
+        } catch (ShaderSyntaxException e) {
+            assertEquals(e.getMessage(), line, e.getLine());
+        }
+    }
+
+    private static int shade(String main) {
+        return shade("", main);
+    }
+
+    private static int shade(String declarations, String main) {
+        ShaderProgram program = ShaderProgram.compile(declarations + "\nvoid main() {" + main
+                + "}");
+        return program.newInvocation().shade(0.5, 0.5);
+    }
+
+    /**
+     * @return Opaque color of the components in bytes
+     */
+    private static int color(int red, int green, int blue) {
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    private static int[] palette(int size) {
+        int[] palette = new int[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = 0xff000000 | (i * 255 / size) << 8 | i;
+        }
+        return palette;
+    }
+}